@@ -0,0 +1,86 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import si.pele.streamx.AC;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.BaseStream;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Overhead of {@link AC} auto-closing wrappers (including re-wrapping of each intermediate operation)
+ * compared to plain {@link Stream}s and {@link IntStream}s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ACStreamBench {
+
+    @Param({"10", "10000"})
+    int size;
+
+    @Param({"1", "4", "16"})
+    int length;
+
+    @Param({"false", "true"})
+    boolean parallel;
+
+    List<Integer> list;
+    int[] array;
+
+    @Setup
+    public void setup() {
+        list = IntStream.range(0, size).boxed().collect(Collectors.toList());
+        array = IntStream.range(0, size).toArray();
+    }
+
+    @Benchmark
+    public int stream() {
+        return pipeline(source(list.stream())).reduce(0, Integer::sum);
+    }
+
+    @Benchmark
+    public int acStream() {
+        return pipeline(source(AC.stream(list.stream()))).reduce(0, Integer::sum);
+    }
+
+    @Benchmark
+    public int intStream() {
+        return pipeline(source(Arrays.stream(array))).sum();
+    }
+
+    @Benchmark
+    public int acIntStream() {
+        return pipeline(source(AC.intStream(Arrays.stream(array)))).sum();
+    }
+
+    private <S extends BaseStream<?, S>> S source(S s) {
+        return parallel ? s.parallel() : s;
+    }
+
+    private Stream<Integer> pipeline(Stream<Integer> s) {
+        for (int i = 0; i < length; i++) {
+            s = (i & 1) == 0 ? s.map(x -> x + 1) : s.filter(x -> (x & 7) != 0);
+        }
+        return s;
+    }
+
+    private IntStream pipeline(IntStream s) {
+        for (int i = 0; i < length; i++) {
+            s = (i & 1) == 0 ? s.map(x -> x + 1) : s.filter(x -> (x & 7) != 0);
+        }
+        return s;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import si.pele.streamx.IntStreamable;
+import si.pele.streamx.Streamable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Cost of invoking a pre-built chain of {@link Streamable} (and {@link IntStreamable}) operations
+ * compared to building an equivalent {@link Stream} ({@link IntStream}) pipeline directly.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class StreamableBench {
+
+    @Param({"10", "10000"})
+    int size;
+
+    @Param({"1", "4", "16"})
+    int length;
+
+    @Param({"false", "true"})
+    boolean parallel;
+
+    List<Integer> list;
+    int[] array;
+
+    Streamable<Integer> streamable;
+    IntStreamable intStreamable;
+
+    @Setup
+    public void setup() {
+        list = IntStream.range(0, size).boxed().collect(Collectors.toList());
+        array = IntStream.range(0, size).toArray();
+
+        Streamable<Integer> s = parallel ? list::parallelStream : list::stream;
+        IntStreamable is = parallel ? () -> Arrays.stream(array).parallel() : () -> Arrays.stream(array);
+        for (int i = 0; i < length; i++) {
+            if ((i & 1) == 0) {
+                s = s.map(x -> x + 1);
+                is = is.map(x -> x + 1);
+            } else {
+                s = s.filter(x -> (x & 7) != 0);
+                is = is.filter(x -> (x & 7) != 0);
+            }
+        }
+        streamable = s;
+        intStreamable = is;
+    }
+
+    @Benchmark
+    public int stream() {
+        Stream<Integer> s = parallel ? list.parallelStream() : list.stream();
+        for (int i = 0; i < length; i++) {
+            s = (i & 1) == 0 ? s.map(x -> x + 1) : s.filter(x -> (x & 7) != 0);
+        }
+        return s.reduce(0, Integer::sum);
+    }
+
+    @Benchmark
+    public int streamable() {
+        return streamable.stream().reduce(0, Integer::sum);
+    }
+
+    @Benchmark
+    public int autoClosingStreamable() {
+        return streamable.autoClosingStream().reduce(0, Integer::sum);
+    }
+
+    @Benchmark
+    public int intStream() {
+        IntStream s = parallel ? Arrays.stream(array).parallel() : Arrays.stream(array);
+        for (int i = 0; i < length; i++) {
+            s = (i & 1) == 0 ? s.map(x -> x + 1) : s.filter(x -> (x & 7) != 0);
+        }
+        return s.sum();
+    }
+
+    @Benchmark
+    public int intStreamable() {
+        return intStreamable.stream().sum();
+    }
+
+    @Benchmark
+    public int autoClosingIntStreamable() {
+        return intStreamable.autoClosingStream().sum();
+    }
+}
@@ -5,7 +5,13 @@
  */
 package si.pele.streamx;
 
+import java.lang.ref.Cleaner;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.*;
 import java.util.stream.*;
 
@@ -22,28 +28,265 @@ public final class AC {
     private AC() {} // no instances
 
     /**
-     * @return a {@link Stream} wrapper that automatically closes underlying stream after a terminal operation
-     *         except after {@link Stream#iterator()} or {@link Stream#spliterator()} which are lazy terminal operations.
+     * @return a {@link Stream} wrapper that automatically closes underlying stream after a terminal operation.
+     *         After {@link Stream#iterator()} or {@link Stream#spliterator()}, which are lazy terminal operations,
+     *         the stream is closed when the iterator/spliterator is exhausted, when traversal throws an exception
+     *         or when the stream is closed explicitly.
      */
-    public static <T> Stream<T> stream(Stream<T> s) { return new ACStream<>(s); }
+    public static <T> Stream<T> stream(Stream<T> s) { return stream(s, metrics); }
 
     /**
-     * @return an {@link IntStream} wrapper that automatically closes underlying stream after a terminal operation
-     *         except after {@link IntStream#iterator()} or {@link IntStream#spliterator()} which are lazy terminal operations.
+     * @return an {@link IntStream} wrapper that automatically closes underlying stream after a terminal operation.
+     *         After {@link IntStream#iterator()} or {@link IntStream#spliterator()}, which are lazy terminal operations,
+     *         the stream is closed when the iterator/spliterator is exhausted, when traversal throws an exception
+     *         or when the stream is closed explicitly.
      */
-    public static IntStream intStream(IntStream s) { return new ACIntStream(s); }
+    public static IntStream intStream(IntStream s) { return intStream(s, metrics); }
 
     /**
-     * @return a {@link LongStream} wrapper that automatically closes underlying stream after a terminal operation
-     *         except after {@link LongStream#iterator()} or {@link LongStream#spliterator()} which are lazy terminal operations.
+     * @return a {@link LongStream} wrapper that automatically closes underlying stream after a terminal operation.
+     *         After {@link LongStream#iterator()} or {@link LongStream#spliterator()}, which are lazy terminal operations,
+     *         the stream is closed when the iterator/spliterator is exhausted, when traversal throws an exception
+     *         or when the stream is closed explicitly.
      */
-    public static LongStream longStream(LongStream s) { return new ACLongStream(s); }
+    public static LongStream longStream(LongStream s) { return longStream(s, metrics); }
 
     /**
-     * @return a {@link DoubleStream} wrapper that automatically closes underlying stream after a terminal operation
-     *         except after {@link DoubleStream#iterator()} or {@link DoubleStream#spliterator()} which are lazy terminal operations.
+     * @return a {@link DoubleStream} wrapper that automatically closes underlying stream after a terminal operation.
+     *         After {@link DoubleStream#iterator()} or {@link DoubleStream#spliterator()}, which are lazy terminal operations,
+     *         the stream is closed when the iterator/spliterator is exhausted, when traversal throws an exception
+     *         or when the stream is closed explicitly.
      */
-    public static DoubleStream doubleStream(DoubleStream s) { return new ACDoubleStream(s); }
+    public static DoubleStream doubleStream(DoubleStream s) { return doubleStream(s, metrics); }
+
+    private static volatile StreamMetrics metrics;
+
+    /**
+     * Installs a global {@link StreamMetrics} listener which is notified about life-cycle events of all
+     * AC streams subsequently created by the single-argument factory methods (including {@link Streamable}s).
+     *
+     * @param metrics the listener or {@code null} to uninstall it (the default)
+     */
+    public static void setMetrics(StreamMetrics metrics) { AC.metrics = metrics; }
+
+    /**
+     * @return the globally installed {@link StreamMetrics} listener or {@code null} if none is installed.
+     */
+    public static StreamMetrics getMetrics() { return metrics; }
+
+    /**
+     * @return a {@link Stream} wrapper like {@link #stream(Stream)} which reports its life-cycle to given
+     *         {@link StreamMetrics} listener. If the listener is {@code null}, the stream is not instrumented.
+     */
+    public static <T> Stream<T> stream(Stream<T> s, StreamMetrics metrics) {
+        if (metrics == null) return new ACStream<>(s, null, new ShortCircuit());
+        Probe probe = new Probe(metrics);
+        return new ACStream<>(s.peek(probe).onClose(probe), probe, new ShortCircuit());
+    }
+
+    /**
+     * @return an {@link IntStream} wrapper like {@link #intStream(IntStream)} which reports its life-cycle to
+     *         given {@link StreamMetrics} listener. If the listener is {@code null}, the stream is not instrumented.
+     */
+    public static IntStream intStream(IntStream s, StreamMetrics metrics) {
+        if (metrics == null) return new ACIntStream(s, null, new ShortCircuit());
+        Probe probe = new Probe(metrics);
+        return new ACIntStream(s.peek(probe).onClose(probe), probe, new ShortCircuit());
+    }
+
+    /**
+     * @return a {@link LongStream} wrapper like {@link #longStream(LongStream)} which reports its life-cycle to
+     *         given {@link StreamMetrics} listener. If the listener is {@code null}, the stream is not instrumented.
+     */
+    public static LongStream longStream(LongStream s, StreamMetrics metrics) {
+        if (metrics == null) return new ACLongStream(s, null, new ShortCircuit());
+        Probe probe = new Probe(metrics);
+        return new ACLongStream(s.peek(probe).onClose(probe), probe, new ShortCircuit());
+    }
+
+    /**
+     * @return a {@link DoubleStream} wrapper like {@link #doubleStream(DoubleStream)} which reports its life-cycle
+     *         to given {@link StreamMetrics} listener. If the listener is {@code null}, the stream is not instrumented.
+     */
+    public static DoubleStream doubleStream(DoubleStream s, StreamMetrics metrics) {
+        if (metrics == null) return new ACDoubleStream(s, null, new ShortCircuit());
+        Probe probe = new Probe(metrics);
+        return new ACDoubleStream(s.peek(probe).onClose(probe), probe, new ShortCircuit());
+    }
+
+    /**
+     * @return an auto-closing {@link Stream} of consecutive batches of given size of elements of given stream,
+     *         which is closed when the returned stream is closed. Batching is lazy and splits as the given stream does;
+     *         the last batch of each split may be smaller than requested.
+     */
+    public static <T> Stream<List<T>> batch(Stream<T> s, int size) { return stream(Batches.of(s, size)); }
+
+    /**
+     * @return an auto-closing {@link Stream} of consecutive batches of given size of elements of given stream.
+     * @see #batch(Stream, int)
+     */
+    public static Stream<int[]> batch(IntStream s, int size) { return stream(Batches.of(s, size)); }
+
+    /**
+     * @return an auto-closing {@link Stream} of consecutive batches of given size of elements of given stream.
+     * @see #batch(Stream, int)
+     */
+    public static Stream<long[]> batch(LongStream s, int size) { return stream(Batches.of(s, size)); }
+
+    /**
+     * @return an auto-closing {@link Stream} of consecutive batches of given size of elements of given stream.
+     * @see #batch(Stream, int)
+     */
+    public static Stream<double[]> batch(DoubleStream s, int size) { return stream(Batches.of(s, size)); }
+
+    /**
+     * @return an auto-closing {@link Stream} of elements of given stream read ahead into a buffer of given capacity
+     *         on a virtual thread, which closes the given stream when closed.
+     * @see Streamable#prefetch(int)
+     */
+    public static <T> Stream<T> prefetch(Stream<T> s, int capacity) {
+        return stream(Prefetch.stream(s, capacity, Async.EXECUTOR));
+    }
+
+    /**
+     * Performs a mutable reduction of given stream with given primitive collector and closes the stream.
+     *
+     * @see PrimitiveCollectors
+     */
+    public static <A, R> R collect(IntStream s, PrimitiveCollectors.IntCollector<A, R> collector) {
+        try (IntStream is = s) {
+            return collector.finisher().apply(is.collect(collector.supplier(), collector.accumulator(),
+                                                         collector.combiner()));
+        }
+    }
+
+    /**
+     * Performs a mutable reduction of given stream with given primitive collector and closes the stream.
+     *
+     * @see PrimitiveCollectors
+     */
+    public static <A, R> R collect(LongStream s, PrimitiveCollectors.LongCollector<A, R> collector) {
+        try (LongStream ls = s) {
+            return collector.finisher().apply(ls.collect(collector.supplier(), collector.accumulator(),
+                                                         collector.combiner()));
+        }
+    }
+
+    /**
+     * Performs a mutable reduction of given stream with given primitive collector and closes the stream.
+     *
+     * @see PrimitiveCollectors
+     */
+    public static <A, R> R collect(DoubleStream s, PrimitiveCollectors.DoubleCollector<A, R> collector) {
+        try (DoubleStream ds = s) {
+            return collector.finisher().apply(ds.collect(collector.supplier(), collector.accumulator(),
+                                                         collector.combiner()));
+        }
+    }
+
+    //
+    // asynchronous terminal operations
+
+    /**
+     * Performs {@link Stream#forEach} on given stream on a virtual thread (or a daemon platform thread when
+     * virtual threads are not available).
+     *
+     * @see #forEachAsync(Stream, Consumer, Executor)
+     */
+    public static <T> CompletableFuture<Void> forEachAsync(Stream<T> s, Consumer<? super T> action) {
+        return forEachAsync(s, action, Async.EXECUTOR);
+    }
+
+    /**
+     * Performs {@link Stream#forEach} on given stream on given executor.
+     *
+     * @return a future completed when the operation completes. The stream is closed when the operation completes
+     *         or fails and when the future is cancelled. Cancelling the future while the operation is running
+     *         interrupts the thread executing it, which aborts blocking IO on interruptible channels; the stream
+     *         is then closed by that thread, never concurrently with its traversal.
+     */
+    public static <T> CompletableFuture<Void> forEachAsync(Stream<T> s, Consumer<? super T> action,
+                                                           Executor executor) {
+        return Async.terminal(s, as -> {
+            as.forEach(action);
+            return null;
+        }, executor);
+    }
+
+    /**
+     * Performs {@link Stream#collect(Collector)} on given stream on a virtual thread.
+     *
+     * @see #forEachAsync(Stream, Consumer, Executor)
+     */
+    public static <T, A, R> CompletableFuture<R> collectAsync(Stream<T> s, Collector<? super T, A, R> collector) {
+        return collectAsync(s, collector, Async.EXECUTOR);
+    }
+
+    /**
+     * Performs {@link Stream#collect(Collector)} on given stream on given executor.
+     *
+     * @see #forEachAsync(Stream, Consumer, Executor)
+     */
+    public static <T, A, R> CompletableFuture<R> collectAsync(Stream<T> s, Collector<? super T, A, R> collector,
+                                                              Executor executor) {
+        return Async.terminal(s, as -> as.collect(collector), executor);
+    }
+
+    /**
+     * Performs {@link Stream#reduce(Object, BinaryOperator)} on given stream on a virtual thread.
+     *
+     * @see #forEachAsync(Stream, Consumer, Executor)
+     */
+    public static <T> CompletableFuture<T> reduceAsync(Stream<T> s, T identity, BinaryOperator<T> accumulator) {
+        return reduceAsync(s, identity, accumulator, Async.EXECUTOR);
+    }
+
+    /**
+     * Performs {@link Stream#reduce(Object, BinaryOperator)} on given stream on given executor.
+     *
+     * @see #forEachAsync(Stream, Consumer, Executor)
+     */
+    public static <T> CompletableFuture<T> reduceAsync(Stream<T> s, T identity, BinaryOperator<T> accumulator,
+                                                       Executor executor) {
+        return Async.terminal(s, as -> as.reduce(identity, accumulator), executor);
+    }
+
+    /**
+     * Performs {@link Stream#reduce(BinaryOperator)} on given stream on a virtual thread.
+     *
+     * @see #forEachAsync(Stream, Consumer, Executor)
+     */
+    public static <T> CompletableFuture<Optional<T>> reduceAsync(Stream<T> s, BinaryOperator<T> accumulator) {
+        return reduceAsync(s, accumulator, Async.EXECUTOR);
+    }
+
+    /**
+     * Performs {@link Stream#reduce(BinaryOperator)} on given stream on given executor.
+     *
+     * @see #forEachAsync(Stream, Consumer, Executor)
+     */
+    public static <T> CompletableFuture<Optional<T>> reduceAsync(Stream<T> s, BinaryOperator<T> accumulator,
+                                                                 Executor executor) {
+        return Async.terminal(s, as -> as.reduce(accumulator), executor);
+    }
+
+    /**
+     * Performs {@link Stream#count()} on given stream on a virtual thread.
+     *
+     * @see #forEachAsync(Stream, Consumer, Executor)
+     */
+    public static <T> CompletableFuture<Long> countAsync(Stream<T> s) {
+        return countAsync(s, Async.EXECUTOR);
+    }
+
+    /**
+     * Performs {@link Stream#count()} on given stream on given executor.
+     *
+     * @see #forEachAsync(Stream, Consumer, Executor)
+     */
+    public static <T> CompletableFuture<Long> countAsync(Stream<T> s, Executor executor) {
+        return Async.terminal(s, Stream::count, executor);
+    }
 
     /**
      * {@link BaseStream} auto-closing wrapper.
@@ -51,11 +294,36 @@ public final class AC {
     abstract static class ACBaseStream<T, S extends BaseStream<T, S>> implements BaseStream<T, S> {
 
         final S s;
+        final Probe probe; // null when not instrumented
+        final ShortCircuit sc; // shared with derived streams
 
-        ACBaseStream(S s) { this.s = s; }
+        ACBaseStream(S s, Probe probe, ShortCircuit sc) {
+            this.s = s;
+            this.probe = probe;
+            this.sc = sc;
+        }
 
         abstract S wrap(S s);
 
+        /**
+         * @return the underlying stream, marking the start of a terminal operation.
+         */
+        S begin() {
+            if (probe != null) probe.begin(s.isParallel());
+            return s;
+        }
+
+        //
+        // wrap streams derived from this one, sharing the probe and short-circuit (these hide AC's static factories)
+
+        <U> Stream<U> stream(Stream<U> s) { return new ACStream<>(s, probe, sc); }
+
+        IntStream intStream(IntStream s) { return new ACIntStream(s, probe, sc); }
+
+        LongStream longStream(LongStream s) { return new ACLongStream(s, probe, sc); }
+
+        DoubleStream doubleStream(DoubleStream s) { return new ACDoubleStream(s, probe, sc); }
+
         //
         // intermediary operations: delegate + wrap
 
@@ -80,7 +348,7 @@ public final class AC {
      */
     static final class ACStream<T> extends ACBaseStream<T, Stream<T>> implements Stream<T> {
 
-        ACStream(Stream<T> s) { super(s); }
+        ACStream(Stream<T> s, Probe probe, ShortCircuit sc) { super(s, probe, sc); }
 
         Stream<T> wrap(Stream<T> s) { return (s == this.s) ? this : stream(s); }
 
@@ -100,19 +368,23 @@ public final class AC {
         }
 
         public <R> Stream<R> flatMap(Function<? super T, ? extends Stream<? extends R>> mapper) {
-            return stream(s.flatMap(mapper));
+            return stream(s.flatMap(t -> sc.armed ? sc.inner(() -> mapper.apply(t))
+                                                  : mapper.apply(t)));
         }
 
         public IntStream flatMapToInt(Function<? super T, ? extends IntStream> mapper) {
-            return intStream(s.flatMapToInt(mapper));
+            return intStream(s.flatMapToInt(t -> sc.armed ? sc.innerInt(() -> mapper.apply(t))
+                                                          : mapper.apply(t)));
         }
 
         public LongStream flatMapToLong(Function<? super T, ? extends LongStream> mapper) {
-            return longStream(s.flatMapToLong(mapper));
+            return longStream(s.flatMapToLong(t -> sc.armed ? sc.innerLong(() -> mapper.apply(t))
+                                                            : mapper.apply(t)));
         }
 
         public DoubleStream flatMapToDouble(Function<? super T, ? extends DoubleStream> mapper) {
-            return doubleStream(s.flatMapToDouble(mapper));
+            return doubleStream(s.flatMapToDouble(t -> sc.armed ? sc.innerDouble(() -> mapper.apply(t))
+                                                                : mapper.apply(t)));
         }
 
         public Stream<T> distinct() {return wrap(s.distinct());}
@@ -130,68 +402,83 @@ public final class AC {
         //
         // terminal operations: delegate + close
 
-        public void forEach(Consumer<? super T> action) { try (Stream<T> s = this.s) {s.forEach(action);} }
+        public void forEach(Consumer<? super T> action) { try (Stream<T> s = begin()) {s.forEach(action);} }
 
         public void forEachOrdered(Consumer<? super T> action) {
-            try (Stream<T> s = this.s) {s.forEachOrdered(action);}
+            try (Stream<T> s = begin()) {s.forEachOrdered(action);}
         }
 
-        public Object[] toArray() { try (Stream<T> s = this.s) {return s.toArray();} }
+        public Object[] toArray() { try (Stream<T> s = begin()) {return s.toArray();} }
 
-        public <A> A[] toArray(IntFunction<A[]> generator) { try (Stream<T> s = this.s) {return s.toArray(generator);} }
+        public <A> A[] toArray(IntFunction<A[]> generator) { try (Stream<T> s = begin()) {return s.toArray(generator);} }
 
         public T reduce(T identity, BinaryOperator<T> accumulator) {
-            try (Stream<T> s = this.s) {return s.reduce(identity, accumulator);}
+            try (Stream<T> s = begin()) {return s.reduce(identity, accumulator);}
         }
 
         public Optional<T> reduce(BinaryOperator<T> accumulator) {
-            try (Stream<T> s = this.s) {return s.reduce(accumulator);}
+            try (Stream<T> s = begin()) {return s.reduce(accumulator);}
         }
 
         public <U> U reduce(U identity, BiFunction<U, ? super T, U> accumulator, BinaryOperator<U> combiner) {
-            try (Stream<T> s = this.s) {return s.reduce(identity, accumulator, combiner); }
+            try (Stream<T> s = begin()) {return s.reduce(identity, accumulator, combiner); }
         }
 
         public <R> R collect(Supplier<R> supplier, BiConsumer<R, ? super T> accumulator, BiConsumer<R, R> combiner) {
-            try (Stream<T> s = this.s) {return s.collect(supplier, accumulator, combiner); }
+            try (Stream<T> s = begin()) {return s.collect(supplier, accumulator, combiner); }
         }
 
         public <R, A> R collect(Collector<? super T, A, R> collector) {
-            try (Stream<T> s = this.s) {return s.collect(collector);}
+            try (Stream<T> s = begin()) {return s.collect(collector);}
         }
 
         public Optional<T> min(Comparator<? super T> comparator) {
-            try (Stream<T> s = this.s) {return s.min(comparator);}
+            try (Stream<T> s = begin()) {return s.min(comparator);}
         }
 
         public Optional<T> max(Comparator<? super T> comparator) {
-            try (Stream<T> s = this.s) {return s.max(comparator);}
+            try (Stream<T> s = begin()) {return s.max(comparator);}
         }
 
-        public long count() { try (Stream<T> s = this.s) {return s.count();} }
+        public long count() {
+            try (Stream<T> s = begin()) {return probe == null ? s.count() : probe.count(s::count);}
+        }
 
         public boolean anyMatch(Predicate<? super T> predicate) {
-            try (Stream<T> s = this.s) {return s.anyMatch(predicate);}
+            try (Stream<T> s = begin()) {
+                return sc.arm(s.isParallel()) ? s.anyMatch(t -> sc.cancelled || predicate.test(t) && sc.cancel())
+                                      : s.anyMatch(predicate);
+            }
         }
 
         public boolean allMatch(Predicate<? super T> predicate) {
-            try (Stream<T> s = this.s) {return s.allMatch(predicate);}
+            try (Stream<T> s = begin()) {
+                return sc.arm(s.isParallel()) ? s.allMatch(t -> !sc.cancelled && (predicate.test(t) || !sc.cancel()))
+                                      : s.allMatch(predicate);
+            }
         }
 
         public boolean noneMatch(Predicate<? super T> predicate) {
-            try (Stream<T> s = this.s) {return s.noneMatch(predicate);}
+            try (Stream<T> s = begin()) {
+                return sc.arm(s.isParallel()) ? s.noneMatch(t -> sc.cancelled || predicate.test(t) && sc.cancel())
+                                      : s.noneMatch(predicate);
+            }
         }
 
-        public Optional<T> findFirst() { try (Stream<T> s = this.s) {return s.findFirst();} }
+        public Optional<T> findFirst() { try (Stream<T> s = begin()) {return s.findFirst();} }
 
-        public Optional<T> findAny() { try (Stream<T> s = this.s) {return s.findAny();} }
+        public Optional<T> findAny() {
+            try (Stream<T> s = begin()) {
+                return sc.arm(s.isParallel()) ? s.peek(t -> sc.cancel()).findAny() : s.findAny();
+            }
+        }
 
         //
-        // lazy terminal operations: just delegate (we can't close immediately)
+        // lazy terminal operations: delegate + close when exhausted
 
-        public Iterator<T> iterator() { try (Stream<T> s = this.s) {return s.iterator();} }
+        public Iterator<T> iterator() {return Spliterators.iterator(spliterator());}
 
-        public Spliterator<T> spliterator() { try (Stream<T> s = this.s) {return s.spliterator();} }
+        public Spliterator<T> spliterator() {return new ACSpliterator<>(begin().spliterator(), new Closer(s));}
     }
 
     /**
@@ -199,7 +486,7 @@ public final class AC {
      */
     static final class ACIntStream extends ACBaseStream<Integer, IntStream> implements IntStream {
 
-        ACIntStream(IntStream s) { super(s); }
+        ACIntStream(IntStream s, Probe probe, ShortCircuit sc) { super(s, probe, sc); }
 
         @Override
         IntStream wrap(IntStream s) { return (s == this.s) ? this : intStream(s); }
@@ -217,7 +504,10 @@ public final class AC {
 
         public DoubleStream mapToDouble(IntToDoubleFunction mapper) {return doubleStream(s.mapToDouble(mapper));}
 
-        public IntStream flatMap(IntFunction<? extends IntStream> mapper) {return wrap(s.flatMap(mapper));}
+        public IntStream flatMap(IntFunction<? extends IntStream> mapper) {
+            return wrap(s.flatMap(v -> sc.armed ? sc.innerInt(() -> mapper.apply(v))
+                                                : mapper.apply(v)));
+        }
 
         public IntStream distinct() {return wrap(s.distinct());}
 
@@ -238,50 +528,71 @@ public final class AC {
         //
         // terminal operations: delegate + close
 
-        public void forEach(IntConsumer action) { try (IntStream s = this.s) {s.forEach(action);} }
+        public void forEach(IntConsumer action) { try (IntStream s = begin()) {s.forEach(action);} }
 
-        public void forEachOrdered(IntConsumer action) { try (IntStream s = this.s) {s.forEachOrdered(action);} }
+        public void forEachOrdered(IntConsumer action) { try (IntStream s = begin()) {s.forEachOrdered(action);} }
 
-        public int[] toArray() { try (IntStream s = this.s) {return s.toArray();} }
+        public int[] toArray() { try (IntStream s = begin()) {return s.toArray();} }
 
         public int reduce(int identity, IntBinaryOperator op) {
-            try (IntStream s = this.s) {return s.reduce(identity, op);}
+            try (IntStream s = begin()) {return s.reduce(identity, op);}
         }
 
-        public OptionalInt reduce(IntBinaryOperator op) { try (IntStream s = this.s) {return s.reduce(op);} }
+        public OptionalInt reduce(IntBinaryOperator op) { try (IntStream s = begin()) {return s.reduce(op);} }
 
         public <R> R collect(Supplier<R> supplier, ObjIntConsumer<R> accumulator, BiConsumer<R, R> combiner) {
-            try (IntStream s = this.s) {return s.collect(supplier, accumulator, combiner);}
+            try (IntStream s = begin()) {return s.collect(supplier, accumulator, combiner);}
         }
 
-        public int sum() { try (IntStream s = this.s) {return s.sum();} }
+        public int sum() { try (IntStream s = begin()) {return s.sum();} }
 
-        public OptionalInt min() { try (IntStream s = this.s) {return s.min();} }
+        public OptionalInt min() { try (IntStream s = begin()) {return s.min();} }
 
-        public OptionalInt max() { try (IntStream s = this.s) {return s.max();} }
+        public OptionalInt max() { try (IntStream s = begin()) {return s.max();} }
 
-        public long count() { try (IntStream s = this.s) {return s.count();} }
+        public long count() {
+            try (IntStream s = begin()) {return probe == null ? s.count() : probe.count(s::count);}
+        }
 
-        public OptionalDouble average() { try (IntStream s = this.s) {return s.average();} }
+        public OptionalDouble average() { try (IntStream s = begin()) {return s.average();} }
 
-        public IntSummaryStatistics summaryStatistics() { try (IntStream s = this.s) {return s.summaryStatistics();} }
+        public IntSummaryStatistics summaryStatistics() { try (IntStream s = begin()) {return s.summaryStatistics();} }
 
-        public boolean anyMatch(IntPredicate predicate) { try (IntStream s = this.s) {return s.anyMatch(predicate);} }
+        public boolean anyMatch(IntPredicate predicate) {
+            try (IntStream s = begin()) {
+                return sc.arm(s.isParallel()) ? s.anyMatch(v -> sc.cancelled || predicate.test(v) && sc.cancel())
+                                      : s.anyMatch(predicate);
+            }
+        }
 
-        public boolean allMatch(IntPredicate predicate) { try (IntStream s = this.s) {return s.allMatch(predicate);} }
+        public boolean allMatch(IntPredicate predicate) {
+            try (IntStream s = begin()) {
+                return sc.arm(s.isParallel()) ? s.allMatch(v -> !sc.cancelled && (predicate.test(v) || !sc.cancel()))
+                                      : s.allMatch(predicate);
+            }
+        }
 
-        public boolean noneMatch(IntPredicate predicate) { try (IntStream s = this.s) {return s.noneMatch(predicate);} }
+        public boolean noneMatch(IntPredicate predicate) {
+            try (IntStream s = begin()) {
+                return sc.arm(s.isParallel()) ? s.noneMatch(v -> sc.cancelled || predicate.test(v) && sc.cancel())
+                                      : s.noneMatch(predicate);
+            }
+        }
 
-        public OptionalInt findFirst() { try (IntStream s = this.s) {return s.findFirst();} }
+        public OptionalInt findFirst() { try (IntStream s = begin()) {return s.findFirst();} }
 
-        public OptionalInt findAny() { try (IntStream s = this.s) {return s.findAny();} }
+        public OptionalInt findAny() {
+            try (IntStream s = begin()) {
+                return sc.arm(s.isParallel()) ? s.peek(v -> sc.cancel()).findAny() : s.findAny();
+            }
+        }
 
         //
-        // lazy terminal operations: just delegate (we can't close immediately)
+        // lazy terminal operations: delegate + close when exhausted
 
-        public PrimitiveIterator.OfInt iterator() {return s.iterator();}
+        public PrimitiveIterator.OfInt iterator() {return Spliterators.iterator(spliterator());}
 
-        public Spliterator.OfInt spliterator() {return s.spliterator();}
+        public Spliterator.OfInt spliterator() {return new ACIntSpliterator(begin().spliterator(), new Closer(s));}
     }
 
     /**
@@ -289,7 +600,7 @@ public final class AC {
      */
     static final class ACLongStream extends ACBaseStream<Long, LongStream> implements LongStream {
 
-        ACLongStream(LongStream s) { super(s); }
+        ACLongStream(LongStream s, Probe probe, ShortCircuit sc) { super(s, probe, sc); }
 
         @Override
         LongStream wrap(LongStream s) { return (s == this.s) ? this : longStream(s); }
@@ -307,7 +618,10 @@ public final class AC {
 
         public DoubleStream mapToDouble(LongToDoubleFunction mapper) {return doubleStream(s.mapToDouble(mapper));}
 
-        public LongStream flatMap(LongFunction<? extends LongStream> mapper) {return wrap(s.flatMap(mapper));}
+        public LongStream flatMap(LongFunction<? extends LongStream> mapper) {
+            return wrap(s.flatMap(v -> sc.armed ? sc.innerLong(() -> mapper.apply(v))
+                                                : mapper.apply(v)));
+        }
 
         public LongStream distinct() {return wrap(s.distinct());}
 
@@ -326,52 +640,71 @@ public final class AC {
         //
         // terminal operations: delegate + close
 
-        public void forEach(LongConsumer action) { try (LongStream s = this.s) {s.forEach(action);} }
+        public void forEach(LongConsumer action) { try (LongStream s = begin()) {s.forEach(action);} }
 
-        public void forEachOrdered(LongConsumer action) { try (LongStream s = this.s) {s.forEachOrdered(action);} }
+        public void forEachOrdered(LongConsumer action) { try (LongStream s = begin()) {s.forEachOrdered(action);} }
 
-        public long[] toArray() { try (LongStream s = this.s) {return s.toArray();} }
+        public long[] toArray() { try (LongStream s = begin()) {return s.toArray();} }
 
         public long reduce(long identity, LongBinaryOperator op) {
-            try (LongStream s = this.s) {return s.reduce(identity, op);}
+            try (LongStream s = begin()) {return s.reduce(identity, op);}
         }
 
-        public OptionalLong reduce(LongBinaryOperator op) { try (LongStream s = this.s) {return s.reduce(op);} }
+        public OptionalLong reduce(LongBinaryOperator op) { try (LongStream s = begin()) {return s.reduce(op);} }
 
         public <R> R collect(Supplier<R> supplier, ObjLongConsumer<R> accumulator, BiConsumer<R, R> combiner) {
-            try (LongStream s = this.s) { return s.collect(supplier, accumulator, combiner); }
+            try (LongStream s = begin()) { return s.collect(supplier, accumulator, combiner); }
         }
 
-        public long sum() { try (LongStream s = this.s) {return s.sum();} }
+        public long sum() { try (LongStream s = begin()) {return s.sum();} }
 
-        public OptionalLong min() { try (LongStream s = this.s) {return s.min();} }
+        public OptionalLong min() { try (LongStream s = begin()) {return s.min();} }
 
-        public OptionalLong max() { try (LongStream s = this.s) {return s.max();} }
+        public OptionalLong max() { try (LongStream s = begin()) {return s.max();} }
 
-        public long count() { try (LongStream s = this.s) {return s.count();} }
+        public long count() {
+            try (LongStream s = begin()) {return probe == null ? s.count() : probe.count(s::count);}
+        }
 
-        public OptionalDouble average() { try (LongStream s = this.s) {return s.average();} }
+        public OptionalDouble average() { try (LongStream s = begin()) {return s.average();} }
 
-        public LongSummaryStatistics summaryStatistics() { try (LongStream s = this.s) {return s.summaryStatistics();} }
+        public LongSummaryStatistics summaryStatistics() { try (LongStream s = begin()) {return s.summaryStatistics();} }
 
-        public boolean anyMatch(LongPredicate predicate) { try (LongStream s = this.s) {return s.anyMatch(predicate);} }
+        public boolean anyMatch(LongPredicate predicate) {
+            try (LongStream s = begin()) {
+                return sc.arm(s.isParallel()) ? s.anyMatch(v -> sc.cancelled || predicate.test(v) && sc.cancel())
+                                      : s.anyMatch(predicate);
+            }
+        }
 
-        public boolean allMatch(LongPredicate predicate) { try (LongStream s = this.s) {return s.allMatch(predicate);} }
+        public boolean allMatch(LongPredicate predicate) {
+            try (LongStream s = begin()) {
+                return sc.arm(s.isParallel()) ? s.allMatch(v -> !sc.cancelled && (predicate.test(v) || !sc.cancel()))
+                                      : s.allMatch(predicate);
+            }
+        }
 
         public boolean noneMatch(LongPredicate predicate) {
-            try (LongStream s = this.s) {return s.noneMatch(predicate);}
+            try (LongStream s = begin()) {
+                return sc.arm(s.isParallel()) ? s.noneMatch(v -> sc.cancelled || predicate.test(v) && sc.cancel())
+                                      : s.noneMatch(predicate);
+            }
         }
 
-        public OptionalLong findFirst() { try (LongStream s = this.s) {return s.findFirst();} }
+        public OptionalLong findFirst() { try (LongStream s = begin()) {return s.findFirst();} }
 
-        public OptionalLong findAny() { try (LongStream s = this.s) {return s.findAny();} }
+        public OptionalLong findAny() {
+            try (LongStream s = begin()) {
+                return sc.arm(s.isParallel()) ? s.peek(v -> sc.cancel()).findAny() : s.findAny();
+            }
+        }
 
         //
-        // lazy terminal operations: just delegate (we can't close immediately)
+        // lazy terminal operations: delegate + close when exhausted
 
-        public PrimitiveIterator.OfLong iterator() {return s.iterator();}
+        public PrimitiveIterator.OfLong iterator() {return Spliterators.iterator(spliterator());}
 
-        public Spliterator.OfLong spliterator() {return s.spliterator();}
+        public Spliterator.OfLong spliterator() {return new ACLongSpliterator(begin().spliterator(), new Closer(s));}
     }
 
     /**
@@ -379,7 +712,7 @@ public final class AC {
      */
     static final class ACDoubleStream extends ACBaseStream<Double, DoubleStream> implements DoubleStream {
 
-        ACDoubleStream(DoubleStream s) { super(s); }
+        ACDoubleStream(DoubleStream s, Probe probe, ShortCircuit sc) { super(s, probe, sc); }
 
         @Override
         DoubleStream wrap(DoubleStream s) { return (s == this.s) ? this : doubleStream(s); }
@@ -397,7 +730,10 @@ public final class AC {
 
         public LongStream mapToLong(DoubleToLongFunction mapper) {return longStream(s.mapToLong(mapper));}
 
-        public DoubleStream flatMap(DoubleFunction<? extends DoubleStream> mapper) {return wrap(s.flatMap(mapper));}
+        public DoubleStream flatMap(DoubleFunction<? extends DoubleStream> mapper) {
+            return wrap(s.flatMap(v -> sc.armed ? sc.innerDouble(() -> mapper.apply(v))
+                                                : mapper.apply(v)));
+        }
 
         public DoubleStream distinct() {return wrap(s.distinct());}
 
@@ -414,57 +750,601 @@ public final class AC {
         //
         // terminal operations: delegate + close
 
-        public void forEach(DoubleConsumer action) { try (DoubleStream s = this.s) {s.forEach(action);} }
+        public void forEach(DoubleConsumer action) { try (DoubleStream s = begin()) {s.forEach(action);} }
 
-        public void forEachOrdered(DoubleConsumer action) { try (DoubleStream s = this.s) {s.forEachOrdered(action);} }
+        public void forEachOrdered(DoubleConsumer action) { try (DoubleStream s = begin()) {s.forEachOrdered(action);} }
 
-        public double[] toArray() { try (DoubleStream s = this.s) {return s.toArray();} }
+        public double[] toArray() { try (DoubleStream s = begin()) {return s.toArray();} }
 
         public double reduce(double identity, DoubleBinaryOperator op) {
-            try (DoubleStream s = this.s) {return s.reduce(identity, op);}
+            try (DoubleStream s = begin()) {return s.reduce(identity, op);}
         }
 
-        public OptionalDouble reduce(DoubleBinaryOperator op) { try (DoubleStream s = this.s) {return s.reduce(op);} }
+        public OptionalDouble reduce(DoubleBinaryOperator op) { try (DoubleStream s = begin()) {return s.reduce(op);} }
 
         public <R> R collect(Supplier<R> supplier, ObjDoubleConsumer<R> accumulator, BiConsumer<R, R> combiner) {
-            try (DoubleStream s = this.s) { return s.collect(supplier, accumulator, combiner); }
+            try (DoubleStream s = begin()) { return s.collect(supplier, accumulator, combiner); }
         }
 
-        public double sum() { try (DoubleStream s = this.s) {return s.sum();} }
+        public double sum() { try (DoubleStream s = begin()) {return s.sum();} }
 
-        public OptionalDouble min() { try (DoubleStream s = this.s) {return s.min();} }
+        public OptionalDouble min() { try (DoubleStream s = begin()) {return s.min();} }
 
-        public OptionalDouble max() { try (DoubleStream s = this.s) {return s.max();} }
+        public OptionalDouble max() { try (DoubleStream s = begin()) {return s.max();} }
 
-        public long count() { try (DoubleStream s = this.s) {return s.count();} }
+        public long count() {
+            try (DoubleStream s = begin()) {return probe == null ? s.count() : probe.count(s::count);}
+        }
 
-        public OptionalDouble average() { try (DoubleStream s = this.s) {return s.average();} }
+        public OptionalDouble average() { try (DoubleStream s = begin()) {return s.average();} }
 
         public DoubleSummaryStatistics summaryStatistics() {
-            try (DoubleStream s = this.s) {return s.summaryStatistics();}
+            try (DoubleStream s = begin()) {return s.summaryStatistics();}
         }
 
         public boolean anyMatch(DoublePredicate predicate) {
-            try (DoubleStream s = this.s) {return s.anyMatch(predicate);}
+            try (DoubleStream s = begin()) {
+                return sc.arm(s.isParallel()) ? s.anyMatch(v -> sc.cancelled || predicate.test(v) && sc.cancel())
+                                      : s.anyMatch(predicate);
+            }
         }
 
         public boolean allMatch(DoublePredicate predicate) {
-            try (DoubleStream s = this.s) {return s.allMatch(predicate);}
+            try (DoubleStream s = begin()) {
+                return sc.arm(s.isParallel()) ? s.allMatch(v -> !sc.cancelled && (predicate.test(v) || !sc.cancel()))
+                                      : s.allMatch(predicate);
+            }
         }
 
         public boolean noneMatch(DoublePredicate predicate) {
-            try (DoubleStream s = this.s) {return s.noneMatch(predicate);}
+            try (DoubleStream s = begin()) {
+                return sc.arm(s.isParallel()) ? s.noneMatch(v -> sc.cancelled || predicate.test(v) && sc.cancel())
+                                      : s.noneMatch(predicate);
+            }
         }
 
-        public OptionalDouble findFirst() { try (DoubleStream s = this.s) {return s.findFirst();} }
+        public OptionalDouble findFirst() { try (DoubleStream s = begin()) {return s.findFirst();} }
 
-        public OptionalDouble findAny() { try (DoubleStream s = this.s) {return s.findAny();} }
+        public OptionalDouble findAny() {
+            try (DoubleStream s = begin()) {
+                return sc.arm(s.isParallel()) ? s.peek(v -> sc.cancel()).findAny() : s.findAny();
+            }
+        }
 
         //
-        // lazy terminal operations: just delegate (we can't close immediately)
+        // lazy terminal operations: delegate + close when exhausted
+
+        public PrimitiveIterator.OfDouble iterator() {return Spliterators.iterator(spliterator());}
+
+        public Spliterator.OfDouble spliterator() {return new ACDoubleSpliterator(begin().spliterator(), new Closer(s));}
+    }
+
+    /**
+     * Cooperative cancellation of the fork/join tasks of a parallel AC stream (and the streams derived from it),
+     * which a short-circuiting terminal operation ({@code anyMatch}, {@code allMatch}, {@code noneMatch} and
+     * {@code findAny}) {@link #cancel cancels} as soon as its result is known. Without it, the tasks that are
+     * already running keep traversing their part of the source (for example reading the inner streams of
+     * {@code flatMap}) to the end and the terminal operation waits for them.<p>
+     * The terminal operation {@link #arm arms} it before traversal starts, only when the stream is parallel.
+     * Until then the inner streams of {@code flatMap} are passed through unchanged, so other pipelines pay no
+     * more than a read of the {@link #armed} flag per inner stream.<p>
+     * Once cancelled, the predicates of the terminal operation give the known result right away, so each task
+     * stops at its next element, and the inner streams of {@code flatMap} end (new ones are not even opened).
+     * Threads traversing an inner stream are interrupted, so that a blocking read from an interruptible channel
+     * is aborted with {@link java.nio.channels.ClosedByInterruptException}. Failures of inner streams after
+     * cancellation are ignored. A thread that was already interrupted is not interrupted again, and the interrupt
+     * status set by cancellation is cleared when the inner stream is closed, so an interrupt from elsewhere is
+     * kept. Streams are still closed only after all the tasks finish, so a source is never closed while
+     * it is being traversed.
+     */
+    static final class ShortCircuit {
+
+        /**
+         * A thread traversing an inner stream. The flags are guarded by the traversal itself.
+         */
+        private static final class Traversal {
+            final Thread thread = Thread.currentThread();
+            boolean interrupted; // by cancel()
+            boolean exited;
+        }
+
+        volatile boolean armed;
+        volatile boolean cancelled;
+        private Set<Traversal> traversals; // published by writing armed
+
+        /**
+         * Arms cancellation if given stream is parallel.
+         *
+         * @return {@code parallel}, so it can be used in conditions
+         */
+        boolean arm(boolean parallel) {
+            if (parallel && !armed) {
+                traversals = ConcurrentHashMap.newKeySet();
+                armed = true;
+            }
+            return parallel;
+        }
+
+        /**
+         * Cancels and interrupts other threads traversing inner streams.
+         *
+         * @return {@code true}, so it can be used in predicates
+         */
+        boolean cancel() {
+            if (!cancelled) {
+                synchronized (this) {
+                    if (cancelled) {
+                        return true;
+                    }
+                    cancelled = true;
+                }
+                for (Traversal tr : traversals) {
+                    if (tr.thread != Thread.currentThread()) {
+                        synchronized (tr) {
+                            if (!tr.exited && !tr.thread.isInterrupted()) {
+                                tr.interrupted = true;
+                                tr.thread.interrupt();
+                            }
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+
+        private Traversal enter() {
+            if (cancelled) {
+                return null;
+            }
+            Traversal tr = new Traversal();
+            traversals.add(tr);
+            if (cancelled) { // cancel() might have missed it
+                exit(tr);
+                return null;
+            }
+            return tr;
+        }
+
+        private void exit(Traversal tr) {
+            traversals.remove(tr);
+            synchronized (tr) {
+                tr.exited = true;
+                if (tr.interrupted) {
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        /**
+         * Opens an inner stream with given opener, registering the current thread as traversing it until it is
+         * closed (by {@code flatMap} after traversing it).
+         *
+         * @return the opened stream or {@code null} (an empty stream to {@code flatMap}) when cancelled
+         */
+        private <S extends BaseStream<?, S>> S open(Supplier<? extends S> opener,
+                                                     BiFunction<S, Traversal, ? extends S> wrapper) {
+            Traversal tr = enter();
+            if (tr == null) {
+                return null;
+            }
+            S inner = null;
+            try {
+                inner = opener.get();
+                if (inner != null) {
+                    return wrapper.apply(inner, tr);
+                }
+            } catch (RuntimeException | Error e) {
+                if (inner != null) {
+                    try { inner.close(); } catch (Throwable ce) { e.addSuppressed(ce); }
+                }
+                exit(tr);
+                if (!cancelled) {
+                    throw e;
+                }
+                return null;
+            }
+            exit(tr);
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        <R> Stream<R> inner(Supplier<? extends Stream<? extends R>> opener) {
+            return open((Supplier<Stream<R>>) opener, (s, tr) -> StreamSupport
+                .stream(new InnerSpliterator<>(s.spliterator(), this), false)
+                .onClose(() -> exit(tr))
+                .onClose(s::close));
+        }
+
+        IntStream innerInt(Supplier<? extends IntStream> opener) {
+            return open(opener, (s, tr) -> StreamSupport
+                .intStream(new InnerIntSpliterator(s.spliterator(), this), false)
+                .onClose(() -> exit(tr))
+                .onClose(s::close));
+        }
 
-        public PrimitiveIterator.OfDouble iterator() { return s.iterator(); }
+        LongStream innerLong(Supplier<? extends LongStream> opener) {
+            return open(opener, (s, tr) -> StreamSupport
+                .longStream(new InnerLongSpliterator(s.spliterator(), this), false)
+                .onClose(() -> exit(tr))
+                .onClose(s::close));
+        }
+
+        DoubleStream innerDouble(Supplier<? extends DoubleStream> opener) {
+            return open(opener, (s, tr) -> StreamSupport
+                .doubleStream(new InnerDoubleSpliterator(s.spliterator(), this), false)
+                .onClose(() -> exit(tr))
+                .onClose(s::close));
+        }
+    }
+
+    /**
+     * {@link Spliterator} of an inner stream of {@code flatMap} which ends when its {@link ShortCircuit}
+     * is cancelled.
+     */
+    abstract static class InnerBaseSpliterator<T, S extends Spliterator<T>> implements Spliterator<T> {
+
+        final S s;
+        final ShortCircuit sc;
+
+        InnerBaseSpliterator(S s, ShortCircuit sc) {
+            this.s = s;
+            this.sc = sc;
+        }
+
+        /**
+         * @return {@code false} if cancelled, otherwise re-throws given exception
+         */
+        boolean failed(RuntimeException e) {
+            if (sc.cancelled) return false;
+            throw e;
+        }
+
+        public Spliterator<T> trySplit() {return null;}
+
+        public long estimateSize() {return sc.cancelled ? 0L : s.estimateSize();}
+
+        public int characteristics() {return s.characteristics() & ~(SIZED | SUBSIZED);}
+
+        public Comparator<? super T> getComparator() {return s.getComparator();}
+    }
+
+    static final class InnerSpliterator<T> extends InnerBaseSpliterator<T, Spliterator<T>> {
+
+        InnerSpliterator(Spliterator<T> s, ShortCircuit sc) { super(s, sc); }
+
+        public boolean tryAdvance(Consumer<? super T> action) {
+            try {
+                return !sc.cancelled && s.tryAdvance(action);
+            } catch (RuntimeException e) {
+                return failed(e);
+            }
+        }
+    }
+
+    static final class InnerIntSpliterator extends InnerBaseSpliterator<Integer, Spliterator.OfInt>
+        implements Spliterator.OfInt {
+
+        InnerIntSpliterator(Spliterator.OfInt s, ShortCircuit sc) { super(s, sc); }
+
+        public boolean tryAdvance(IntConsumer action) {
+            try {
+                return !sc.cancelled && s.tryAdvance(action);
+            } catch (RuntimeException e) {
+                return failed(e);
+            }
+        }
+
+        public Spliterator.OfInt trySplit() {return null;}
+    }
+
+    static final class InnerLongSpliterator extends InnerBaseSpliterator<Long, Spliterator.OfLong>
+        implements Spliterator.OfLong {
+
+        InnerLongSpliterator(Spliterator.OfLong s, ShortCircuit sc) { super(s, sc); }
+
+        public boolean tryAdvance(LongConsumer action) {
+            try {
+                return !sc.cancelled && s.tryAdvance(action);
+            } catch (RuntimeException e) {
+                return failed(e);
+            }
+        }
+
+        public Spliterator.OfLong trySplit() {return null;}
+    }
+
+    static final class InnerDoubleSpliterator extends InnerBaseSpliterator<Double, Spliterator.OfDouble>
+        implements Spliterator.OfDouble {
 
-        public Spliterator.OfDouble spliterator() { return s.spliterator(); }
+        InnerDoubleSpliterator(Spliterator.OfDouble s, ShortCircuit sc) { super(s, sc); }
+
+        public boolean tryAdvance(DoubleConsumer action) {
+            try {
+                return !sc.cancelled && s.tryAdvance(action);
+            } catch (RuntimeException e) {
+                return failed(e);
+            }
+        }
+
+        public Spliterator.OfDouble trySplit() {return null;}
+    }
+
+    /**
+     * Reports life-cycle of an instrumented stream to {@link StreamMetrics}. It counts elements as a {@code peek}
+     * action at the source (or takes the result of a {@code count()} that skipped traversal, see {@link #count})
+     * and is notified about closing as a close handler of the underlying stream. When the probe becomes
+     * unreachable without the stream being closed, the cleaning action reports a leak; the action must therefore
+     * not reference the probe.
+     */
+    static final class Probe implements Consumer<Object>, IntConsumer, LongConsumer, DoubleConsumer, Runnable {
+
+        private static final class CleanerHolder {
+            static final Cleaner CLEANER = Cleaner.create();
+        }
+
+        private final StreamMetrics metrics;
+        private final StreamMetrics.Info info;
+        private final Cleaner.Cleanable cleanable;
+
+        Probe(StreamMetrics metrics) {
+            StreamMetrics.Info info = new StreamMetrics.Info(
+                metrics.captureOrigin() ? new Throwable("Stream opened here") : null);
+            this.metrics = metrics;
+            this.info = info;
+            this.cleanable = CleanerHolder.CLEANER.register(this, () -> {
+                if (!info.closed) metrics.leaked(info);
+            });
+            metrics.opened(info);
+        }
+
+        void begin(boolean parallel) {
+            info.parallel = parallel;
+            info.terminalNanos = System.nanoTime();
+        }
+
+        /**
+         * Executes a {@code count()} terminal operation. When no element passed the probe, the count was computed
+         * from the size of the source without traversing it, so the count is accounted for as elements.
+         */
+        long count(LongSupplier count) {
+            long before = info.elements.sum();
+            long n = count.getAsLong();
+            if (n > 0L && info.elements.sum() == before) info.elements.add(n);
+            return n;
+        }
+
+        public void accept(Object o) { info.elements.increment(); }
+
+        public void accept(int v) { info.elements.increment(); }
+
+        public void accept(long v) { info.elements.increment(); }
+
+        public void accept(double v) { info.elements.increment(); }
+
+        /**
+         * Invoked when the underlying stream is closed.
+         */
+        public void run() {
+            if (info.closed) return;
+            info.closedNanos = System.nanoTime();
+            info.closed = true;
+            cleanable.clean();
+            metrics.closed(info);
+        }
+    }
+
+    /**
+     * Closes a stream when all the parts of a spliterator over it are exhausted or when any of them is closed.
+     */
+    static final class Closer implements AutoCloseable {
+
+        private final AtomicReference<BaseStream<?, ?>> stream;
+        private final AtomicInteger parts = new AtomicInteger(1);
+
+        Closer(BaseStream<?, ?> s) { stream = new AtomicReference<>(s); }
+
+        void split() { parts.incrementAndGet(); }
+
+        void exhausted() { if (parts.decrementAndGet() == 0) close(); }
+
+        boolean isClosed() { return stream.get() == null; }
+
+        public void close() {
+            BaseStream<?, ?> s = stream.getAndSet(null);
+            if (s != null) s.close();
+        }
+    }
+
+    /**
+     * {@link Spliterator} auto-closing wrapper base. The stream is closed when this and all the spliterators
+     * split off it are exhausted, when traversal throws an exception or when any of them is closed explicitly.
+     */
+    abstract static class ACBaseSpliterator<T, S extends Spliterator<T>> implements Spliterator<T>, AutoCloseable {
+
+        final S s;
+        final Closer closer;
+        boolean exhausted;
+
+        ACBaseSpliterator(S s, Closer closer) {
+            this.s = s;
+            this.closer = closer;
+        }
+
+        abstract S wrap(S s);
+
+        boolean advanced(boolean advanced) {
+            if (!advanced) release();
+            return advanced;
+        }
+
+        void release() {
+            if (!exhausted) {
+                exhausted = true;
+                closer.exhausted();
+            }
+        }
+
+        void failed(Throwable t) {
+            try {
+                close();
+            } catch (Throwable ct) {
+                t.addSuppressed(ct);
+            }
+        }
+
+        S split(S split) {
+            if (split == null) return null;
+            closer.split();
+            return wrap(split);
+        }
+
+        public boolean tryAdvance(Consumer<? super T> action) {
+            try {
+                return advanced(!exhausted && s.tryAdvance(action));
+            } catch (Throwable t) {
+                failed(t);
+                throw t;
+            }
+        }
+
+        public void forEachRemaining(Consumer<? super T> action) {
+            try {
+                if (!exhausted) s.forEachRemaining(action);
+                release();
+            } catch (Throwable t) {
+                failed(t);
+                throw t;
+            }
+        }
+
+        public long estimateSize() {return s.estimateSize();}
+
+        public long getExactSizeIfKnown() {return s.getExactSizeIfKnown();}
+
+        public int characteristics() {return s.characteristics();}
+
+        public Comparator<? super T> getComparator() {return s.getComparator();}
+
+        public void close() {closer.close();}
+    }
+
+    /**
+     * {@link Spliterator} auto-closing wrapper.
+     */
+    static final class ACSpliterator<T> extends ACBaseSpliterator<T, Spliterator<T>> {
+
+        ACSpliterator(Spliterator<T> s, Closer closer) { super(s, closer); }
+
+        Spliterator<T> wrap(Spliterator<T> s) { return new ACSpliterator<>(s, closer); }
+
+        public Spliterator<T> trySplit() {return exhausted ? null : split(s.trySplit());}
+    }
+
+    /**
+     * {@link Spliterator.OfInt} auto-closing wrapper.
+     */
+    static final class ACIntSpliterator extends ACBaseSpliterator<Integer, Spliterator.OfInt>
+        implements Spliterator.OfInt {
+
+        ACIntSpliterator(Spliterator.OfInt s, Closer closer) { super(s, closer); }
+
+        Spliterator.OfInt wrap(Spliterator.OfInt s) { return new ACIntSpliterator(s, closer); }
+
+        public Spliterator.OfInt trySplit() {return exhausted ? null : split(s.trySplit());}
+
+        public boolean tryAdvance(Consumer<? super Integer> action) {return super.tryAdvance(action);}
+
+        public void forEachRemaining(Consumer<? super Integer> action) {super.forEachRemaining(action);}
+
+        public boolean tryAdvance(IntConsumer action) {
+            try {
+                return advanced(!exhausted && s.tryAdvance(action));
+            } catch (Throwable t) {
+                failed(t);
+                throw t;
+            }
+        }
+
+        public void forEachRemaining(IntConsumer action) {
+            try {
+                if (!exhausted) s.forEachRemaining(action);
+                release();
+            } catch (Throwable t) {
+                failed(t);
+                throw t;
+            }
+        }
+    }
+
+    /**
+     * {@link Spliterator.OfLong} auto-closing wrapper.
+     */
+    static final class ACLongSpliterator extends ACBaseSpliterator<Long, Spliterator.OfLong>
+        implements Spliterator.OfLong {
+
+        ACLongSpliterator(Spliterator.OfLong s, Closer closer) { super(s, closer); }
+
+        Spliterator.OfLong wrap(Spliterator.OfLong s) { return new ACLongSpliterator(s, closer); }
+
+        public Spliterator.OfLong trySplit() {return exhausted ? null : split(s.trySplit());}
+
+        public boolean tryAdvance(Consumer<? super Long> action) {return super.tryAdvance(action);}
+
+        public void forEachRemaining(Consumer<? super Long> action) {super.forEachRemaining(action);}
+
+        public boolean tryAdvance(LongConsumer action) {
+            try {
+                return advanced(!exhausted && s.tryAdvance(action));
+            } catch (Throwable t) {
+                failed(t);
+                throw t;
+            }
+        }
+
+        public void forEachRemaining(LongConsumer action) {
+            try {
+                if (!exhausted) s.forEachRemaining(action);
+                release();
+            } catch (Throwable t) {
+                failed(t);
+                throw t;
+            }
+        }
+    }
+
+    /**
+     * {@link Spliterator.OfDouble} auto-closing wrapper.
+     */
+    static final class ACDoubleSpliterator extends ACBaseSpliterator<Double, Spliterator.OfDouble>
+        implements Spliterator.OfDouble {
+
+        ACDoubleSpliterator(Spliterator.OfDouble s, Closer closer) { super(s, closer); }
+
+        Spliterator.OfDouble wrap(Spliterator.OfDouble s) { return new ACDoubleSpliterator(s, closer); }
+
+        public Spliterator.OfDouble trySplit() {return exhausted ? null : split(s.trySplit());}
+
+        public boolean tryAdvance(Consumer<? super Double> action) {return super.tryAdvance(action);}
+
+        public void forEachRemaining(Consumer<? super Double> action) {super.forEachRemaining(action);}
+
+        public boolean tryAdvance(DoubleConsumer action) {
+            try {
+                return advanced(!exhausted && s.tryAdvance(action));
+            } catch (Throwable t) {
+                failed(t);
+                throw t;
+            }
+        }
+
+        public void forEachRemaining(DoubleConsumer action) {
+            try {
+                if (!exhausted) s.forEachRemaining(action);
+                release();
+            } catch (Throwable t) {
+                failed(t);
+                throw t;
+            }
+        }
     }
 }
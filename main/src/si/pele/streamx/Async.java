@@ -0,0 +1,153 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Support for running blocking (IO) tasks off the caller's thread.
+ */
+final class Async {
+
+    private Async() {} // no instances
+
+    /**
+     * The default executor for blocking tasks. It starts a virtual thread per task when the platform
+     * supports virtual threads, otherwise it uses a cached pool of daemon threads.
+     */
+    static final ExecutorService EXECUTOR = executor();
+
+    private static ExecutorService executor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "streamx-async-" + threadNumber.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * @return a future of the result of given terminal operation applied to given stream on given executor.
+     *         The stream is closed when the operation completes or fails and when the future is cancelled.
+     */
+    static <T, R> CompletableFuture<R> terminal(Stream<T> s, Function<? super Stream<T>, ? extends R> op,
+                                                Executor executor) {
+        return new Terminal<T, R>(Objects.requireNonNull(s), null, op).submit(executor);
+    }
+
+    /**
+     * @return a future of the result of given terminal operation applied to a stream obtained from given
+     *         streamable on given executor (so that opening a blocking source does not block the caller).
+     *         The stream is closed when the operation completes or fails and when the future is cancelled.
+     */
+    static <T, R> CompletableFuture<R> terminal(Streamable<T> source, Function<? super Stream<T>, ? extends R> op,
+                                                Executor executor) {
+        return new Terminal<T, R>(null, Objects.requireNonNull(source), op).submit(executor);
+    }
+
+    /**
+     * A {@link CompletableFuture} of a terminal operation executed as a task. Cancelling it before the task starts
+     * closes the stream. Cancelling it while the task runs interrupts the task's thread, which aborts blocking IO
+     * on interruptible channels, and the stream is closed by the task itself, so it is never closed while being
+     * traversed (which would be unsafe for memory-mapped sources, for example).
+     */
+    static final class Terminal<T, R> extends CompletableFuture<R> implements Runnable {
+
+        private static final int NEW = 0, RUNNING = 1, FINISHED = 2;
+
+        private final Streamable<T> source;
+        private final Function<? super Stream<T>, ? extends R> op;
+        // guarded by this
+        private Stream<T> s;
+        private Thread runner;
+        private int state = NEW;
+
+        Terminal(Stream<T> s, Streamable<T> source, Function<? super Stream<T>, ? extends R> op) {
+            this.s = s;
+            this.source = source;
+            this.op = Objects.requireNonNull(op);
+        }
+
+        CompletableFuture<R> submit(Executor executor) {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                completeExceptionally(e);
+                closeUnstarted();
+            }
+            return this;
+        }
+
+        @Override
+        public void run() {
+            Stream<T> s;
+            synchronized (this) {
+                if (state != NEW) {
+                    return;
+                }
+                state = RUNNING;
+                runner = Thread.currentThread();
+                s = this.s;
+            }
+            try {
+                if (s == null) {
+                    s = source.stream();
+                }
+                try (Stream<T> acs = AC.stream(s)) {
+                    complete(op.apply(acs));
+                }
+            } catch (Throwable t) {
+                completeExceptionally(t);
+            } finally {
+                synchronized (this) {
+                    state = FINISHED;
+                    runner = null;
+                }
+                if (isCancelled()) {
+                    Thread.interrupted(); // don't leak our interrupt to the executor's next task
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                synchronized (this) {
+                    if (state == RUNNING) {
+                        runner.interrupt(); // under lock, so the runner is still executing this task
+                        return true;
+                    }
+                }
+                closeUnstarted();
+            }
+            return cancelled;
+        }
+
+        private void closeUnstarted() {
+            Stream<T> s;
+            synchronized (this) {
+                if (state != NEW) {
+                    return;
+                }
+                state = FINISHED;
+                s = this.s;
+                this.s = null;
+            }
+            if (s != null) {
+                s.close();
+            }
+        }
+    }
+}
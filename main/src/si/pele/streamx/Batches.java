@@ -0,0 +1,278 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.*;
+
+/**
+ * Lazy batching of stream elements into consecutive chunks of fixed size.<p>
+ * Batching is performed on the source's {@link Spliterator}, so parallel streams split the source as they
+ * would without batching. Each part of the split source is batched separately: all batches have the
+ * requested size except the last batch of each part which may be smaller.
+ */
+final class Batches {
+
+    private Batches() {} // no instances
+
+    static <T> Stream<List<T>> of(Stream<T> s, int size) {
+        checkSize(size);
+        return StreamSupport
+            .stream(new RefBatchSpliterator<>(s.spliterator(), size), s.isParallel())
+            .onClose(s::close);
+    }
+
+    static Stream<int[]> of(IntStream s, int size) {
+        checkSize(size);
+        return StreamSupport
+            .stream(new IntBatchSpliterator(s.spliterator(), size), s.isParallel())
+            .onClose(s::close);
+    }
+
+    static Stream<long[]> of(LongStream s, int size) {
+        checkSize(size);
+        return StreamSupport
+            .stream(new LongBatchSpliterator(s.spliterator(), size), s.isParallel())
+            .onClose(s::close);
+    }
+
+    static Stream<double[]> of(DoubleStream s, int size) {
+        checkSize(size);
+        return StreamSupport
+            .stream(new DoubleBatchSpliterator(s.spliterator(), size), s.isParallel())
+            .onClose(s::close);
+    }
+
+    static void checkSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + size);
+        }
+    }
+
+    /**
+     * Base of batching spliterators. Subclasses accumulate elements into a batch.
+     */
+    abstract static class BatchSpliterator<B, S extends Spliterator<?>> implements Spliterator<B> {
+
+        final S s;
+        final int size;
+
+        BatchSpliterator(S s, int size) {
+            this.s = s;
+            this.size = size;
+        }
+
+        /**
+         * @return next batch or null if the source is exhausted.
+         */
+        abstract B next();
+
+        abstract BatchSpliterator<B, S> split(S s);
+
+        public boolean tryAdvance(Consumer<? super B> action) {
+            B batch = next();
+            if (batch == null) {
+                return false;
+            }
+            action.accept(batch);
+            return true;
+        }
+
+        public Spliterator<B> trySplit() {
+            @SuppressWarnings("unchecked")
+            S split = (S) s.trySplit();
+            return split == null ? null : split(split);
+        }
+
+        public long estimateSize() {
+            long est = s.estimateSize();
+            return est == Long.MAX_VALUE ? est : (est + size - 1) / size;
+        }
+
+        public int characteristics() {
+            // not SIZED, since the number of batches depends on how the source is split
+            return (s.characteristics() & ORDERED) | NONNULL;
+        }
+    }
+
+    static final class RefBatchSpliterator<T> extends BatchSpliterator<List<T>, Spliterator<T>> {
+
+        private List<T> batch;
+
+        RefBatchSpliterator(Spliterator<T> s, int size) { super(s, size); }
+
+        @Override
+        BatchSpliterator<List<T>, Spliterator<T>> split(Spliterator<T> s) {
+            return new RefBatchSpliterator<>(s, size);
+        }
+
+        @Override
+        List<T> next() {
+            List<T> b = new ArrayList<>(size);
+            while (b.size() < size && s.tryAdvance(b::add)) {}
+            return b.isEmpty() ? null : b;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super List<T>> action) {
+            s.forEachRemaining(t -> {
+                List<T> b = batch;
+                if (b == null) {
+                    batch = b = new ArrayList<>(size);
+                }
+                b.add(t);
+                if (b.size() == size) {
+                    batch = null;
+                    action.accept(b);
+                }
+            });
+            List<T> b = batch;
+            if (b != null) {
+                batch = null;
+                action.accept(b);
+            }
+        }
+    }
+
+    static final class IntBatchSpliterator extends BatchSpliterator<int[], Spliterator.OfInt> {
+
+        private int[] batch;
+        private int count;
+
+        IntBatchSpliterator(Spliterator.OfInt s, int size) { super(s, size); }
+
+        @Override
+        BatchSpliterator<int[], Spliterator.OfInt> split(Spliterator.OfInt s) {
+            return new IntBatchSpliterator(s, size);
+        }
+
+        private void add(int v) {
+            if (batch == null) {
+                batch = new int[size];
+            }
+            batch[count++] = v;
+        }
+
+        private int[] take() {
+            int[] b = count == size ? batch : Arrays.copyOf(batch, count);
+            batch = null;
+            count = 0;
+            return b;
+        }
+
+        @Override
+        int[] next() {
+            while (count < size && s.tryAdvance((int v) -> add(v))) {}
+            return count == 0 ? null : take();
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super int[]> action) {
+            s.forEachRemaining((int v) -> {
+                add(v);
+                if (count == size) {
+                    action.accept(take());
+                }
+            });
+            if (count > 0) {
+                action.accept(take());
+            }
+        }
+    }
+
+    static final class LongBatchSpliterator extends BatchSpliterator<long[], Spliterator.OfLong> {
+
+        private long[] batch;
+        private int count;
+
+        LongBatchSpliterator(Spliterator.OfLong s, int size) { super(s, size); }
+
+        @Override
+        BatchSpliterator<long[], Spliterator.OfLong> split(Spliterator.OfLong s) {
+            return new LongBatchSpliterator(s, size);
+        }
+
+        private void add(long v) {
+            if (batch == null) {
+                batch = new long[size];
+            }
+            batch[count++] = v;
+        }
+
+        private long[] take() {
+            long[] b = count == size ? batch : Arrays.copyOf(batch, count);
+            batch = null;
+            count = 0;
+            return b;
+        }
+
+        @Override
+        long[] next() {
+            while (count < size && s.tryAdvance((long v) -> add(v))) {}
+            return count == 0 ? null : take();
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super long[]> action) {
+            s.forEachRemaining((long v) -> {
+                add(v);
+                if (count == size) {
+                    action.accept(take());
+                }
+            });
+            if (count > 0) {
+                action.accept(take());
+            }
+        }
+    }
+
+    static final class DoubleBatchSpliterator extends BatchSpliterator<double[], Spliterator.OfDouble> {
+
+        private double[] batch;
+        private int count;
+
+        DoubleBatchSpliterator(Spliterator.OfDouble s, int size) { super(s, size); }
+
+        @Override
+        BatchSpliterator<double[], Spliterator.OfDouble> split(Spliterator.OfDouble s) {
+            return new DoubleBatchSpliterator(s, size);
+        }
+
+        private void add(double v) {
+            if (batch == null) {
+                batch = new double[size];
+            }
+            batch[count++] = v;
+        }
+
+        private double[] take() {
+            double[] b = count == size ? batch : Arrays.copyOf(batch, count);
+            batch = null;
+            count = 0;
+            return b;
+        }
+
+        @Override
+        double[] next() {
+            while (count < size && s.tryAdvance((double v) -> add(v))) {}
+            return count == 0 ? null : take();
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super double[]> action) {
+            s.forEachRemaining((double v) -> {
+                add(v);
+                if (count == size) {
+                    action.accept(take());
+                }
+            });
+            if (count > 0) {
+                action.accept(take());
+            }
+        }
+    }
+}
@@ -0,0 +1,763 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.*;
+
+/**
+ * A file of a stream of elements stored in blocks. The file starts with a header (magic number, kind of elements)
+ * followed by blocks, each consisting of a header (number of elements, number of bytes) and a payload padded
+ * to a multiple of 8 bytes. All numbers are little-endian. Primitive elements are stored as raw columns of
+ * little-endian values, which are read through views of memory-mapped windows of the file, without decoding.
+ * Objects are encoded with a {@link Codec}.<p>
+ * A file is written to a temporary file which replaces the target file when complete, so a reader never sees
+ * a partially written file. Reading scans block headers first, so streams are sized and split at block
+ * boundaries.
+ */
+final class BlockFile {
+
+    private BlockFile() {} // no instances
+
+    private static final int MAGIC = 0x31425853; // "SXB1"
+    static final byte OBJECT = 0, INT = 1, LONG = 2, DOUBLE = 3;
+    private static final int HEADER_BYTES = 8;
+    private static final int BLOCK_HEADER_BYTES = 8;
+    /**
+     * Target size of a block payload, the unit of splitting.
+     */
+    static final int BLOCK_BYTES = 1 << 20; // 1 MiB
+
+    private static String kindName(byte kind) {
+        switch (kind) {
+            case OBJECT: return "object";
+            case INT: return "int";
+            case LONG: return "long";
+            case DOUBLE: return "double";
+            default: return "unknown (" + kind + ")";
+        }
+    }
+
+    /**
+     * @return the number of bytes of a primitive element of given kind or 0 for objects
+     */
+    private static int width(byte kind) {
+        switch (kind) {
+            case INT: return Integer.BYTES;
+            case LONG: return Long.BYTES;
+            case DOUBLE: return Double.BYTES;
+            default: return 0;
+        }
+    }
+
+    //
+    // writing
+
+    /**
+     * Writes a block file to a temporary file in the same directory and moves it over the target on
+     * {@link #commit()}. Closing an uncommitted writer deletes the temporary file.
+     */
+    static final class Writer implements Closeable {
+        private final Path path;
+        private final Path tmp;
+        private final FileChannel channel;
+        private final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private long count;
+        private boolean committed;
+
+        Writer(Path path, byte kind) throws IOException {
+            this.path = path;
+            this.tmp = createTmp(path);
+            FileChannel ch = null;
+            try {
+                ch = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                h.putInt(MAGIC).put(kind).clear(); // the rest is reserved
+                writeFully(ch, h);
+            } catch (IOException | RuntimeException e) {
+                try {
+                    if (ch != null) ch.close();
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ce) {
+                    e.addSuppressed(ce);
+                }
+                throw e;
+            }
+            this.channel = ch;
+        }
+
+        /**
+         * Creates an empty file with a random name next to given target file. Unlike
+         * {@link Files#createTempFile(Path, String, String)}, which creates files readable by the owner only,
+         * the file gets the default permissions of new files or the permissions of the target file if it exists,
+         * which the move over the target keeps.
+         */
+        private static Path createTmp(Path path) throws IOException {
+            Path dir = path.toAbsolutePath().getParent();
+            String prefix = path.getFileName() + ".";
+            while (true) {
+                long random = ThreadLocalRandom.current().nextLong();
+                Path tmp = dir.resolve(prefix + Long.toUnsignedString(random) + ".tmp");
+                try {
+                    Files.createFile(tmp);
+                } catch (FileAlreadyExistsException e) {
+                    continue; // try another name
+                }
+                try {
+                    if (Files.exists(path) && Files.getFileStore(tmp).supportsFileAttributeView("posix")) {
+                        Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(path));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    try {
+                        Files.deleteIfExists(tmp);
+                    } catch (IOException de) {
+                        e.addSuppressed(de);
+                    }
+                    throw e;
+                }
+                return tmp;
+            }
+        }
+
+        private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        }
+
+        /**
+         * Writes a block of given number of elements with the payload between position and limit of given buffer.
+         */
+        void block(int elements, ByteBuffer payload) throws IOException {
+            if (elements == 0) {
+                return;
+            }
+            int bytes = payload.remaining();
+            header.clear();
+            header.putInt(elements).putInt(bytes).flip();
+            writeFully(channel, header);
+            writeFully(channel, payload);
+            int padding = -bytes & 7;
+            if (padding > 0) {
+                writeFully(channel, ByteBuffer.allocate(padding));
+            }
+            count += elements;
+        }
+
+        /**
+         * @return the number of elements written
+         */
+        long commit() throws IOException {
+            channel.force(false);
+            channel.close();
+            try {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            committed = true;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                try {
+                    channel.close();
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+        }
+    }
+
+    /**
+     * An exposed buffer of a {@link ByteArrayOutputStream}.
+     */
+    private static final class BlockOutput extends ByteArrayOutputStream {
+        BlockOutput() {
+            super(BLOCK_BYTES + (BLOCK_BYTES >> 3));
+        }
+
+        ByteBuffer payload() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    static <T> long write(Stream<T> s, Path path, Codec<? super T> codec) throws IOException {
+        try (Stream<T> stream = s; Writer writer = new Writer(path, OBJECT)) {
+            BlockOutput bytes = new BlockOutput();
+            DataOutputStream out = new DataOutputStream(bytes);
+            int[] elements = new int[1];
+            try {
+                stream.forEachOrdered(IO.consumer(t -> {
+                    codec.write(t, out);
+                    if (++elements[0] == Integer.MAX_VALUE || bytes.size() >= BLOCK_BYTES) {
+                        writer.block(elements[0], bytes.payload());
+                        bytes.reset();
+                        elements[0] = 0;
+                    }
+                }));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.block(elements[0], bytes.payload());
+            return writer.commit();
+        }
+    }
+
+    /**
+     * A direct little-endian buffer of a block of primitive values, written when full.
+     */
+    private static final class Column implements Closeable {
+        final Writer writer;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        final int width;
+
+        Column(Writer writer, int width) {
+            this.writer = writer;
+            this.width = width;
+        }
+
+        /**
+         * Makes room for one more value.
+         */
+        void ensureRoom() {
+            if (buffer.remaining() < width) {
+                flush();
+            }
+        }
+
+        void flush() {
+            buffer.flip();
+            try {
+                writer.block(buffer.remaining() / width, buffer);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            buffer.clear();
+        }
+
+        long commit() throws IOException {
+            flush();
+            return writer.commit();
+        }
+
+        @Override
+        public void close() {
+            MappedFile.release(buffer);
+        }
+    }
+
+    static long write(IntStream s, Path path) throws IOException {
+        try (IntStream stream = s;
+             Writer writer = new Writer(path, INT);
+             Column column = new Column(writer, Integer.BYTES)) {
+            try {
+                stream.forEachOrdered(v -> {
+                    column.ensureRoom();
+                    column.buffer.putInt(v);
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return column.commit();
+        }
+    }
+
+    static long write(LongStream s, Path path) throws IOException {
+        try (LongStream stream = s;
+             Writer writer = new Writer(path, LONG);
+             Column column = new Column(writer, Long.BYTES)) {
+            try {
+                stream.forEachOrdered(v -> {
+                    column.ensureRoom();
+                    column.buffer.putLong(v);
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return column.commit();
+        }
+    }
+
+    static long write(DoubleStream s, Path path) throws IOException {
+        try (DoubleStream stream = s;
+             Writer writer = new Writer(path, DOUBLE);
+             Column column = new Column(writer, Double.BYTES)) {
+            try {
+                stream.forEachOrdered(v -> {
+                    column.ensureRoom();
+                    column.buffer.putDouble(v);
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return column.commit();
+        }
+    }
+
+    //
+    // reading
+
+    /**
+     * Positions of blocks of a file.
+     */
+    static final class Index {
+        final long[] offsets; // of block payloads
+        final int[] bytes; // of block payloads
+        final long[] firstElement; // index of the first element of each block, plus the total count at the end
+
+        private Index(long[] offsets, int[] bytes, long[] firstElement) {
+            this.offsets = offsets;
+            this.bytes = bytes;
+            this.firstElement = firstElement;
+        }
+
+        int blocks() {
+            return offsets.length;
+        }
+
+        static Index read(MappedFile file, byte kind) throws IOException {
+            ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(file, h, 0L);
+            if (h.getInt(0) != MAGIC) {
+                throw new IOException("Not a block file");
+            }
+            if (h.get(4) != kind) {
+                throw new IOException("Block file of " + kindName(h.get(4)) + " elements, expected " + kindName(kind));
+            }
+            int width = width(kind); // bytes per element of primitive kinds
+            int n = 0;
+            long[] offsets = new long[16];
+            int[] bytes = new int[16];
+            long[] first = new long[17];
+            for (long pos = HEADER_BYTES; pos < file.size; ) {
+                readFully(file, h, pos);
+                int elements = h.getInt(0);
+                int length = h.getInt(4);
+                long payload = pos + BLOCK_HEADER_BYTES;
+                if (elements <= 0 || length < 0 || payload + length > file.size) {
+                    throw new IOException("Corrupted or truncated block at position " + pos);
+                }
+                if (width > 0 && (long) elements * width != length) {
+                    throw new IOException("Corrupted block at position " + pos + ": " + elements + " " +
+                                          kindName(kind) + " elements in " + length + " bytes");
+                }
+                if (n == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, n * 2);
+                    bytes = Arrays.copyOf(bytes, n * 2);
+                    first = Arrays.copyOf(first, n * 2 + 1);
+                }
+                offsets[n] = payload;
+                bytes[n] = length;
+                first[n + 1] = first[n] + elements;
+                n++;
+                pos = payload + length + (-length & 7);
+            }
+            return new Index(Arrays.copyOf(offsets, n), Arrays.copyOf(bytes, n), Arrays.copyOf(first, n + 1));
+        }
+
+        private static void readFully(MappedFile file, ByteBuffer buf, long position) throws IOException {
+            buf.clear();
+            while (buf.hasRemaining()) {
+                if (file.channel.read(buf, position + buf.position()) < 0) {
+                    throw new IOException("Truncated block file at position " + (position + buf.position()));
+                }
+            }
+        }
+    }
+
+    static <T> Stream<T> read(Path path, Codec<? extends T> codec) throws IOException {
+        MappedFile file = MappedFile.open(path);
+        try {
+            Index index = Index.read(file, OBJECT);
+            return StreamSupport.stream(new ObjectBlocks<T>(file, index, 0, index.blocks(), codec), false)
+                                .onClose(file::closeUnchecked);
+        } catch (IOException | RuntimeException e) {
+            try { file.close(); } catch (IOException ce) { e.addSuppressed(ce); }
+            throw e;
+        }
+    }
+
+    static IntStream readInts(Path path) throws IOException {
+        MappedFile file = MappedFile.open(path);
+        try {
+            Index index = Index.read(file, INT);
+            return StreamSupport.intStream(new IntBlocks(file, index, 0, index.blocks()), false)
+                                .onClose(file::closeUnchecked);
+        } catch (IOException | RuntimeException e) {
+            try { file.close(); } catch (IOException ce) { e.addSuppressed(ce); }
+            throw e;
+        }
+    }
+
+    static LongStream readLongs(Path path) throws IOException {
+        MappedFile file = MappedFile.open(path);
+        try {
+            Index index = Index.read(file, LONG);
+            return StreamSupport.longStream(new LongBlocks(file, index, 0, index.blocks()), false)
+                                .onClose(file::closeUnchecked);
+        } catch (IOException | RuntimeException e) {
+            try { file.close(); } catch (IOException ce) { e.addSuppressed(ce); }
+            throw e;
+        }
+    }
+
+    static DoubleStream readDoubles(Path path) throws IOException {
+        MappedFile file = MappedFile.open(path);
+        try {
+            Index index = Index.read(file, DOUBLE);
+            return StreamSupport.doubleStream(new DoubleBlocks(file, index, 0, index.blocks()), false)
+                                .onClose(file::closeUnchecked);
+        } catch (IOException | RuntimeException e) {
+            try { file.close(); } catch (IOException ce) { e.addSuppressed(ce); }
+            throw e;
+        }
+    }
+
+    /**
+     * A {@link Spliterator} over the blocks {@code [block, fence)} of a file, which maps windows of the file
+     * covering whole blocks and unmaps them when it moves past them. It splits at block boundaries, but
+     * only before or between blocks, not in the middle of one.
+     */
+    abstract static class Blocks<T, S extends Spliterator<T>> implements Spliterator<T> {
+
+        final MappedFile file;
+        final Index index;
+        int block; // next block
+        final int fence;
+        int remaining; // elements of current block
+
+        private ByteBuffer window;
+        private long windowStart;
+
+        Blocks(MappedFile file, Index index, int block, int fence) {
+            this.file = file;
+            this.index = index;
+            this.block = block;
+            this.fence = fence;
+        }
+
+        abstract S split(int block, int fence);
+
+        /**
+         * Starts reading elements of given (little-endian) block payload.
+         */
+        abstract void begin(ByteBuffer payload);
+
+        /**
+         * Moves to the next block if current block is exhausted.
+         *
+         * @return whether there are more elements
+         */
+        final boolean ensureBlock() {
+            while (remaining == 0) {
+                if (block >= fence) {
+                    release();
+                    return false;
+                }
+                int b = block++;
+                remaining = (int) (index.firstElement[b + 1] - index.firstElement[b]);
+                begin(payload(b));
+            }
+            return true;
+        }
+
+        private ByteBuffer payload(int b) {
+            long offset = index.offsets[b];
+            int length = index.bytes[b];
+            if (window == null || offset < windowStart || offset + length > windowStart + window.limit()) {
+                release();
+                long end = index.offsets[fence - 1] + index.bytes[fence - 1];
+                try {
+                    window = file.map(offset, Math.min(end - offset, Math.max(MappedFile.WINDOW_SIZE, length)));
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+                windowStart = offset;
+            }
+            ByteBuffer p = window.duplicate();
+            int from = (int) (offset - windowStart);
+            p.limit(from + length).position(from);
+            return p.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private void release() {
+            ByteBuffer w = window;
+            if (w != null) {
+                window = null;
+                file.unmap(w);
+            }
+        }
+
+        @Override
+        public S trySplit() {
+            if (remaining > 0) {
+                return null;
+            }
+            int mid = (block + fence) >>> 1;
+            if (mid <= block) {
+                return null;
+            }
+            S prefix = split(block, mid);
+            block = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining + index.firstElement[fence] - index.firstElement[block];
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE;
+        }
+    }
+
+    /**
+     * An {@link InputStream} reading a {@link ByteBuffer}.
+     */
+    private static final class BufferInput extends InputStream {
+        ByteBuffer buffer;
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int n = Math.min(len, buffer.remaining());
+            if (n == 0) {
+                return -1;
+            }
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int k = (int) Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + k);
+            return k;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    static final class ObjectBlocks<T> extends Blocks<T, ObjectBlocks<T>> {
+        private final Codec<? extends T> codec;
+        private final BufferInput input = new BufferInput();
+        private final DataInputStream in = new DataInputStream(input);
+
+        ObjectBlocks(MappedFile file, Index index, int block, int fence, Codec<? extends T> codec) {
+            super(file, index, block, fence);
+            this.codec = codec;
+        }
+
+        @Override
+        ObjectBlocks<T> split(int block, int fence) {
+            return new ObjectBlocks<>(file, index, block, fence, codec);
+        }
+
+        @Override
+        void begin(ByteBuffer payload) {
+            input.buffer = payload;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (!ensureBlock()) {
+                return false;
+            }
+            T t;
+            try {
+                t = codec.read(in);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            remaining--;
+            action.accept(t);
+            return true;
+        }
+    }
+
+    static final class IntBlocks extends Blocks<Integer, Spliterator.OfInt> implements Spliterator.OfInt {
+        private IntBuffer values;
+
+        IntBlocks(MappedFile file, Index index, int block, int fence) {
+            super(file, index, block, fence);
+        }
+
+        @Override
+        IntBlocks split(int block, int fence) {
+            return new IntBlocks(file, index, block, fence);
+        }
+
+        @Override
+        void begin(ByteBuffer payload) {
+            values = payload.asIntBuffer();
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (!ensureBlock()) {
+                return false;
+            }
+            action.accept(values.get(values.limit() - remaining--));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            while (ensureBlock()) {
+                IntBuffer vs = values;
+                int limit = vs.limit();
+                while (remaining > 0) {
+                    action.accept(vs.get(limit - remaining--));
+                }
+            }
+        }
+
+        @Override
+        public int characteristics() {
+            return super.characteristics() | NONNULL;
+        }
+    }
+
+    static final class LongBlocks extends Blocks<Long, Spliterator.OfLong> implements Spliterator.OfLong {
+        private LongBuffer values;
+
+        LongBlocks(MappedFile file, Index index, int block, int fence) {
+            super(file, index, block, fence);
+        }
+
+        @Override
+        LongBlocks split(int block, int fence) {
+            return new LongBlocks(file, index, block, fence);
+        }
+
+        @Override
+        void begin(ByteBuffer payload) {
+            values = payload.asLongBuffer();
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (!ensureBlock()) {
+                return false;
+            }
+            action.accept(values.get(values.limit() - remaining--));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            while (ensureBlock()) {
+                LongBuffer vs = values;
+                int limit = vs.limit();
+                while (remaining > 0) {
+                    action.accept(vs.get(limit - remaining--));
+                }
+            }
+        }
+
+        @Override
+        public int characteristics() {
+            return super.characteristics() | NONNULL;
+        }
+    }
+
+    static final class DoubleBlocks extends Blocks<Double, Spliterator.OfDouble> implements Spliterator.OfDouble {
+        private DoubleBuffer values;
+
+        DoubleBlocks(MappedFile file, Index index, int block, int fence) {
+            super(file, index, block, fence);
+        }
+
+        @Override
+        DoubleBlocks split(int block, int fence) {
+            return new DoubleBlocks(file, index, block, fence);
+        }
+
+        @Override
+        void begin(ByteBuffer payload) {
+            values = payload.asDoubleBuffer();
+        }
+
+        @Override
+        public boolean tryAdvance(DoubleConsumer action) {
+            if (!ensureBlock()) {
+                return false;
+            }
+            action.accept(values.get(values.limit() - remaining--));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(DoubleConsumer action) {
+            while (ensureBlock()) {
+                DoubleBuffer vs = values;
+                int limit = vs.limit();
+                while (remaining > 0) {
+                    action.accept(vs.get(limit - remaining--));
+                }
+            }
+        }
+
+        @Override
+        public int characteristics() {
+            return super.characteristics() | NONNULL;
+        }
+    }
+
+    /**
+     * @see Codec#string()
+     */
+    static final class StringCodec implements Codec<String> {
+        static final StringCodec INSTANCE = new StringCodec();
+
+        private StringCodec() {}
+
+        @Override
+        public void write(String value, DataOutput out) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded pool of direct {@link ByteBuffer}s of a standard size. Larger buffers are allocated on demand
+ * and freed when released. A buffer must not be accessed after it is {@link #release released}.<p>
+ * The {@link #SHARED shared} pool also pools {@link CharBuffer}s of the same number of chars and
+ * {@link CharsetDecoder}s per charset for decoding small files.
+ */
+final class BufferPool {
+
+    /**
+     * The pool shared by IO sources of this package.
+     */
+    static final BufferPool SHARED = new BufferPool(1 << 16, 64);
+
+    final int bufferSize;
+    private final int maxPooled;
+    private final Pool<ByteBuffer> pool;
+    private final Pool<CharBuffer> charPool;
+    private final ConcurrentHashMap<Charset, Pool<CharsetDecoder>> decoderPools = new ConcurrentHashMap<>();
+
+    BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.pool = new Pool<>(maxPooled);
+        this.charPool = new Pool<>(maxPooled);
+    }
+
+    /**
+     * @return a cleared direct buffer with capacity of at least {@code minCapacity} bytes.
+     */
+    ByteBuffer acquire(int minCapacity) {
+        if (minCapacity <= bufferSize) {
+            ByteBuffer buffer = pool.poll();
+            if (buffer != null) {
+                buffer.clear();
+                return buffer;
+            }
+            minCapacity = bufferSize;
+        }
+        return ByteBuffer.allocateDirect(minCapacity);
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #acquire} to the pool or frees it if the pool is full.
+     */
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || !pool.offer(buffer)) {
+            MappedFile.release(buffer);
+        }
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #acquire} to the pool if it is of the standard size and the pool is not
+     * full, otherwise leaves it to GC. Unlike {@link #release} it never frees the buffer, so views of it may still
+     * be accessed (seeing whatever the buffer is reused for). A pool whose buffers are offered must not be
+     * released to, or a buffer that is still viewed may be freed.
+     */
+    void offer(ByteBuffer buffer) {
+        if (buffer.capacity() == bufferSize) {
+            pool.offer(buffer);
+        }
+    }
+
+    /**
+     * @return a cleared heap char buffer with capacity of at least {@code minCapacity} chars.
+     */
+    CharBuffer acquireChars(int minCapacity) {
+        if (minCapacity <= bufferSize) {
+            CharBuffer buffer = charPool.poll();
+            if (buffer != null) {
+                buffer.clear();
+                return buffer;
+            }
+            minCapacity = bufferSize;
+        }
+        return CharBuffer.allocate(minCapacity);
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #acquireChars} to the pool unless the pool is full.
+     */
+    void releaseChars(CharBuffer buffer) {
+        if (buffer.capacity() == bufferSize) {
+            charPool.offer(buffer);
+        }
+    }
+
+    /**
+     * @return a reset decoder of given charset that reports malformed input and unmappable characters.
+     */
+    CharsetDecoder decoder(Charset cs) {
+        CharsetDecoder decoder = decoderPools.computeIfAbsent(cs, c -> new Pool<>(maxPooled)).poll();
+        return decoder == null ? cs.newDecoder() : decoder.reset();
+    }
+
+    /**
+     * Returns a decoder obtained from {@link #decoder} to the pool unless the pool is full.
+     */
+    void release(CharsetDecoder decoder) {
+        Pool<CharsetDecoder> decoders = decoderPools.get(decoder.charset());
+        if (decoders != null) {
+            decoders.offer(decoder);
+        }
+    }
+}
@@ -0,0 +1,485 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A factory of streams of byte chunks of a file or a (blocking) channel, either of fixed size or delimited by a
+ * delimiter byte (which is not included in the chunk). Chunks are read into pooled direct buffers and are
+ * presented as read-only {@link ByteBuffer} views between their position and limit.<p>
+ * To avoid allocation per chunk, <b>each stream (or split of it) reuses the same view instance and the same
+ * buffer for all chunks</b>, so a chunk is only valid until the next chunk is requested from the same
+ * stream. Copy it if it has to be retained beyond that (for example when collecting or sorting). Buffers are
+ * reused by other streams once released, so a chunk retained after that may show bytes of another source.<p>
+ * Streams of file chunks split (at chunk boundaries), so they scale when made {@link Stream#parallel() parallel}.
+ * Streams of fixed-size file chunks are also sized. Streams of channel chunks don't split.
+ * Closing the stream (explicitly or by {@link AC} wrapper) closes the file/channel.
+ *
+ * @see Streamable.IO#chunks(Path, int)
+ * @see Streamable.IO#records(Path, byte)
+ */
+public final class ByteChunks implements Streamable.IO<ByteBuffer> {
+
+    /**
+     * The pool of chunk buffers. It's separate from {@link BufferPool#SHARED}, which frees released buffers that
+     * don't fit in it, because chunks may still be accessed after their buffer is released.
+     */
+    static final BufferPool POOL = new BufferPool(1 << 16, 64);
+
+    private final Path path; // file source or null
+    private final si.pele.streamx.IO.Supplier<? extends ReadableByteChannel> channel; // channel source or null
+    private final int size; // fixed chunk size or 0 if delimited
+    private final byte delimiter;
+
+    private ByteChunks(Path path, si.pele.streamx.IO.Supplier<? extends ReadableByteChannel> channel,
+                       int size, byte delimiter) {
+        this.path = path;
+        this.channel = channel;
+        this.size = size;
+        this.delimiter = delimiter;
+    }
+
+    static ByteChunks fixed(Path path, int size) {
+        return new ByteChunks(Objects.requireNonNull(path), null, checkSize(size), (byte) 0);
+    }
+
+    static ByteChunks delimited(Path path, byte delimiter) {
+        return new ByteChunks(Objects.requireNonNull(path), null, 0, delimiter);
+    }
+
+    static ByteChunks fixed(si.pele.streamx.IO.Supplier<? extends ReadableByteChannel> channel, int size) {
+        return new ByteChunks(null, Objects.requireNonNull(channel), checkSize(size), (byte) 0);
+    }
+
+    static ByteChunks delimited(si.pele.streamx.IO.Supplier<? extends ReadableByteChannel> channel, byte delimiter) {
+        return new ByteChunks(null, Objects.requireNonNull(channel), 0, delimiter);
+    }
+
+    private static int checkSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + size);
+        }
+        return size;
+    }
+
+    @Override
+    public Stream<ByteBuffer> streamIO() throws IOException {
+        if (path != null) {
+            FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                Buffers buffers = new Buffers();
+                return StreamSupport
+                    .stream(new FileChunks(buffers, ch, 0L, ch.size(), size, delimiter), false)
+                    .onClose(buffers::close)
+                    .onClose(closer(ch));
+            } catch (IOException | RuntimeException e) {
+                try { ch.close(); } catch (IOException ce) { e.addSuppressed(ce); }
+                throw e;
+            }
+        } else {
+            ReadableByteChannel ch = channel.getIO();
+            Buffers buffers = new Buffers();
+            return StreamSupport
+                .stream(new ChannelChunks(buffers, ch, size, delimiter), false)
+                .onClose(buffers::close)
+                .onClose(closer(ch));
+        }
+    }
+
+    private static Runnable closer(Channel ch) {
+        return () -> {
+            try {
+                ch.close();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        };
+    }
+
+    /**
+     * Transfers the whole content of the source (including any delimiters) to given channel, using
+     * {@link FileChannel#transferTo} when the source is a file, and closes the source.
+     *
+     * @return the number of bytes transferred
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        if (path != null) {
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+                return transfer(ch, 0L, target);
+            }
+        }
+        try (ReadableByteChannel ch = channel.getIO()) {
+            if (ch instanceof FileChannel) {
+                FileChannel fch = (FileChannel) ch;
+                return transfer(fch, fch.position(), target);
+            }
+            ByteBuffer buffer = BufferPool.SHARED.acquire(0);
+            try {
+                long total = 0L;
+                while (ch.read(buffer) >= 0) {
+                    buffer.flip();
+                    total += writeFully(buffer, target);
+                    buffer.clear();
+                }
+                return total;
+            } finally {
+                BufferPool.SHARED.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Writes all the chunks of given stream to given channel in encounter order and closes the stream.
+     * Each chunk is written from its position to its limit and its position is advanced.
+     *
+     * @return the number of bytes written
+     */
+    public static long transferTo(Stream<? extends ByteBuffer> chunks, WritableByteChannel target) throws IOException {
+        try (Stream<? extends ByteBuffer> s = chunks) {
+            long total = 0L;
+            for (Iterator<? extends ByteBuffer> i = s.iterator(); i.hasNext(); ) {
+                total += writeFully(i.next(), target);
+            }
+            return total;
+        }
+    }
+
+    private static long transfer(FileChannel ch, long position, WritableByteChannel target) throws IOException {
+        long start = position, end = ch.size();
+        while (position < end) {
+            long n = ch.transferTo(position, end - position, target);
+            if (n <= 0) {
+                break; // truncated concurrently
+            }
+            position += n;
+        }
+        return position - start;
+    }
+
+    private static long writeFully(ByteBuffer buffer, WritableByteChannel target) throws IOException {
+        long total = 0L;
+        while (buffer.hasRemaining()) {
+            total += target.write(buffer);
+        }
+        return total;
+    }
+
+    /**
+     * The buffers in use by the spliterators of a stream (one per split), so that the buffers of splits that
+     * are not exhausted are returned to the pool when the stream is closed. Buffers are never freed explicitly,
+     * because the last chunk may still be viewed: buffers of the pooled size are returned to the {@link #POOL}
+     * and any other (grown for a long record) are left to GC.
+     */
+    static final class Buffers {
+
+        private final Set<ByteBuffer> inUse = Collections.newSetFromMap(new IdentityHashMap<>());
+        private boolean closed;
+
+        ByteBuffer acquire(int minCapacity) {
+            ByteBuffer buffer = POOL.acquire(minCapacity);
+            synchronized (inUse) {
+                if (!closed) {
+                    inUse.add(buffer);
+                }
+            }
+            return buffer;
+        }
+
+        /**
+         * @return a new buffer of given capacity with the remaining bytes of given one, which is released
+         */
+        ByteBuffer grow(ByteBuffer buffer, int capacity) {
+            ByteBuffer bigger = ByteBuffer.allocateDirect(capacity);
+            bigger.put(buffer);
+            synchronized (inUse) {
+                if (!closed) {
+                    inUse.add(bigger);
+                }
+            }
+            release(buffer);
+            return bigger;
+        }
+
+        void release(ByteBuffer buffer) {
+            boolean registered;
+            synchronized (inUse) {
+                registered = inUse.remove(buffer);
+            }
+            if (registered) {
+                POOL.offer(buffer);
+            }
+        }
+
+        void close() {
+            List<ByteBuffer> toRelease;
+            synchronized (inUse) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                toRelease = new ArrayList<>(inUse);
+                inUse.clear();
+            }
+            toRelease.forEach(POOL::offer);
+        }
+    }
+
+    /**
+     * Base of spliterators over chunks read into a pooled buffer. The unconsumed bytes are between
+     * the position and the limit of the buffer. The buffer is released (see {@link Buffers}) when exhausted.
+     */
+    abstract static class Chunks implements Spliterator<ByteBuffer> {
+
+        final Buffers buffers;
+        final int size; // fixed chunk size or 0 if delimited
+        final byte delimiter;
+        private ByteBuffer buffer, view;
+        private int scanned; // number of unconsumed bytes already scanned for delimiter
+        private boolean eof, exhausted;
+
+        Chunks(Buffers buffers, int size, byte delimiter) {
+            this.buffers = buffers;
+            this.size = size;
+            this.delimiter = delimiter;
+        }
+
+        /**
+         * Reads bytes from the source into given buffer.
+         *
+         * @return the number of bytes read or -1 at the end of source
+         */
+        abstract int read(ByteBuffer dst) throws IOException;
+
+        /**
+         * @return the number of bytes read from the source but not consumed yet.
+         */
+        final int buffered() {
+            return buffer == null ? 0 : buffer.remaining();
+        }
+
+        final boolean exhausted() {
+            return exhausted;
+        }
+
+        private ByteBuffer next() throws IOException {
+            if (buffer == null) {
+                buffer = buffers.acquire(size);
+                buffer.flip();
+                view = buffer.asReadOnlyBuffer();
+            }
+            while (true) {
+                int p = buffer.position(), l = buffer.limit();
+                if (size == 0) {
+                    for (int i = p + scanned; i < l; i++) {
+                        if (buffer.get(i) == delimiter) {
+                            scanned = 0;
+                            buffer.position(i + 1);
+                            return view(p, i);
+                        }
+                    }
+                    scanned = l - p;
+                } else if (l - p >= size) {
+                    buffer.position(p + size);
+                    return view(p, p + size);
+                }
+                if (eof) {
+                    if (l > p) {
+                        scanned = 0;
+                        buffer.position(l);
+                        return view(p, l);
+                    }
+                    return null;
+                }
+                fill();
+            }
+        }
+
+        private ByteBuffer view(int from, int to) {
+            view.limit(to).position(from);
+            return view;
+        }
+
+        private void fill() throws IOException {
+            if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+                // record longer than buffer
+                if (buffer.capacity() >= Integer.MAX_VALUE - 8) {
+                    throw new IOException("Record longer than " + buffer.capacity() + " bytes");
+                }
+                buffer = buffers.grow(buffer, (int) Math.min(Integer.MAX_VALUE - 8, 2L * buffer.capacity()));
+                view = buffer.asReadOnlyBuffer();
+            } else {
+                buffer.compact();
+            }
+            try {
+                if (read(buffer) < 0) {
+                    eof = true;
+                }
+            } finally {
+                buffer.flip();
+            }
+        }
+
+        private void release() {
+            exhausted = true;
+            if (buffer != null) {
+                buffers.release(buffer);
+                buffer = view = null;
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ByteBuffer> action) {
+            if (exhausted) {
+                return false;
+            }
+            ByteBuffer chunk;
+            try {
+                chunk = next();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            if (chunk == null) {
+                release();
+                return false;
+            }
+            action.accept(chunk);
+            return true;
+        }
+    }
+
+    /**
+     * Chunks of the range {@code [position, fence)} of a file, read with positional reads.
+     */
+    static final class FileChunks extends Chunks {
+
+        private final FileChannel channel;
+        private long position;
+        private final long fence;
+
+        FileChunks(Buffers buffers, FileChannel channel, long position, long fence, int size, byte delimiter) {
+            super(buffers, size, delimiter);
+            this.channel = channel;
+            this.position = position;
+            this.fence = fence;
+        }
+
+        @Override
+        int read(ByteBuffer dst) throws IOException {
+            long remaining = fence - position;
+            if (remaining <= 0L) {
+                return -1;
+            }
+            int limit = dst.limit();
+            if (dst.remaining() > remaining) {
+                dst.limit(dst.position() + (int) remaining);
+            }
+            try {
+                int n = channel.read(dst, position);
+                if (n > 0) {
+                    position += n;
+                }
+                return n;
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override
+        public Spliterator<ByteBuffer> trySplit() {
+            if (exhausted() || buffered() > 0) {
+                return null;
+            }
+            long lo = position, split;
+            if (size > 0) {
+                // position is at chunk boundary when nothing is buffered
+                split = lo + (fence - lo) / size / 2 * size;
+                if (split <= lo) {
+                    return null;
+                }
+            } else {
+                long mid = (lo + fence) >>> 1;
+                if (mid <= lo) {
+                    return null;
+                }
+                try {
+                    split = MappedFile.indexOf(channel, delimiter, mid, fence);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+                if (split < 0 || split + 1 >= fence) {
+                    return null;
+                }
+                split++;
+            }
+            position = split;
+            return new FileChunks(buffers, channel, lo, split, size, delimiter);
+        }
+
+        @Override
+        public long estimateSize() {
+            long remaining = fence - position + buffered();
+            return size > 0 ? (remaining + size - 1) / size : remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return size > 0 ? ORDERED | NONNULL | SIZED | SUBSIZED : ORDERED | NONNULL;
+        }
+    }
+
+    /**
+     * Chunks of a channel, read sequentially.
+     */
+    static final class ChannelChunks extends Chunks {
+
+        private final ReadableByteChannel channel;
+
+        ChannelChunks(Buffers buffers, ReadableByteChannel channel, int size, byte delimiter) {
+            super(buffers, size, delimiter);
+            this.channel = channel;
+        }
+
+        @Override
+        int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public Spliterator<ByteBuffer> trySplit() {
+            return null; // chunks are reused, so they can't be batched
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.*;
+import java.util.stream.*;
+
+/**
+ * Streamables that record elements of the source stream into a {@link StreamCache} the first time the
+ * stream is completely consumed and replay them from memory on later calls.<p>
+ * While recording, the stream does not split, so the first traversal is sequential. Recording is abandoned
+ * as soon as the elements would not fit into the cache. Streams replayed from the cache are sequential.
+ */
+final class Cached {
+
+    private Cached() {} // no instances
+
+    /**
+     * Reference size which is added to the weight of each recorded object.
+     */
+    private static final long REF_SIZE = 8L;
+
+    static final class RefCached<T> implements Streamable<T> {
+
+        final Streamable<T> source;
+        final StreamCache cache;
+        final ToLongFunction<? super T> weigher;
+        final Supplier<?> version;
+        final StreamCache.Entry entry = new StreamCache.Entry();
+
+        RefCached(Streamable<T> source, StreamCache cache, ToLongFunction<? super T> weigher, Supplier<?> version) {
+            this.source = source;
+            this.cache = cache;
+            this.weigher = weigher;
+            this.version = version;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Stream<T> stream() {
+            Object ver = version == null ? null : version.get();
+            Object data = cache.lookup(entry, ver);
+            if (data != null) {
+                return Arrays.stream((T[]) data);
+            }
+            Stream<T> s = source.stream();
+            return StreamSupport
+                .stream(new RefRecording<>(s.spliterator(), this, ver), s.isParallel())
+                .onClose(s::close);
+        }
+    }
+
+    static final class IntCached implements IntStreamable {
+
+        final IntStreamable source;
+        final StreamCache cache;
+        final Supplier<?> version;
+        final StreamCache.Entry entry = new StreamCache.Entry();
+
+        IntCached(IntStreamable source, StreamCache cache, Supplier<?> version) {
+            this.source = source;
+            this.cache = cache;
+            this.version = version;
+        }
+
+        public IntStream stream() {
+            Object ver = version == null ? null : version.get();
+            Object data = cache.lookup(entry, ver);
+            if (data != null) {
+                return Arrays.stream((int[]) data);
+            }
+            IntStream s = source.stream();
+            return StreamSupport
+                .intStream(new IntRecording(s.spliterator(), cache, entry, ver), s.isParallel())
+                .onClose(s::close);
+        }
+    }
+
+    static final class LongCached implements LongStreamable {
+
+        final LongStreamable source;
+        final StreamCache cache;
+        final Supplier<?> version;
+        final StreamCache.Entry entry = new StreamCache.Entry();
+
+        LongCached(LongStreamable source, StreamCache cache, Supplier<?> version) {
+            this.source = source;
+            this.cache = cache;
+            this.version = version;
+        }
+
+        public LongStream stream() {
+            Object ver = version == null ? null : version.get();
+            Object data = cache.lookup(entry, ver);
+            if (data != null) {
+                return Arrays.stream((long[]) data);
+            }
+            LongStream s = source.stream();
+            return StreamSupport
+                .longStream(new LongRecording(s.spliterator(), cache, entry, ver), s.isParallel())
+                .onClose(s::close);
+        }
+    }
+
+    static final class DoubleCached implements DoubleStreamable {
+
+        final DoubleStreamable source;
+        final StreamCache cache;
+        final Supplier<?> version;
+        final StreamCache.Entry entry = new StreamCache.Entry();
+
+        DoubleCached(DoubleStreamable source, StreamCache cache, Supplier<?> version) {
+            this.source = source;
+            this.cache = cache;
+            this.version = version;
+        }
+
+        public DoubleStream stream() {
+            Object ver = version == null ? null : version.get();
+            Object data = cache.lookup(entry, ver);
+            if (data != null) {
+                return Arrays.stream((double[]) data);
+            }
+            DoubleStream s = source.stream();
+            return StreamSupport
+                .doubleStream(new DoubleRecording(s.spliterator(), cache, entry, ver), s.isParallel())
+                .onClose(s::close);
+        }
+    }
+
+    /**
+     * Base of spliterators recording elements of the source spliterator as they pass through.
+     */
+    abstract static class Recording<T, S extends Spliterator<?>> implements Spliterator<T> {
+
+        final S s;
+        final StreamCache cache;
+        final StreamCache.Entry entry;
+        final Object version;
+        boolean recording = true;
+        int count;
+        long bytes;
+
+        Recording(S s, StreamCache cache, StreamCache.Entry entry, Object version) {
+            this.s = s;
+            this.cache = cache;
+            this.entry = entry;
+            this.version = version;
+        }
+
+        /**
+         * @return recorded elements in an array of exact length.
+         */
+        abstract Object data();
+
+        /**
+         * Drops recorded elements.
+         */
+        abstract void discard();
+
+        void recorded(long weight) {
+            count++;
+            bytes += weight;
+            if (count == Integer.MAX_VALUE || !cache.fits(count, bytes)) {
+                recording = false;
+                discard();
+            }
+        }
+
+        boolean advanced(boolean advanced) {
+            if (!advanced) exhausted();
+            return advanced;
+        }
+
+        void exhausted() {
+            if (recording) {
+                recording = false;
+                cache.store(entry, data(), count, bytes, version);
+                discard();
+            }
+        }
+
+        public Spliterator<T> trySplit() { return null; }
+
+        public long estimateSize() { return s.estimateSize(); }
+
+        public int characteristics() { return s.characteristics(); }
+
+        @SuppressWarnings("unchecked")
+        public Comparator<? super T> getComparator() { return (Comparator<? super T>) s.getComparator(); }
+    }
+
+    static final class RefRecording<T> extends Recording<T, Spliterator<T>> implements Consumer<T> {
+
+        private final ToLongFunction<? super T> weigher;
+        private ArrayList<T> data = new ArrayList<>();
+        private Consumer<? super T> action;
+
+        RefRecording(Spliterator<T> s, RefCached<T> cached, Object version) {
+            super(s, cached.cache, cached.entry, version);
+            this.weigher = cached.weigher;
+        }
+
+        public void accept(T t) {
+            if (recording) {
+                data.add(t);
+                recorded(weigher == null ? REF_SIZE : REF_SIZE + weigher.applyAsLong(t));
+            }
+            action.accept(t);
+        }
+
+        Object data() { return data.toArray(); }
+
+        void discard() { data = null; }
+
+        public boolean tryAdvance(Consumer<? super T> action) {
+            this.action = action;
+            try {
+                return advanced(s.tryAdvance(this));
+            } finally {
+                this.action = null;
+            }
+        }
+
+        public void forEachRemaining(Consumer<? super T> action) {
+            this.action = action;
+            try {
+                s.forEachRemaining(this);
+            } finally {
+                this.action = null;
+            }
+            exhausted();
+        }
+    }
+
+    static final class IntRecording extends Recording<Integer, Spliterator.OfInt>
+        implements Spliterator.OfInt, IntConsumer {
+
+        private int[] data = new int[16];
+        private IntConsumer action;
+
+        IntRecording(Spliterator.OfInt s, StreamCache cache, StreamCache.Entry entry, Object version) {
+            super(s, cache, entry, version);
+        }
+
+        public void accept(int v) {
+            if (recording) {
+                if (count == data.length) {
+                    data = Arrays.copyOf(data, count << 1);
+                }
+                data[count] = v;
+                recorded(Integer.BYTES);
+            }
+            action.accept(v);
+        }
+
+        Object data() { return Arrays.copyOf(data, count); }
+
+        void discard() { data = null; }
+
+        public Spliterator.OfInt trySplit() { return null; }
+
+        public boolean tryAdvance(IntConsumer action) {
+            this.action = action;
+            try {
+                return advanced(s.tryAdvance((IntConsumer) this));
+            } finally {
+                this.action = null;
+            }
+        }
+
+        public void forEachRemaining(IntConsumer action) {
+            this.action = action;
+            try {
+                s.forEachRemaining((IntConsumer) this);
+            } finally {
+                this.action = null;
+            }
+            exhausted();
+        }
+    }
+
+    static final class LongRecording extends Recording<Long, Spliterator.OfLong>
+        implements Spliterator.OfLong, LongConsumer {
+
+        private long[] data = new long[16];
+        private LongConsumer action;
+
+        LongRecording(Spliterator.OfLong s, StreamCache cache, StreamCache.Entry entry, Object version) {
+            super(s, cache, entry, version);
+        }
+
+        public void accept(long v) {
+            if (recording) {
+                if (count == data.length) {
+                    data = Arrays.copyOf(data, count << 1);
+                }
+                data[count] = v;
+                recorded(Long.BYTES);
+            }
+            action.accept(v);
+        }
+
+        Object data() { return Arrays.copyOf(data, count); }
+
+        void discard() { data = null; }
+
+        public Spliterator.OfLong trySplit() { return null; }
+
+        public boolean tryAdvance(LongConsumer action) {
+            this.action = action;
+            try {
+                return advanced(s.tryAdvance((LongConsumer) this));
+            } finally {
+                this.action = null;
+            }
+        }
+
+        public void forEachRemaining(LongConsumer action) {
+            this.action = action;
+            try {
+                s.forEachRemaining((LongConsumer) this);
+            } finally {
+                this.action = null;
+            }
+            exhausted();
+        }
+    }
+
+    static final class DoubleRecording extends Recording<Double, Spliterator.OfDouble>
+        implements Spliterator.OfDouble, DoubleConsumer {
+
+        private double[] data = new double[16];
+        private DoubleConsumer action;
+
+        DoubleRecording(Spliterator.OfDouble s, StreamCache cache, StreamCache.Entry entry, Object version) {
+            super(s, cache, entry, version);
+        }
+
+        public void accept(double v) {
+            if (recording) {
+                if (count == data.length) {
+                    data = Arrays.copyOf(data, count << 1);
+                }
+                data[count] = v;
+                recorded(Double.BYTES);
+            }
+            action.accept(v);
+        }
+
+        Object data() { return Arrays.copyOf(data, count); }
+
+        void discard() { data = null; }
+
+        public Spliterator.OfDouble trySplit() { return null; }
+
+        public boolean tryAdvance(DoubleConsumer action) {
+            this.action = action;
+            try {
+                return advanced(s.tryAdvance((DoubleConsumer) this));
+            } finally {
+                this.action = null;
+            }
+        }
+
+        public void forEachRemaining(DoubleConsumer action) {
+            this.action = action;
+            try {
+                s.forEachRemaining((DoubleConsumer) this);
+            } finally {
+                this.action = null;
+            }
+            exhausted();
+        }
+    }
+}
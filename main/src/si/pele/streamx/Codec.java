@@ -0,0 +1,31 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes and decodes elements of object streams stored in block files.
+ *
+ * @see Streamable#writeTo(java.nio.file.Path, Codec)
+ * @see Streamable.IO#readFrom(java.nio.file.Path, Codec)
+ */
+public interface Codec<T> {
+
+    void write(T value, DataOutput out) throws IOException;
+
+    T read(DataInput in) throws IOException;
+
+    /**
+     * @return a codec of (non-null) strings encoded as UTF-8 bytes prefixed with their length. Unlike
+     *         {@link DataOutput#writeUTF}, the length of strings is not limited.
+     */
+    static Codec<String> string() {
+        return BlockFile.StringCodec.INSTANCE;
+    }
+}
@@ -5,6 +5,12 @@
  */
 package si.pele.streamx;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
 import java.util.function.*;
 import java.util.stream.DoubleStream;
 
@@ -34,14 +40,33 @@ public interface DoubleStreamable {
         return AC.doubleStream(stream());
     }
 
+    /**
+     * @return a factory of streams of elements of given block file written by {@link #writeTo(Path)}. The file is
+     *         memory-mapped and elements are read directly from the mapping without decoding. The streams are
+     *         sized and split at block boundaries. Closing the stream (explicitly or by {@link AC} wrapper) closes
+     *         the file and releases the mappings.
+     */
+    static DoubleStreamable readFrom(Path path) {
+        Objects.requireNonNull(path);
+        return () -> {
+            try {
+                return BlockFile.readDoubles(path);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        };
+    }
+
     // non-terminal operations
 
+    // filter, map and peek are fused into a single stage over raw sources (see Fused)
+
     default DoubleStreamable filter(DoublePredicate predicate) {
-        return () -> stream().filter(predicate);
+        return Fused.filter(this, predicate);
     }
 
     default DoubleStreamable map(DoubleUnaryOperator mapper) {
-        return () -> stream().map(mapper);
+        return Fused.map(this, mapper);
     }
 
     default <U> Streamable<U> mapToObj(DoubleFunction<U> mapper) {
@@ -60,16 +85,114 @@ public interface DoubleStreamable {
         return () -> stream().flatMap(mapper);
     }
 
+    /**
+     * @return a factory of streams of distinct elements, found with an unboxed hash set as they are consumed (all
+     *         elements are consumed first when the stream is split for parallel processing). Distinct elements are
+     *         kept in memory without bound.
+     * @see #distinct(long)
+     */
     default DoubleStreamable distinct() {
-        return () -> stream().distinct();
+        return () -> Spilling.distinct(stream());
     }
 
+    /**
+     * @return a factory of streams of distinct elements (in encounter order if the source is ordered).
+     *         Elements are not boxed. First occurrences are buffered in heap while they (and the hash set finding
+     *         them) fit in given number of bytes, otherwise in off-heap memory of at most that size, spilling to
+     *         temporary files. All source elements are consumed sequentially when the stream is first traversed.
+     *         Closing the stream deletes spill files.
+     */
+    default DoubleStreamable distinct(long memoryBudget) {
+        Spilling.checkBudget(memoryBudget);
+        return () -> Spilling.distinct(stream(), memoryBudget);
+    }
+
+    /**
+     * @return a factory of streams of sorted elements, buffered in memory without bound.
+     * @see #sorted(long)
+     */
     default DoubleStreamable sorted() {
         return () -> stream().sorted();
     }
 
+    /**
+     * @return a factory of streams of sorted elements. Elements are not boxed. While they fit in given number
+     *         of bytes they are sorted in a heap array (in parallel when the stream is parallel), otherwise they
+     *         are buffered in off-heap memory of at most that size and sorted runs are spilled to temporary files
+     *         and merged. All source elements are consumed sequentially when the stream is first traversed.
+     *         Closing the stream deletes spill files.
+     */
+    default DoubleStreamable sorted(long memoryBudget) {
+        Spilling.checkBudget(memoryBudget);
+        return () -> Spilling.sorted(stream(), memoryBudget);
+    }
+
     default DoubleStreamable peek(DoubleConsumer consumer) {
-        return () -> stream().peek(consumer);
+        return Fused.peek(this, consumer);
+    }
+
+    /**
+     * @return a factory of streams of consecutive batches of given size.
+     * @see Streamable#batch(int)
+     */
+    default Streamable<double[]> batch(int size) {
+        Batches.checkSize(size);
+        return () -> Batches.of(stream(), size);
+    }
+
+    /**
+     * @return a factory of streams of windows of given size starting every {@code slide} elements.
+     * @see Streamable#windowByCount(int, int)
+     */
+    default Streamable<double[]> windowByCount(int size, int slide) {
+        Windows.checkCount(size, slide);
+        return () -> Windows.byCount(stream(), size, slide);
+    }
+
+    /**
+     * @return a factory of streams of consecutive windows of elements taken from the source during given duration.
+     * @see Streamable#windowByTime(Duration)
+     */
+    default Streamable<double[]> windowByTime(Duration duration) {
+        Windows.checkDuration(duration);
+        return () -> Windows.byTime(stream(), duration);
+    }
+
+    /**
+     * @return a factory of streams passing elements evenly spaced in time at no more than given rate.
+     * @see Streamable#throttle(double)
+     */
+    default DoubleStreamable throttle(double permitsPerSecond) {
+        long intervalNanos = Throttle.checkRate(permitsPerSecond);
+        return () -> Throttle.stream(stream(), intervalNanos);
+    }
+
+    /**
+     * @return an {@link DoubleStreamable} that records elements into {@link StreamCache#shared() shared cache}
+     *         the first time its stream is completely consumed and replays them from memory on later calls.
+     * @see Streamable#cached(StreamCache, ToLongFunction, Supplier)
+     */
+    default DoubleStreamable cached() {
+        return cached(StreamCache.shared());
+    }
+
+    /**
+     * @return an {@link DoubleStreamable} that records elements into given cache the first time its stream
+     *         is completely consumed and replays them from memory on later calls.
+     * @see Streamable#cached(StreamCache, ToLongFunction, Supplier)
+     */
+    default DoubleStreamable cached(StreamCache cache) {
+        return cached(cache, null);
+    }
+
+    /**
+     * @return an {@link DoubleStreamable} that records elements into a primitive array in given cache the first time
+     *         its stream is completely consumed and replays them from memory on later calls as long as they are
+     *         neither evicted nor invalidated by a change of the {@code version} stamp.
+     * @see Streamable#cached(StreamCache, ToLongFunction, Supplier)
+     */
+    default DoubleStreamable cached(StreamCache cache, Supplier<?> version) {
+        return new Cached.DoubleCached(this, cache, version);
     }
 
     default DoubleStreamable limit(long maxSize) {
@@ -83,4 +206,43 @@ public interface DoubleStreamable {
     default Streamable<Double> boxed() {
         return () -> stream().boxed();
     }
+
+    // terminal operations
+
+    /**
+     * Writes the elements of a newly constructed stream, in encounter order, to given file as raw little-endian
+     * columns in a block format that is read back by {@link #readFrom(Path)}. The file is first written to
+     * a temporary file in the same directory which then replaces the target file. The stream is closed afterwards.
+     *
+     * @return the number of elements written
+     * @throws UncheckedIOException if writing fails
+     * @see Streamable#writeTo(Path, Codec)
+     */
+    default long writeTo(Path path) {
+        try {
+            return BlockFile.write(stream(), path);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * @return the result of a mutable reduction of a newly constructed stream with given primitive collector.
+     *         The stream is closed afterwards.
+     * @see PrimitiveCollectors
+     */
+    default <A, R> R collect(PrimitiveCollectors.DoubleCollector<A, R> collector) {
+        return AC.collect(stream(), collector);
+    }
+
+    /**
+     * Feeds the elements of a single newly constructed stream to all given primitive collectors, so that several
+     * results are computed in one pass over the source. The stream is closed afterwards.
+     *
+     * @return an unmodifiable list of the results of given collectors in the same order
+     * @see Streamable#fork(List)
+     */
+    default List<Object> fork(PrimitiveCollectors.DoubleCollector<?, ?>... collectors) {
+        return collect(Fork.ofDouble(collectors));
+    }
 }
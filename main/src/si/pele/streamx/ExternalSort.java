@@ -0,0 +1,441 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntToLongFunction;
+
+/**
+ * An external sort of records consisting of a {@code long} key and optionally a {@code long} payload, ordered
+ * by key and then by payload. Records are collected into an off-heap chunk which grows up to the memory budget
+ * (a chunk is spilled instead of copied when the old and the grown chunk together would exceed it). When the chunk
+ * is full it is sorted and spilled as a run to a temporary file. Runs may also be {@link #addRun added} directly.
+ * {@link #finish() Finishing} the sort merges the runs with the last chunk. {@link #close() Closing} frees memory
+ * and deletes spill files.
+ */
+final class ExternalSort implements Closeable {
+
+    private static final int MIN_CHUNK_BYTES = 1 << 16;
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+    private static final int MIN_READ_BUFFER_BYTES = 1 << 13;
+    private static final int MAX_READ_BUFFER_BYTES = 1 << 20;
+    private static final int WRITE_BUFFER_BYTES = 1 << 16;
+
+    private final int width; // longs per record: 1 (key only) or 2 (key, payload)
+    private final long budget;
+    private ByteBuffer chunk;
+    private LongBuffer records;
+    private int size; // number of records in chunk
+    private final List<Run> runs = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * @param withPayload  whether records have a payload
+     * @param memoryBudget max. number of bytes of off-heap memory to use for sorting in memory
+     */
+    ExternalSort(boolean withPayload, long memoryBudget) {
+        this.width = withPayload ? 2 : 1;
+        this.budget = memoryBudget;
+    }
+
+    void add(long key) {
+        if (records == null || size * width == records.capacity()) {
+            makeRoom();
+        }
+        records.put(size++, key);
+    }
+
+    void add(long key, long payload) {
+        if (records == null || size * width == records.capacity()) {
+            makeRoom();
+        }
+        int i = size++ * 2;
+        records.put(i, key);
+        records.put(i + 1, payload);
+    }
+
+    /**
+     * Adds a run of given number of keys (records must not have a payload), given by their index, which is written
+     * to a temporary file through a small buffer, so the caller may free the keys afterwards without them and the
+     * chunk ever being in memory together. Runs are merged in the order of their keys, so the keys must be sorted
+     * for the result to be sorted (otherwise a sort with a single run just reads them back in given order).
+     */
+    void addRun(int n, IntToLongFunction key) {
+        if (width != 1) {
+            throw new IllegalStateException("Records have a payload");
+        }
+        if (closed) {
+            throw new IllegalStateException("Closed");
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.nativeOrder());
+        try {
+            Run run = new Run();
+            runs.add(run);
+            LongBuffer longs = buffer.asLongBuffer();
+            for (int i = 0; i < n; ) {
+                int m = Math.min(n - i, longs.capacity());
+                for (int j = 0; j < m; j++) {
+                    longs.put(j, key.applyAsLong(i + j));
+                }
+                run.write(buffer, m * Long.BYTES);
+                i += m;
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        } finally {
+            MappedFile.release(buffer);
+        }
+    }
+
+    /**
+     * @return a cursor over all added records in sorted order.
+     */
+    Cursor finish() {
+        if (records != null) {
+            sort(0, size - 1);
+        }
+        if (runs.isEmpty()) {
+            return new ChunkCursor(size);
+        }
+        int recordBytes = width * Long.BYTES;
+        long available = budget - (chunk == null ? 0L : chunk.capacity()); // the last chunk is merged too
+        long perRun = Math.min(MAX_READ_BUFFER_BYTES, Math.max(MIN_READ_BUFFER_BYTES, available / runs.size()));
+        int bufferBytes = (int) (perRun - perRun % recordBytes);
+        Cursor[] cursors = new Cursor[runs.size() + 1];
+        for (int i = 0; i < runs.size(); i++) {
+            cursors[i] = runs.get(i).cursor(bufferBytes);
+        }
+        cursors[runs.size()] = new ChunkCursor(size);
+        return new MergeCursor(cursors);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (chunk != null) {
+            MappedFile.release(chunk);
+            chunk = null;
+            records = null;
+        }
+        UncheckedIOException failure = null;
+        for (Run run : runs) {
+            try {
+                run.close();
+            } catch (IOException ioe) {
+                if (failure == null) {
+                    failure = new UncheckedIOException(ioe);
+                } else {
+                    failure.addSuppressed(ioe);
+                }
+            }
+        }
+        runs.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void makeRoom() {
+        if (closed) {
+            throw new IllegalStateException("Closed");
+        }
+        int recordBytes = width * Long.BYTES;
+        long max = Math.min(budget, MAX_CHUNK_BYTES);
+        max = Math.max(max - max % recordBytes, recordBytes);
+        int capacity = chunk == null ? 0 : chunk.capacity();
+        if (capacity < max) {
+            long newCapacity = Math.min(max, Math.max(MIN_CHUNK_BYTES, 2L * capacity));
+            if (capacity + newCapacity > budget) {
+                // the old and the new chunk would exceed the budget while copying
+                spill();
+                newCapacity = max;
+            }
+            newCapacity -= newCapacity % recordBytes;
+            if (chunk != null && size == 0) {
+                MappedFile.release(chunk);
+                chunk = null;
+                records = null;
+            }
+            ByteBuffer newChunk = ByteBuffer.allocateDirect((int) newCapacity).order(ByteOrder.nativeOrder());
+            if (chunk != null) {
+                chunk.clear();
+                newChunk.put(chunk).clear();
+                MappedFile.release(chunk);
+            }
+            chunk = newChunk;
+            records = newChunk.asLongBuffer();
+        } else {
+            spill();
+        }
+    }
+
+    private void spill() {
+        sort(0, size - 1);
+        try {
+            Run run = new Run();
+            runs.add(run);
+            run.write(chunk, size * width * Long.BYTES);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        size = 0;
+    }
+
+    //
+    // in-place 3-way quicksort of records in the chunk
+
+    private int compare(int i, long key, long payload) {
+        int c = Long.compare(records.get(i * width), key);
+        return c != 0 || width == 1 ? c : Long.compare(records.get(i * 2 + 1), payload);
+    }
+
+    private void swap(int i, int j) {
+        LongBuffer r = records;
+        if (width == 1) {
+            long t = r.get(i);
+            r.put(i, r.get(j));
+            r.put(j, t);
+        } else {
+            int a = i * 2, b = j * 2;
+            long k = r.get(a), p = r.get(a + 1);
+            r.put(a, r.get(b));
+            r.put(a + 1, r.get(b + 1));
+            r.put(b, k);
+            r.put(b + 1, p);
+        }
+    }
+
+    private void sort(int lo, int hi) {
+        while (hi - lo >= 16) {
+            // median of three as pivot
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, key(lo), payload(lo)) < 0) swap(lo, mid);
+            if (compare(hi, key(lo), payload(lo)) < 0) swap(lo, hi);
+            if (compare(hi, key(mid), payload(mid)) < 0) swap(mid, hi);
+            long pk = key(mid), pp = payload(mid);
+            int lt = lo, i = lo, gt = hi;
+            while (i <= gt) {
+                int c = compare(i, pk, pp);
+                if (c < 0) swap(lt++, i++);
+                else if (c > 0) swap(i, gt--);
+                else i++;
+            }
+            // recurse into smaller part, loop over larger
+            if (lt - lo < hi - gt) {
+                sort(lo, lt - 1);
+                lo = gt + 1;
+            } else {
+                sort(gt + 1, hi);
+                hi = lt - 1;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && compare(j, key(j - 1), payload(j - 1)) < 0; j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    private long key(int i) {
+        return records.get(i * width);
+    }
+
+    private long payload(int i) {
+        return width == 1 ? 0L : records.get(i * 2 + 1);
+    }
+
+    /**
+     * A cursor over sorted records.
+     */
+    interface Cursor {
+        boolean next();
+
+        long key();
+
+        long payload();
+    }
+
+    private final class ChunkCursor implements Cursor {
+        private final int size;
+        private int i = -1;
+
+        ChunkCursor(int size) { this.size = size; }
+
+        public boolean next() { return ++i < size; }
+
+        public long key() { return records.get(i * width); }
+
+        public long payload() { return width == 1 ? 0L : records.get(i * 2 + 1); }
+    }
+
+    /**
+     * A sorted run spilled to a temporary file.
+     */
+    private final class Run implements Closeable {
+        final Path path;
+        final FileChannel channel;
+        ByteBuffer buffer;
+
+        Run() throws IOException {
+            path = Files.createTempFile("streamx-sort-", ".run");
+            FileChannel ch;
+            try {
+                ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                      StandardOpenOption.DELETE_ON_CLOSE);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(path);
+                throw e;
+            }
+            channel = ch;
+        }
+
+        void write(ByteBuffer chunk, int bytes) throws IOException {
+            ByteBuffer b = chunk.duplicate();
+            b.position(0).limit(bytes);
+            while (b.hasRemaining()) {
+                channel.write(b);
+            }
+        }
+
+        Cursor cursor(int bufferBytes) {
+            buffer = ByteBuffer.allocateDirect(bufferBytes).order(ByteOrder.nativeOrder());
+            return new RunCursor(this);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (buffer != null) {
+                MappedFile.release(buffer);
+                buffer = null;
+            }
+            try {
+                channel.close();
+            } finally {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private final class RunCursor implements Cursor {
+        private final Run run;
+        private LongBuffer longs;
+        private long position;
+        private int i;
+
+        RunCursor(Run run) {
+            this.run = run;
+            this.longs = LongBuffer.allocate(0);
+        }
+
+        public boolean next() {
+            i += width;
+            if (i < longs.limit()) {
+                return true;
+            }
+            try {
+                ByteBuffer b = run.buffer;
+                b.clear();
+                while (b.hasRemaining()) {
+                    int n = run.channel.read(b, position);
+                    if (n < 0) break;
+                    position += n;
+                }
+                b.flip();
+                longs = b.asLongBuffer();
+                i = 0;
+                return longs.limit() > 0;
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+        public long key() { return longs.get(i); }
+
+        public long payload() { return width == 1 ? 0L : longs.get(i + 1); }
+    }
+
+    /**
+     * K-way merge of cursors using a binary heap.
+     */
+    private static final class MergeCursor implements Cursor {
+        private final Cursor[] heap;
+        private int size;
+        private Cursor current;
+
+        MergeCursor(Cursor[] cursors) {
+            heap = new Cursor[cursors.length];
+            for (Cursor c : cursors) {
+                if (c.next()) {
+                    heap[size++] = c;
+                }
+            }
+            for (int i = (size >>> 1) - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        private static boolean less(Cursor a, Cursor b) {
+            int c = Long.compare(a.key(), b.key());
+            return c < 0 || (c == 0 && a.payload() < b.payload());
+        }
+
+        private void siftDown(int i) {
+            Cursor c = heap[i];
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < size && less(heap[right], heap[child])) {
+                    child = right;
+                }
+                if (!less(heap[child], c)) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = c;
+        }
+
+        public boolean next() {
+            if (current != null) {
+                if (current.next()) {
+                    heap[0] = current;
+                } else {
+                    heap[0] = heap[--size];
+                    heap[size] = null;
+                }
+                if (size > 0) {
+                    siftDown(0);
+                }
+            }
+            if (size == 0) {
+                current = null;
+                return false;
+            }
+            current = heap[0];
+            return true;
+        }
+
+        public long key() { return current.key(); }
+
+        public long payload() { return current.payload(); }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A {@link Path} together with its {@link BasicFileAttributes} (of the link itself for symbolic links),
+ * as produced by {@link Streamable.IO#walk(Path, int, String)}.
+ */
+public final class FileEntry {
+
+    private final Path path;
+    private final BasicFileAttributes attributes;
+    private final int depth;
+
+    FileEntry(Path path, BasicFileAttributes attributes, int depth) {
+        this.path = path;
+        this.attributes = attributes;
+        this.depth = depth;
+    }
+
+    public Path path() { return path; }
+
+    public BasicFileAttributes attributes() { return attributes; }
+
+    /**
+     * @return the depth of this entry relative to the start of the walk (0 for the start itself)
+     */
+    public int depth() { return depth; }
+
+    public boolean isRegularFile() { return attributes.isRegularFile(); }
+
+    public boolean isDirectory() { return attributes.isDirectory(); }
+
+    public boolean isSymbolicLink() { return attributes.isSymbolicLink(); }
+
+    public long size() { return attributes.size(); }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
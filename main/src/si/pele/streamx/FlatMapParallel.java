@@ -0,0 +1,215 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A {@link Spliterator} of the concatenation of inner streams mapped from elements of an outer spliterator, which
+ * splits inner streams as well as the outer spliterator, so that a few large inner streams are processed in
+ * parallel together with many small ones. In encounter order the remainder of the current inner stream precedes
+ * the rest of the outer spliterator, so an ordered split hands off (part of) the current inner stream and splits
+ * the outer spliterator only when no inner stream is in progress. An unordered split prefers to split the outer
+ * spliterator.<p>
+ * Each inner stream is closed as soon as all its parts are exhausted (see {@link AC.Closer}). Inner streams still
+ * open when the stream is closed are closed at that time.
+ */
+final class FlatMapParallel<T, R> implements Spliterator<R>, Consumer<T> {
+
+    /**
+     * Inner spliterators with fewer elements are not split.
+     */
+    static final long MIN_INNER_SPLIT = 1L << 10;
+
+    static <T, R> Stream<R> stream(Stream<T> s, Function<? super T, ? extends Stream<? extends R>> mapper,
+                                   boolean ordered) {
+        Inners<T, R> inners = new Inners<>(mapper);
+        return StreamSupport
+            .stream(new FlatMapParallel<>(inners, s.spliterator(), null, ordered), s.isParallel())
+            .onClose(inners::close)
+            .onClose(s::close);
+    }
+
+    /**
+     * State shared by all the spliterators of a single stream: the mapper and the inner streams not closed yet.
+     */
+    static final class Inners<T, R> {
+        private final Function<? super T, ? extends Stream<? extends R>> mapper;
+        private final Set<AC.Closer> open = ConcurrentHashMap.newKeySet();
+        private volatile boolean closed;
+
+        Inners(Function<? super T, ? extends Stream<? extends R>> mapper) {
+            this.mapper = mapper;
+        }
+
+        /**
+         * @return an auto-closing spliterator of the inner stream mapped from given element or {@code null}
+         *         if the mapper returned {@code null}.
+         */
+        @SuppressWarnings("unchecked")
+        AC.ACSpliterator<R> open(T t) {
+            Stream<? extends R> s = mapper.apply(t);
+            if (s == null) {
+                return null;
+            }
+            AC.Closer closer = new AC.Closer(s);
+            open.add(closer);
+            if (closed) {
+                close(closer);
+                throw new IllegalStateException("Stream closed");
+            }
+            return new AC.ACSpliterator<>((Spliterator<R>) s.spliterator(), closer);
+        }
+
+        /**
+         * Forgets an inner stream if it has been closed by its last exhausted part.
+         */
+        void exhausted(AC.Closer closer) {
+            if (closer.isClosed()) {
+                open.remove(closer);
+            }
+        }
+
+        private void close(AC.Closer closer) {
+            open.remove(closer);
+            closer.close();
+        }
+
+        void close() {
+            closed = true;
+            RuntimeException failure = null;
+            for (AC.Closer closer : open) {
+                try {
+                    close(closer);
+                } catch (RuntimeException e) {
+                    if (failure == null) failure = e;
+                    else failure.addSuppressed(e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private final Inners<T, R> inners;
+    private Spliterator<T> outer; // null in parts consisting of a single inner stream (part)
+    private AC.ACSpliterator<R> inner; // current inner stream (part)
+    private final boolean ordered;
+
+    private FlatMapParallel(Inners<T, R> inners, Spliterator<T> outer, AC.ACSpliterator<R> inner, boolean ordered) {
+        this.inners = inners;
+        this.outer = outer;
+        this.inner = inner;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Opens the inner stream of an element taken from the outer spliterator.
+     */
+    @Override
+    public void accept(T t) {
+        inner = inners.open(t);
+    }
+
+    private void innerExhausted() {
+        AC.Closer closer = inner.closer;
+        inner = null;
+        inners.exhausted(closer);
+    }
+
+    private boolean nextInner() {
+        if (outer == null) {
+            return false;
+        }
+        if (!outer.tryAdvance(this)) {
+            outer = null;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super R> action) {
+        do {
+            if (inner != null) {
+                if (inner.tryAdvance(action)) {
+                    return true;
+                }
+                innerExhausted();
+            }
+        } while (nextInner());
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super R> action) {
+        do {
+            if (inner != null) {
+                inner.forEachRemaining(action);
+                innerExhausted();
+            }
+        } while (nextInner());
+    }
+
+    @Override
+    public Spliterator<R> trySplit() {
+        if (inner == null) {
+            if (outer == null) {
+                return null;
+            }
+            Spliterator<T> prefix = outer.trySplit();
+            if (prefix != null) {
+                return new FlatMapParallel<>(inners, prefix, null, ordered);
+            }
+            // outer doesn't split - open the next inner stream to split it
+            do {
+                if (!nextInner()) {
+                    return null;
+                }
+            } while (inner == null);
+        } else if (!ordered && outer != null) {
+            Spliterator<T> prefix = outer.trySplit();
+            if (prefix != null) {
+                return new FlatMapParallel<>(inners, prefix, null, false);
+            }
+        }
+        if (inner.estimateSize() >= MIN_INNER_SPLIT) {
+            @SuppressWarnings("unchecked")
+            AC.ACSpliterator<R> prefix = (AC.ACSpliterator<R>) inner.trySplit();
+            if (prefix != null) {
+                return new FlatMapParallel<>(inners, null, prefix, ordered);
+            }
+        }
+        if (outer == null) {
+            return null;
+        }
+        // hand off the rest of current inner stream and keep the rest of outer
+        FlatMapParallel<T, R> prefix = new FlatMapParallel<>(inners, null, inner, ordered);
+        inner = null;
+        return prefix;
+    }
+
+    /**
+     * @return {@link Long#MAX_VALUE} unless exhausted, since the sizes of inner streams are not known in advance
+     *         and so that the framework keeps splitting until {@link #trySplit()} gives up.
+     */
+    @Override
+    public long estimateSize() {
+        return outer == null && inner == null ? 0L : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ordered ? ORDERED : 0;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Bridges between {@link Streamable}s and {@link Flow.Publisher}s.
+ */
+final class Flows {
+
+    private Flows() {} // no instances
+
+    static void checkPrefetch(int prefetch) {
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch must be positive: " + prefetch);
+        }
+    }
+
+    /**
+     * A {@link Flow.Publisher} that opens a stream of a {@link Streamable} per subscription.
+     */
+    static final class StreamPublisher<T> implements Flow.Publisher<T> {
+
+        private final Streamable<T> streamable;
+        private final Executor executor;
+
+        StreamPublisher(Streamable<T> streamable, Executor executor) {
+            this.streamable = Objects.requireNonNull(streamable);
+            this.executor = Objects.requireNonNull(executor);
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super T> subscriber) {
+            Objects.requireNonNull(subscriber);
+            StreamSubscription<T> subscription = new StreamSubscription<>(streamable, subscriber, executor);
+            subscriber.onSubscribe(subscription);
+            subscription.start();
+        }
+    }
+
+    /**
+     * A subscription that pulls elements from the spliterator of a stream opened on first request while there
+     * is demand. Pulling (including opening and closing the stream) is performed by at most one task at a time
+     * on the executor, so a blocking source never blocks the thread that requests.
+     */
+    static final class StreamSubscription<T> implements Flow.Subscription, Runnable, Consumer<T> {
+
+        private final Streamable<T> streamable;
+        private final Flow.Subscriber<? super T> subscriber;
+        private final Executor executor;
+
+        private final AtomicLong demand = new AtomicLong();
+        // number of signals not yet seen by the drain task; held until onSubscribe returns, so that
+        // requests made from it are served after it returns
+        private final AtomicInteger wip = new AtomicInteger(1);
+        private volatile boolean cancelled;
+        private volatile Throwable badRequest;
+        // accessed by the drain task only
+        private Stream<T> s;
+        private Spliterator<T> spliterator;
+        private boolean done;
+
+        StreamSubscription(Streamable<T> streamable, Flow.Subscriber<? super T> subscriber, Executor executor) {
+            this.streamable = streamable;
+            this.subscriber = subscriber;
+            this.executor = executor;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                badRequest = new IllegalArgumentException("non-positive request: " + n);
+            } else {
+                demand.getAndAccumulate(n, (d, m) -> d + m < 0L ? Long.MAX_VALUE : d + m);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            signal();
+        }
+
+        void start() {
+            execute();
+        }
+
+        private void signal() {
+            if (wip.getAndIncrement() == 0) {
+                execute();
+            }
+        }
+
+        private void execute() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                cancelled = true;
+                subscriber.onError(e);
+            }
+        }
+
+        /**
+         * The drain task.
+         */
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            if (done) {
+                return;
+            }
+            Throwable failure = badRequest;
+            if (cancelled || failure != null) {
+                done = true;
+                try {
+                    close();
+                } catch (Throwable t) {
+                    if (failure != null) failure.addSuppressed(t);
+                }
+                if (failure != null && !cancelled) {
+                    subscriber.onError(failure);
+                }
+                return;
+            }
+            try {
+                long d = demand.get();
+                long emitted = 0L;
+                while (emitted < d) {
+                    if (cancelled || badRequest != null) {
+                        break;
+                    }
+                    if (spliterator == null) {
+                        s = streamable.stream();
+                        spliterator = s.spliterator();
+                    }
+                    if (!spliterator.tryAdvance(this)) {
+                        done = true;
+                        close();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    emitted++;
+                    if (emitted == d) {
+                        d = demand.addAndGet(-emitted);
+                        emitted = 0L;
+                    }
+                }
+                if (emitted > 0L) {
+                    demand.addAndGet(-emitted);
+                }
+            } catch (Throwable t) {
+                done = true;
+                try {
+                    close();
+                } catch (Throwable ct) {
+                    t.addSuppressed(ct);
+                }
+                subscriber.onError(t);
+            }
+        }
+
+        /**
+         * Delivers an element pulled from the spliterator.
+         */
+        @Override
+        public void accept(T t) {
+            subscriber.onNext(t);
+        }
+
+        private void close() {
+            Stream<T> s = this.s;
+            this.s = null;
+            spliterator = null;
+            if (s != null) {
+                s.close();
+            }
+        }
+    }
+
+    /**
+     * A {@link Spliterator} of elements published by a {@link Flow.Publisher} to which it subscribes when
+     * constructed. Up to {@code prefetch} elements are requested ahead and buffered in a bounded queue,
+     * replenished in batches as they are consumed. A failure signalled by the publisher is re-thrown to
+     * the consumer. Closing the stream cancels the subscription.
+     */
+    static final class PublisherSpliterator<T> implements Spliterator<T>, Flow.Subscriber<T> {
+
+        static <T> Stream<T> stream(Flow.Publisher<? extends T> publisher, int prefetch) {
+            checkPrefetch(prefetch);
+            PublisherSpliterator<T> ps = new PublisherSpliterator<>(prefetch);
+            publisher.subscribe(ps);
+            return StreamSupport.stream(ps, false).onClose(ps::close);
+        }
+
+        private static final Object COMPLETE = new Object();
+
+        private final int prefetch;
+        private final int batch;
+        // elements and the terminal signal (COMPLETE or a Throwable wrapped in Failure)
+        private final BlockingQueue<Object> queue;
+        private final CompletableFuture<Flow.Subscription> subscription = new CompletableFuture<>();
+        private int consumed; // since the last request
+        private boolean terminated;
+
+        private PublisherSpliterator(int prefetch) {
+            this.prefetch = prefetch;
+            this.batch = Math.max(1, prefetch - (prefetch >> 2));
+            // demand never exceeds prefetch, plus room for the terminal signal
+            int capacity = prefetch == Integer.MAX_VALUE ? prefetch : prefetch + 1;
+            this.queue = capacity <= 1 << 16 ? new ArrayBlockingQueue<>(capacity)
+                                             : new LinkedBlockingQueue<>(capacity);
+        }
+
+        private static final class Failure {
+            final Throwable exception;
+
+            Failure(Throwable exception) {
+                this.exception = exception;
+            }
+        }
+
+        // Flow.Subscriber
+
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            Objects.requireNonNull(s);
+            if (!subscription.complete(s)) {
+                s.cancel(); // already subscribed or closed
+                return;
+            }
+            s.request(prefetch);
+        }
+
+        @Override
+        public void onNext(T item) {
+            Objects.requireNonNull(item);
+            if (!queue.offer(item)) {
+                subscription.thenAccept(Flow.Subscription::cancel);
+                queue.clear();
+                queue.offer(new Failure(new IllegalStateException("Publisher exceeded requested demand")));
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            queue.offer(new Failure(Objects.requireNonNull(throwable)));
+        }
+
+        @Override
+        public void onComplete() {
+            queue.offer(COMPLETE);
+        }
+
+        // Spliterator
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (terminated) {
+                return false;
+            }
+            Object o;
+            try {
+                o = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new CancellationException("Interrupted while waiting for published element");
+            }
+            if (o == COMPLETE) {
+                terminated = true;
+                return false;
+            }
+            if (o instanceof Failure) {
+                terminated = true;
+                Throwable t = ((Failure) o).exception;
+                if (t instanceof RuntimeException) throw (RuntimeException) t;
+                if (t instanceof Error) throw (Error) t;
+                if (t instanceof IOException) throw new UncheckedIOException((IOException) t);
+                throw new CompletionException(t);
+            }
+            if (++consumed == batch) {
+                consumed = 0;
+                subscription.getNow(null).request(batch);
+            }
+            @SuppressWarnings("unchecked")
+            T t = (T) o;
+            action.accept(t);
+            return true;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+
+        void close() {
+            terminated = true;
+            // cancel now or as soon as subscribed
+            if (!subscription.completeExceptionally(new CancellationException()) &&
+                !subscription.isCompletedExceptionally()) {
+                subscription.getNow(null).cancel();
+            }
+            queue.clear();
+        }
+    }
+}
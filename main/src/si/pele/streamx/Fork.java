@@ -0,0 +1,155 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.*;
+import java.util.stream.Collector;
+
+/**
+ * Collectors feeding each element to several collectors in a single pass. The combined container is an array of
+ * the containers of given collectors, so in a parallel stream each split accumulates into its own set of
+ * containers, which are combined pairwise with the collectors' combiners. The result is the (unmodifiable) list
+ * of results of given collectors in the same order.
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+final class Fork {
+
+    private Fork() {} // no instances
+
+    static <T> Collector<T, ?, List<Object>> of(List<? extends Collector<? super T, ?, ?>> collectors) {
+        int n = collectors.size();
+        Supplier[] suppliers = new Supplier[n];
+        BiConsumer[] accumulators = new BiConsumer[n];
+        BinaryOperator[] combiners = new BinaryOperator[n];
+        Function[] finishers = new Function[n];
+        boolean unordered = true;
+        for (int i = 0; i < n; i++) {
+            Collector c = collectors.get(i);
+            suppliers[i] = c.supplier();
+            accumulators[i] = c.accumulator();
+            combiners[i] = c.combiner();
+            finishers[i] = c.finisher();
+            unordered &= c.characteristics().contains(Collector.Characteristics.UNORDERED);
+        }
+        return Collector.<T, Object[], List<Object>>of(
+            () -> supply(suppliers),
+            (as, t) -> {
+                for (int i = 0; i < accumulators.length; i++) {
+                    accumulators[i].accept(as[i], t);
+                }
+            },
+            (as1, as2) -> {
+                for (int i = 0; i < combiners.length; i++) {
+                    as1[i] = combiners[i].apply(as1[i], as2[i]);
+                }
+                return as1;
+            },
+            as -> finish(finishers, as),
+            unordered ? new Collector.Characteristics[]{Collector.Characteristics.UNORDERED}
+                      : new Collector.Characteristics[0]
+        );
+    }
+
+    static PrimitiveCollectors.IntCollector<Object[], List<Object>> ofInt(
+        PrimitiveCollectors.IntCollector<?, ?>[] collectors) {
+        int n = collectors.length;
+        Supplier[] suppliers = new Supplier[n];
+        ObjIntConsumer[] accumulators = new ObjIntConsumer[n];
+        BiConsumer[] combiners = new BiConsumer[n];
+        Function[] finishers = new Function[n];
+        for (int i = 0; i < n; i++) {
+            suppliers[i] = collectors[i].supplier();
+            accumulators[i] = collectors[i].accumulator();
+            combiners[i] = collectors[i].combiner();
+            finishers[i] = collectors[i].finisher();
+        }
+        return PrimitiveCollectors.ofInt(
+            () -> supply(suppliers),
+            (as, v) -> {
+                for (int i = 0; i < accumulators.length; i++) {
+                    accumulators[i].accept(as[i], v);
+                }
+            },
+            (as1, as2) -> combine(combiners, as1, as2),
+            as -> finish(finishers, as)
+        );
+    }
+
+    static PrimitiveCollectors.LongCollector<Object[], List<Object>> ofLong(
+        PrimitiveCollectors.LongCollector<?, ?>[] collectors) {
+        int n = collectors.length;
+        Supplier[] suppliers = new Supplier[n];
+        ObjLongConsumer[] accumulators = new ObjLongConsumer[n];
+        BiConsumer[] combiners = new BiConsumer[n];
+        Function[] finishers = new Function[n];
+        for (int i = 0; i < n; i++) {
+            suppliers[i] = collectors[i].supplier();
+            accumulators[i] = collectors[i].accumulator();
+            combiners[i] = collectors[i].combiner();
+            finishers[i] = collectors[i].finisher();
+        }
+        return PrimitiveCollectors.ofLong(
+            () -> supply(suppliers),
+            (as, v) -> {
+                for (int i = 0; i < accumulators.length; i++) {
+                    accumulators[i].accept(as[i], v);
+                }
+            },
+            (as1, as2) -> combine(combiners, as1, as2),
+            as -> finish(finishers, as)
+        );
+    }
+
+    static PrimitiveCollectors.DoubleCollector<Object[], List<Object>> ofDouble(
+        PrimitiveCollectors.DoubleCollector<?, ?>[] collectors) {
+        int n = collectors.length;
+        Supplier[] suppliers = new Supplier[n];
+        ObjDoubleConsumer[] accumulators = new ObjDoubleConsumer[n];
+        BiConsumer[] combiners = new BiConsumer[n];
+        Function[] finishers = new Function[n];
+        for (int i = 0; i < n; i++) {
+            suppliers[i] = collectors[i].supplier();
+            accumulators[i] = collectors[i].accumulator();
+            combiners[i] = collectors[i].combiner();
+            finishers[i] = collectors[i].finisher();
+        }
+        return PrimitiveCollectors.ofDouble(
+            () -> supply(suppliers),
+            (as, v) -> {
+                for (int i = 0; i < accumulators.length; i++) {
+                    accumulators[i].accept(as[i], v);
+                }
+            },
+            (as1, as2) -> combine(combiners, as1, as2),
+            as -> finish(finishers, as)
+        );
+    }
+
+    private static Object[] supply(Supplier[] suppliers) {
+        Object[] as = new Object[suppliers.length];
+        for (int i = 0; i < suppliers.length; i++) {
+            as[i] = suppliers[i].get();
+        }
+        return as;
+    }
+
+    private static void combine(BiConsumer[] combiners, Object[] as1, Object[] as2) {
+        for (int i = 0; i < combiners.length; i++) {
+            combiners[i].accept(as1[i], as2[i]);
+        }
+    }
+
+    private static List<Object> finish(Function[] finishers, Object[] as) {
+        List<Object> results = new ArrayList<>(finishers.length);
+        for (int i = 0; i < finishers.length; i++) {
+            results.add(finishers[i].apply(as[i]));
+        }
+        return Collections.unmodifiableList(results);
+    }
+}
@@ -0,0 +1,523 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.*;
+import java.util.stream.*;
+
+/**
+ * Fused chains of stateless non-terminal operations ({@code filter}, {@code map} and {@code peek}).<p>
+ * Instead of stacking a new {@link Stream} stage for each operation every time a stream is requested,
+ * a chain of operations is recorded and compiled once (when the chain is built) into a single {@link Op}
+ * that operates on a mutable {@link RefCell cell} holding the current element. Each call to {@code stream()}
+ * then only wraps the source's {@link Spliterator} with a spliterator that pushes elements through the
+ * compiled op, so a single stage is constructed whatever the length of the chain.<p>
+ * This is only done when the source stream is a {@link #isHead raw source}. The spliterator of a stream with
+ * operations buffers everything the operations produce from each source element when it is pulled (whole inner
+ * streams of {@code flatMap} for example), so pulling from it would make short-circuiting operations and
+ * iterators eager. Such streams get the operations applied as plain JDK stages instead.
+ */
+@SuppressWarnings("unchecked")
+final class Fused {
+
+    private Fused() {} // no instances
+
+    /**
+     * A compiled chain of operations applied to the element held in given cell.
+     * Returns {@code false} if the element was dropped by a filter.
+     */
+    @FunctionalInterface
+    interface Op<C> {
+        boolean apply(C cell);
+    }
+
+    // flags recording the kinds of operations in a chain
+
+    static final int FILTERED = 1;
+    static final int MAPPED = 2;
+
+    static <C> Op<C> andThen(Op<C> first, Op<C> second) {
+        return first == null ? second : c -> first.apply(c) && second.apply(c);
+    }
+
+    /**
+     * @return {@code true} if given stream is the head of a JDK pipeline, whose {@link BaseStream#spliterator()}
+     *         is the source spliterator itself (other streams, including {@link AC} wrappers, may add operations)
+     */
+    static boolean isHead(BaseStream<?, ?> s) {
+        String name = s.getClass().getName();
+        return name.startsWith("java.util.stream.") && name.endsWith("Pipeline$Head");
+    }
+
+    static int characteristics(int characteristics, int flags) {
+        if ((flags & FILTERED) != 0) {
+            characteristics &= ~(Spliterator.SIZED | Spliterator.SUBSIZED);
+        }
+        if ((flags & MAPPED) != 0) {
+            characteristics &= ~(Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL);
+        }
+        return characteristics;
+    }
+
+    //
+    // entry points used by Streamable default methods
+
+    static <T> Streamable<T> filter(Streamable<T> source, Predicate<? super T> predicate) {
+        return new RefStreamable<T, T>(source, null, 0, s -> s).filter(predicate);
+    }
+
+    static <T, R> Streamable<R> map(Streamable<T> source, Function<? super T, ? extends R> mapper) {
+        return new RefStreamable<T, T>(source, null, 0, s -> s).map(mapper);
+    }
+
+    static <T> Streamable<T> peek(Streamable<T> source, Consumer<? super T> consumer) {
+        return new RefStreamable<T, T>(source, null, 0, s -> s).peek(consumer);
+    }
+
+    static IntStreamable filter(IntStreamable source, IntPredicate predicate) {
+        return new IntFusedStreamable(source, null, 0, s -> s).filter(predicate);
+    }
+
+    static IntStreamable map(IntStreamable source, IntUnaryOperator mapper) {
+        return new IntFusedStreamable(source, null, 0, s -> s).map(mapper);
+    }
+
+    static IntStreamable peek(IntStreamable source, IntConsumer consumer) {
+        return new IntFusedStreamable(source, null, 0, s -> s).peek(consumer);
+    }
+
+    static LongStreamable filter(LongStreamable source, LongPredicate predicate) {
+        return new LongFusedStreamable(source, null, 0, s -> s).filter(predicate);
+    }
+
+    static LongStreamable map(LongStreamable source, LongUnaryOperator mapper) {
+        return new LongFusedStreamable(source, null, 0, s -> s).map(mapper);
+    }
+
+    static LongStreamable peek(LongStreamable source, LongConsumer consumer) {
+        return new LongFusedStreamable(source, null, 0, s -> s).peek(consumer);
+    }
+
+    static DoubleStreamable filter(DoubleStreamable source, DoublePredicate predicate) {
+        return new DoubleFusedStreamable(source, null, 0, s -> s).filter(predicate);
+    }
+
+    static DoubleStreamable map(DoubleStreamable source, DoubleUnaryOperator mapper) {
+        return new DoubleFusedStreamable(source, null, 0, s -> s).map(mapper);
+    }
+
+    static DoubleStreamable peek(DoubleStreamable source, DoubleConsumer consumer) {
+        return new DoubleFusedStreamable(source, null, 0, s -> s).peek(consumer);
+    }
+
+    //
+    // cells holding the current element
+
+    static final class RefCell implements Consumer<Object> {
+        Object v;
+
+        public void accept(Object v) { this.v = v; }
+    }
+
+    static final class IntCell implements IntConsumer {
+        int v;
+
+        public void accept(int v) { this.v = v; }
+    }
+
+    static final class LongCell implements LongConsumer {
+        long v;
+
+        public void accept(long v) { this.v = v; }
+    }
+
+    static final class DoubleCell implements DoubleConsumer {
+        double v;
+
+        public void accept(double v) { this.v = v; }
+    }
+
+    //
+    // streamables
+
+    /**
+     * A {@link Streamable} applying a fused chain of operations to elements of the source {@link Streamable}.
+     */
+    static final class RefStreamable<T, R> implements Streamable<R> {
+
+        final Streamable<T> source;
+        final Op<RefCell> op;
+        final int flags;
+        final Function<Stream<T>, Stream<R>> stages; // the same chain as JDK stages
+
+        RefStreamable(Streamable<T> source, Op<RefCell> op, int flags, Function<Stream<T>, Stream<R>> stages) {
+            this.source = source;
+            this.op = op;
+            this.flags = flags;
+            this.stages = stages;
+        }
+
+        public Stream<R> stream() {
+            Stream<T> s = source.stream();
+            if (!isHead(s)) {
+                return stages.apply(s);
+            }
+            return StreamSupport
+                .stream(new RefSpliterator<R>(s.spliterator(), op, flags), s.isParallel())
+                .onClose(s::close);
+        }
+
+        public Streamable<R> filter(Predicate<? super R> predicate) {
+            return new RefStreamable<>(source, andThen(op, c -> predicate.test((R) c.v)), flags | FILTERED,
+                                       s -> stages.apply(s).filter(predicate));
+        }
+
+        public <U> Streamable<U> map(Function<? super R, ? extends U> mapper) {
+            return new RefStreamable<T, U>(source, andThen(op, c -> {
+                c.v = mapper.apply((R) c.v);
+                return true;
+            }), flags | MAPPED, s -> stages.apply(s).map(mapper));
+        }
+
+        public Streamable<R> peek(Consumer<? super R> consumer) {
+            return new RefStreamable<>(source, andThen(op, c -> {
+                consumer.accept((R) c.v);
+                return true;
+            }), flags, s -> stages.apply(s).peek(consumer));
+        }
+    }
+
+    /**
+     * An {@link IntStreamable} applying a fused chain of operations to elements of the source {@link IntStreamable}.
+     */
+    static final class IntFusedStreamable implements IntStreamable {
+
+        final IntStreamable source;
+        final Op<IntCell> op;
+        final int flags;
+        final UnaryOperator<IntStream> stages; // the same chain as JDK stages
+
+        IntFusedStreamable(IntStreamable source, Op<IntCell> op, int flags, UnaryOperator<IntStream> stages) {
+            this.source = source;
+            this.op = op;
+            this.flags = flags;
+            this.stages = stages;
+        }
+
+        public IntStream stream() {
+            IntStream s = source.stream();
+            if (!isHead(s)) {
+                return stages.apply(s);
+            }
+            return StreamSupport
+                .intStream(new IntSpliterator(s.spliterator(), op, flags), s.isParallel())
+                .onClose(s::close);
+        }
+
+        public IntStreamable filter(IntPredicate predicate) {
+            return new IntFusedStreamable(source, andThen(op, c -> predicate.test(c.v)), flags | FILTERED,
+                                          s -> stages.apply(s).filter(predicate));
+        }
+
+        public IntStreamable map(IntUnaryOperator mapper) {
+            return new IntFusedStreamable(source, andThen(op, c -> {
+                c.v = mapper.applyAsInt(c.v);
+                return true;
+            }), flags | MAPPED, s -> stages.apply(s).map(mapper));
+        }
+
+        public IntStreamable peek(IntConsumer consumer) {
+            return new IntFusedStreamable(source, andThen(op, c -> {
+                consumer.accept(c.v);
+                return true;
+            }), flags, s -> stages.apply(s).peek(consumer));
+        }
+    }
+
+    /**
+     * A {@link LongStreamable} applying a fused chain of operations to elements of the source {@link LongStreamable}.
+     */
+    static final class LongFusedStreamable implements LongStreamable {
+
+        final LongStreamable source;
+        final Op<LongCell> op;
+        final int flags;
+        final UnaryOperator<LongStream> stages; // the same chain as JDK stages
+
+        LongFusedStreamable(LongStreamable source, Op<LongCell> op, int flags, UnaryOperator<LongStream> stages) {
+            this.source = source;
+            this.op = op;
+            this.flags = flags;
+            this.stages = stages;
+        }
+
+        public LongStream stream() {
+            LongStream s = source.stream();
+            if (!isHead(s)) {
+                return stages.apply(s);
+            }
+            return StreamSupport
+                .longStream(new LongSpliterator(s.spliterator(), op, flags), s.isParallel())
+                .onClose(s::close);
+        }
+
+        public LongStreamable filter(LongPredicate predicate) {
+            return new LongFusedStreamable(source, andThen(op, c -> predicate.test(c.v)), flags | FILTERED,
+                                           s -> stages.apply(s).filter(predicate));
+        }
+
+        public LongStreamable map(LongUnaryOperator mapper) {
+            return new LongFusedStreamable(source, andThen(op, c -> {
+                c.v = mapper.applyAsLong(c.v);
+                return true;
+            }), flags | MAPPED, s -> stages.apply(s).map(mapper));
+        }
+
+        public LongStreamable peek(LongConsumer consumer) {
+            return new LongFusedStreamable(source, andThen(op, c -> {
+                consumer.accept(c.v);
+                return true;
+            }), flags, s -> stages.apply(s).peek(consumer));
+        }
+    }
+
+    /**
+     * A {@link DoubleStreamable} applying a fused chain of operations to elements of the source {@link DoubleStreamable}.
+     */
+    static final class DoubleFusedStreamable implements DoubleStreamable {
+
+        final DoubleStreamable source;
+        final Op<DoubleCell> op;
+        final int flags;
+        final UnaryOperator<DoubleStream> stages; // the same chain as JDK stages
+
+        DoubleFusedStreamable(DoubleStreamable source, Op<DoubleCell> op, int flags,
+                              UnaryOperator<DoubleStream> stages) {
+            this.source = source;
+            this.op = op;
+            this.flags = flags;
+            this.stages = stages;
+        }
+
+        public DoubleStream stream() {
+            DoubleStream s = source.stream();
+            if (!isHead(s)) {
+                return stages.apply(s);
+            }
+            return StreamSupport
+                .doubleStream(new DoubleSpliterator(s.spliterator(), op, flags), s.isParallel())
+                .onClose(s::close);
+        }
+
+        public DoubleStreamable filter(DoublePredicate predicate) {
+            return new DoubleFusedStreamable(source, andThen(op, c -> predicate.test(c.v)), flags | FILTERED,
+                                             s -> stages.apply(s).filter(predicate));
+        }
+
+        public DoubleStreamable map(DoubleUnaryOperator mapper) {
+            return new DoubleFusedStreamable(source, andThen(op, c -> {
+                c.v = mapper.applyAsDouble(c.v);
+                return true;
+            }), flags | MAPPED, s -> stages.apply(s).map(mapper));
+        }
+
+        public DoubleStreamable peek(DoubleConsumer consumer) {
+            return new DoubleFusedStreamable(source, andThen(op, c -> {
+                consumer.accept(c.v);
+                return true;
+            }), flags, s -> stages.apply(s).peek(consumer));
+        }
+    }
+
+    //
+    // spliterators
+
+    /**
+     * Base of spliterators pushing elements of the source spliterator through a compiled {@link Op}.
+     */
+    abstract static class FusedSpliterator<T, S extends Spliterator<?>> implements Spliterator<T> {
+
+        final S s;
+        final int flags;
+
+        FusedSpliterator(S s, int flags) {
+            this.s = s;
+            this.flags = flags;
+        }
+
+        public long estimateSize() { return s.estimateSize(); }
+
+        public int characteristics() { return Fused.characteristics(s.characteristics(), flags); }
+
+        public Comparator<? super T> getComparator() {
+            if (hasCharacteristics(SORTED)) {
+                return (Comparator<? super T>) s.getComparator();
+            }
+            throw new IllegalStateException();
+        }
+    }
+
+    static final class RefSpliterator<T> extends FusedSpliterator<T, Spliterator<?>> {
+
+        final Op<RefCell> op;
+        final RefCell cell = new RefCell();
+
+        RefSpliterator(Spliterator<?> s, Op<RefCell> op, int flags) {
+            super(s, flags);
+            this.op = op;
+        }
+
+        public boolean tryAdvance(Consumer<? super T> action) {
+            RefCell c = cell;
+            while (s.tryAdvance(c)) {
+                if (op.apply(c)) {
+                    T t = (T) c.v;
+                    c.v = null;
+                    action.accept(t);
+                    return true;
+                }
+            }
+            c.v = null;
+            return false;
+        }
+
+        public void forEachRemaining(Consumer<? super T> action) {
+            RefCell c = cell;
+            Op<RefCell> op = this.op;
+            s.forEachRemaining(t -> {
+                c.v = t;
+                if (op.apply(c)) {
+                    action.accept((T) c.v);
+                }
+            });
+            c.v = null;
+        }
+
+        public Spliterator<T> trySplit() {
+            Spliterator<?> split = s.trySplit();
+            return split == null ? null : new RefSpliterator<>(split, op, flags);
+        }
+    }
+
+    static final class IntSpliterator extends FusedSpliterator<Integer, Spliterator.OfInt>
+        implements Spliterator.OfInt {
+
+        final Op<IntCell> op;
+        final IntCell cell = new IntCell();
+
+        IntSpliterator(Spliterator.OfInt s, Op<IntCell> op, int flags) {
+            super(s, flags);
+            this.op = op;
+        }
+
+        public boolean tryAdvance(IntConsumer action) {
+            IntCell c = cell;
+            while (s.tryAdvance(c)) {
+                if (op.apply(c)) {
+                    action.accept(c.v);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void forEachRemaining(IntConsumer action) {
+            IntCell c = cell;
+            Op<IntCell> op = this.op;
+            s.forEachRemaining((int v) -> {
+                c.v = v;
+                if (op.apply(c)) {
+                    action.accept(c.v);
+                }
+            });
+        }
+
+        public Spliterator.OfInt trySplit() {
+            Spliterator.OfInt split = s.trySplit();
+            return split == null ? null : new IntSpliterator(split, op, flags);
+        }
+    }
+
+    static final class LongSpliterator extends FusedSpliterator<Long, Spliterator.OfLong>
+        implements Spliterator.OfLong {
+
+        final Op<LongCell> op;
+        final LongCell cell = new LongCell();
+
+        LongSpliterator(Spliterator.OfLong s, Op<LongCell> op, int flags) {
+            super(s, flags);
+            this.op = op;
+        }
+
+        public boolean tryAdvance(LongConsumer action) {
+            LongCell c = cell;
+            while (s.tryAdvance(c)) {
+                if (op.apply(c)) {
+                    action.accept(c.v);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void forEachRemaining(LongConsumer action) {
+            LongCell c = cell;
+            Op<LongCell> op = this.op;
+            s.forEachRemaining((long v) -> {
+                c.v = v;
+                if (op.apply(c)) {
+                    action.accept(c.v);
+                }
+            });
+        }
+
+        public Spliterator.OfLong trySplit() {
+            Spliterator.OfLong split = s.trySplit();
+            return split == null ? null : new LongSpliterator(split, op, flags);
+        }
+    }
+
+    static final class DoubleSpliterator extends FusedSpliterator<Double, Spliterator.OfDouble>
+        implements Spliterator.OfDouble {
+
+        final Op<DoubleCell> op;
+        final DoubleCell cell = new DoubleCell();
+
+        DoubleSpliterator(Spliterator.OfDouble s, Op<DoubleCell> op, int flags) {
+            super(s, flags);
+            this.op = op;
+        }
+
+        public boolean tryAdvance(DoubleConsumer action) {
+            DoubleCell c = cell;
+            while (s.tryAdvance(c)) {
+                if (op.apply(c)) {
+                    action.accept(c.v);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void forEachRemaining(DoubleConsumer action) {
+            DoubleCell c = cell;
+            Op<DoubleCell> op = this.op;
+            s.forEachRemaining((double v) -> {
+                c.v = v;
+                if (op.apply(c)) {
+                    action.accept(c.v);
+                }
+            });
+        }
+
+        public Spliterator.OfDouble trySplit() {
+            Spliterator.OfDouble split = s.trySplit();
+            return split == null ? null : new DoubleSpliterator(split, op, flags);
+        }
+    }
+}
@@ -20,6 +20,10 @@ public final class IO {
 
     public static <T> Consumer<T> consumer(Consumer<T> c) { return c; }
 
+    public static <T> Supplier<T> supplier(Supplier<T> s) { return s; }
+
+    public static <R> IntFunction<R> intFunction(IntFunction<R> f) { return f; }
+
     /**
      * An {@link IOException} wrapping {@link java.util.function.Function}
      */
@@ -56,4 +60,40 @@ public final class IO {
             }
         }
     }
+
+    /**
+     * An {@link IOException} wrapping {@link java.util.function.IntFunction}
+     */
+    @FunctionalInterface
+    public interface IntFunction<R> extends java.util.function.IntFunction<R> {
+
+        R applyIO(int value) throws IOException;
+
+        @Override
+        default R apply(int value) {
+            try {
+                return applyIO(value);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+    }
+
+    /**
+     * An {@link IOException} wrapping {@link java.util.function.Supplier}
+     */
+    @FunctionalInterface
+    public interface Supplier<T> extends java.util.function.Supplier<T> {
+
+        T getIO() throws IOException;
+
+        @Override
+        default T get() {
+            try {
+                return getIO();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+    }
 }
@@ -0,0 +1,216 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * An open-addressing hash map from {@code int} keys to {@code long} values that does not box.
+ * Not thread-safe.
+ *
+ * @see PrimitiveCollectors#groupingByInt
+ */
+public final class IntLongMap {
+
+    /**
+     * Action performed on each entry of an {@link IntLongMap}.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(int key, long value);
+    }
+
+    // key 0 marks an empty slot, so the entry with key 0 is kept aside
+    private int[] keys;
+    private long[] values;
+    private int size; // excluding the entry with key 0
+    private boolean hasZero;
+    private long zeroValue;
+
+    public IntLongMap() {
+        this(8);
+    }
+
+    /**
+     * @param expectedSize the number of entries the map can hold without resizing
+     */
+    public IntLongMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, Math.min(1 << 29, expectedSize)) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new long[capacity];
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key || k == 0) {
+                return i;
+            }
+        }
+    }
+
+    public int size() {
+        return hasZero ? size + 1 : size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return key == 0 ? hasZero : keys[slot(key)] == key;
+    }
+
+    /**
+     * @return the value mapped to given key or {@code defaultValue} if there's no such mapping
+     */
+    public long get(int key, long defaultValue) {
+        if (key == 0) {
+            return hasZero ? zeroValue : defaultValue;
+        }
+        int i = slot(key);
+        return keys[i] == key ? values[i] : defaultValue;
+    }
+
+    public void put(int key, long value) {
+        if (key == 0) {
+            hasZero = true;
+            zeroValue = value;
+            return;
+        }
+        int i = slot(key);
+        if (keys[i] == 0) {
+            keys[i] = key;
+            if (++size * 2 > keys.length) {
+                values[i] = value;
+                resize();
+                return;
+            }
+        }
+        values[i] = value;
+    }
+
+    /**
+     * Adds given delta to the value mapped to given key (or 0 if there's no such mapping).
+     */
+    public void add(int key, long delta) {
+        if (key == 0) {
+            zeroValue = hasZero ? zeroValue + delta : delta;
+            hasZero = true;
+            return;
+        }
+        int i = slot(key);
+        if (keys[i] == 0) {
+            keys[i] = key;
+            values[i] = delta;
+            if (++size * 2 > keys.length) {
+                resize();
+            }
+        } else {
+            values[i] += delta;
+        }
+    }
+
+    /**
+     * Maps given key to given value if there's no mapping for it yet, otherwise to the result of given function
+     * applied to the current and given value.
+     */
+    public void merge(int key, long value, LongBinaryOperator function) {
+        if (key == 0) {
+            zeroValue = hasZero ? function.applyAsLong(zeroValue, value) : value;
+            hasZero = true;
+            return;
+        }
+        int i = slot(key);
+        if (keys[i] == 0) {
+            keys[i] = key;
+            values[i] = value;
+            if (++size * 2 > keys.length) {
+                resize();
+            }
+        } else {
+            values[i] = function.applyAsLong(values[i], value);
+        }
+    }
+
+    /**
+     * {@link #merge Merges} all the entries of given map into this map.
+     */
+    public void mergeAll(IntLongMap other, LongBinaryOperator function) {
+        other.forEach((k, v) -> merge(k, v, function));
+    }
+
+    public void forEach(EntryConsumer action) {
+        if (hasZero) {
+            action.accept(0, zeroValue);
+        }
+        int[] ks = keys;
+        long[] vs = values;
+        for (int i = 0; i < ks.length; i++) {
+            if (ks[i] != 0) {
+                action.accept(ks[i], vs[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the keys of this map in ascending order
+     */
+    public int[] keys() {
+        int[] result = new int[size()];
+        int n = 0;
+        if (hasZero) {
+            result[n++] = 0;
+        }
+        for (int k : keys) {
+            if (k != 0) {
+                result[n++] = k;
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * @return a boxed copy of this map ordered by key
+     */
+    public Map<Integer, Long> toMap() {
+        Map<Integer, Long> map = new LinkedHashMap<>();
+        for (int k : keys()) {
+            map.put(k, get(k, 0L));
+        }
+        return map;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new long[oldValues.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            int k = oldKeys[i];
+            if (k != 0) {
+                int j = slot(k);
+                keys[j] = k;
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
@@ -5,6 +5,13 @@
  */
 package si.pele.streamx;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
 import java.util.function.*;
 import java.util.stream.IntStream;
 
@@ -34,14 +41,87 @@ public interface IntStreamable {
         return AC.intStream(stream());
     }
 
+    /**
+     * @return a factory of streams of elements of given block file written by {@link #writeTo(Path)}. The file is
+     *         memory-mapped and elements are read directly from the mapping without decoding. The streams are
+     *         sized and split at block boundaries. Closing the stream (explicitly or by {@link AC} wrapper) closes
+     *         the file and releases the mappings.
+     */
+    static IntStreamable readFrom(Path path) {
+        Objects.requireNonNull(path);
+        return () -> {
+            try {
+                return BlockFile.readInts(path);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        };
+    }
+
+    /**
+     * @return a factory of streams of ints parsed from fields of text elements of given streamable separated by
+     *         given delimiter. Spaces and tabs around fields are ignored and blank elements have no fields. Fields are
+     *         parsed in place without creating strings or boxing. A field that is not a decimal int throws
+     *         {@link NumberFormatException}. The streams split when the source splits.
+     */
+    static IntStreamable parseInts(Streamable<? extends CharSequence> source, char delimiter) {
+        Objects.requireNonNull(source);
+        return () -> Numbers.parseInts(source.stream(), delimiter);
+    }
+
+    /**
+     * A variant of {@link IntStreamable} that wraps any {@link IOException} thrown by the
+     * {@link #streamIO()} method with an {@link UncheckedIOException}.
+     */
+    interface IO extends IntStreamable {
+
+        IntStream streamIO() throws IOException;
+
+        default IntStream stream() {
+            try {
+                return streamIO();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+        /**
+         * @return a factory of streams of ints stored in given file as consecutive {@value Integer#BYTES}-byte
+         *         values in given byte order. The file is memory-mapped (or read into a pooled buffer when small)
+         *         and elements are read directly from it. The streams are sized and split at element boundaries.
+         *         Closing the stream (explicitly or by {@link AC} wrapper) closes the file and releases the mappings.
+         */
+        static IO ints(Path path, ByteOrder order) {
+            Objects.requireNonNull(path);
+            Objects.requireNonNull(order);
+            return () -> Numbers.ints(path, order);
+        }
+
+        /**
+         * @return a factory of streams of ints written in decimal in given ASCII text file. Numbers are runs of
+         *         digits optionally preceded by a sign that is immediately followed by a digit; any other byte
+         *         separates them, and a sign right after a digit starts the next number (so {@code 2024-01-05}
+         *         is read as {@code 2024}, {@code -1} and {@code -5}). Numbers are parsed directly from the
+         *         memory-mapped (or pooled) bytes without creating strings. A number that does not fit
+         *         in {@code int} throws {@link NumberFormatException}. The streams split at separators.
+         *         Closing the stream (explicitly or by {@link AC} wrapper) closes the file and releases the mappings.
+         */
+        static IO parseInts(Path path) {
+            Objects.requireNonNull(path);
+            return () -> Numbers.parseInts(path);
+        }
+    }
+
     // non-terminal operations
 
+    // filter, map and peek are fused into a single stage over raw sources (see Fused)
+
     default IntStreamable filter(IntPredicate predicate) {
-        return () -> stream().filter(predicate);
+        return Fused.filter(this, predicate);
     }
 
     default IntStreamable map(IntUnaryOperator mapper) {
-        return () -> stream().map(mapper);
+        return Fused.map(this, mapper);
     }
 
     default <U> Streamable<U> mapToObj(IntFunction<U> mapper) {
@@ -60,16 +140,114 @@ public interface IntStreamable {
         return () -> stream().flatMap(mapper);
     }
 
+    /**
+     * @return a factory of streams of distinct elements, found with an unboxed hash set as they are consumed (all
+     *         elements are consumed first when the stream is split for parallel processing). Distinct elements are
+     *         kept in memory without bound.
+     * @see #distinct(long)
+     */
     default IntStreamable distinct() {
-        return () -> stream().distinct();
+        return () -> Spilling.distinct(stream());
+    }
+
+    /**
+     * @return a factory of streams of distinct elements (in encounter order if the source is ordered).
+     *         Elements are not boxed. First occurrences are buffered in heap while they (and the hash set finding
+     *         them) fit in given number of bytes, otherwise in off-heap memory of at most that size, spilling to
+     *         temporary files. All source elements are consumed sequentially when the stream is first traversed.
+     *         Closing the stream deletes spill files.
+     */
+    default IntStreamable distinct(long memoryBudget) {
+        Spilling.checkBudget(memoryBudget);
+        return () -> Spilling.distinct(stream(), memoryBudget);
     }
 
+    /**
+     * @return a factory of streams of sorted elements, buffered in memory without bound.
+     * @see #sorted(long)
+     */
     default IntStreamable sorted() {
         return () -> stream().sorted();
     }
 
+    /**
+     * @return a factory of streams of sorted elements. Elements are not boxed. While they fit in given number
+     *         of bytes they are sorted in a heap array (in parallel when the stream is parallel), otherwise they
+     *         are buffered in off-heap memory of at most that size and sorted runs are spilled to temporary files
+     *         and merged. All source elements are consumed sequentially when the stream is first traversed.
+     *         Closing the stream deletes spill files.
+     */
+    default IntStreamable sorted(long memoryBudget) {
+        Spilling.checkBudget(memoryBudget);
+        return () -> Spilling.sorted(stream(), memoryBudget);
+    }
+
     default IntStreamable peek(IntConsumer consumer) {
-        return () -> stream().peek(consumer);
+        return Fused.peek(this, consumer);
+    }
+
+    /**
+     * @return a factory of streams of consecutive batches of given size.
+     * @see Streamable#batch(int)
+     */
+    default Streamable<int[]> batch(int size) {
+        Batches.checkSize(size);
+        return () -> Batches.of(stream(), size);
+    }
+
+    /**
+     * @return a factory of streams of windows of given size starting every {@code slide} elements.
+     * @see Streamable#windowByCount(int, int)
+     */
+    default Streamable<int[]> windowByCount(int size, int slide) {
+        Windows.checkCount(size, slide);
+        return () -> Windows.byCount(stream(), size, slide);
+    }
+
+    /**
+     * @return a factory of streams of consecutive windows of elements taken from the source during given duration.
+     * @see Streamable#windowByTime(Duration)
+     */
+    default Streamable<int[]> windowByTime(Duration duration) {
+        Windows.checkDuration(duration);
+        return () -> Windows.byTime(stream(), duration);
+    }
+
+    /**
+     * @return a factory of streams passing elements evenly spaced in time at no more than given rate.
+     * @see Streamable#throttle(double)
+     */
+    default IntStreamable throttle(double permitsPerSecond) {
+        long intervalNanos = Throttle.checkRate(permitsPerSecond);
+        return () -> Throttle.stream(stream(), intervalNanos);
+    }
+
+    /**
+     * @return an {@link IntStreamable} that records elements into {@link StreamCache#shared() shared cache}
+     *         the first time its stream is completely consumed and replays them from memory on later calls.
+     * @see Streamable#cached(StreamCache, ToLongFunction, Supplier)
+     */
+    default IntStreamable cached() {
+        return cached(StreamCache.shared());
+    }
+
+    /**
+     * @return an {@link IntStreamable} that records elements into given cache the first time its stream
+     *         is completely consumed and replays them from memory on later calls.
+     * @see Streamable#cached(StreamCache, ToLongFunction, Supplier)
+     */
+    default IntStreamable cached(StreamCache cache) {
+        return cached(cache, null);
+    }
+
+    /**
+     * @return an {@link IntStreamable} that records elements into a primitive array in given cache the first time
+     *         its stream is completely consumed and replays them from memory on later calls as long as they are
+     *         neither evicted nor invalidated by a change of the {@code version} stamp.
+     * @see Streamable#cached(StreamCache, ToLongFunction, Supplier)
+     */
+    default IntStreamable cached(StreamCache cache, Supplier<?> version) {
+        return new Cached.IntCached(this, cache, version);
     }
 
     default IntStreamable limit(long maxSize) {
@@ -91,4 +269,43 @@ public interface IntStreamable {
     default Streamable<Integer> boxed() {
         return () -> stream().boxed();
     }
+
+    // terminal operations
+
+    /**
+     * Writes the elements of a newly constructed stream, in encounter order, to given file as raw little-endian
+     * columns in a block format that is read back by {@link #readFrom(Path)}. The file is first written to
+     * a temporary file in the same directory which then replaces the target file. The stream is closed afterwards.
+     *
+     * @return the number of elements written
+     * @throws UncheckedIOException if writing fails
+     * @see Streamable#writeTo(Path, Codec)
+     */
+    default long writeTo(Path path) {
+        try {
+            return BlockFile.write(stream(), path);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * @return the result of a mutable reduction of a newly constructed stream with given primitive collector.
+     *         The stream is closed afterwards.
+     * @see PrimitiveCollectors
+     */
+    default <A, R> R collect(PrimitiveCollectors.IntCollector<A, R> collector) {
+        return AC.collect(stream(), collector);
+    }
+
+    /**
+     * Feeds the elements of a single newly constructed stream to all given primitive collectors, so that several
+     * results are computed in one pass over the source. The stream is closed afterwards.
+     *
+     * @return an unmodifiable list of the results of given collectors in the same order
+     * @see Streamable#fork(List)
+     */
+    default List<Object> fork(PrimitiveCollectors.IntCollector<?, ?>... collectors) {
+        return collect(Fork.ofInt(collectors));
+    }
 }
@@ -0,0 +1,196 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A {@link Spliterator} that maps elements of a source spliterator with a (blocking) function executed
+ * concurrently by an {@link Executor}. At most {@code maxConcurrency} elements are taken from the source
+ * and not yet delivered at any time, so a slow consumer holds back the source. Results are delivered
+ * either in encounter order or in completion order.<p>
+ * An exception thrown by the function is re-thrown to the consumer. Closing the stream cancels (interrupts)
+ * outstanding tasks and closes the source.
+ */
+final class MapConcurrent<T, R> implements Spliterator<R>, Consumer<T> {
+
+    static void checkConcurrency(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+    }
+
+    static <T, R> Stream<R> stream(Stream<T> s,
+                                   int maxConcurrency,
+                                   Function<? super T, ? extends R> mapper,
+                                   boolean ordered,
+                                   Executor executor) {
+        checkConcurrency(maxConcurrency);
+        MapConcurrent<T, R> mc = new MapConcurrent<>(s, maxConcurrency, mapper, ordered, executor);
+        return StreamSupport.stream(mc, false).onClose(mc::close);
+    }
+
+    private final Stream<T> s;
+    private final Spliterator<T> source;
+    private final int maxConcurrency;
+    private final Function<? super T, ? extends R> mapper;
+    private final boolean ordered;
+    private final Executor executor;
+
+    // tasks taken from source and not yet delivered, in submission order
+    private final ArrayDeque<Task> pending = new ArrayDeque<>();
+    // completed tasks in completion order (unordered variant only)
+    private final BlockingQueue<Task> completed = new LinkedBlockingQueue<>();
+    private boolean sourceExhausted;
+    private volatile boolean closed;
+
+    private MapConcurrent(Stream<T> s,
+                          int maxConcurrency,
+                          Function<? super T, ? extends R> mapper,
+                          boolean ordered,
+                          Executor executor) {
+        this.s = s;
+        this.source = s.spliterator();
+        this.maxConcurrency = maxConcurrency;
+        this.mapper = mapper;
+        this.ordered = ordered;
+        this.executor = executor;
+    }
+
+    private final class Task extends FutureTask<R> {
+        Task(T t) {
+            super(() -> mapper.apply(t));
+        }
+
+        @Override
+        protected void done() {
+            if (!ordered) {
+                completed.add(this);
+            }
+        }
+    }
+
+    /**
+     * Submits an element taken from the source.
+     */
+    @Override
+    public void accept(T t) {
+        Task task = new Task(t);
+        synchronized (pending) {
+            if (closed) {
+                return;
+            }
+            pending.add(task);
+        }
+        executor.execute(task);
+    }
+
+    private int pendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    private void fill() {
+        while (!sourceExhausted && !closed && pendingCount() < maxConcurrency) {
+            if (!source.tryAdvance(this)) {
+                sourceExhausted = true;
+            }
+        }
+    }
+
+    private Task next() throws InterruptedException {
+        Task task;
+        if (ordered) {
+            synchronized (pending) {
+                task = pending.poll();
+            }
+        } else {
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    return null;
+                }
+            }
+            task = completed.take();
+            synchronized (pending) {
+                pending.remove(task);
+            }
+        }
+        return task;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super R> action) {
+        if (closed) {
+            throw new IllegalStateException("Stream closed");
+        }
+        fill();
+        R r;
+        try {
+            Task task = next();
+            if (task == null) {
+                return false;
+            }
+            r = task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new CancellationException("Interrupted while waiting for mapped element");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new CompletionException(cause);
+        }
+        // keep the executor busy while downstream consumes the result
+        fill();
+        action.accept(r);
+        return true;
+    }
+
+    @Override
+    public Spliterator<R> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ordered ? source.characteristics() & ORDERED : 0;
+    }
+
+    private void cancel() {
+        List<Task> tasks;
+        synchronized (pending) {
+            closed = true;
+            tasks = new ArrayList<>(pending);
+            pending.clear();
+        }
+        for (Task task : tasks) {
+            task.cancel(true);
+        }
+    }
+
+    void close() {
+        try {
+            cancel();
+        } finally {
+            s.close();
+        }
+    }
+}
@@ -0,0 +1,780 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A read-only file that is memory-mapped on demand in windows. Each window is owned by a single
+ * spliterator which unmaps it as soon as it moves past it. Windows still mapped when the file is
+ * {@link #close() closed} are unmapped at that time, so a file must not be closed while it is still
+ * being traversed by another thread.<p>
+ * Files no larger than the buffers of {@link BufferPool#SHARED shared pool} are not mapped, but read at once
+ * into a pooled buffer (and the channel closed) instead, since mapping and unmapping a small file costs more
+ * than reading it. Windows are then views of that buffer, which is returned to the pool when the file is closed.
+ */
+final class MappedFile implements Closeable {
+
+    /**
+     * Default size of a mapped window. Records longer than that get a larger window.
+     */
+    static final int WINDOW_SIZE = 1 << 26; // 64 MiB
+
+    final FileChannel channel; // null when loaded
+    final long size;
+    private final ByteBuffer loaded; // contents of a small file or null when mapped
+    private final Set<ByteBuffer> windows = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean closed;
+
+    private MappedFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.loaded = null;
+    }
+
+    private MappedFile(ByteBuffer loaded) {
+        this.channel = null;
+        this.size = loaded.limit();
+        this.loaded = loaded;
+    }
+
+    static MappedFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MappedFile(channel);
+        } catch (IOException | RuntimeException e) {
+            try { channel.close(); } catch (IOException ce) { e.addSuppressed(ce); }
+            throw e;
+        }
+    }
+
+    /**
+     * Opens given file and, if it is small enough, reads it into a pooled buffer and closes the channel.
+     */
+    static MappedFile openPooled(Path path) throws IOException {
+        MappedFile file = open(path);
+        if (file.size > BufferPool.SHARED.bufferSize) {
+            return file;
+        }
+        ByteBuffer buffer = null;
+        try (FileChannel channel = file.channel) {
+            buffer = BufferPool.SHARED.acquire((int) file.size);
+            buffer.limit((int) file.size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            }
+            buffer.flip();
+            MappedFile loaded = new MappedFile(buffer);
+            buffer = null;
+            return loaded;
+        } finally {
+            if (buffer != null) {
+                BufferPool.SHARED.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * @return a {@link Stream} of lines of given file, decoded with given charset. For charsets in which
+     *         the byte {@code '\n'} always encodes a line feed (UTF-8, ISO-8859-1 and US-ASCII) the file is
+     *         memory-mapped and the stream splits at line boundaries when made parallel, otherwise this is
+     *         like {@link Files#lines(Path, Charset)}, except that small files are decoded at once with pooled
+     *         buffers and decoders (see {@link CharLines}). Lines are terminated by {@code "\n"}, {@code "\r"}
+     *         or {@code "\r\n"} as in {@link BufferedReader#readLine()}. Closing the stream closes the
+     *         file and unmaps any mapped regions or returns pooled buffers.
+     */
+    static Stream<String> lines(Path path, Charset cs) throws IOException {
+        return lines(path, cs, NO_FILTERS);
+    }
+
+    private static Stream<String> lines(Path path, Charset cs, LineFilter[] filters) throws IOException {
+        MappedFile file = openPooled(path);
+        if (!isAsciiCompatible(cs)) {
+            if (file.loaded == null) {
+                BufferedReader reader = new BufferedReader(Channels.newReader(file.channel, cs.newDecoder(), -1));
+                return reader.lines().onClose(file::closeUnchecked);
+            }
+            try {
+                return CharLines.stream(file.loaded, cs);
+            } finally {
+                file.close();
+            }
+        }
+        return StreamSupport
+            .stream(new Lines(file, 0L, file.size, cs, filters), false)
+            .onClose(file::closeUnchecked);
+    }
+
+    private static boolean isAsciiCompatible(Charset cs) {
+        return cs.equals(StandardCharsets.UTF_8) ||
+               cs.equals(StandardCharsets.ISO_8859_1) ||
+               cs.equals(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Maps a region of this file and registers it so that it is unmapped when this file is closed
+     * if not {@link #unmap unmapped} before.
+     */
+    ByteBuffer map(long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Record longer than " + Integer.MAX_VALUE + " bytes at position " + position);
+        }
+        synchronized (windows) {
+            if (closed) {
+                throw new IOException("File closed");
+            }
+            if (loaded != null) {
+                return loaded.duplicate().position((int) position).limit((int) (position + size)).slice();
+            }
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            windows.add(window);
+            return window;
+        }
+    }
+
+    /**
+     * Unmaps a region previously obtained from {@link #map}.
+     */
+    void unmap(ByteBuffer window) {
+        boolean registered;
+        synchronized (windows) {
+            registered = windows.remove(window);
+        }
+        if (registered) {
+            UNMAPPER.accept(window);
+        }
+    }
+
+    /**
+     * @return the position of the first byte equal to {@code b} in the range {@code [from, to)}
+     *         or -1 if there's no such byte.
+     */
+    long indexOf(byte b, long from, long to) throws IOException {
+        return indexOf(b, b, from, to);
+    }
+
+    /**
+     * @return the position of the first byte equal to {@code b1} or {@code b2} in the range {@code [from, to)}
+     *         or -1 if there's no such byte.
+     */
+    long indexOf(byte b1, byte b2, long from, long to) throws IOException {
+        if (loaded != null) {
+            for (int i = (int) from; i < to; i++) {
+                byte b = loaded.get(i);
+                if (b == b1 || b == b2) {
+                    return i;
+                }
+            }
+            return -1L;
+        }
+        return indexOf(channel, b1, b2, from, to);
+    }
+
+    /**
+     * @return the position of the first byte equal to {@code b} in the range {@code [from, to)} of given
+     *         channel or -1 if there's no such byte. The position of the channel is not changed.
+     */
+    static long indexOf(FileChannel channel, byte b, long from, long to) throws IOException {
+        return indexOf(channel, b, b, from, to);
+    }
+
+    private static long indexOf(FileChannel channel, byte b1, byte b2, long from, long to) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min(8192L, to - from));
+        for (long pos = from; pos < to; ) {
+            buf.clear();
+            if (buf.remaining() > to - pos) {
+                buf.limit((int) (to - pos));
+            }
+            int n = channel.read(buf, pos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                byte b = buf.get(i);
+                if (b == b1 || b == b2) {
+                    return pos + i;
+                }
+            }
+            pos += n;
+        }
+        return -1L;
+    }
+
+    @Override
+    public void close() throws IOException {
+        List<ByteBuffer> toUnmap;
+        synchronized (windows) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toUnmap = new ArrayList<>(windows);
+            windows.clear();
+        }
+        if (loaded != null) {
+            BufferPool.SHARED.release(loaded);
+            return;
+        }
+        try {
+            channel.close();
+        } finally {
+            toUnmap.forEach(UNMAPPER);
+        }
+    }
+
+    void closeUnchecked() {
+        try {
+            close();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Unmaps a mapped or frees a direct {@link ByteBuffer} immediately if the platform allows it,
+     * otherwise leaves it to GC. The buffer must not be accessed any more.
+     */
+    static void release(ByteBuffer buffer) {
+        UNMAPPER.accept(buffer);
+    }
+
+    private static final Consumer<ByteBuffer> UNMAPPER = unmapper();
+
+    private static Consumer<ByteBuffer> unmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            return buffer -> {
+                try {
+                    invokeCleaner.invoke(unsafe, buffer);
+                } catch (ReflectiveOperationException e) {
+                    // leave it to GC
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return buffer -> {};
+        }
+    }
+
+    /**
+     * A {@link Spliterator} over records in the range {@code [index, fence)} of a {@link MappedFile},
+     * terminated by a delimiter byte (or the end of range). Lines are terminated by {@code "\n"}, {@code "\r"}
+     * or {@code "\r\n"} instead. It splits at record boundaries.
+     */
+    abstract static class Delimited<T> implements Spliterator<T> {
+
+        private static final byte LF = '\n', CR = '\r';
+
+        final MappedFile file;
+        final byte delimiter;
+        final boolean lines; // records are lines (delimiter is ignored)
+        long index;
+        final long fence;
+
+        private ByteBuffer window;
+        private long windowStart;
+
+        Delimited(MappedFile file, byte delimiter, long index, long fence) {
+            this(file, delimiter, false, index, fence);
+        }
+
+        Delimited(MappedFile file, boolean lines, long index, long fence) {
+            this(file, LF, lines, index, fence);
+        }
+
+        private Delimited(MappedFile file, byte delimiter, boolean lines, long index, long fence) {
+            this.file = file;
+            this.delimiter = delimiter;
+            this.lines = lines;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        /**
+         * @return a new spliterator of the same kind for range {@code [index, fence)}.
+         */
+        abstract Delimited<T> split(long index, long fence);
+
+        /**
+         * @return a record constructed from bytes {@code [from, to)} of given window
+         *         (excluding the delimiter) or {@code null} if the record is to be skipped.
+         */
+        abstract T record(ByteBuffer window, int from, int to);
+
+        private T next() {
+            try {
+                int windowLimit = window == null ? 0 : window.limit();
+                if (index < windowStart || index >= windowStart + windowLimit) {
+                    remap(WINDOW_SIZE);
+                    windowLimit = window.limit();
+                }
+                int from = (int) (index - windowStart);
+                int i = from;
+                while (true) {
+                    for (; i < windowLimit; i++) {
+                        byte b = window.get(i);
+                        if (b == delimiter) {
+                            index = windowStart + i + 1;
+                            return record(window, from, i);
+                        }
+                        if (lines && b == CR) {
+                            if (i + 1 < windowLimit) {
+                                index = windowStart + i + (window.get(i + 1) == LF ? 2 : 1);
+                                return record(window, from, i);
+                            }
+                            if (windowStart + windowLimit >= fence) {
+                                index = fence;
+                                return record(window, from, i);
+                            }
+                            break; // "\r" may be followed by "\n" in the next window
+                        }
+                    }
+                    if (windowStart + windowLimit >= fence) {
+                        index = fence;
+                        return record(window, from, windowLimit);
+                    }
+                    // record crosses the end of window - remap starting at the record
+                    long scanned = windowStart + i;
+                    remap(Math.max(WINDOW_SIZE, 2L * (i - from)));
+                    windowLimit = window.limit();
+                    from = 0;
+                    i = (int) (scanned - windowStart);
+                }
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+        private void remap(long size) throws IOException {
+            release();
+            window = file.map(index, Math.min(fence - index, size));
+            windowStart = index;
+        }
+
+        private void release() {
+            ByteBuffer w = window;
+            if (w != null) {
+                window = null;
+                file.unmap(w);
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            while (index < fence) {
+                T record = next();
+                if (record != null) {
+                    action.accept(record);
+                    return true;
+                }
+            }
+            release();
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            while (index < fence) {
+                T record = next();
+                if (record != null) {
+                    action.accept(record);
+                }
+            }
+            release();
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            long lo = index, mid = (lo + fence) >>> 1;
+            if (mid <= lo) {
+                return null;
+            }
+            long split;
+            try {
+                if (lines) {
+                    split = file.indexOf(LF, CR, mid, fence);
+                    if (split >= 0 && split + 1 < fence && file.indexOf(LF, split, split + 1) < 0 &&
+                        file.indexOf(LF, split + 1, split + 2) == split + 1) {
+                        split++; // split after "\r\n"
+                    }
+                } else {
+                    split = file.indexOf(delimiter, mid, fence);
+                }
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            if (split < 0 || split + 1 >= fence) {
+                return null;
+            }
+            index = split + 1;
+            return split(lo, index);
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+
+    /**
+     * Lines of text in an ASCII compatible charset, terminated by {@code "\n"}, {@code "\r"} or {@code "\r\n"},
+     * optionally filtered before decoding.
+     */
+    static final class Lines extends Delimited<String> {
+
+        private final Charset cs;
+        private final LineFilter[] filters;
+        private byte[] bytes;
+        private ByteBuffer view, viewOf;
+
+        Lines(MappedFile file, long index, long fence, Charset cs, LineFilter[] filters) {
+            super(file, true, index, fence);
+            this.cs = cs;
+            this.filters = filters;
+        }
+
+        @Override
+        Lines split(long index, long fence) {
+            return new Lines(file, index, fence, cs, filters);
+        }
+
+        @Override
+        String record(ByteBuffer window, int from, int to) {
+            for (LineFilter filter : filters) {
+                if (!filter.test(window, from, to)) {
+                    return null;
+                }
+            }
+            int len = to - from;
+            if (bytes == null || bytes.length < len) {
+                bytes = new byte[Math.max(len, 128)];
+            }
+            if (viewOf != window) {
+                view = window.duplicate();
+                viewOf = window;
+            }
+            view.position(from);
+            view.get(bytes, 0, len);
+            return new String(bytes, 0, len, cs);
+        }
+    }
+
+    /**
+     * Lines of a small file in a charset that is not ASCII compatible, decoded at once into a pooled char buffer
+     * with a pooled decoder. Lines are terminated by {@code "\n"}, {@code "\r"} or {@code "\r\n"} as in
+     * {@link BufferedReader#readLine()}. It splits at line boundaries.
+     */
+    static final class CharLines implements Spliterator<String> {
+
+        /**
+         * @return a stream of lines decoded from given bytes which returns the char buffer to the pool when closed.
+         */
+        static Stream<String> stream(ByteBuffer bytes, Charset cs) throws IOException {
+            BufferPool pool = BufferPool.SHARED;
+            CharsetDecoder decoder = pool.decoder(cs);
+            CharBuffer chars;
+            try {
+                int capacity = (int) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte());
+                while (true) {
+                    chars = pool.acquireChars(capacity);
+                    CoderResult result = decoder.decode(bytes.duplicate(), chars, true);
+                    if (result.isUnderflow()) {
+                        result = decoder.flush(chars);
+                    }
+                    if (!result.isOverflow()) {
+                        if (result.isError()) {
+                            pool.releaseChars(chars);
+                            result.throwException();
+                        }
+                        break;
+                    }
+                    pool.releaseChars(chars);
+                    capacity = chars.capacity() * 2;
+                    decoder.reset();
+                }
+            } finally {
+                pool.release(decoder);
+            }
+            chars.flip();
+            CharBuffer buffer = chars;
+            return StreamSupport
+                .stream(new CharLines(chars.array(), 0, chars.limit()), false)
+                .onClose(() -> pool.releaseChars(buffer));
+        }
+
+        private final char[] chars;
+        private int index;
+        private final int fence;
+
+        private CharLines(char[] chars, int index, int fence) {
+            this.chars = chars;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        /**
+         * @return the index after the line terminator at or after given index or {@code fence} if there's none.
+         */
+        private int nextLine(int i) {
+            for (; i < fence; i++) {
+                char c = chars[i];
+                if (c == '\n') {
+                    return i + 1;
+                }
+                if (c == '\r') {
+                    return i + 1 < fence && chars[i + 1] == '\n' ? i + 2 : i + 1;
+                }
+            }
+            return fence;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super String> action) {
+            if (index >= fence) {
+                return false;
+            }
+            int from = index;
+            index = nextLine(from);
+            int to = index;
+            if (to > from && chars[to - 1] == '\n') to--;
+            if (to > from && chars[to - 1] == '\r') to--;
+            action.accept(new String(chars, from, to - from));
+            return true;
+        }
+
+        @Override
+        public Spliterator<String> trySplit() {
+            int lo = index, mid = nextLine((lo + fence) >>> 1);
+            if (mid >= fence) {
+                return null;
+            }
+            index = mid;
+            return new CharLines(chars, lo, mid);
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+
+    private static final LineFilter[] NO_FILTERS = new LineFilter[0];
+
+    /**
+     * A factory of streams of lines of a file which evaluates {@link Predicates.Text text predicates}
+     * pushed down to it on raw bytes of lines (when the charset is ASCII compatible).
+     */
+    static final class LineSource implements Streamable.IO<String>, Streamable.Pushdown<String> {
+
+        private final Path path;
+        private final Charset cs;
+        private final LineFilter[] filters;
+
+        LineSource(Path path, Charset cs) {
+            this(path, cs, NO_FILTERS);
+        }
+
+        private LineSource(Path path, Charset cs, LineFilter[] filters) {
+            this.path = path;
+            this.cs = cs;
+            this.filters = filters;
+        }
+
+        @Override
+        public Stream<String> streamIO() throws IOException {
+            return lines(path, cs, filters);
+        }
+
+        @Override
+        public Streamable<String> pushdown(Predicate<? super String> predicate) {
+            if (!(predicate instanceof Predicates.Text) || !isAsciiCompatible(cs)) {
+                return null;
+            }
+            LineFilter filter = LineFilter.of((Predicates.Text) predicate, cs);
+            if (filter == null) {
+                return null;
+            }
+            LineFilter[] fs = Arrays.copyOf(filters, filters.length + 1);
+            fs[filters.length] = filter;
+            return new LineSource(path, cs, fs);
+        }
+    }
+
+    /**
+     * A test of raw bytes of a line (excluding line terminator) equivalent to a {@link Predicates.Text}
+     * predicate on the decoded line.
+     */
+    abstract static class LineFilter {
+
+        abstract boolean test(ByteBuffer window, int from, int to);
+
+        /**
+         * @return a filter equivalent to given predicate for lines in given ASCII compatible charset
+         *         or {@code null} if there's none.
+         */
+        static LineFilter of(Predicates.Text predicate, Charset cs) {
+            if (predicate.kind == Predicates.Text.FIND) {
+                return new PatternFilter(predicate.pattern, cs);
+            }
+            String s = predicate.string;
+            // malformed input decodes to U+FFFD, which can't be matched on bytes
+            if (s.indexOf('\uFFFD') >= 0 || !cs.newEncoder().canEncode(s)) {
+                return null;
+            }
+            return new BytesFilter(predicate.kind == Predicates.Text.PREFIX, s.getBytes(cs));
+        }
+    }
+
+    /**
+     * Tests for a prefix or a substring on bytes. This is exact for UTF-8 too, since it is self-synchronizing.
+     */
+    static final class BytesFilter extends LineFilter {
+
+        private final boolean prefix;
+        private final byte[] needle;
+
+        BytesFilter(boolean prefix, byte[] needle) {
+            this.prefix = prefix;
+            this.needle = needle;
+        }
+
+        @Override
+        boolean test(ByteBuffer window, int from, int to) {
+            int n = needle.length;
+            if (prefix) {
+                return to - from >= n && regionMatches(window, from);
+            }
+            if (n == 0) {
+                return true;
+            }
+            byte first = needle[0];
+            for (int i = from, last = to - n; i <= last; i++) {
+                if (window.get(i) == first && regionMatches(window, i)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean regionMatches(ByteBuffer window, int at) {
+            for (int j = 0; j < needle.length; j++) {
+                if (window.get(at + j) != needle[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Finds a pattern in a {@link CharSequence} view of raw bytes, which is exact for ISO-8859-1 and US-ASCII and
+     * for lines of UTF-8 consisting of ASCII characters only. Other lines are decoded first.
+     */
+    static final class PatternFilter extends LineFilter {
+
+        private final Pattern pattern;
+        private final Charset cs;
+
+        PatternFilter(Pattern pattern, Charset cs) {
+            this.pattern = pattern;
+            this.cs = cs;
+        }
+
+        @Override
+        boolean test(ByteBuffer window, int from, int to) {
+            boolean latin1 = cs.equals(StandardCharsets.ISO_8859_1);
+            if (cs.equals(StandardCharsets.UTF_8)) {
+                for (int i = from; i < to; i++) {
+                    if (window.get(i) < 0) {
+                        ByteBuffer line = window.duplicate();
+                        line.limit(to).position(from);
+                        return pattern.matcher(cs.decode(line)).find();
+                    }
+                }
+            }
+            return pattern.matcher(new ByteChars(window, from, to, latin1)).find();
+        }
+    }
+
+    /**
+     * A {@link CharSequence} view of bytes in ISO-8859-1 or US-ASCII (where non-ASCII bytes decode to U+FFFD).
+     */
+    static final class ByteChars implements CharSequence {
+
+        private final ByteBuffer bytes;
+        private final int from, to;
+        private final boolean latin1;
+
+        ByteChars(ByteBuffer bytes, int from, int to, boolean latin1) {
+            this.bytes = bytes;
+            this.from = from;
+            this.to = to;
+            this.latin1 = latin1;
+        }
+
+        @Override
+        public int length() {
+            return to - from;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+            byte b = bytes.get(from + index);
+            return b >= 0 || latin1 ? (char) (b & 0xFF) : '\uFFFD';
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || start > end || end > to - from) {
+                throw new IndexOutOfBoundsException(start + ", " + end);
+            }
+            return new ByteChars(bytes, from + start, from + end, latin1);
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(this).toString();
+        }
+    }
+}
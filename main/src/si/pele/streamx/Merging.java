@@ -0,0 +1,400 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.BaseStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy operators combining streams of several {@link Streamable}s element by element: a k-way merge of sorted
+ * sources, zipping and a sort-merge join. They hold a constant number of elements per source (except for
+ * the join, which holds the elements of the right source with the current key). Their streams don't split
+ * and closing them closes all the source streams.
+ */
+final class Merging {
+
+    private Merging() {} // no instances
+
+    /**
+     * Opens streams of given sources, closing those already opened if opening one of them fails.
+     */
+    static List<Stream<?>> open(List<? extends Streamable<?>> sources) {
+        List<Stream<?>> streams = new ArrayList<>(sources.size());
+        try {
+            for (Streamable<?> source : sources) {
+                streams.add(Objects.requireNonNull(source.stream()));
+            }
+        } catch (Throwable t) {
+            try {
+                closeAll(streams);
+            } catch (Throwable ct) {
+                t.addSuppressed(ct);
+            }
+            throw t;
+        }
+        return streams;
+    }
+
+    /**
+     * Closes all given streams, re-throwing the first exception with the others suppressed.
+     */
+    static void closeAll(List<? extends BaseStream<?, ?>> streams) {
+        Throwable failure = null;
+        for (BaseStream<?, ?> s : streams) {
+            try {
+                s.close();
+            } catch (Throwable t) {
+                if (failure == null) failure = t;
+                else failure.addSuppressed(t);
+            }
+        }
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure instanceof Error) throw (Error) failure;
+    }
+
+    //
+    // k-way merge
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static <T> Stream<T> mergeSorted(Comparator<? super T> comparator, List<? extends Streamable<? extends T>> sources) {
+        List<Stream<?>> streams = open(sources);
+        Spliterator<? extends T>[] spliterators = new Spliterator[streams.size()];
+        for (int i = 0; i < spliterators.length; i++) {
+            spliterators[i] = ((Stream<? extends T>) streams.get(i)).spliterator();
+        }
+        return StreamSupport.stream(new MergeSpliterator<T>(comparator, spliterators), false)
+                            .onClose(() -> closeAll(streams));
+    }
+
+    /**
+     * The head element of a source of a merge.
+     */
+    private static final class Head<T> implements Consumer<T> {
+        final int index;
+        final Spliterator<? extends T> source;
+        T value;
+
+        Head(int index, Spliterator<? extends T> source) {
+            this.index = index;
+            this.source = source;
+        }
+
+        @Override
+        public void accept(T t) {
+            value = t;
+        }
+
+        boolean advance(Comparator<? super T> comparator, boolean first) {
+            T previous = value;
+            if (!source.tryAdvance(this)) {
+                value = null;
+                return false;
+            }
+            if (!first && comparator.compare(previous, value) > 0) {
+                throw new IllegalStateException("Source #" + index + " is not sorted: " + value + " after " + previous);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A k-way merge of sorted spliterators using a binary heap of their head elements. Elements that compare
+     * equal are taken from sources in order in which the sources are given, so the merge is stable.
+     */
+    static final class MergeSpliterator<T> implements Spliterator<T> {
+        private final Comparator<? super T> comparator;
+        private final Spliterator<? extends T>[] sources;
+        private Head<T>[] heap;
+        private int size;
+        private Head<T> current; // delivered last, not yet advanced
+
+        MergeSpliterator(Comparator<? super T> comparator, Spliterator<? extends T>[] sources) {
+            this.comparator = Objects.requireNonNull(comparator);
+            this.sources = sources;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void init() {
+            heap = new Head[sources.length];
+            for (int i = 0; i < sources.length; i++) {
+                Head<T> h = new Head<>(i, sources[i]);
+                if (h.advance(comparator, true)) {
+                    heap[size++] = h;
+                }
+            }
+            for (int i = (size >>> 1) - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        private boolean less(Head<T> a, Head<T> b) {
+            int c = comparator.compare(a.value, b.value);
+            return c < 0 || (c == 0 && a.index < b.index);
+        }
+
+        private void siftDown(int i) {
+            Head<T> h = heap[i];
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < size && less(heap[right], heap[child])) {
+                    child = right;
+                }
+                if (!less(heap[child], h)) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = h;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (heap == null) {
+                init();
+            } else if (current != null) {
+                if (!current.advance(comparator, false)) {
+                    heap[0] = heap[--size];
+                    heap[size] = null;
+                }
+                current = null;
+                if (size > 0) {
+                    siftDown(0);
+                }
+            }
+            if (size == 0) {
+                return false;
+            }
+            current = heap[0];
+            action.accept(current.value);
+            return true;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            long est = 0L;
+            for (Spliterator<? extends T> s : sources) {
+                est += s.estimateSize();
+                if (est < 0L) {
+                    return Long.MAX_VALUE;
+                }
+            }
+            return est;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED;
+        }
+    }
+
+    //
+    // zip
+
+    @SuppressWarnings("unchecked")
+    static <A, B, R> Stream<R> zip(Streamable<A> a, Streamable<B> b,
+                                   BiFunction<? super A, ? super B, ? extends R> zipper) {
+        Objects.requireNonNull(zipper);
+        List<Stream<?>> streams = open(Arrays.asList(a, b));
+        ZipSpliterator<A, B, R> zs = new ZipSpliterator<>(((Stream<A>) streams.get(0)).spliterator(),
+                                                          ((Stream<B>) streams.get(1)).spliterator(),
+                                                          zipper);
+        return StreamSupport.stream(zs, false).onClose(() -> closeAll(streams));
+    }
+
+    /**
+     * Pairs of elements at equal positions of two spliterators, until one of them is exhausted.
+     */
+    static final class ZipSpliterator<A, B, R> implements Spliterator<R> {
+        private final Spliterator<A> a;
+        private final Spliterator<B> b;
+        private final BiFunction<? super A, ? super B, ? extends R> zipper;
+        private final Consumer<A> setA = x -> this.x = x;
+        private final Consumer<B> setB = y -> this.y = y;
+        private A x;
+        private B y;
+
+        ZipSpliterator(Spliterator<A> a, Spliterator<B> b, BiFunction<? super A, ? super B, ? extends R> zipper) {
+            this.a = a;
+            this.b = b;
+            this.zipper = zipper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super R> action) {
+            if (!a.tryAdvance(setA) || !b.tryAdvance(setB)) {
+                return false;
+            }
+            R r = zipper.apply(x, y);
+            x = null;
+            y = null;
+            action.accept(r);
+            return true;
+        }
+
+        @Override
+        public Spliterator<R> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Math.min(a.estimateSize(), b.estimateSize());
+        }
+
+        @Override
+        public int characteristics() {
+            return a.characteristics() & b.characteristics() & (ORDERED | SIZED);
+        }
+    }
+
+    //
+    // sort-merge join
+
+    @SuppressWarnings("unchecked")
+    static <L, R, K, O> Stream<O> join(Streamable<L> left, Streamable<R> right,
+                                       Function<? super L, ? extends K> leftKey,
+                                       Function<? super R, ? extends K> rightKey,
+                                       Comparator<? super K> comparator,
+                                       BiFunction<? super L, ? super R, ? extends O> joiner) {
+        JoinSpliterator<L, R, K, O> js = new JoinSpliterator<>(leftKey, rightKey, comparator, joiner);
+        List<Stream<?>> streams = open(Arrays.asList(left, right));
+        js.left = ((Stream<L>) streams.get(0)).spliterator();
+        js.right = ((Stream<R>) streams.get(1)).spliterator();
+        return StreamSupport.stream(js, false).onClose(() -> closeAll(streams));
+    }
+
+    /**
+     * An inner join of two spliterators sorted by key. For each left element, the right elements with an equal key
+     * are buffered, so that they can be joined with the following left elements with the same key too.
+     */
+    static final class JoinSpliterator<L, R, K, O> implements Spliterator<O> {
+        private final Function<? super L, ? extends K> leftKey;
+        private final Function<? super R, ? extends K> rightKey;
+        private final Comparator<? super K> comparator;
+        private final BiFunction<? super L, ? super R, ? extends O> joiner;
+        Spliterator<L> left;
+        Spliterator<R> right;
+
+        private final Consumer<L> setL = l -> this.l = l;
+        private final Consumer<R> setR = r -> this.r = r;
+        private L l; // current left element
+        private K lk;
+        private boolean hasL;
+        private R r; // look-ahead right element
+        private K rk;
+        private boolean hasR, rightStarted, rightExhausted;
+        // right elements with the key of the current left element
+        private final List<R> group = new ArrayList<>();
+        private K groupKey;
+        private int groupIndex;
+
+        JoinSpliterator(Function<? super L, ? extends K> leftKey, Function<? super R, ? extends K> rightKey,
+                        Comparator<? super K> comparator, BiFunction<? super L, ? super R, ? extends O> joiner) {
+            this.leftKey = Objects.requireNonNull(leftKey);
+            this.rightKey = Objects.requireNonNull(rightKey);
+            this.comparator = Objects.requireNonNull(comparator);
+            this.joiner = Objects.requireNonNull(joiner);
+        }
+
+        private boolean nextLeft() {
+            K previous = lk;
+            boolean first = !hasL;
+            if (!left.tryAdvance(setL)) {
+                return false;
+            }
+            lk = leftKey.apply(l);
+            hasL = true;
+            if (!first && comparator.compare(previous, lk) > 0) {
+                throw new IllegalStateException("Left source is not sorted: " + lk + " after " + previous);
+            }
+            return true;
+        }
+
+        private boolean nextRight() {
+            if (hasR) {
+                return true;
+            }
+            if (rightExhausted) {
+                return false;
+            }
+            K previous = rk;
+            boolean first = !rightStarted;
+            if (!right.tryAdvance(setR)) {
+                rightExhausted = true;
+                r = null;
+                return false;
+            }
+            rk = rightKey.apply(r);
+            hasR = true;
+            rightStarted = true;
+            if (!first && comparator.compare(previous, rk) > 0) {
+                throw new IllegalStateException("Right source is not sorted: " + rk + " after " + previous);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super O> action) {
+            while (true) {
+                if (hasL && groupIndex < group.size()) {
+                    action.accept(joiner.apply(l, group.get(groupIndex++)));
+                    return true;
+                }
+                if (!nextLeft()) {
+                    return false;
+                }
+                groupIndex = 0;
+                if (!group.isEmpty() && comparator.compare(lk, groupKey) == 0) {
+                    continue; // same key as previous left element
+                }
+                group.clear();
+                groupKey = null;
+                while (nextRight()) {
+                    int c = comparator.compare(rk, lk);
+                    if (c > 0) {
+                        break;
+                    }
+                    if (c == 0) {
+                        group.add(r);
+                        groupKey = rk;
+                    }
+                    hasR = false; // consumed
+                }
+                if (group.isEmpty() && !hasR && rightExhausted) {
+                    return false; // no more matches possible
+                }
+            }
+        }
+
+        @Override
+        public Spliterator<O> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return left.characteristics() & ORDERED;
+        }
+    }
+}
@@ -0,0 +1,622 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Primitive streams of numbers read without intermediate strings or boxing: raw binary numbers of a file, decimal
+ * numbers in ASCII text of a file and delimited decimal fields of text elements of a stream. Files are
+ * memory-mapped (see {@link MappedFile}) and the streams of files split, so they scale when made parallel.
+ */
+final class Numbers {
+
+    private Numbers() {} // no instances
+
+    /**
+     * Binary spliterators of files with fewer elements are not split.
+     */
+    static final int MIN_SPLIT = 1 << 10;
+
+    //
+    // binary
+
+    static IntStream ints(Path path, ByteOrder order) throws IOException {
+        MappedFile file = open(path, Integer.BYTES);
+        return StreamSupport
+            .intStream(new BinaryInts(file, order, 0L, file.size / Integer.BYTES), false)
+            .onClose(file::closeUnchecked);
+    }
+
+    static LongStream longs(Path path, ByteOrder order) throws IOException {
+        MappedFile file = open(path, Long.BYTES);
+        return StreamSupport
+            .longStream(new BinaryLongs(file, order, 0L, file.size / Long.BYTES), false)
+            .onClose(file::closeUnchecked);
+    }
+
+    private static MappedFile open(Path path, int width) throws IOException {
+        MappedFile file = MappedFile.openPooled(path);
+        if (file.size % width != 0) {
+            file.close();
+            throw new IOException("Size of " + path + " (" + file.size + ") is not a multiple of " + width);
+        }
+        return file;
+    }
+
+    /**
+     * A spliterator over elements {@code [index, fence)} of fixed width of a file, mapped in windows.
+     */
+    abstract static class Binary<T, S extends Spliterator<T>> implements Spliterator<T> {
+
+        final MappedFile file;
+        final ByteOrder order;
+        final int width;
+        long index;
+        final long fence;
+
+        ByteBuffer window;
+        long windowStart, windowEnd; // element indices
+
+        Binary(MappedFile file, ByteOrder order, int width, long index, long fence) {
+            this.file = file;
+            this.order = order;
+            this.width = width;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        abstract S split(long index, long fence);
+
+        /**
+         * Ensures the window covers the element at {@code index}.
+         */
+        final void window() {
+            if (window != null && index >= windowStart && index < windowEnd) {
+                return;
+            }
+            release();
+            long end = Math.min(fence, index + MappedFile.WINDOW_SIZE / width);
+            try {
+                window = file.map(index * width, (end - index) * width).order(order);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            windowStart = index;
+            windowEnd = end;
+        }
+
+        final void release() {
+            ByteBuffer w = window;
+            if (w != null) {
+                window = null;
+                file.unmap(w);
+            }
+        }
+
+        public S trySplit() {
+            long lo = index, mid = (lo + fence) >>> 1;
+            if (mid - lo < MIN_SPLIT) {
+                return null;
+            }
+            index = mid;
+            return split(lo, mid);
+        }
+
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+        }
+    }
+
+    static final class BinaryInts extends Binary<Integer, Spliterator.OfInt> implements Spliterator.OfInt {
+
+        BinaryInts(MappedFile file, ByteOrder order, long index, long fence) {
+            super(file, order, Integer.BYTES, index, fence);
+        }
+
+        @Override
+        Spliterator.OfInt split(long index, long fence) {
+            return new BinaryInts(file, order, index, fence);
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (index >= fence) {
+                release();
+                return false;
+            }
+            window();
+            action.accept(window.getInt((int) (index++ - windowStart) * Integer.BYTES));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            while (index < fence) {
+                window();
+                ByteBuffer w = window;
+                int end = (int) (windowEnd - windowStart);
+                int i = (int) (index - windowStart);
+                index = windowEnd;
+                for (; i < end; i++) {
+                    action.accept(w.getInt(i * Integer.BYTES));
+                }
+            }
+            release();
+        }
+    }
+
+    static final class BinaryLongs extends Binary<Long, Spliterator.OfLong> implements Spliterator.OfLong {
+
+        BinaryLongs(MappedFile file, ByteOrder order, long index, long fence) {
+            super(file, order, Long.BYTES, index, fence);
+        }
+
+        @Override
+        Spliterator.OfLong split(long index, long fence) {
+            return new BinaryLongs(file, order, index, fence);
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (index >= fence) {
+                release();
+                return false;
+            }
+            window();
+            action.accept(window.getLong((int) (index++ - windowStart) * Long.BYTES));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            while (index < fence) {
+                window();
+                ByteBuffer w = window;
+                int end = (int) (windowEnd - windowStart);
+                int i = (int) (index - windowStart);
+                index = windowEnd;
+                for (; i < end; i++) {
+                    action.accept(w.getLong(i * Long.BYTES));
+                }
+            }
+            release();
+        }
+    }
+
+    //
+    // decimal text of files
+
+    static IntStream parseInts(Path path) throws IOException {
+        MappedFile file = MappedFile.openPooled(path);
+        return StreamSupport
+            .intStream(new DecimalInts(file, 0L, file.size), false)
+            .onClose(file::closeUnchecked);
+    }
+
+    static LongStream parseLongs(Path path) throws IOException {
+        MappedFile file = MappedFile.openPooled(path);
+        return StreamSupport
+            .longStream(new DecimalLongs(file, 0L, file.size), false)
+            .onClose(file::closeUnchecked);
+    }
+
+    private static boolean isDigit(int b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isSign(int b) {
+        return b == '-' || b == '+';
+    }
+
+    /**
+     * Longest run of digits looked for past the middle of a range when splitting.
+     */
+    private static final int MAX_NUMBER_LENGTH = 1 << 12;
+
+    /**
+     * A spliterator over decimal numbers in bytes {@code [index, fence)} of a file, mapped in windows. Numbers are
+     * maximal runs of digits, optionally preceded by a sign that is immediately followed by a digit. All other bytes
+     * separate them, including a sign that is not followed by a digit, and a sign right after a digit starts the
+     * next number (so {@code 10-20} is read as {@code 10} and {@code -20}). It splits at bytes that are not digits.
+     */
+    abstract static class Decimals<T, S extends Spliterator<T>> implements Spliterator<T> {
+
+        final MappedFile file;
+        long index;
+        final long fence;
+
+        private ByteBuffer window;
+        private long windowStart;
+        long value; // the number parsed by next()
+
+        Decimals(MappedFile file, long index, long fence) {
+            this.file = file;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        abstract S split(long index, long fence);
+
+        /**
+         * Parses the next number into {@link #value}.
+         *
+         * @return {@code false} if there are no more numbers
+         */
+        final boolean next() {
+            try {
+                while (index < fence) {
+                    if (window == null || index < windowStart || index >= windowStart + window.limit()) {
+                        remap();
+                    }
+                    ByteBuffer w = window;
+                    int limit = w.limit();
+                    boolean more = windowStart + limit < fence;
+                    int from = (int) (index - windowStart);
+                    while (from < limit && !isDigit(w.get(from)) &&
+                           !(isSign(w.get(from)) && (from + 1 < limit ? isDigit(w.get(from + 1)) : more))) {
+                        from++;
+                    }
+                    if (from == limit) {
+                        index = windowStart + limit; // just separators till the end of window
+                        continue;
+                    }
+                    int i = from + 1; // past the sign or the first digit
+                    while (i < limit && isDigit(w.get(i))) i++;
+                    if (i == limit && more) {
+                        // the number (or a sign) may continue past the end of window - remap starting at it
+                        index = windowStart + from;
+                        if (from == 0) {
+                            throw new NumberFormatException("Number too long at position " + index);
+                        }
+                        remap();
+                        continue;
+                    }
+                    index = windowStart + i;
+                    value = parseLong(w, from, i, windowStart + from);
+                    return true;
+                }
+                release();
+                return false;
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+        private void remap() throws IOException {
+            release();
+            window = file.map(index, Math.min(fence - index, MappedFile.WINDOW_SIZE));
+            windowStart = index;
+        }
+
+        private void release() {
+            ByteBuffer w = window;
+            if (w != null) {
+                window = null;
+                file.unmap(w);
+            }
+        }
+
+        public S trySplit() {
+            long lo = index, mid = (lo + fence) >>> 1;
+            if (mid <= lo) {
+                return null;
+            }
+            long split = -1L;
+            try {
+                ByteBuffer probe = file.map(mid, Math.min(fence - mid, MAX_NUMBER_LENGTH));
+                try {
+                    for (int i = 0; i < probe.limit(); i++) {
+                        if (!isDigit(probe.get(i))) {
+                            split = mid + i;
+                            break;
+                        }
+                    }
+                } finally {
+                    file.unmap(probe);
+                }
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            if (split < 0) {
+                return null;
+            }
+            index = split;
+            return split(lo, split);
+        }
+
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        public int characteristics() {
+            return ORDERED | IMMUTABLE | NONNULL;
+        }
+    }
+
+    static final class DecimalInts extends Decimals<Integer, Spliterator.OfInt> implements Spliterator.OfInt {
+
+        DecimalInts(MappedFile file, long index, long fence) { super(file, index, fence); }
+
+        @Override
+        Spliterator.OfInt split(long index, long fence) { return new DecimalInts(file, index, fence); }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (!next()) {
+                return false;
+            }
+            action.accept(toInt(value));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            while (next()) {
+                action.accept(toInt(value));
+            }
+        }
+    }
+
+    static final class DecimalLongs extends Decimals<Long, Spliterator.OfLong> implements Spliterator.OfLong {
+
+        DecimalLongs(MappedFile file, long index, long fence) { super(file, index, fence); }
+
+        @Override
+        Spliterator.OfLong split(long index, long fence) { return new DecimalLongs(file, index, fence); }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (!next()) {
+                return false;
+            }
+            action.accept(value);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            while (next()) {
+                action.accept(value);
+            }
+        }
+    }
+
+    //
+    // delimited fields of text elements
+
+    static IntStream parseInts(Stream<? extends CharSequence> s, char delimiter) {
+        return StreamSupport.intStream(new FieldInts(s.spliterator(), delimiter), s.isParallel()).onClose(s::close);
+    }
+
+    static LongStream parseLongs(Stream<? extends CharSequence> s, char delimiter) {
+        return StreamSupport.longStream(new FieldLongs(s.spliterator(), delimiter), s.isParallel()).onClose(s::close);
+    }
+
+    /**
+     * A spliterator over decimal numbers in fields of {@link CharSequence} elements of a source spliterator,
+     * separated by a delimiter and optionally surrounded by spaces or tabs. Blank elements have no fields.
+     * It splits when the source splits (but not in the middle of an element).
+     */
+    abstract static class Fields<T, S extends Spliterator<T>> implements Spliterator<T>, Consumer<CharSequence> {
+
+        final Spliterator<? extends CharSequence> source;
+        final char delimiter;
+        private CharSequence cs;
+        private int pos; // start of next field or -1 when there's none
+        long value; // the number parsed by next()
+
+        Fields(Spliterator<? extends CharSequence> source, char delimiter) {
+            this.source = source;
+            this.delimiter = delimiter;
+        }
+
+        abstract S split(Spliterator<? extends CharSequence> source);
+
+        /**
+         * Takes an element from the source.
+         */
+        @Override
+        public void accept(CharSequence cs) {
+            int len = cs.length(), i = 0;
+            while (i < len && isBlank(cs.charAt(i))) i++;
+            this.cs = cs;
+            this.pos = i < len ? 0 : -1;
+        }
+
+        private static boolean isBlank(char c) {
+            return c == ' ' || c == '\t';
+        }
+
+        /**
+         * Parses the next number into {@link #value}.
+         *
+         * @return {@code false} if there are no more numbers
+         */
+        final boolean next() {
+            while (true) {
+                if (cs != null) {
+                    if (pos >= 0) {
+                        int len = cs.length(), end = pos;
+                        while (end < len && cs.charAt(end) != delimiter) end++;
+                        int from = pos, to = end;
+                        pos = end < len ? end + 1 : -1;
+                        while (from < to && isBlank(cs.charAt(from))) from++;
+                        while (to > from && isBlank(cs.charAt(to - 1))) to--;
+                        value = parseLong(cs, from, to);
+                        return true;
+                    }
+                    cs = null;
+                }
+                if (!source.tryAdvance(this)) {
+                    return false;
+                }
+            }
+        }
+
+        public S trySplit() {
+            if (cs != null) {
+                return null; // the rest of current element precedes the rest of source
+            }
+            Spliterator<? extends CharSequence> prefix = source.trySplit();
+            return prefix == null ? null : split(prefix);
+        }
+
+        public long estimateSize() {
+            return source.estimateSize();
+        }
+
+        public int characteristics() {
+            return source.characteristics() & ORDERED;
+        }
+    }
+
+    static final class FieldInts extends Fields<Integer, Spliterator.OfInt> implements Spliterator.OfInt {
+
+        FieldInts(Spliterator<? extends CharSequence> source, char delimiter) { super(source, delimiter); }
+
+        @Override
+        Spliterator.OfInt split(Spliterator<? extends CharSequence> source) {
+            return new FieldInts(source, delimiter);
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (!next()) {
+                return false;
+            }
+            action.accept(toInt(value));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            while (next()) {
+                action.accept(toInt(value));
+            }
+        }
+    }
+
+    static final class FieldLongs extends Fields<Long, Spliterator.OfLong> implements Spliterator.OfLong {
+
+        FieldLongs(Spliterator<? extends CharSequence> source, char delimiter) { super(source, delimiter); }
+
+        @Override
+        Spliterator.OfLong split(Spliterator<? extends CharSequence> source) {
+            return new FieldLongs(source, delimiter);
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (!next()) {
+                return false;
+            }
+            action.accept(value);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            while (next()) {
+                action.accept(value);
+            }
+        }
+    }
+
+    //
+    // parsing
+
+    static int toInt(long value) {
+        if (value != (int) value) {
+            throw new NumberFormatException("Value out of int range: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses bytes {@code [from, to)} of given buffer, found at given position of a file, as a decimal long.
+     */
+    static long parseLong(ByteBuffer buf, int from, int to, long position) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buf.get(i) == '-' || buf.get(i) == '+')) {
+            negative = buf.get(i++) == '-';
+        }
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long result = 0L;
+        if (i == to) {
+            throw malformed(buf, from, to, position);
+        }
+        for (; i < to; i++) {
+            int digit = buf.get(i) - '0';
+            if (digit < 0 || digit > 9 || result < limit / 10) {
+                throw malformed(buf, from, to, position);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw malformed(buf, from, to, position);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private static NumberFormatException malformed(ByteBuffer buf, int from, int to, long position) {
+        StringBuilder sb = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            sb.append((char) (buf.get(i) & 0xFF));
+        }
+        return new NumberFormatException("For input string: \"" + sb + "\" at position " + position);
+    }
+
+    /**
+     * Parses chars {@code [from, to)} of given char sequence as a decimal long.
+     */
+    static long parseLong(CharSequence cs, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (cs.charAt(i) == '-' || cs.charAt(i) == '+')) {
+            negative = cs.charAt(i++) == '-';
+        }
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long result = 0L;
+        if (i == to) {
+            throw malformed(cs, from, to);
+        }
+        for (; i < to; i++) {
+            int digit = cs.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < limit / 10) {
+                throw malformed(cs, from, to);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw malformed(cs, from, to);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private static NumberFormatException malformed(CharSequence cs, int from, int to) {
+        return new NumberFormatException("For input string: \"" + cs.subSequence(from, to) + "\"");
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A {@link Spliterator} of the concatenation of partitions {@code [0, n)} of a source, each opened as a separate
+ * stream. It splits the range of partitions (in halves of the total size when partition sizes are declared) and
+ * opens a partition only when it is traversed or when it has to be split further, so partitions are opened on
+ * the fork/join workers processing them. Each partition is closed as soon as all its parts are exhausted (see
+ * {@link AC.Closer}); partitions still open when the stream is closed are closed at that time.<p>
+ * With declared sizes the spliterator is {@link #SIZED} and {@link #SUBSIZED}. A partition is then split further
+ * only if its own spliterator is {@link #SUBSIZED}. The declared sizes must be exact.
+ */
+final class Partitions<T> implements Spliterator<T> {
+
+    static void checkCount(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Number of partitions must not be negative: " + n);
+        }
+    }
+
+    static <T> Stream<T> stream(int n, IntToLongFunction size, IntFunction<? extends Stream<? extends T>> opener) {
+        long[] offsets = null;
+        if (size != null) {
+            offsets = new long[n + 1];
+            for (int i = 0; i < n; i++) {
+                long s = size.applyAsLong(i);
+                if (s < 0L) {
+                    throw new IllegalArgumentException("Size of partition " + i + " is negative: " + s);
+                }
+                offsets[i + 1] = offsets[i] + s;
+            }
+        }
+        FlatMapParallel.Inners<Integer, T> inners = new FlatMapParallel.Inners<>(opener::apply);
+        return StreamSupport
+            .stream(new Partitions<>(inners, offsets, 0, n), false)
+            .onClose(inners::close);
+    }
+
+    private final FlatMapParallel.Inners<Integer, T> inners;
+    private final long[] offsets; // offsets[i] = sum of sizes of partitions [0, i) or null when sizes are not known
+    private int lo; // next partition to open
+    private final int hi;
+    private AC.ACSpliterator<T> current; // current partition (part) or null
+    private long currentSize; // declared number of remaining elements of current partition (part)
+
+    private Partitions(FlatMapParallel.Inners<Integer, T> inners, long[] offsets, int lo, int hi) {
+        this.inners = inners;
+        this.offsets = offsets;
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    private boolean open() {
+        while (lo < hi) {
+            int i = lo++;
+            current = inners.open(i);
+            if (current != null) {
+                currentSize = offsets == null ? 0L : offsets[i + 1] - offsets[i];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void exhausted() {
+        AC.Closer closer = current.closer;
+        current = null;
+        currentSize = 0L;
+        inners.exhausted(closer);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        do {
+            if (current != null) {
+                if (current.tryAdvance(action)) {
+                    currentSize--;
+                    return true;
+                }
+                exhausted();
+            }
+        } while (open());
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        do {
+            if (current != null) {
+                current.forEachRemaining(action);
+                exhausted();
+            }
+        } while (open());
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if (current == null) {
+            if (hi - lo >= 2) {
+                int mid = middle();
+                Partitions<T> prefix = new Partitions<>(inners, offsets, lo, mid);
+                lo = mid;
+                return prefix;
+            }
+            // a single partition - open it to split it
+            if (!open()) {
+                return null;
+            }
+        }
+        if (offsets == null || current.hasCharacteristics(SUBSIZED)) {
+            @SuppressWarnings("unchecked")
+            AC.ACSpliterator<T> split = (AC.ACSpliterator<T>) current.trySplit();
+            if (split != null) {
+                Partitions<T> prefix = new Partitions<>(inners, offsets, lo, lo);
+                prefix.current = split;
+                if (offsets != null) {
+                    prefix.currentSize = split.estimateSize();
+                    currentSize = current.estimateSize();
+                }
+                return prefix;
+            }
+        }
+        if (lo >= hi) {
+            return null;
+        }
+        // hand off the rest of current partition and keep the rest of partitions
+        Partitions<T> prefix = new Partitions<>(inners, offsets, lo, lo);
+        prefix.current = current;
+        prefix.currentSize = currentSize;
+        current = null;
+        currentSize = 0L;
+        return prefix;
+    }
+
+    /**
+     * @return the partition splitting {@code [lo, hi)} into halves of (about) equal size
+     */
+    private int middle() {
+        if (offsets == null) {
+            return (lo + hi) >>> 1;
+        }
+        long half = (offsets[lo] + offsets[hi]) >>> 1;
+        int l = lo + 1, h = hi - 1; // keep both halves non-empty
+        while (l < h) {
+            int m = (l + h) >>> 1;
+            if (offsets[m] < half) l = m + 1;
+            else h = m;
+        }
+        return l;
+    }
+
+    @Override
+    public long estimateSize() {
+        if (offsets == null) {
+            return current == null && lo >= hi ? 0L : Long.MAX_VALUE;
+        }
+        return (current == null ? 0L : currentSize) + offsets[hi] - offsets[lo];
+    }
+
+    @Override
+    public int characteristics() {
+        return offsets == null ? ORDERED : ORDERED | SIZED | SUBSIZED;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock-free pool of reusable objects held in a fixed array of slots. Each thread starts probing
+ * the slots at an offset derived from its identity, so threads mostly hit different slots, and unlike a queue
+ * the pool allocates nothing when objects are taken from or returned to it.
+ */
+final class Pool<T> {
+
+    private final AtomicReferenceArray<T> slots;
+
+    Pool(int capacity) {
+        slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    private int start() {
+        int h = System.identityHashCode(Thread.currentThread());
+        return ((h ^ (h >>> 16)) & 0x7fffffff) % slots.length();
+    }
+
+    /**
+     * @return a pooled object or {@code null} if the pool is empty.
+     */
+    T poll() {
+        int n = slots.length();
+        for (int i = 0, j = start(); i < n; i++, j = j + 1 == n ? 0 : j + 1) {
+            T t = slots.get(j);
+            if (t != null && slots.compareAndSet(j, t, null)) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return {@code true} if given object was pooled or {@code false} if the pool is full.
+     */
+    boolean offer(T t) {
+        int n = slots.length();
+        for (int i = 0, j = start(); i < n; i++, j = j + 1 == n ? 0 : j + 1) {
+            if (slots.get(j) == null && slots.compareAndSet(j, null, t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
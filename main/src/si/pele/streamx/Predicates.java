@@ -0,0 +1,176 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Predicates that {@link Streamable.Pushdown pushdown} capable sources recognize and evaluate before
+ * materializing elements. They behave as ordinary predicates anywhere else.<p>
+ * {@link Streamable.IO#lines(java.nio.file.Path, java.nio.charset.Charset) Lines} of memory-mapped files
+ * evaluate text predicates on raw bytes, so lines that don't pass are never decoded.
+ * {@link Streamable.IO#walk(java.nio.file.Path, int, String) Walkers} evaluate entry predicates while walking.
+ */
+public final class Predicates {
+
+    private Predicates() {} // no instances
+
+    /**
+     * @return a predicate testing whether a text starts with given prefix
+     */
+    public static Predicate<CharSequence> startsWith(String prefix) {
+        return new Text(Text.PREFIX, Objects.requireNonNull(prefix), null);
+    }
+
+    /**
+     * @return a predicate testing whether a text contains given string
+     */
+    public static Predicate<CharSequence> contains(String string) {
+        return new Text(Text.CONTAINS, Objects.requireNonNull(string), null);
+    }
+
+    /**
+     * @return a predicate testing whether a text contains a match of given regular expression
+     * @see java.util.regex.Matcher#find()
+     */
+    public static Predicate<CharSequence> find(String regex) {
+        return find(Pattern.compile(regex));
+    }
+
+    /**
+     * @return a predicate testing whether a text contains a match of given pattern
+     * @see java.util.regex.Matcher#find()
+     */
+    public static Predicate<CharSequence> find(Pattern pattern) {
+        return new Text(Text.FIND, null, Objects.requireNonNull(pattern));
+    }
+
+    /**
+     * @return a predicate testing whether the file name of an entry matches given glob pattern
+     * @see java.nio.file.FileSystem#getPathMatcher(String)
+     */
+    public static Predicate<FileEntry> glob(String glob) {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        return new Entry(Entry.NAME, name -> matcher.matches(name), 0L, 0L);
+    }
+
+    /**
+     * @return a predicate testing whether the file name of an entry ends with given suffix
+     */
+    public static Predicate<FileEntry> nameEndsWith(String suffix) {
+        Objects.requireNonNull(suffix);
+        return new Entry(Entry.NAME, name -> name.toString().endsWith(suffix), 0L, 0L);
+    }
+
+    /**
+     * @return a predicate testing whether the size of an entry is in the range {@code [min, max]}
+     */
+    public static Predicate<FileEntry> size(long min, long max) {
+        return new Entry(Entry.SIZE, null, min, max);
+    }
+
+    /**
+     * @return a predicate testing whether an entry is a regular file
+     */
+    public static Predicate<FileEntry> regularFile() {
+        return new Entry(Entry.REGULAR_FILE, null, 0L, 0L);
+    }
+
+    /**
+     * @return a predicate testing whether an entry is a directory
+     */
+    public static Predicate<FileEntry> directory() {
+        return new Entry(Entry.DIRECTORY, null, 0L, 0L);
+    }
+
+    /**
+     * A recognizable predicate on text.
+     */
+    static final class Text implements Predicate<CharSequence> {
+
+        static final int PREFIX = 0, CONTAINS = 1, FIND = 2;
+
+        final int kind;
+        final String string; // PREFIX, CONTAINS
+        final Pattern pattern; // FIND
+
+        Text(int kind, String string, Pattern pattern) {
+            this.kind = kind;
+            this.string = string;
+            this.pattern = pattern;
+        }
+
+        @Override
+        public boolean test(CharSequence cs) {
+            switch (kind) {
+                case PREFIX:
+                    if (cs.length() < string.length()) {
+                        return false;
+                    }
+                    for (int i = 0; i < string.length(); i++) {
+                        if (cs.charAt(i) != string.charAt(i)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                case CONTAINS:
+                    return cs.toString().contains(string);
+                default:
+                    return pattern.matcher(cs).find();
+            }
+        }
+    }
+
+    /**
+     * A recognizable predicate on file entries.
+     */
+    static final class Entry implements Predicate<FileEntry> {
+
+        static final int NAME = 0, SIZE = 1, REGULAR_FILE = 2, DIRECTORY = 3;
+
+        final int kind;
+        final Predicate<Path> name; // NAME
+        final long min, max; // SIZE
+
+        Entry(int kind, Predicate<Path> name, long min, long max) {
+            this.kind = kind;
+            this.name = name;
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * @return whether this predicate can be evaluated on the path alone (without attributes).
+         */
+        boolean pathOnly() {
+            return kind == NAME;
+        }
+
+        boolean testPath(Path path) {
+            Path fileName = path.getFileName();
+            return name.test(fileName == null ? path : fileName);
+        }
+
+        @Override
+        public boolean test(FileEntry e) {
+            switch (kind) {
+                case NAME:
+                    return testPath(e.path());
+                case SIZE:
+                    return e.size() >= min && e.size() <= max;
+                case REGULAR_FILE:
+                    return e.isRegularFile();
+                default:
+                    return e.isDirectory();
+            }
+        }
+    }
+}
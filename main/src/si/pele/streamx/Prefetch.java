@@ -0,0 +1,220 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A {@link Spliterator} of elements of a source spliterator that are read ahead by a producer task executed by
+ * an {@link Executor} into a bounded queue, so that the latency of a blocking source overlaps with the processing
+ * of elements downstream. The producer is started by the first traversal and blocks while the queue is full.<p>
+ * An exception thrown by the source is re-thrown to the consumer after the elements produced before it. Closing
+ * the stream stops (interrupts) the producer, waits for it to return from the source and then closes the source,
+ * so the source is never closed while being traversed.
+ */
+final class Prefetch<T> extends Spliterators.AbstractSpliterator<T> implements Runnable, Consumer<T> {
+
+    static void checkCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+    }
+
+    static <T> Stream<T> stream(Stream<T> s, int capacity, Executor executor) {
+        checkCapacity(capacity);
+        Prefetch<T> pf = new Prefetch<>(s, capacity, executor);
+        return StreamSupport.stream(pf, false).onClose(pf::close);
+    }
+
+    private static final Object NULL = new Object();
+    private static final Object COMPLETE = new Object();
+
+    private static final class Failure {
+        final Throwable exception;
+
+        Failure(Throwable exception) {
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Thrown by the producer's consumer to unwind the source when the stream is closed.
+     */
+    private static final class Stop extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Stop() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final int NEW = 0, RUNNING = 1, FINISHED = 2;
+
+    private final Stream<T> s;
+    private final Spliterator<T> source;
+    private final Executor executor;
+    // elements (NULL for null), terminated by COMPLETE or a Failure
+    private final BlockingQueue<Object> queue;
+    private boolean terminated; // consumer side
+    // guarded by this
+    private int state = NEW;
+    private Thread producer;
+    private volatile boolean closed;
+
+    private Prefetch(Stream<T> s, int capacity, Executor executor) {
+        super(Long.MAX_VALUE, 0);
+        this.s = s;
+        this.source = s.spliterator();
+        this.executor = executor;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @Override
+    public int characteristics() {
+        return source.characteristics() & ORDERED;
+    }
+
+    //
+    // producer
+
+    private void start() {
+        synchronized (this) {
+            if (state != NEW || closed) {
+                return;
+            }
+        }
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                state = FINISHED;
+            }
+            terminated = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            if (state != NEW) {
+                return;
+            }
+            state = RUNNING;
+            producer = Thread.currentThread();
+        }
+        try {
+            Object last;
+            try {
+                while (source.tryAdvance(this)) {
+                    if (closed) {
+                        return;
+                    }
+                }
+                last = COMPLETE;
+            } catch (Stop stop) {
+                return;
+            } catch (Throwable t) {
+                last = new Failure(t);
+            }
+            put(last);
+        } finally {
+            synchronized (this) {
+                state = FINISHED;
+                producer = null;
+                notifyAll();
+            }
+            if (closed) {
+                Thread.interrupted(); // don't leak our interrupt to the executor's next task
+            }
+        }
+    }
+
+    /**
+     * Enqueues an element taken from the source.
+     */
+    @Override
+    public void accept(T t) {
+        put(t == null ? NULL : t);
+    }
+
+    private void put(Object o) {
+        try {
+            queue.put(o);
+        } catch (InterruptedException e) {
+            if (closed) {
+                throw new Stop();
+            }
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Producer interrupted while waiting for free space");
+        }
+    }
+
+    //
+    // consumer
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (closed) {
+            throw new IllegalStateException("Stream closed");
+        }
+        if (terminated) {
+            return false;
+        }
+        start();
+        Object o;
+        try {
+            o = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for prefetched element");
+        }
+        if (o == COMPLETE) {
+            terminated = true;
+            return false;
+        }
+        if (o instanceof Failure) {
+            terminated = true;
+            Throwable t = ((Failure) o).exception;
+            if (t instanceof RuntimeException) throw (RuntimeException) t;
+            if (t instanceof Error) throw (Error) t;
+            throw new CompletionException(t);
+        }
+        @SuppressWarnings("unchecked")
+        T t = o == NULL ? null : (T) o;
+        action.accept(t);
+        return true;
+    }
+
+    void close() {
+        boolean interrupted = false;
+        synchronized (this) {
+            closed = true;
+            if (state == RUNNING) {
+                producer.interrupt();
+                queue.clear();
+                while (state == RUNNING) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            state = FINISHED;
+        }
+        queue.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        s.close();
+    }
+}
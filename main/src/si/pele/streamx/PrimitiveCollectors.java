@@ -0,0 +1,360 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.util.Arrays;
+import java.util.function.*;
+
+/**
+ * Collectors of primitive streams that don't box elements: grouping into open-addressing primitive maps,
+ * histograms, top-K elements and quantile sketches. Like {@link java.util.stream.Collector}s they consist of
+ * a supplier, an accumulator, a combiner and a finisher, so they can be used with parallel streams.
+ *
+ * @see AC#collect(java.util.stream.IntStream, IntCollector)
+ * @see IntStreamable#collect(IntCollector)
+ * @see LongStreamable#collect(LongCollector)
+ * @see DoubleStreamable#collect(DoubleCollector)
+ */
+public final class PrimitiveCollectors {
+
+    private PrimitiveCollectors() {} // no instances
+
+    /**
+     * A collector of {@code int} elements into a mutable result container {@code A}, transformed into {@code R}
+     * at the end.
+     */
+    public interface IntCollector<A, R> {
+        Supplier<A> supplier();
+
+        ObjIntConsumer<A> accumulator();
+
+        BiConsumer<A, A> combiner();
+
+        Function<A, R> finisher();
+    }
+
+    /**
+     * A collector of {@code long} elements into a mutable result container {@code A}, transformed into {@code R}
+     * at the end.
+     */
+    public interface LongCollector<A, R> {
+        Supplier<A> supplier();
+
+        ObjLongConsumer<A> accumulator();
+
+        BiConsumer<A, A> combiner();
+
+        Function<A, R> finisher();
+    }
+
+    /**
+     * A collector of {@code double} elements into a mutable result container {@code A}, transformed into {@code R}
+     * at the end.
+     */
+    public interface DoubleCollector<A, R> {
+        Supplier<A> supplier();
+
+        ObjDoubleConsumer<A> accumulator();
+
+        BiConsumer<A, A> combiner();
+
+        Function<A, R> finisher();
+    }
+
+    public static <A, R> IntCollector<A, R> ofInt(Supplier<A> supplier, ObjIntConsumer<A> accumulator,
+                                                  BiConsumer<A, A> combiner, Function<A, R> finisher) {
+        return new IntCollector<A, R>() {
+            public Supplier<A> supplier() { return supplier; }
+
+            public ObjIntConsumer<A> accumulator() { return accumulator; }
+
+            public BiConsumer<A, A> combiner() { return combiner; }
+
+            public Function<A, R> finisher() { return finisher; }
+        };
+    }
+
+    public static <A, R> LongCollector<A, R> ofLong(Supplier<A> supplier, ObjLongConsumer<A> accumulator,
+                                                    BiConsumer<A, A> combiner, Function<A, R> finisher) {
+        return new LongCollector<A, R>() {
+            public Supplier<A> supplier() { return supplier; }
+
+            public ObjLongConsumer<A> accumulator() { return accumulator; }
+
+            public BiConsumer<A, A> combiner() { return combiner; }
+
+            public Function<A, R> finisher() { return finisher; }
+        };
+    }
+
+    public static <A, R> DoubleCollector<A, R> ofDouble(Supplier<A> supplier, ObjDoubleConsumer<A> accumulator,
+                                                        BiConsumer<A, A> combiner, Function<A, R> finisher) {
+        return new DoubleCollector<A, R>() {
+            public Supplier<A> supplier() { return supplier; }
+
+            public ObjDoubleConsumer<A> accumulator() { return accumulator; }
+
+            public BiConsumer<A, A> combiner() { return combiner; }
+
+            public Function<A, R> finisher() { return finisher; }
+        };
+    }
+
+    //
+    // grouping
+
+    /**
+     * @return a collector counting elements per key computed by given classifier
+     */
+    public static IntCollector<?, IntLongMap> groupingByInt(IntUnaryOperator classifier) {
+        return ofInt(IntLongMap::new,
+                     (m, v) -> m.add(classifier.applyAsInt(v), 1L),
+                     (m1, m2) -> m1.mergeAll(m2, Long::sum),
+                     Function.identity());
+    }
+
+    /**
+     * @return a collector reducing values computed by given mapper per key computed by given classifier
+     *         with given reducer
+     */
+    public static IntCollector<?, IntLongMap> groupingByInt(IntUnaryOperator classifier, IntToLongFunction mapper,
+                                                            LongBinaryOperator reducer) {
+        return ofInt(IntLongMap::new,
+                     (m, v) -> m.merge(classifier.applyAsInt(v), mapper.applyAsLong(v), reducer),
+                     (m1, m2) -> m1.mergeAll(m2, reducer),
+                     Function.identity());
+    }
+
+    /**
+     * @return a collector counting elements per key computed by given classifier
+     */
+    public static LongCollector<?, LongLongMap> groupingByLong(LongUnaryOperator classifier) {
+        return ofLong(LongLongMap::new,
+                      (m, v) -> m.add(classifier.applyAsLong(v), 1L),
+                      (m1, m2) -> m1.mergeAll(m2, Long::sum),
+                      Function.identity());
+    }
+
+    /**
+     * @return a collector reducing values computed by given mapper per key computed by given classifier
+     *         with given reducer
+     */
+    public static LongCollector<?, LongLongMap> groupingByLong(LongUnaryOperator classifier, LongUnaryOperator mapper,
+                                                               LongBinaryOperator reducer) {
+        return ofLong(LongLongMap::new,
+                      (m, v) -> m.merge(classifier.applyAsLong(v), mapper.applyAsLong(v), reducer),
+                      (m1, m2) -> m1.mergeAll(m2, reducer),
+                      Function.identity());
+    }
+
+    //
+    // histograms
+
+    /**
+     * @param bounds strictly increasing bucket bounds
+     * @return a collector counting elements in {@code bounds.length + 1} buckets: bucket {@code i} counts elements
+     *         {@code v} such that {@code bounds[i - 1] <= v < bounds[i]} (the first and last bucket being unbounded
+     *         below and above respectively)
+     */
+    public static IntCollector<?, long[]> intHistogram(int... bounds) {
+        long[] lbs = new long[bounds.length];
+        for (int i = 0; i < bounds.length; i++) lbs[i] = bounds[i];
+        checkBounds(lbs);
+        return ofInt(() -> new long[lbs.length + 1],
+                     (counts, v) -> counts[bucket(lbs, v)]++,
+                     PrimitiveCollectors::addCounts,
+                     Function.identity());
+    }
+
+    /**
+     * @return a collector counting elements in buckets
+     * @see #intHistogram(int...)
+     */
+    public static LongCollector<?, long[]> longHistogram(long... bounds) {
+        long[] lbs = bounds.clone();
+        checkBounds(lbs);
+        return ofLong(() -> new long[lbs.length + 1],
+                      (counts, v) -> counts[bucket(lbs, v)]++,
+                      PrimitiveCollectors::addCounts,
+                      Function.identity());
+    }
+
+    /**
+     * @return a collector counting elements in buckets; {@code NaN}s are counted in the last bucket
+     * @see #intHistogram(int...)
+     */
+    public static DoubleCollector<?, long[]> doubleHistogram(double... bounds) {
+        long[] lbs = new long[bounds.length];
+        for (int i = 0; i < bounds.length; i++) lbs[i] = Spilling.toSortable(bounds[i]);
+        checkBounds(lbs);
+        return ofDouble(() -> new long[lbs.length + 1],
+                        (counts, v) -> counts[bucket(lbs, Spilling.toSortable(v))]++,
+                        PrimitiveCollectors::addCounts,
+                        Function.identity());
+    }
+
+    private static void checkBounds(long[] bounds) {
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i - 1] >= bounds[i]) {
+                throw new IllegalArgumentException("Bounds must be strictly increasing");
+            }
+        }
+    }
+
+    private static int bucket(long[] bounds, long v) {
+        int i = Arrays.binarySearch(bounds, v);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    private static void addCounts(long[] counts, long[] other) {
+        for (int i = 0; i < counts.length; i++) counts[i] += other[i];
+    }
+
+    //
+    // top K
+
+    /**
+     * @return a collector of at most {@code k} greatest elements in descending order
+     */
+    public static IntCollector<?, int[]> topInts(int k) {
+        checkK(k);
+        return ofInt(() -> new TopK(k),
+                     TopK::accept,
+                     TopK::merge,
+                     top -> {
+                         long[] ls = top.descending();
+                         int[] is = new int[ls.length];
+                         for (int i = 0; i < ls.length; i++) is[i] = (int) ls[i];
+                         return is;
+                     });
+    }
+
+    /**
+     * @return a collector of at most {@code k} greatest elements in descending order
+     */
+    public static LongCollector<?, long[]> topLongs(int k) {
+        checkK(k);
+        return ofLong(() -> new TopK(k),
+                      TopK::accept,
+                      TopK::merge,
+                      TopK::descending);
+    }
+
+    /**
+     * @return a collector of at most {@code k} greatest elements (as ordered by {@link Double#compare})
+     *         in descending order
+     */
+    public static DoubleCollector<?, double[]> topDoubles(int k) {
+        checkK(k);
+        return ofDouble(() -> new TopK(k),
+                        (top, v) -> top.accept(Spilling.toSortable(v)),
+                        TopK::merge,
+                        top -> {
+                            long[] ls = top.descending();
+                            double[] ds = new double[ls.length];
+                            for (int i = 0; i < ls.length; i++) ds[i] = Spilling.fromSortable(ls[i]);
+                            return ds;
+                        });
+    }
+
+    private static void checkK(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must be non-negative: " + k);
+        }
+    }
+
+    /**
+     * A bounded binary min-heap keeping the greatest values.
+     */
+    static final class TopK {
+        private final int k;
+        private long[] heap = new long[8];
+        private int size;
+
+        TopK(int k) {
+            this.k = k;
+        }
+
+        void accept(long v) {
+            if (size < k) {
+                if (size == heap.length) {
+                    heap = Arrays.copyOf(heap, (int) Math.min(k, 2L * size));
+                }
+                int i = size++;
+                // sift up
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (heap[parent] <= v) break;
+                    heap[i] = heap[parent];
+                    i = parent;
+                }
+                heap[i] = v;
+            } else if (k > 0 && v > heap[0]) {
+                // replace root and sift down
+                int i = 0, half = size >>> 1;
+                while (i < half) {
+                    int child = 2 * i + 1;
+                    if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+                    if (v <= heap[child]) break;
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = v;
+            }
+        }
+
+        void merge(TopK other) {
+            for (int i = 0; i < other.size; i++) accept(other.heap[i]);
+        }
+
+        long[] descending() {
+            long[] result = Arrays.copyOf(heap, size);
+            Arrays.sort(result);
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                long t = result[i];
+                result[i] = result[j];
+                result[j] = t;
+            }
+            return result;
+        }
+    }
+
+    //
+    // quantiles
+
+    /**
+     * @return a collector of elements into a {@link QuantileSketch} with given relative accuracy
+     */
+    public static IntCollector<?, QuantileSketch> intQuantiles(double relativeAccuracy) {
+        new QuantileSketch(relativeAccuracy); // validate eagerly
+        return ofInt(() -> new QuantileSketch(relativeAccuracy),
+                     QuantileSketch::accept,
+                     QuantileSketch::merge,
+                     Function.identity());
+    }
+
+    /**
+     * @return a collector of elements into a {@link QuantileSketch} with given relative accuracy
+     */
+    public static LongCollector<?, QuantileSketch> longQuantiles(double relativeAccuracy) {
+        new QuantileSketch(relativeAccuracy); // validate eagerly
+        return ofLong(() -> new QuantileSketch(relativeAccuracy),
+                      QuantileSketch::accept,
+                      QuantileSketch::merge,
+                      Function.identity());
+    }
+
+    /**
+     * @return a collector of elements into a {@link QuantileSketch} with given relative accuracy
+     */
+    public static DoubleCollector<?, QuantileSketch> doubleQuantiles(double relativeAccuracy) {
+        new QuantileSketch(relativeAccuracy); // validate eagerly
+        return ofDouble(() -> new QuantileSketch(relativeAccuracy),
+                        QuantileSketch::accept,
+                        QuantileSketch::merge,
+                        Function.identity());
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * A mergeable sketch of a distribution of values that answers quantile queries with bounded relative error.
+ * Values are counted in logarithmically sized buckets, so that any value in a bucket is within the relative
+ * accuracy of the bucket's representative value (as in DDSketch). The memory used grows with the logarithm
+ * of the range of values, not with their number. Not thread-safe.
+ *
+ * @see PrimitiveCollectors#longQuantiles(double)
+ */
+public final class QuantileSketch implements DoubleConsumer {
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final LongLongMap positive = new LongLongMap();
+    private final LongLongMap negative = new LongLongMap();
+    private long zeros;
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param relativeAccuracy the max. relative error of {@link #quantile quantiles}, in the range (0, 1)
+     */
+    public QuantileSketch(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0d && relativeAccuracy < 1d)) {
+            throw new IllegalArgumentException("Relative accuracy must be in range (0, 1): " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1d + relativeAccuracy) / (1d - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * Adds a value to this sketch.
+     *
+     * @throws IllegalArgumentException if the value is not finite
+     */
+    @Override
+    public void accept(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Not a finite value: " + value);
+        }
+        if (value > 0d) {
+            positive.add(index(value), 1L);
+        } else if (value < 0d) {
+            negative.add(index(-value), 1L);
+        } else {
+            zeros++;
+        }
+        count++;
+        sum += value;
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    /**
+     * Adds all the values of given sketch, which must have the same relative accuracy, to this sketch.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Can't merge sketches of different accuracy");
+        }
+        positive.mergeAll(other.positive, Long::sum);
+        negative.mergeAll(other.negative, Long::sum);
+        zeros += other.zeros;
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    private long index(double magnitude) {
+        return (long) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    private double value(long index) {
+        return 2d * Math.pow(gamma, index) / (gamma + 1d);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double sum() {
+        return sum;
+    }
+
+    /**
+     * @return the average of values or {@code NaN} if there are none
+     */
+    public double average() {
+        return count == 0L ? Double.NaN : sum / count;
+    }
+
+    /**
+     * @return the exact min. value or {@code NaN} if there are none
+     */
+    public double min() {
+        return count == 0L ? Double.NaN : min;
+    }
+
+    /**
+     * @return the exact max. value or {@code NaN} if there are none
+     */
+    public double max() {
+        return count == 0L ? Double.NaN : max;
+    }
+
+    /**
+     * @param q the quantile, in the range [0, 1]
+     * @return an approximation of the value at given quantile, within the relative accuracy of the exact value,
+     *         or {@code NaN} if there are no values
+     */
+    public double quantile(double q) {
+        if (!(q >= 0d && q <= 1d)) {
+            throw new IllegalArgumentException("Quantile must be in range [0, 1]: " + q);
+        }
+        if (count == 0L) {
+            return Double.NaN;
+        }
+        long rank = (long) (q * (count - 1));
+        long seen = 0L;
+        long[] keys = negative.keys();
+        for (int i = keys.length - 1; i >= 0; i--) {
+            seen += negative.get(keys[i], 0L);
+            if (seen > rank) {
+                return clamp(-value(keys[i]));
+            }
+        }
+        seen += zeros;
+        if (seen > rank) {
+            return 0d;
+        }
+        keys = positive.keys();
+        for (long key : keys) {
+            seen += positive.get(key, 0L);
+            if (seen > rank) {
+                return clamp(value(key));
+            }
+        }
+        return max;
+    }
+
+    private double clamp(double v) {
+        return Math.max(min, Math.min(max, v));
+    }
+
+    @Override
+    public String toString() {
+        return "QuantileSketch[count=" + count +
+               ", min=" + min() +
+               ", p50=" + (count == 0L ? Double.NaN : quantile(0.5d)) +
+               ", p99=" + (count == 0L ? Double.NaN : quantile(0.99d)) +
+               ", max=" + max() + "]";
+    }
+}
@@ -0,0 +1,862 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.*;
+import java.util.stream.*;
+
+/**
+ * Primitive {@code distinct()}, {@code sorted(memoryBudget)} and {@code distinct(memoryBudget)} operations which
+ * don't box elements.<p>
+ * {@code distinct()} finds first occurrences with an open-addressing {@link LongSet hash set} while the source is
+ * traversed (see {@link LazyDistinct}).<p>
+ * The operations bounded by a memory budget consume all the elements from the source (sequentially) on first
+ * traversal of the resulting stream. While they fit in the budget they are buffered in a heap array of their own
+ * width ({@code int[]} for ints), which is then sorted with {@link Arrays#sort(long[], int, int)} (or
+ * {@link Arrays#parallelSort(long[], int, int)} when the resulting stream is traversed in parallel) and split among
+ * the fork/join tasks. {@code distinct(memoryBudget)} buffers just the first occurrences, found with a hash set, so
+ * encounter order is kept. The budget covers the array, the hash set and the copies made while they grow. Once it
+ * is exceeded, the buffered elements are written to a temporary file and freed before an {@link ExternalSort}
+ * buffering elements off-heap and spilling to temporary files takes over, so the two never take memory together.
+ * {@code distinct(memoryBudget)} then preserves encounter order of an ordered source by sorting twice: first by
+ * value (and encounter index) to drop duplicates and then by encounter index. Closing the resulting stream frees
+ * memory, deletes spill files and closes the source.
+ */
+final class Spilling {
+
+    private Spilling() {} // no instances
+
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    static void checkBudget(long memoryBudget) {
+        if (memoryBudget <= 0L) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + memoryBudget);
+        }
+    }
+
+    static IntStream distinct(IntStream s) {
+        IntDistinct distinct = new IntDistinct(s.spliterator());
+        return StreamSupport
+            .intStream(distinct, s.isParallel())
+            .onClose(distinct::close)
+            .onClose(s::close);
+    }
+
+    static LongStream distinct(LongStream s) {
+        LongDistinct distinct = new LongDistinct(s.spliterator());
+        return StreamSupport
+            .longStream(distinct, s.isParallel())
+            .onClose(distinct::close)
+            .onClose(s::close);
+    }
+
+    static DoubleStream distinct(DoubleStream s) {
+        DoubleDistinct distinct = new DoubleDistinct(s.spliterator());
+        return StreamSupport
+            .doubleStream(distinct, s.isParallel())
+            .onClose(distinct::close)
+            .onClose(s::close);
+    }
+
+    static IntStream sorted(IntStream s, long memoryBudget) {
+        return intStream(s, false, memoryBudget);
+    }
+
+    static IntStream distinct(IntStream s, long memoryBudget) {
+        return intStream(s, true, memoryBudget);
+    }
+
+    static LongStream sorted(LongStream s, long memoryBudget) {
+        return longStream(s, false, memoryBudget);
+    }
+
+    static LongStream distinct(LongStream s, long memoryBudget) {
+        return longStream(s, true, memoryBudget);
+    }
+
+    static DoubleStream sorted(DoubleStream s, long memoryBudget) {
+        return doubleStream(s, false, memoryBudget);
+    }
+
+    static DoubleStream distinct(DoubleStream s, long memoryBudget) {
+        return doubleStream(s, true, memoryBudget);
+    }
+
+    private static IntStream intStream(IntStream s, boolean distinct, long memoryBudget) {
+        Spliterator.OfInt source = s.spliterator();
+        Sorted sorted = sorted(source, distinct, memoryBudget);
+        return StreamSupport
+            .intStream(new IntSpliterator(sorted, source.characteristics()), s.isParallel())
+            .onClose(sorted::close)
+            .onClose(s::close);
+    }
+
+    private static LongStream longStream(LongStream s, boolean distinct, long memoryBudget) {
+        Spliterator.OfLong source = s.spliterator();
+        Sorted sorted = sorted(source, distinct, memoryBudget);
+        return StreamSupport
+            .longStream(new LongSpliterator(sorted, source.characteristics()), s.isParallel())
+            .onClose(sorted::close)
+            .onClose(s::close);
+    }
+
+    private static DoubleStream doubleStream(DoubleStream s, boolean distinct, long memoryBudget) {
+        Spliterator.OfDouble source = s.spliterator();
+        Sorted sorted = sorted(source, distinct, memoryBudget);
+        return StreamSupport
+            .doubleStream(new DoubleSpliterator(sorted, source.characteristics()), s.isParallel())
+            .onClose(sorted::close)
+            .onClose(s::close);
+    }
+
+    static Sorted sorted(Spliterator.OfInt source, boolean distinct, long memoryBudget) {
+        return new Sorted(sink -> source.forEachRemaining((int v) -> sink.accept(v)),
+                          distinct, source.hasCharacteristics(Spliterator.ORDERED), source.getExactSizeIfKnown(),
+                          Integer.BYTES, memoryBudget);
+    }
+
+    static Sorted sorted(Spliterator.OfLong source, boolean distinct, long memoryBudget) {
+        return new Sorted(source::forEachRemaining,
+                          distinct, source.hasCharacteristics(Spliterator.ORDERED), source.getExactSizeIfKnown(),
+                          Long.BYTES, memoryBudget);
+    }
+
+    static Sorted sorted(Spliterator.OfDouble source, boolean distinct, long memoryBudget) {
+        return new Sorted(sink -> source.forEachRemaining((double v) -> sink.accept(toSortable(v))),
+                          distinct, source.hasCharacteristics(Spliterator.ORDERED), source.getExactSizeIfKnown(),
+                          Long.BYTES, memoryBudget);
+    }
+
+    /**
+     * @return a long which compares (as signed long) the same as given double compares by {@link Double#compare}.
+     *         Equal longs are obtained for doubles which are {@link Double#equals equal}.
+     */
+    static long toSortable(double v) {
+        long bits = Double.doubleToLongBits(v);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    static double fromSortable(long sortable) {
+        return Double.longBitsToDouble(sortable ^ ((sortable >> 63) & Long.MAX_VALUE));
+    }
+
+    /**
+     * An open-addressing hash set of {@code long}s that does not box. Not thread-safe.
+     */
+    static final class LongSet {
+
+        private static final int MIN_LENGTH = 1 << 4, MAX_LENGTH = 1 << 30;
+
+        // value 0 marks an empty slot, so it is kept aside
+        private long[] table;
+        private int size; // excluding 0
+        private boolean hasZero;
+
+        /**
+         * @return {@code true} if given value was not in the set
+         */
+        boolean add(long v) {
+            if (v == 0L) {
+                if (hasZero) return false;
+                hasZero = true;
+                return true;
+            }
+            if (full()) {
+                if (contains(v)) return false;
+                grow();
+            }
+            int mask = table.length - 1;
+            for (int i = mix(v) & mask; ; i = (i + 1) & mask) {
+                long t = table[i];
+                if (t == 0L) {
+                    table[i] = v;
+                    size++;
+                    return true;
+                }
+                if (t == v) {
+                    return false;
+                }
+            }
+        }
+
+        boolean contains(long v) {
+            if (v == 0L) return hasZero;
+            if (table == null) return false;
+            int mask = table.length - 1;
+            for (int i = mix(v) & mask; ; i = (i + 1) & mask) {
+                long t = table[i];
+                if (t == v) return true;
+                if (t == 0L) return false;
+            }
+        }
+
+        /**
+         * @return {@code true} if the table has to grow before another (non-zero) value is added
+         */
+        boolean full() {
+            return table == null || 2 * (size + 1) > table.length;
+        }
+
+        /**
+         * @return the number of bytes the table takes
+         */
+        long bytes() {
+            return table == null ? 0L : (long) table.length * Long.BYTES;
+        }
+
+        /**
+         * @return the number of bytes the table will take after it grows or -1 if it can't grow
+         */
+        long grownBytes() {
+            int length = table == null ? MIN_LENGTH : table.length * 2;
+            return length > MAX_LENGTH || length < 0 ? -1L : (long) length * Long.BYTES;
+        }
+
+        private void grow() {
+            long grown = grownBytes();
+            if (grown < 0) {
+                throw new IllegalStateException("Too many distinct values: " + size);
+            }
+            long[] old = table;
+            table = new long[(int) (grown / Long.BYTES)];
+            if (old != null) {
+                int mask = table.length - 1;
+                for (long t : old) {
+                    if (t != 0L) {
+                        int i = mix(t) & mask;
+                        while (table[i] != 0L) i = (i + 1) & mask;
+                        table[i] = t;
+                    }
+                }
+            }
+        }
+
+        private static int mix(long v) {
+            long h = v * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    /**
+     * Sorted (and optionally de-duplicated) values of a source, computed on first access: in a heap array when they
+     * fit in the budget or else by an {@link ExternalSort}.
+     */
+    static final class Sorted implements LongConsumer {
+
+        /**
+         * Values buffered in heap are written to spill files through a file of this size when spilled.
+         */
+        private static final long DUMP_BUFFER_BYTES = 1 << 20;
+
+        private final Consumer<LongConsumer> drain;
+        final boolean distinct;
+        private final boolean ordered;
+        private final long size; // exact size of the source or -1 if not known
+        private final int width; // bytes per value: 4 (ints) or 8
+        private final long memoryBudget;
+        private boolean initialized;
+
+        // in-heap values, sorted (or de-duplicated) after the source is drained, until spilled
+        int[] ints; // when width is 4
+        long[] longs; // otherwise
+        int count;
+        private int capacity;
+        private LongSet set; // of values when distinct
+
+        // external sort when spilled
+        private ExternalSort spill; // while draining: sort of values or (value, index) when distinct and ordered
+        private long index;
+        private ExternalSort sort;
+        private ExternalSort.Cursor cursor;
+        private boolean valueInPayload;
+        private boolean closed;
+        private boolean first = true;
+        private long previous;
+
+        /**
+         * @param drain feeds all the values of the source to given sink
+         */
+        Sorted(Consumer<LongConsumer> drain, boolean distinct, boolean ordered, long size, int width,
+               long memoryBudget) {
+            this.drain = drain;
+            this.distinct = distinct;
+            this.ordered = ordered;
+            this.size = size;
+            this.width = width;
+            this.memoryBudget = memoryBudget;
+        }
+
+        /**
+         * Drains the source, sorting values (in parallel if requested) unless they are already spilled.
+         */
+        void init(boolean parallel) {
+            if (initialized) {
+                return;
+            }
+            initialized = true;
+            if (closed) {
+                return;
+            }
+            if (distinct) {
+                set = new LongSet();
+            } else if (size > memoryBudget / width) {
+                spill(); // known not to fit
+            }
+            drain.accept(this);
+            set = null;
+            if (spill == null) {
+                if (!distinct) {
+                    if (ints != null) {
+                        if (parallel) Arrays.parallelSort(ints, 0, count);
+                        else Arrays.sort(ints, 0, count);
+                    } else if (longs != null) {
+                        if (parallel) Arrays.parallelSort(longs, 0, count);
+                        else Arrays.sort(longs, 0, count);
+                    }
+                }
+                return;
+            }
+            if (distinct && ordered) {
+                // sort by (value, index), keep first of each value, sort by index
+                ExternalSort byValue = spill;
+                spill = null;
+                try {
+                    ExternalSort.Cursor c = byValue.finish();
+                    sort = new ExternalSort(true, memoryBudget / 2);
+                    boolean firstValue = true;
+                    long previousValue = 0L;
+                    while (c.next()) {
+                        long v = c.key();
+                        if (firstValue || v != previousValue) {
+                            sort.add(c.payload(), v);
+                            firstValue = false;
+                            previousValue = v;
+                        }
+                    }
+                } finally {
+                    byValue.close();
+                }
+                valueInPayload = true;
+            } else {
+                sort = spill;
+                spill = null;
+            }
+            cursor = sort.finish();
+        }
+
+        /**
+         * @return {@code true} if the values are in heap (after {@link #init})
+         */
+        boolean inHeap() {
+            return ints != null || longs != null;
+        }
+
+        /**
+         * Takes a value from the source.
+         */
+        @Override
+        public void accept(long v) {
+            if (spill == null) {
+                if (distinct) {
+                    LongSet s = set;
+                    if (v != 0L && s.full() && !s.contains(v)) {
+                        // the old and the grown table are both alive while rehashing
+                        long grown = s.grownBytes();
+                        if (grown < 0 || (long) capacity * width + s.bytes() + grown > memoryBudget) {
+                            spill();
+                        }
+                    }
+                    if (spill == null && !s.add(v)) {
+                        return; // a duplicate
+                    }
+                }
+                if (spill == null && addToHeap(v)) {
+                    return;
+                }
+            }
+            if (distinct && ordered) spill.add(v, index++);
+            else spill.add(v);
+        }
+
+        /**
+         * @return {@code true} if given value was added to heap or {@code false} if values have been spilled
+         */
+        private boolean addToHeap(long v) {
+            if (count == capacity) {
+                // the old and the new array are both alive while copying
+                long setBytes = set == null ? 0L : set.bytes();
+                long max = Math.min((memoryBudget - setBytes) / width - capacity, MAX_ARRAY_LENGTH);
+                long wanted = !distinct && size > count ? size : Math.max(2L * capacity, 1 << 10);
+                int newCapacity = (int) Math.min(wanted, max);
+                if (newCapacity <= capacity) {
+                    spill();
+                    return false;
+                }
+                if (width == Integer.BYTES) {
+                    ints = ints == null ? new int[newCapacity] : Arrays.copyOf(ints, newCapacity);
+                } else {
+                    longs = longs == null ? new long[newCapacity] : Arrays.copyOf(longs, newCapacity);
+                }
+                capacity = newCapacity;
+            }
+            if (ints != null) ints[count++] = (int) v;
+            else longs[count++] = v;
+            return true;
+        }
+
+        private long heapValue(int i) {
+            return ints != null ? ints[i] : longs[i];
+        }
+
+        /**
+         * Moves the values from heap to an external sort. They are written to a file and freed before the external
+         * sort allocates any memory. When distinct, values buffered in heap are first occurrences, so they are
+         * unique and their indices only need to be consecutive and smaller than those of later values.
+         */
+        private void spill() {
+            int n = count;
+            if (distinct && ordered) {
+                // dump in encounter order, free and read back with indices
+                ExternalSort dump = new ExternalSort(false, DUMP_BUFFER_BYTES);
+                try {
+                    if (n > 0) dump.addRun(n, this::heapValue);
+                    freeHeap();
+                    spill = new ExternalSort(true, memoryBudget / 2);
+                    for (ExternalSort.Cursor c = dump.finish(); c.next(); ) {
+                        spill.add(c.key(), index++);
+                    }
+                } finally {
+                    dump.close();
+                }
+            } else {
+                // sort and keep as a run
+                if (ints != null) Arrays.sort(ints, 0, n);
+                else if (longs != null) Arrays.sort(longs, 0, n);
+                spill = new ExternalSort(false, memoryBudget);
+                if (n > 0) spill.addRun(n, this::heapValue);
+                freeHeap();
+            }
+        }
+
+        private void freeHeap() {
+            ints = null;
+            longs = null;
+            count = 0;
+            capacity = 0;
+            set = null;
+        }
+
+        /**
+         * @return {@code true} if next value of the external sort is available via {@link #value()}
+         */
+        boolean next() {
+            if (closed || cursor == null) {
+                return false;
+            }
+            while (cursor.next()) {
+                if (distinct && !ordered) {
+                    long v = cursor.key();
+                    if (!first && v == previous) {
+                        continue;
+                    }
+                    first = false;
+                    previous = v;
+                }
+                return true;
+            }
+            close();
+            return false;
+        }
+
+        long value() {
+            return valueInPayload ? cursor.payload() : cursor.key();
+        }
+
+        void close() {
+            closed = true;
+            cursor = null;
+            ints = null;
+            longs = null;
+            set = null;
+            if (spill != null) {
+                spill.close();
+            }
+            if (sort != null) {
+                sort.close();
+            }
+        }
+    }
+
+    /**
+     * A spliterator over the values of a {@link Sorted}. The range of values in heap is split in halves.
+     */
+    abstract static class SortedSpliterator<T, S extends Spliterator<T>> implements Spliterator<T> {
+
+        /**
+         * Ranges of values in heap smaller than this are not split.
+         */
+        static final int MIN_SPLIT = 1 << 12;
+
+        final Sorted sorted;
+        private final int characteristics;
+        boolean heap; // values are in heap (after initialization)
+        int index, fence = -1; // range of in-heap values, fence < 0 until initialized
+
+        SortedSpliterator(Sorted sorted, int sourceCharacteristics) {
+            this.sorted = sorted;
+            // sorted() imposes encounter order, distinct() preserves source's
+            this.characteristics = !sorted.distinct
+                                   ? ORDERED | SORTED
+                                   : (sourceCharacteristics & ORDERED) | DISTINCT;
+        }
+
+        /**
+         * Takes the in-heap values of the {@link #sorted}.
+         */
+        abstract void attach();
+
+        abstract S split(int index, int fence);
+
+        /**
+         * Initializes the values on first access.
+         *
+         * @return {@code true} if the values are in heap
+         */
+        final boolean inHeap(boolean parallel) {
+            if (fence < 0) {
+                sorted.init(parallel);
+                heap = sorted.inHeap();
+                if (heap) attach();
+                index = 0;
+                fence = heap ? sorted.count : 0;
+            }
+            return heap;
+        }
+
+        public S trySplit() {
+            if (!inHeap(true)) {
+                return null;
+            }
+            int lo = index, mid = (lo + fence) >>> 1;
+            if (mid - lo < MIN_SPLIT) {
+                return null;
+            }
+            index = mid;
+            return split(lo, mid);
+        }
+
+        public long estimateSize() { return heap ? fence - index : Long.MAX_VALUE; }
+
+        public int characteristics() { return characteristics; }
+
+        public Comparator<? super T> getComparator() {
+            if (sorted.distinct) throw new IllegalStateException();
+            return null; // natural order
+        }
+    }
+
+    static final class IntSpliterator extends SortedSpliterator<Integer, Spliterator.OfInt>
+        implements Spliterator.OfInt {
+
+        private int[] values;
+
+        IntSpliterator(Sorted sorted, int sourceCharacteristics) { super(sorted, sourceCharacteristics); }
+
+        @Override
+        void attach() { values = sorted.ints; }
+
+        @Override
+        Spliterator.OfInt split(int index, int fence) {
+            IntSpliterator prefix = new IntSpliterator(sorted, characteristics());
+            prefix.values = values;
+            prefix.heap = true;
+            prefix.index = index;
+            prefix.fence = fence;
+            return prefix;
+        }
+
+        public boolean tryAdvance(IntConsumer action) {
+            if (inHeap(false)) {
+                if (index >= fence) return false;
+                action.accept(values[index++]);
+                return true;
+            }
+            if (!sorted.next()) return false;
+            action.accept((int) sorted.value());
+            return true;
+        }
+
+        public void forEachRemaining(IntConsumer action) {
+            if (inHeap(false)) {
+                int[] vs = values;
+                for (int i = index, hi = index = fence; i < hi; i++) action.accept(vs[i]);
+            } else {
+                while (sorted.next()) action.accept((int) sorted.value());
+            }
+        }
+    }
+
+    static final class LongSpliterator extends SortedSpliterator<Long, Spliterator.OfLong>
+        implements Spliterator.OfLong {
+
+        private long[] values;
+
+        LongSpliterator(Sorted sorted, int sourceCharacteristics) { super(sorted, sourceCharacteristics); }
+
+        @Override
+        void attach() { values = sorted.longs; }
+
+        @Override
+        Spliterator.OfLong split(int index, int fence) {
+            LongSpliterator prefix = new LongSpliterator(sorted, characteristics());
+            prefix.values = values;
+            prefix.heap = true;
+            prefix.index = index;
+            prefix.fence = fence;
+            return prefix;
+        }
+
+        public boolean tryAdvance(LongConsumer action) {
+            if (inHeap(false)) {
+                if (index >= fence) return false;
+                action.accept(values[index++]);
+                return true;
+            }
+            if (!sorted.next()) return false;
+            action.accept(sorted.value());
+            return true;
+        }
+
+        public void forEachRemaining(LongConsumer action) {
+            if (inHeap(false)) {
+                long[] vs = values;
+                for (int i = index, hi = index = fence; i < hi; i++) action.accept(vs[i]);
+            } else {
+                while (sorted.next()) action.accept(sorted.value());
+            }
+        }
+    }
+
+    static final class DoubleSpliterator extends SortedSpliterator<Double, Spliterator.OfDouble>
+        implements Spliterator.OfDouble {
+
+        private long[] values;
+
+        DoubleSpliterator(Sorted sorted, int sourceCharacteristics) { super(sorted, sourceCharacteristics); }
+
+        @Override
+        void attach() { values = sorted.longs; }
+
+        @Override
+        Spliterator.OfDouble split(int index, int fence) {
+            DoubleSpliterator prefix = new DoubleSpliterator(sorted, characteristics());
+            prefix.values = values;
+            prefix.heap = true;
+            prefix.index = index;
+            prefix.fence = fence;
+            return prefix;
+        }
+
+        public boolean tryAdvance(DoubleConsumer action) {
+            if (inHeap(false)) {
+                if (index >= fence) return false;
+                action.accept(fromSortable(values[index++]));
+                return true;
+            }
+            if (!sorted.next()) return false;
+            action.accept(fromSortable(sorted.value()));
+            return true;
+        }
+
+        public void forEachRemaining(DoubleConsumer action) {
+            if (inHeap(false)) {
+                long[] vs = values;
+                for (int i = index, hi = index = fence; i < hi; i++) action.accept(fromSortable(vs[i]));
+            } else {
+                while (sorted.next()) action.accept(fromSortable(sorted.value()));
+            }
+        }
+    }
+
+    /**
+     * Base of spliterators over the first occurrences of values of a source spliterator, found with a
+     * {@link LongSet} as the source is traversed. When split before it is traversed, the first occurrences are
+     * buffered by a {@link Sorted} without a budget instead, so they can be split among fork/join tasks and still
+     * come in encounter order (like the JDK's {@code distinct()} of a parallel stream, this is a barrier).
+     */
+    abstract static class LazyDistinct<T, S extends Spliterator<T>> implements Spliterator<T> {
+
+        final S source;
+        final LongSet seen = new LongSet();
+        Sorted sorted; // when buffered
+        boolean traversed;
+
+        LazyDistinct(S source) {
+            this.source = source;
+        }
+
+        abstract SortedSpliterator<T, ? extends S> buffered();
+
+        public long estimateSize() {
+            SortedSpliterator<T, ? extends S> b = buffered();
+            return b != null ? b.estimateSize() : source.estimateSize();
+        }
+
+        public int characteristics() {
+            return (source.characteristics() & ORDERED) | DISTINCT;
+        }
+
+        void close() {
+            if (sorted != null) {
+                sorted.close();
+            }
+        }
+    }
+
+    static final class IntDistinct extends LazyDistinct<Integer, Spliterator.OfInt>
+        implements Spliterator.OfInt, IntConsumer {
+
+        private IntSpliterator buffered;
+        private int next;
+
+        IntDistinct(Spliterator.OfInt source) { super(source); }
+
+        @Override
+        IntSpliterator buffered() { return buffered; }
+
+        public void accept(int v) { next = v; }
+
+        public boolean tryAdvance(IntConsumer action) {
+            if (buffered != null) return buffered.tryAdvance(action);
+            traversed = true;
+            while (source.tryAdvance(this)) {
+                if (seen.add(next)) {
+                    action.accept(next);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void forEachRemaining(IntConsumer action) {
+            if (buffered != null) {
+                buffered.forEachRemaining(action);
+                return;
+            }
+            traversed = true;
+            LongSet s = seen;
+            source.forEachRemaining((int v) -> {
+                if (s.add(v)) action.accept(v);
+            });
+        }
+
+        public Spliterator.OfInt trySplit() {
+            if (buffered == null) {
+                if (traversed) return null;
+                sorted = sorted(source, true, Long.MAX_VALUE);
+                buffered = new IntSpliterator(sorted, source.characteristics());
+            }
+            return buffered.trySplit();
+        }
+    }
+
+    static final class LongDistinct extends LazyDistinct<Long, Spliterator.OfLong>
+        implements Spliterator.OfLong, LongConsumer {
+
+        private LongSpliterator buffered;
+        private long next;
+
+        LongDistinct(Spliterator.OfLong source) { super(source); }
+
+        @Override
+        LongSpliterator buffered() { return buffered; }
+
+        public void accept(long v) { next = v; }
+
+        public boolean tryAdvance(LongConsumer action) {
+            if (buffered != null) return buffered.tryAdvance(action);
+            traversed = true;
+            while (source.tryAdvance(this)) {
+                if (seen.add(next)) {
+                    action.accept(next);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void forEachRemaining(LongConsumer action) {
+            if (buffered != null) {
+                buffered.forEachRemaining(action);
+                return;
+            }
+            traversed = true;
+            LongSet s = seen;
+            source.forEachRemaining((long v) -> {
+                if (s.add(v)) action.accept(v);
+            });
+        }
+
+        public Spliterator.OfLong trySplit() {
+            if (buffered == null) {
+                if (traversed) return null;
+                sorted = sorted(source, true, Long.MAX_VALUE);
+                buffered = new LongSpliterator(sorted, source.characteristics());
+            }
+            return buffered.trySplit();
+        }
+    }
+
+    static final class DoubleDistinct extends LazyDistinct<Double, Spliterator.OfDouble>
+        implements Spliterator.OfDouble, DoubleConsumer {
+
+        private DoubleSpliterator buffered;
+        private double next;
+
+        DoubleDistinct(Spliterator.OfDouble source) { super(source); }
+
+        @Override
+        DoubleSpliterator buffered() { return buffered; }
+
+        public void accept(double v) { next = v; }
+
+        public boolean tryAdvance(DoubleConsumer action) {
+            if (buffered != null) return buffered.tryAdvance(action);
+            traversed = true;
+            while (source.tryAdvance(this)) {
+                if (seen.add(toSortable(next))) {
+                    action.accept(next);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void forEachRemaining(DoubleConsumer action) {
+            if (buffered != null) {
+                buffered.forEachRemaining(action);
+                return;
+            }
+            traversed = true;
+            LongSet s = seen;
+            source.forEachRemaining((double v) -> {
+                if (s.add(toSortable(v))) action.accept(v);
+            });
+        }
+
+        public Spliterator.OfDouble trySplit() {
+            if (buffered == null) {
+                if (traversed) return null;
+                sorted = sorted(source, true, Long.MAX_VALUE);
+                buffered = new DoubleSpliterator(sorted, source.characteristics());
+            }
+            return buffered.trySplit();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * A size-bounded memory cache of elements recorded by {@link Streamable#cached(StreamCache) cached} streamables.
+ * The cache is bounded by the total number of cached elements and the total estimated number of bytes they occupy.
+ * When a bound is exceeded, least recently used entries are evicted. Entries may optionally expire after a
+ * time-to-live and are invalidated when their version stamp (for example {@link #lastModified(Path...)}
+ * of source files) changes.
+ *
+ * @see Streamable#cached(StreamCache)
+ * @see IntStreamable#cached(StreamCache)
+ * @see LongStreamable#cached(StreamCache)
+ * @see DoubleStreamable#cached(StreamCache)
+ */
+public final class StreamCache {
+
+    private static final StreamCache SHARED = new StreamCache(1L << 24, Runtime.getRuntime().maxMemory() / 8, null);
+
+    /**
+     * @return the cache used by {@link Streamable#cached()} and its primitive variants. It is bounded to
+     *         2<sup>24</sup> elements and 1/8 of max. heap size, without expiry.
+     */
+    public static StreamCache shared() { return SHARED; }
+
+    /**
+     * @return a version stamp of given paths consisting of their last modified times, suitable as a
+     *         {@code version} argument of {@link Streamable#cached(StreamCache, java.util.function.ToLongFunction, Supplier)}.
+     *         A missing path contributes {@code null}.
+     */
+    public static Supplier<Object> lastModified(Path... paths) {
+        Path[] ps = paths.clone();
+        return () -> {
+            List<FileTime> times = new ArrayList<>(ps.length);
+            for (Path p : ps) {
+                try {
+                    times.add(Files.getLastModifiedTime(p));
+                } catch (NoSuchFileException e) {
+                    times.add(null);
+                } catch (IOException e) {
+                    // can't tell - force invalidation
+                    return new Object();
+                }
+            }
+            return times;
+        };
+    }
+
+    private final long maxElements;
+    private final long maxBytes;
+    private final long ttlNanos;
+
+    // entries in access order (least recently used first)
+    private final LinkedHashMap<Entry, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long elements, bytes;
+
+    /**
+     * Creates a cache with given bounds.
+     *
+     * @param maxElements max. number of elements cached in all entries together
+     * @param maxBytes    max. estimated number of bytes occupied by elements cached in all entries together
+     * @param timeToLive  time after which an entry expires or {@code null} if entries don't expire
+     */
+    public StreamCache(long maxElements, long maxBytes, Duration timeToLive) {
+        if (maxElements < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("Negative bound");
+        }
+        this.maxElements = maxElements;
+        this.maxBytes = maxBytes;
+        this.ttlNanos = timeToLive == null ? 0L : Math.max(1L, timeToLive.toNanos());
+    }
+
+    /**
+     * Invalidates all entries of this cache.
+     */
+    public synchronized void invalidateAll() {
+        for (Entry e : entries.keySet()) {
+            e.data = null;
+        }
+        entries.clear();
+        elements = bytes = 0L;
+    }
+
+    /**
+     * @return {@code true} if given number of elements occupying given number of bytes can be cached at all.
+     */
+    boolean fits(long elements, long bytes) {
+        return elements <= maxElements && bytes <= maxBytes;
+    }
+
+    /**
+     * @return cached data of given entry or {@code null} if there's none or it is stale.
+     */
+    synchronized Object lookup(Entry e, Object version) {
+        if (e.data == null) {
+            return null;
+        }
+        if ((ttlNanos != 0L && System.nanoTime() - e.storedAt >= ttlNanos) ||
+            !Objects.equals(e.version, version)) {
+            remove(e);
+            return null;
+        }
+        entries.get(e); // touch
+        return e.data;
+    }
+
+    /**
+     * Stores data into given entry, evicting least recently used entries if needed.
+     */
+    synchronized void store(Entry e, Object data, long elements, long bytes, Object version) {
+        if (e.data != null) {
+            remove(e);
+        }
+        if (!fits(elements, bytes)) {
+            return;
+        }
+        e.data = data;
+        e.elements = elements;
+        e.bytes = bytes;
+        e.version = version;
+        e.storedAt = System.nanoTime();
+        entries.put(e, e);
+        this.elements += elements;
+        this.bytes += bytes;
+        for (Iterator<Entry> i = entries.keySet().iterator();
+             (this.elements > maxElements || this.bytes > maxBytes) && i.hasNext(); ) {
+            Entry eldest = i.next();
+            i.remove();
+            evicted(eldest);
+        }
+    }
+
+    private void remove(Entry e) {
+        if (entries.remove(e) != null) {
+            evicted(e);
+        }
+    }
+
+    private void evicted(Entry e) {
+        elements -= e.elements;
+        bytes -= e.bytes;
+        e.data = null;
+    }
+
+    /**
+     * A slot of one cached streamable. All fields are guarded by the cache's lock.
+     */
+    static final class Entry {
+        Object data;
+        long elements, bytes;
+        Object version;
+        long storedAt;
+    }
+}
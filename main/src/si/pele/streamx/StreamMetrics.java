@@ -0,0 +1,130 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A listener of life-cycle events of {@link AC auto-closing} streams. It can be installed globally with
+ * {@link AC#setMetrics(StreamMetrics)} or per stream with {@link AC#stream(java.util.stream.Stream, StreamMetrics)}
+ * and friends. When no listener is installed, AC streams are not instrumented at all.<p>
+ * Callbacks may be invoked concurrently from different threads. {@link #leaked} is invoked from a
+ * cleaner thread after the stream has been garbage-collected without being closed.
+ */
+public interface StreamMetrics {
+
+    /**
+     * @return {@code true} if the stack trace of the code opening each stream should be captured
+     *         and made available as {@link Info#origin()}. This is costly, so it's off by default.
+     */
+    default boolean captureOrigin() { return false; }
+
+    /**
+     * Invoked when an AC stream is opened (wrapped).
+     */
+    default void opened(Info info) {}
+
+    /**
+     * Invoked when an AC stream is closed, normally right after the terminal operation completes.
+     */
+    default void closed(Info info) {}
+
+    /**
+     * Invoked when an AC stream that was never closed is found to be garbage-collected.
+     */
+    default void leaked(Info info) {}
+
+    /**
+     * Information about a single instrumented stream.
+     */
+    final class Info {
+
+        private static final AtomicLong ids = new AtomicLong();
+
+        private final long id = ids.incrementAndGet();
+        private final Throwable origin;
+        private final long openedNanos = System.nanoTime();
+        volatile long terminalNanos;
+        volatile long closedNanos;
+        volatile boolean parallel;
+        volatile boolean closed;
+        final LongAdder elements = new LongAdder();
+
+        Info(Throwable origin) {
+            this.origin = origin;
+        }
+
+        /**
+         * @return unique id of the stream
+         */
+        public long id() { return id; }
+
+        /**
+         * @return a {@link Throwable} capturing the stack trace of the code that opened the stream or
+         *         {@code null} if origin was not {@link StreamMetrics#captureOrigin() captured}
+         */
+        public Throwable origin() { return origin; }
+
+        /**
+         * @return {@link System#nanoTime()} when the stream was opened
+         */
+        public long openedNanos() { return openedNanos; }
+
+        /**
+         * @return {@link System#nanoTime()} when the terminal operation started or 0 if it didn't
+         */
+        public long terminalNanos() { return terminalNanos; }
+
+        /**
+         * @return {@link System#nanoTime()} when the stream was closed or 0 if it wasn't
+         */
+        public long closedNanos() { return closedNanos; }
+
+        /**
+         * @return nanoseconds from opening to closing of the stream or -1 if it's not closed yet
+         */
+        public long openDurationNanos() {
+            return closed ? closedNanos - openedNanos : -1L;
+        }
+
+        /**
+         * @return nanoseconds from start of the terminal operation to closing of the stream or -1 if
+         *         the terminal operation did not start or the stream is not closed yet
+         */
+        public long terminalDurationNanos() {
+            long t = terminalNanos;
+            return closed && t != 0L ? closedNanos - t : -1L;
+        }
+
+        /**
+         * @return the number of elements that passed from the source of the stream so far. When {@code count()}
+         *         computes the count from the size of the source without traversing it, the count is taken as
+         *         the number of elements.
+         */
+        public long elements() { return elements.sum(); }
+
+        /**
+         * @return {@code true} if the terminal operation was executed in parallel
+         */
+        public boolean parallel() { return parallel; }
+
+        /**
+         * @return {@code true} if the stream has been closed
+         */
+        public boolean closed() { return closed; }
+
+        @Override
+        public String toString() {
+            return "Stream#" + id +
+                   "[elements=" + elements() +
+                   ", parallel=" + parallel +
+                   (closed ? ", open " + openDurationNanos() + " ns" : ", open") +
+                   (terminalDurationNanos() >= 0 ? ", terminal " + terminalDurationNanos() + " ns" : "") +
+                   "]";
+        }
+    }
+}
@@ -7,10 +7,25 @@ package si.pele.streamx;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
 import java.util.function.*;
 import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
@@ -42,6 +57,130 @@ public interface Streamable<T> {
         return AC.stream(stream());
     }
 
+    /**
+     * @return a {@link Flow.Publisher} that calls {@link #stream()} once per subscription, on first request,
+     *         and pulls elements lazily as requested on a virtual thread (or a daemon platform thread when
+     *         virtual threads are not available).
+     * @see #toPublisher(Executor)
+     */
+    default Flow.Publisher<T> toPublisher() {
+        return toPublisher(Async.EXECUTOR);
+    }
+
+    /**
+     * @param executor the executor running the tasks that open, pull from and close the streams. At most one task
+     *                 per subscription runs at a time and it only runs while there is outstanding demand, so
+     *                 blocking (IO) sources hold no thread while subscribers are not requesting.
+     * @return a {@link Flow.Publisher} that calls {@link #stream()} once per subscription, on first request,
+     *         and pulls elements lazily as requested. The stream is closed when it is exhausted (before
+     *         {@code onComplete}), when it fails (before {@code onError}) and when the subscription is cancelled.
+     */
+    default Flow.Publisher<T> toPublisher(Executor executor) {
+        return new Flows.StreamPublisher<>(this, executor);
+    }
+
+    /**
+     * @param prefetch the max. number of elements requested ahead and buffered
+     * @return a factory of streams that subscribe to given publisher, one subscription per stream. Consuming the
+     *         stream blocks while the buffer is empty. Elements are requested in batches of about 3/4 of
+     *         {@code prefetch} as they are consumed, so the publisher is held back by a slow consumer.
+     *         A failure signalled by the publisher is re-thrown to the consumer of the stream. Closing the stream
+     *         cancels the subscription. The streams don't split.
+     */
+    static <T> Streamable<T> fromPublisher(Flow.Publisher<? extends T> publisher, int prefetch) {
+        Flows.checkPrefetch(prefetch);
+        return () -> Flows.PublisherSpliterator.stream(publisher, prefetch);
+    }
+
+    /**
+     * SPI of sources that can evaluate some predicates themselves, before (fully) materializing elements.
+     * {@link #filter} applied directly on such source first offers the predicate to {@link #pushdown}.
+     * The predicates recognized by the sources of this package are created by {@link Predicates}.
+     */
+    interface Pushdown<T> extends Streamable<T> {
+
+        /**
+         * @return a source equivalent to {@code filter(predicate)} that evaluates given predicate itself or
+         *         {@code null} if the predicate is not recognized.
+         */
+        Streamable<T> pushdown(Predicate<? super T> predicate);
+
+        @Override
+        default Streamable<T> filter(Predicate<? super T> predicate) {
+            Streamable<T> pushed = pushdown(predicate);
+            return pushed != null ? pushed : Streamable.super.filter(predicate);
+        }
+    }
+
+    /**
+     * @return a factory of streams that merge streams of given sources, each sorted by given comparator, into
+     *         a single sorted stream. The merge is lazy and keeps a single element per source in a binary heap,
+     *         so dozens of large sorted files can be merged in constant memory. Equal elements are delivered in
+     *         order of sources. An {@link IllegalStateException} is thrown when a source is found not sorted.
+     *         Closing the stream (explicitly or by {@link AC} wrapper) closes all the source streams.
+     */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    static <T> Streamable<T> mergeSorted(Comparator<? super T> comparator, Streamable<? extends T>... sources) {
+        return mergeSorted(comparator, Arrays.asList(sources));
+    }
+
+    /**
+     * @return a factory of streams that merge streams of given sources, each sorted by given comparator.
+     * @see #mergeSorted(Comparator, Streamable[])
+     */
+    static <T> Streamable<T> mergeSorted(Comparator<? super T> comparator,
+                                         List<? extends Streamable<? extends T>> sources) {
+        Objects.requireNonNull(comparator);
+        List<? extends Streamable<? extends T>> copy = new ArrayList<>(sources);
+        return () -> Merging.mergeSorted(comparator, copy);
+    }
+
+    /**
+     * @return a factory of streams of results of given function applied to pairs of elements at equal positions
+     *         in streams of given sources. The streams end when either source stream ends. Closing the stream
+     *         (explicitly or by {@link AC} wrapper) closes both source streams.
+     */
+    static <A, B, R> Streamable<R> zip(Streamable<A> a, Streamable<B> b,
+                                       BiFunction<? super A, ? super B, ? extends R> zipper) {
+        Objects.requireNonNull(a);
+        Objects.requireNonNull(b);
+        Objects.requireNonNull(zipper);
+        return () -> Merging.zip(a, b, zipper);
+    }
+
+    /**
+     * @return a factory of streams of results of given function applied to pairs of elements of streams of given
+     *         sources with equal keys (an inner join). Both sources must be sorted by key with given comparator.
+     *         The join is lazy: it merges the sources, holding just the elements of the right source with
+     *         the current key. An {@link IllegalStateException} is thrown when a source is found not sorted.
+     *         Closing the stream (explicitly or by {@link AC} wrapper) closes both source streams.
+     */
+    static <L, R, K, O> Streamable<O> join(Streamable<L> left, Streamable<R> right,
+                                           Function<? super L, ? extends K> leftKey,
+                                           Function<? super R, ? extends K> rightKey,
+                                           Comparator<? super K> comparator,
+                                           BiFunction<? super L, ? super R, ? extends O> joiner) {
+        Objects.requireNonNull(left);
+        Objects.requireNonNull(right);
+        Objects.requireNonNull(leftKey);
+        Objects.requireNonNull(rightKey);
+        Objects.requireNonNull(comparator);
+        Objects.requireNonNull(joiner);
+        return () -> Merging.join(left, right, leftKey, rightKey, comparator, joiner);
+    }
+
+    /**
+     * @return a factory of streams of joined pairs of elements of given sources sorted by natural order of keys.
+     * @see #join(Streamable, Streamable, Function, Function, Comparator, BiFunction)
+     */
+    static <L, R, K extends Comparable<? super K>, O> Streamable<O> join(Streamable<L> left, Streamable<R> right,
+                                                                        Function<? super L, ? extends K> leftKey,
+                                                                        Function<? super R, ? extends K> rightKey,
+                                                                        BiFunction<? super L, ? super R, ? extends O> joiner) {
+        return join(left, right, leftKey, rightKey, Comparator.<K>naturalOrder(), joiner);
+    }
+
     /**
      * A variant of {@link Streamable} that wraps any {@link IOException} thrown by the
      * {@link #streamIO()} method with an {@link UncheckedIOException}.
@@ -57,16 +196,150 @@ public interface Streamable<T> {
                 throw new UncheckedIOException(ioe);
             }
         }
+
+        /**
+         * @return a factory of streams of lines of given file decoded with UTF-8 charset.
+         * @see #lines(Path, Charset)
+         */
+        static IO<String> lines(Path path) {
+            return lines(path, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return a factory of streams of lines of given file decoded with given charset. For UTF-8, ISO-8859-1 and
+         *         US-ASCII charsets the file is memory-mapped and the streams split at line boundaries, so they scale
+         *         when made {@link Stream#parallel() parallel}. Closing the stream (explicitly or by {@link AC}
+         *         wrapper) closes the file and releases the mapping. {@link Predicates#startsWith Text predicates}
+         *         passed to {@link #filter} directly on the returned factory are evaluated on raw bytes of lines
+         *         for these charsets, so lines that don't pass are never decoded. Lines are terminated by
+         *         {@code "\n"}, {@code "\r"} or {@code "\r\n"} as in {@link java.io.BufferedReader#readLine()}.
+         */
+        static IO<String> lines(Path path, Charset cs) {
+            return new MappedFile.LineSource(path, cs);
+        }
+
+        /**
+         * @return a factory of streams of elements of given block file written by
+         *         {@link Streamable#writeTo(Path, Codec)}, decoded with given codec. The file is memory-mapped and
+         *         the streams are sized and split at block boundaries, so they scale when made
+         *         {@link Stream#parallel() parallel}. Closing the stream (explicitly or by {@link AC} wrapper)
+         *         closes the file and releases the mappings.
+         */
+        static <T> IO<T> readFrom(Path path, Codec<? extends T> codec) {
+            Objects.requireNonNull(path);
+            Objects.requireNonNull(codec);
+            return () -> BlockFile.read(path, codec);
+        }
+
+        /**
+         * @return a factory of streams of consecutive chunks of given size of given file (the last one may be
+         *         shorter). The streams are sized and split at chunk boundaries. Chunks are reused views that are
+         *         only valid until the next chunk is requested (see {@link ByteChunks}).
+         */
+        static ByteChunks chunks(Path path, int size) {
+            return ByteChunks.fixed(path, size);
+        }
+
+        /**
+         * @return a factory of streams of records of given file terminated by given delimiter (which is not included).
+         *         The streams split at record boundaries. Records are reused views that are only valid until the next
+         *         record is requested (see {@link ByteChunks}).
+         */
+        static ByteChunks records(Path path, byte delimiter) {
+            return ByteChunks.delimited(path, delimiter);
+        }
+
+        /**
+         * @return a factory of streams of consecutive chunks of given size of channels opened by given supplier
+         *         (the last one may be shorter). The streams don't split.
+         * @see #chunks(Path, int)
+         */
+        static ByteChunks chunks(si.pele.streamx.IO.Supplier<? extends ReadableByteChannel> channel, int size) {
+            return ByteChunks.fixed(channel, size);
+        }
+
+        /**
+         * @return a factory of streams of records terminated by given delimiter of channels opened by given supplier.
+         *         The streams don't split.
+         * @see #records(Path, byte)
+         */
+        static ByteChunks records(si.pele.streamx.IO.Supplier<? extends ReadableByteChannel> channel, byte delimiter) {
+            return ByteChunks.delimited(channel, delimiter);
+        }
+
+        /**
+         * @return a factory of streams of the concatenation of given number of partitions of a source (shards,
+         *         byte ranges, pages of a query, ...), each opened by given function as a separate stream.
+         *         The streams split between partitions and open each partition lazily on the fork/join worker that
+         *         processes it, so they scale when made {@link Stream#parallel() parallel}. Each partition is closed
+         *         as soon as it is exhausted and closing the stream (explicitly or by {@link AC} wrapper) closes
+         *         the partitions still open.
+         * @see #partitioned(int, IntToLongFunction, IntFunction)
+         * @see si.pele.streamx.IO#intFunction
+         */
+        static <T> IO<T> partitioned(int n, IntFunction<? extends Stream<? extends T>> partition) {
+            Partitions.checkCount(n);
+            Objects.requireNonNull(partition);
+            return () -> Partitions.stream(n, null, partition);
+        }
+
+        /**
+         * @param size the exact number of elements of each partition, evaluated for all partitions when a stream
+         *             is constructed
+         * @return a factory of streams of the concatenation of given number of partitions like
+         *         {@link #partitioned(int, IntFunction)}, which are {@link java.util.Spliterator#SIZED SIZED} and
+         *         {@link java.util.Spliterator#SUBSIZED SUBSIZED}, so they split into parts of about equal sizes.
+         *         A partition is split further only if its own stream is {@code SUBSIZED}.
+         */
+        static <T> IO<T> partitioned(int n, IntToLongFunction size,
+                                     IntFunction<? extends Stream<? extends T>> partition) {
+            Partitions.checkCount(n);
+            Objects.requireNonNull(size);
+            Objects.requireNonNull(partition);
+            return () -> Partitions.stream(n, size, partition);
+        }
+
+        /**
+         * @return a factory of streams of all the entries of the file tree rooted at given start.
+         * @see #walk(Path, int, String)
+         */
+        static IO<FileEntry> walk(Path start) {
+            return new Walker(start, Integer.MAX_VALUE, null);
+        }
+
+        /**
+         * @return a factory of streams of the entries of the file tree rooted at given start up to given depth.
+         * @see #walk(Path, int, String)
+         */
+        static IO<FileEntry> walk(Path start, int maxDepth) {
+            return new Walker(start, maxDepth, null);
+        }
+
+        /**
+         * @return a factory of streams of the entries of the file tree rooted at given start (at depth 0) up to given
+         *         depth, which match given glob pattern. A pattern without a name separator is matched against
+         *         the file name, otherwise against the path relative to start. Non-matching directories are still
+         *         descended into. Unlike {@link java.nio.file.Files#walk}, entries carry their
+         *         {@link FileEntry#attributes() attributes}, so no further {@code stat} is needed to tell files
+         *         from directories, and the streams are not ordered, but split at subdirectories, so they scale
+         *         when made {@link Stream#parallel() parallel}. Symbolic links are not followed.
+         *         Closing the stream (explicitly or by {@link AC} wrapper) closes any open directories.
+         */
+        static IO<FileEntry> walk(Path start, int maxDepth, String glob) {
+            return new Walker(start, maxDepth, glob);
+        }
     }
 
     // non-terminal operations
 
+    // filter, map and peek are fused into a single stage over raw sources (see Fused)
+
     default Streamable<T> filter(Predicate<? super T> predicate) {
-        return () -> stream().filter(predicate);
+        return Fused.filter(this, predicate);
     }
 
     default <R> Streamable<R> map(Function<? super T, ? extends R> mapper) {
-        return () -> stream().map(mapper);
+        return Fused.map(this, mapper);
     }
 
     default IntStreamable mapToInt(ToIntFunction<? super T> mapper) {
@@ -85,6 +358,28 @@ public interface Streamable<T> {
         return () -> stream().flatMap(mapper);
     }
 
+    /**
+     * @return a factory of streams of concatenated elements of inner streams mapped from elements of this
+     *         factory's streams, like {@link #flatMap}, except that when made {@link Stream#parallel() parallel}
+     *         the inner streams are split too, not just the outer stream, so that a few large inner streams
+     *         (for example {@link IO#lines(Path) lines} of large files) are processed in parallel along with many
+     *         small ones. Encounter order is preserved. Each inner stream is closed as soon as it is exhausted
+     *         and closing the stream closes any inner streams still open and the outer stream.
+     */
+    default <R> Streamable<R> flatMapParallel(Function<? super T, ? extends Stream<? extends R>> mapper) {
+        Objects.requireNonNull(mapper);
+        return () -> FlatMapParallel.stream(stream(), mapper, true);
+    }
+
+    /**
+     * @return a factory of streams like {@link #flatMapParallel} but not ordered, which lets splitting prefer
+     *         the outer stream (inner streams are split when the outer stream can't be split any more).
+     */
+    default <R> Streamable<R> flatMapParallelUnordered(Function<? super T, ? extends Stream<? extends R>> mapper) {
+        Objects.requireNonNull(mapper);
+        return () -> FlatMapParallel.stream(stream(), mapper, false);
+    }
+
     default IntStreamable flatMapToInt(Function<T, ? extends IntStream> mapper) {
         return () -> stream().flatMapToInt(mapper);
     }
@@ -97,6 +392,42 @@ public interface Streamable<T> {
         return () -> stream().flatMapToDouble(mapper);
     }
 
+    /**
+     * @return a factory of streams of elements mapped with given blocking (IO) function which is executed
+     *         concurrently for up to {@code maxConcurrency} elements at a time on virtual threads (or daemon platform
+     *         threads when virtual threads are not available). Results are delivered in encounter order.
+     *         An {@link UncheckedIOException} thrown by the function is re-thrown to the consumer of the stream.
+     *         Closing the stream cancels outstanding tasks and closes the source stream.
+     */
+    default <R> Streamable<R> mapConcurrent(int maxConcurrency,
+                                            si.pele.streamx.IO.Function<? super T, ? extends R> mapper) {
+        MapConcurrent.checkConcurrency(maxConcurrency);
+        return () -> MapConcurrent.stream(stream(), maxConcurrency, mapper, true, Async.EXECUTOR);
+    }
+
+    /**
+     * @return a factory of streams like {@link #mapConcurrent(int, si.pele.streamx.IO.Function)} but delivering
+     *         results in completion order.
+     */
+    default <R> Streamable<R> mapConcurrentUnordered(int maxConcurrency,
+                                                     si.pele.streamx.IO.Function<? super T, ? extends R> mapper) {
+        MapConcurrent.checkConcurrency(maxConcurrency);
+        return () -> MapConcurrent.stream(stream(), maxConcurrency, mapper, false, Async.EXECUTOR);
+    }
+
+    /**
+     * @return a factory of streams of elements that are read ahead from the source stream into a buffer of given
+     *         capacity by a producer running on a virtual thread (or a daemon platform thread when virtual threads
+     *         are not available), so that waiting for a blocking (IO) source overlaps with the processing of
+     *         elements downstream. An exception thrown by the source is re-thrown to the consumer of the stream.
+     *         Closing the stream stops the producer and then closes the source stream. The streams don't split
+     *         on their own, but hand off prefetched elements in batches when made {@link Stream#parallel() parallel}.
+     */
+    default Streamable<T> prefetch(int capacity) {
+        Prefetch.checkCapacity(capacity);
+        return () -> Prefetch.stream(stream(), capacity, Async.EXECUTOR);
+    }
+
     default Streamable<T> distinct() {
         return () -> stream().distinct();
     }
@@ -110,7 +441,84 @@ public interface Streamable<T> {
     }
 
     default Streamable<T> peek(Consumer<? super T> consumer) {
-        return () -> stream().peek(consumer);
+        return Fused.peek(this, consumer);
+    }
+
+    /**
+     * @return a factory of streams of consecutive batches of given size. Batching is lazy, so at most one
+     *         batch (per parallel split) is held in memory. The last batch and, in a parallel stream, the last batch
+     *         of each split of the source may be smaller than requested.
+     */
+    default Streamable<List<T>> batch(int size) {
+        Batches.checkSize(size);
+        return () -> Batches.of(stream(), size);
+    }
+
+    /**
+     * @return a factory of streams of windows of given size starting every {@code slide} elements (overlapping
+     *         when {@code slide < size}, skipping elements when {@code slide > size}). Elements shared by
+     *         overlapping windows are buffered once. The last window is smaller if the source ends before it is
+     *         complete and is only emitted if it contains elements not included in previous windows.
+     *         The streams don't split.
+     */
+    default Streamable<List<T>> windowByCount(int size, int slide) {
+        Windows.checkCount(size, slide);
+        return () -> Windows.byCount(stream(), size, slide);
+    }
+
+    /**
+     * @return a factory of streams of consecutive windows of elements taken from the source during given
+     *         duration, measured by the monotonic {@link System#nanoTime()} clock from the start of traversal.
+     *         A window is emitted in order when the first element after its end arrives or when the source ends,
+     *         so empty windows are skipped. The streams don't split.
+     */
+    default Streamable<List<T>> windowByTime(Duration duration) {
+        Windows.checkDuration(duration);
+        return () -> Windows.byTime(stream(), duration);
+    }
+
+    /**
+     * @return a factory of streams passing elements evenly spaced in time at no more than given rate,
+     *         shared by the threads of a parallel stream. The consumer thread waits by parking, and throws
+     *         {@link java.util.concurrent.CancellationException} when interrupted, so the stream can still be
+     *         closed promptly.
+     */
+    default Streamable<T> throttle(double permitsPerSecond) {
+        long intervalNanos = Throttle.checkRate(permitsPerSecond);
+        return () -> Throttle.stream(stream(), intervalNanos);
+    }
+
+    /**
+     * @return a {@link Streamable} that records elements into {@link StreamCache#shared() shared cache}
+     *         the first time its stream is completely consumed and replays them from memory on later calls.
+     * @see #cached(StreamCache, ToLongFunction, Supplier)
+     */
+    default Streamable<T> cached() {
+        return cached(StreamCache.shared());
+    }
+
+    /**
+     * @return a {@link Streamable} that records elements into given cache the first time its stream
+     *         is completely consumed and replays them from memory on later calls.
+     * @see #cached(StreamCache, ToLongFunction, Supplier)
+     */
+    default Streamable<T> cached(StreamCache cache) {
+        return cached(cache, null, null);
+    }
+
+    /**
+     * @param cache   the cache bounding the memory used and evicting least recently used entries
+     * @param weigher estimates the number of bytes occupied by an element (in addition to a reference to it)
+     *                or {@code null} to only count references
+     * @param version supplies a version stamp of the source (for example {@link StreamCache#lastModified})
+     *                which is compared to the stamp taken when elements were recorded to invalidate them,
+     *                or {@code null} if the source never changes
+     * @return a {@link Streamable} that records elements into given cache the first time its stream
+     *         is completely consumed and replays them from memory on later calls as long as they are
+     *         neither evicted nor invalidated. The first traversal does not split, replayed streams are sequential.
+     */
+    default Streamable<T> cached(StreamCache cache, ToLongFunction<? super T> weigher, Supplier<?> version) {
+        return new Cached.RefCached<>(this, cache, weigher, version);
     }
 
     default Streamable<T> limit(long maxSize) {
@@ -120,4 +528,139 @@ public interface Streamable<T> {
     default Streamable<T> skip(long n) {
         return () -> stream().skip(n);
     }
+
+    // terminal operations
+
+    /**
+     * Feeds the elements of a single newly constructed stream to all given collectors, so that several results are
+     * computed in one pass over the source instead of one pass per result. In a parallel stream each split
+     * accumulates into its own containers of all the collectors, which are then combined with their combiners.
+     * The stream is closed afterwards.
+     *
+     * @return an unmodifiable list of the results of given collectors in the same order
+     * @see #fork(Collector, Collector, BiFunction)
+     */
+    default List<Object> fork(List<? extends Collector<? super T, ?, ?>> collectors) {
+        Collector<T, ?, List<Object>> forked = Fork.of(collectors);
+        try (Stream<T> s = stream()) {
+            return s.collect(forked);
+        }
+    }
+
+    /**
+     * Feeds the elements of a single newly constructed stream to both given collectors and merges their results
+     * with given function. The stream is closed afterwards.
+     *
+     * @see java.util.stream.Collectors#teeing
+     * @see #fork(List)
+     */
+    default <R1, R2, R> R fork(Collector<? super T, ?, R1> collector1, Collector<? super T, ?, R2> collector2,
+                               BiFunction<? super R1, ? super R2, R> merger) {
+        Collector<T, ?, R> teeing = Collectors.teeing(collector1, collector2, merger);
+        try (Stream<T> s = stream()) {
+            return s.collect(teeing);
+        }
+    }
+
+    /**
+     * Writes the elements of a newly constructed stream, in encounter order, encoded with given codec to given file
+     * in a block format that is read back by {@link IO#readFrom(Path, Codec)}. The file is first written to a
+     * temporary file in the same directory which then replaces the target file, so a reader never sees
+     * a partially written file. The stream is closed afterwards.
+     *
+     * @return the number of elements written
+     * @throws UncheckedIOException if writing fails
+     */
+    default long writeTo(Path path, Codec<? super T> codec) {
+        try {
+            return BlockFile.write(stream(), path, codec);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    // asynchronous terminal operations: the stream is obtained and consumed on the executor
+
+    /**
+     * @return a future of {@link Stream#forEach} performed on a new stream on a virtual thread
+     * @see AC#forEachAsync(Stream, Consumer, Executor)
+     */
+    default CompletableFuture<Void> forEachAsync(Consumer<? super T> action) {
+        return forEachAsync(action, Async.EXECUTOR);
+    }
+
+    /**
+     * @return a future of {@link Stream#forEach} performed on a new stream on given executor
+     * @see AC#forEachAsync(Stream, Consumer, Executor)
+     */
+    default CompletableFuture<Void> forEachAsync(Consumer<? super T> action, Executor executor) {
+        return Async.terminal(this, s -> {
+            s.forEach(action);
+            return null;
+        }, executor);
+    }
+
+    /**
+     * @return a future of {@link Stream#collect(Collector)} performed on a new stream on a virtual thread
+     * @see AC#forEachAsync(Stream, Consumer, Executor)
+     */
+    default <A, R> CompletableFuture<R> collectAsync(Collector<? super T, A, R> collector) {
+        return collectAsync(collector, Async.EXECUTOR);
+    }
+
+    /**
+     * @return a future of {@link Stream#collect(Collector)} performed on a new stream on given executor
+     * @see AC#forEachAsync(Stream, Consumer, Executor)
+     */
+    default <A, R> CompletableFuture<R> collectAsync(Collector<? super T, A, R> collector, Executor executor) {
+        return Async.terminal(this, s -> s.collect(collector), executor);
+    }
+
+    /**
+     * @return a future of {@link Stream#reduce(Object, BinaryOperator)} performed on a new stream on a virtual thread
+     * @see AC#forEachAsync(Stream, Consumer, Executor)
+     */
+    default CompletableFuture<T> reduceAsync(T identity, BinaryOperator<T> accumulator) {
+        return reduceAsync(identity, accumulator, Async.EXECUTOR);
+    }
+
+    /**
+     * @return a future of {@link Stream#reduce(Object, BinaryOperator)} performed on a new stream on given executor
+     * @see AC#forEachAsync(Stream, Consumer, Executor)
+     */
+    default CompletableFuture<T> reduceAsync(T identity, BinaryOperator<T> accumulator, Executor executor) {
+        return Async.terminal(this, s -> s.reduce(identity, accumulator), executor);
+    }
+
+    /**
+     * @return a future of {@link Stream#reduce(BinaryOperator)} performed on a new stream on a virtual thread
+     * @see AC#forEachAsync(Stream, Consumer, Executor)
+     */
+    default CompletableFuture<Optional<T>> reduceAsync(BinaryOperator<T> accumulator) {
+        return reduceAsync(accumulator, Async.EXECUTOR);
+    }
+
+    /**
+     * @return a future of {@link Stream#reduce(BinaryOperator)} performed on a new stream on given executor
+     * @see AC#forEachAsync(Stream, Consumer, Executor)
+     */
+    default CompletableFuture<Optional<T>> reduceAsync(BinaryOperator<T> accumulator, Executor executor) {
+        return Async.terminal(this, s -> s.reduce(accumulator), executor);
+    }
+
+    /**
+     * @return a future of {@link Stream#count()} performed on a new stream on a virtual thread
+     * @see AC#forEachAsync(Stream, Consumer, Executor)
+     */
+    default CompletableFuture<Long> countAsync() {
+        return countAsync(Async.EXECUTOR);
+    }
+
+    /**
+     * @return a future of {@link Stream#count()} performed on a new stream on given executor
+     * @see AC#forEachAsync(Stream, Consumer, Executor)
+     */
+    default CompletableFuture<Long> countAsync(Executor executor) {
+        return Async.terminal(this, Stream::count, executor);
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.*;
+
+/**
+ * A rate limiter that lets elements pass evenly spaced in time at a given rate. Each element reserves the next
+ * free time slot (measured by the monotonic {@link System#nanoTime()} clock) and waits for it by parking the
+ * thread, so the rate doesn't drift with oversleeping and is shared by the threads of a parallel stream.
+ * Slots not used while the stream is slower than the rate are not saved for later bursts.
+ */
+final class Throttle implements Consumer<Object>, IntConsumer, LongConsumer, DoubleConsumer {
+
+    static long checkRate(double permitsPerSecond) {
+        if (!(permitsPerSecond > 0d)) {
+            throw new IllegalArgumentException("Rate must be positive: " + permitsPerSecond);
+        }
+        return Math.max(1L, (long) (1e9d / permitsPerSecond));
+    }
+
+    static <T> Stream<T> stream(Stream<T> s, long intervalNanos) {
+        return s.peek(new Throttle(intervalNanos));
+    }
+
+    static IntStream stream(IntStream s, long intervalNanos) {
+        return s.peek(new Throttle(intervalNanos));
+    }
+
+    static LongStream stream(LongStream s, long intervalNanos) {
+        return s.peek(new Throttle(intervalNanos));
+    }
+
+    static DoubleStream stream(DoubleStream s, long intervalNanos) {
+        return s.peek(new Throttle(intervalNanos));
+    }
+
+    private final long intervalNanos;
+    private final AtomicLong next = new AtomicLong(System.nanoTime()); // next free slot
+
+    private Throttle(long intervalNanos) {
+        this.intervalNanos = intervalNanos;
+    }
+
+    void acquire() {
+        long start = System.nanoTime();
+        long slot = next.updateAndGet(n -> (n - start > 0L ? n : start) + intervalNanos) - intervalNanos;
+        for (long wait = slot - start; wait > 0L; wait = slot - System.nanoTime()) {
+            LockSupport.parkNanos(this, wait);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while throttled");
+            }
+        }
+    }
+
+    @Override
+    public void accept(Object o) { acquire(); }
+
+    @Override
+    public void accept(int value) { acquire(); }
+
+    @Override
+    public void accept(long value) { acquire(); }
+
+    @Override
+    public void accept(double value) { acquire(); }
+}
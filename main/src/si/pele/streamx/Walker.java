@@ -0,0 +1,351 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A factory of streams of {@link FileEntry entries} of a file tree, walked without following symbolic links.
+ * Each spliterator lists directories depth-first and keeps not yet listed subdirectories in a deque. Splitting
+ * hands off the older (shallower) half of them, so each subdirectory is a unit of work that can be stolen.
+ * When there is a single directory left, its listing is split instead. Directory streams still open are closed
+ * when the stream is closed. {@link Predicates.Entry Entry predicates} can be pushed down to the walker.
+ */
+final class Walker implements Streamable.IO<FileEntry>, Streamable.Pushdown<FileEntry> {
+
+    final Path start;
+    final int maxDepth;
+    final String glob;
+    final Predicates.Entry[] filters;
+
+    Walker(Path start, int maxDepth, String glob) {
+        this(start, maxDepth, glob, new Predicates.Entry[0]);
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth must be non-negative: " + maxDepth);
+        }
+    }
+
+    private Walker(Path start, int maxDepth, String glob, Predicates.Entry[] filters) {
+        this.start = Objects.requireNonNull(start);
+        this.maxDepth = maxDepth;
+        this.glob = glob;
+        this.filters = filters;
+    }
+
+    /**
+     * Recognizes {@link Predicates.Entry entry predicates}. Those that only need the path are evaluated
+     * before reading attributes of entries at max. depth.
+     */
+    @Override
+    public Streamable<FileEntry> pushdown(Predicate<? super FileEntry> predicate) {
+        if (!(predicate instanceof Predicates.Entry)) {
+            return null;
+        }
+        Predicates.Entry[] fs = Arrays.copyOf(filters, filters.length + 1);
+        fs[filters.length] = (Predicates.Entry) predicate;
+        return new Walker(start, maxDepth, glob, fs);
+    }
+
+    @Override
+    public Stream<FileEntry> streamIO() throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(start, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        Walk walk = new Walk(this);
+        return StreamSupport
+            .stream(new WalkSpliterator(walk, new FileEntry(start, attrs, 0)), false)
+            .onClose(walk::close);
+    }
+
+    /**
+     * State shared by all the spliterators of a single walk.
+     */
+    static final class Walk {
+
+        final int maxDepth;
+        private final Path start;
+        private final PathMatcher matcher;
+        private final boolean matchFileName;
+        private final Predicates.Entry[] filters;
+        private final Set<DirectoryStream<Path>> open = ConcurrentHashMap.newKeySet();
+        private volatile boolean closed;
+
+        Walk(Walker walker) {
+            this.start = walker.start;
+            this.maxDepth = walker.maxDepth;
+            this.filters = walker.filters;
+            if (walker.glob == null) {
+                matcher = null;
+                matchFileName = false;
+            } else {
+                matcher = start.getFileSystem().getPathMatcher("glob:" + walker.glob);
+                // a glob without separators matches file names, otherwise paths relative to start
+                matchFileName = walker.glob.indexOf('/') < 0 &&
+                                walker.glob.indexOf(start.getFileSystem().getSeparator().charAt(0)) < 0;
+            }
+        }
+
+        /**
+         * @return whether given path passes the glob and the filters that need just the path
+         */
+        boolean matchesPath(Path p) {
+            for (Predicates.Entry f : filters) {
+                if (f.pathOnly() && !f.testPath(p)) {
+                    return false;
+                }
+            }
+            if (matcher == null) {
+                return true;
+            }
+            if (matchFileName) {
+                Path name = p.getFileName();
+                return matcher.matches(name == null ? p : name);
+            }
+            return matcher.matches(start.relativize(p));
+        }
+
+        /**
+         * @return whether given entry passes the filters that need attributes
+         */
+        boolean matchesAttributes(FileEntry e) {
+            for (Predicates.Entry f : filters) {
+                if (!f.pathOnly() && !f.test(e)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return an opened and registered directory stream or {@code null} if the walk is closed.
+         */
+        DirectoryStream<Path> open(Path dir) {
+            if (closed) {
+                return null;
+            }
+            DirectoryStream<Path> ds;
+            try {
+                ds = Files.newDirectoryStream(dir);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            open.add(ds);
+            if (closed) {
+                close(ds);
+                return null;
+            }
+            return ds;
+        }
+
+        void close(DirectoryStream<Path> ds) {
+            if (open.remove(ds)) {
+                try {
+                    ds.close();
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            }
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        void close() {
+            closed = true;
+            UncheckedIOException failure = null;
+            for (DirectoryStream<Path> ds : open) {
+                try {
+                    close(ds);
+                } catch (UncheckedIOException e) {
+                    if (failure == null) failure = e;
+                    else failure.addSuppressed(e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    static final class WalkSpliterator implements Spliterator<FileEntry> {
+
+        private final Walk walk;
+        private FileEntry root; // start entry not emitted yet
+        // not yet listed directories: own work at the head, oldest at the tail
+        private final ArrayDeque<FileEntry> dirs = new ArrayDeque<>();
+        // current listing: either an open directory stream...
+        private DirectoryStream<Path> stream;
+        private Iterator<Path> iterator;
+        // ...or a range of drained paths
+        private Path[] paths;
+        private int index, fence;
+        private int depth; // of entries of current listing
+
+        WalkSpliterator(Walk walk, FileEntry root) {
+            this.walk = walk;
+            this.root = root;
+            if (root.isDirectory() && walk.maxDepth > 0) {
+                dirs.push(root);
+            }
+        }
+
+        private WalkSpliterator(Walk walk) {
+            this.walk = walk;
+        }
+
+        private boolean hasListing() {
+            return iterator != null || index < fence;
+        }
+
+        private void list(FileEntry dir) {
+            DirectoryStream<Path> ds = walk.open(dir.path());
+            if (ds != null) {
+                stream = ds;
+                iterator = ds.iterator();
+                depth = dir.depth() + 1;
+            }
+        }
+
+        private void closeListing() {
+            DirectoryStream<Path> ds = stream;
+            stream = null;
+            iterator = null;
+            walk.close(ds);
+        }
+
+        private Path nextPath() {
+            while (true) {
+                if (index < fence) {
+                    return paths[index++];
+                }
+                if (iterator != null) {
+                    try {
+                        if (iterator.hasNext()) {
+                            return iterator.next();
+                        }
+                    } catch (DirectoryIteratorException e) {
+                        throw new UncheckedIOException(e.getCause());
+                    }
+                    closeListing();
+                } else if (!dirs.isEmpty() && !walk.isClosed()) {
+                    list(dirs.pop());
+                } else {
+                    return null;
+                }
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super FileEntry> action) {
+            FileEntry r = root;
+            if (r != null) {
+                root = null;
+                if (walk.matchesPath(r.path()) && walk.matchesAttributes(r)) {
+                    action.accept(r);
+                    return true;
+                }
+            }
+            Path p;
+            while ((p = nextPath()) != null) {
+                boolean leaf = depth >= walk.maxDepth;
+                if (leaf && !walk.matchesPath(p)) {
+                    continue; // no need to read attributes
+                }
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+                FileEntry e = new FileEntry(p, attrs, depth);
+                if (!leaf && attrs.isDirectory()) {
+                    dirs.push(e);
+                }
+                if ((leaf || walk.matchesPath(p)) && walk.matchesAttributes(e)) {
+                    action.accept(e);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<FileEntry> trySplit() {
+            if (walk.isClosed()) {
+                return null;
+            }
+            int n = hasListing() ? (dirs.size() + 1) / 2 : dirs.size() / 2;
+            if (n > 0) {
+                WalkSpliterator split = new WalkSpliterator(walk);
+                for (int i = 0; i < n; i++) {
+                    split.dirs.push(dirs.pollLast());
+                }
+                return split;
+            }
+            // a single directory left - split its listing
+            if (!hasListing() && !dirs.isEmpty()) {
+                list(dirs.pop());
+            }
+            if (iterator != null) {
+                drain();
+            }
+            int mid = (index + fence) >>> 1;
+            if (mid <= index) {
+                return null;
+            }
+            WalkSpliterator split = new WalkSpliterator(walk);
+            split.paths = paths;
+            split.index = index;
+            split.fence = mid;
+            split.depth = depth;
+            index = mid;
+            return split;
+        }
+
+        /**
+         * Reads the rest of the open directory stream into {@link #paths} and closes it.
+         */
+        private void drain() {
+            List<Path> rest = new ArrayList<>();
+            for (int i = index; i < fence; i++) {
+                rest.add(paths[i]);
+            }
+            try {
+                iterator.forEachRemaining(rest::add);
+            } catch (DirectoryIteratorException e) {
+                throw new UncheckedIOException(e.getCause());
+            } finally {
+                closeListing();
+            }
+            paths = rest.toArray(new Path[0]);
+            index = 0;
+            fence = paths.length;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return DISTINCT | NONNULL;
+        }
+    }
+}
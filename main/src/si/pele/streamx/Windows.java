@@ -0,0 +1,318 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package si.pele.streamx;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.*;
+
+/**
+ * Lazy windowing of stream elements, either by count (sliding windows of fixed size) or by time (tumbling
+ * windows of fixed duration measured by the monotonic {@link System#nanoTime()} clock from the start of traversal).
+ * Windows span the whole source, so windowed streams don't split. Primitive elements are collected into primitive
+ * arrays without boxing.<p>
+ * Windows by count of {@code size} elements start every {@code slide} elements. When the source ends, the last
+ * (partial) window is emitted only if it contains elements not included in any window before.<p>
+ * A window by time is emitted when the first element arriving after its end is taken from the source or when
+ * the source ends, so windows without elements are not emitted.
+ */
+final class Windows {
+
+    private Windows() {} // no instances
+
+    static void checkCount(int size, int slide) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Window size must be positive: " + size);
+        }
+        if (slide <= 0) {
+            throw new IllegalArgumentException("Window slide must be positive: " + slide);
+        }
+    }
+
+    static long checkDuration(Duration duration) {
+        long nanos = duration.toNanos();
+        if (nanos <= 0L) {
+            throw new IllegalArgumentException("Window duration must be positive: " + duration);
+        }
+        return nanos;
+    }
+
+    static <T> Stream<List<T>> byCount(Stream<T> s, int size, int slide) {
+        checkCount(size, slide);
+        return StreamSupport.stream(new RefWindows<>(s.spliterator(), size, slide, 0L), false).onClose(s::close);
+    }
+
+    static Stream<int[]> byCount(IntStream s, int size, int slide) {
+        checkCount(size, slide);
+        return StreamSupport.stream(new IntWindows(s.spliterator(), size, slide, 0L), false).onClose(s::close);
+    }
+
+    static Stream<long[]> byCount(LongStream s, int size, int slide) {
+        checkCount(size, slide);
+        return StreamSupport.stream(new LongWindows(s.spliterator(), size, slide, 0L), false).onClose(s::close);
+    }
+
+    static Stream<double[]> byCount(DoubleStream s, int size, int slide) {
+        checkCount(size, slide);
+        return StreamSupport.stream(new DoubleWindows(s.spliterator(), size, slide, 0L), false).onClose(s::close);
+    }
+
+    static <T> Stream<List<T>> byTime(Stream<T> s, Duration duration) {
+        long nanos = checkDuration(duration);
+        return StreamSupport.stream(new RefWindows<>(s.spliterator(), 0, 0, nanos), false).onClose(s::close);
+    }
+
+    static Stream<int[]> byTime(IntStream s, Duration duration) {
+        long nanos = checkDuration(duration);
+        return StreamSupport.stream(new IntWindows(s.spliterator(), 0, 0, nanos), false).onClose(s::close);
+    }
+
+    static Stream<long[]> byTime(LongStream s, Duration duration) {
+        long nanos = checkDuration(duration);
+        return StreamSupport.stream(new LongWindows(s.spliterator(), 0, 0, nanos), false).onClose(s::close);
+    }
+
+    static Stream<double[]> byTime(DoubleStream s, Duration duration) {
+        long nanos = checkDuration(duration);
+        return StreamSupport.stream(new DoubleWindows(s.spliterator(), 0, 0, nanos), false).onClose(s::close);
+    }
+
+    /**
+     * Base of windowing spliterators. Elements are buffered in an array which subclasses allocate and append to.
+     * Windows are copied out of the buffer, so the elements shared by overlapping windows are buffered once.
+     */
+    abstract static class WindowSpliterator<W, S extends Spliterator<?>> implements Spliterator<W> {
+
+        final S s;
+        private final int size, slide; // by count
+        private final long nanos; // by time when > 0
+
+        Object buffer; // array of elements [start, end)
+        int end;
+        private int start;
+        private long taken; // number of elements taken from source (by count)
+        private long nextStart; // index of the first element of next window (by count)
+        private long emittedEnd; // index after the last element of last window (by count)
+        private long windowEnd; // nanoTime at which current window ends (by time)
+        private boolean started, exhausted;
+
+        WindowSpliterator(S s, int size, int slide, long nanos) {
+            this.s = s;
+            this.size = size;
+            this.slide = slide;
+            this.nanos = nanos;
+        }
+
+        abstract Object newArray(int length);
+
+        abstract int length(Object array);
+
+        /**
+         * Takes an element from the source and appends it to the buffer (after {@link #ensureRoom()}).
+         *
+         * @return whether the source had an element
+         */
+        abstract boolean take();
+
+        abstract W window(Object array);
+
+        final void ensureRoom() {
+            if (buffer == null) {
+                buffer = newArray(Math.max(16, size));
+            } else if (end == length(buffer)) {
+                Object b = start > end >>> 1 ? buffer : newArray(end * 2);
+                System.arraycopy(buffer, start, b, 0, end - start);
+                buffer = b;
+                end -= start;
+                start = 0;
+            }
+        }
+
+        private W copy(int from, int to) {
+            Object w = newArray(to - from);
+            System.arraycopy(buffer, from, w, 0, to - from);
+            return window(w);
+        }
+
+        private W nextByCount() {
+            while (!exhausted && taken < nextStart + size) {
+                if (take()) {
+                    if (taken++ < nextStart) {
+                        end--; // in a gap between windows
+                    }
+                } else {
+                    exhausted = true;
+                }
+            }
+            long buffered = taken - (end - start); // index of the element at start
+            W w;
+            if (taken >= nextStart + size) {
+                w = copy(start, start + size);
+                emittedEnd = nextStart + size;
+            } else if (taken > Math.max(nextStart, emittedEnd)) {
+                w = copy(start + (int) (nextStart - buffered), end); // last partial window
+                emittedEnd = taken;
+            } else {
+                return null;
+            }
+            nextStart += slide;
+            start += (int) Math.min(end - start, nextStart - buffered);
+            return w;
+        }
+
+        private W nextByTime() {
+            if (!started) {
+                started = true;
+                windowEnd = System.nanoTime() + nanos;
+            }
+            while (!exhausted) {
+                if (!take()) {
+                    exhausted = true;
+                    break;
+                }
+                long now = System.nanoTime();
+                if (now - windowEnd >= 0L) {
+                    // the element belongs to a later window
+                    windowEnd += ((now - windowEnd) / nanos + 1) * nanos;
+                    if (end - 1 > start) {
+                        W w = copy(start, end - 1);
+                        start = end - 1;
+                        return w;
+                    }
+                }
+            }
+            if (end > start) {
+                W w = copy(start, end);
+                start = end;
+                return w;
+            }
+            return null;
+        }
+
+        public boolean tryAdvance(Consumer<? super W> action) {
+            W w = nanos > 0L ? nextByTime() : nextByCount();
+            if (w == null) {
+                buffer = null;
+                return false;
+            }
+            action.accept(w);
+            return true;
+        }
+
+        public Spliterator<W> trySplit() {
+            return null;
+        }
+
+        public long estimateSize() {
+            long est = s.estimateSize();
+            return est == Long.MAX_VALUE || nanos > 0L ? Long.MAX_VALUE : est / slide + 1;
+        }
+
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+
+    static final class RefWindows<T> extends WindowSpliterator<List<T>, Spliterator<T>> implements Consumer<T> {
+
+        RefWindows(Spliterator<T> s, int size, int slide, long nanos) { super(s, size, slide, nanos); }
+
+        @Override
+        Object newArray(int length) { return new Object[length]; }
+
+        @Override
+        int length(Object array) { return ((Object[]) array).length; }
+
+        @Override
+        boolean take() { return s.tryAdvance(this); }
+
+        @Override
+        public void accept(T t) {
+            ensureRoom();
+            ((Object[]) buffer)[end++] = t;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        List<T> window(Object array) { return (List<T>) Arrays.asList((Object[]) array); }
+    }
+
+    static final class IntWindows extends WindowSpliterator<int[], Spliterator.OfInt> implements IntConsumer {
+
+        IntWindows(Spliterator.OfInt s, int size, int slide, long nanos) { super(s, size, slide, nanos); }
+
+        @Override
+        Object newArray(int length) { return new int[length]; }
+
+        @Override
+        int length(Object array) { return ((int[]) array).length; }
+
+        @Override
+        boolean take() { return s.tryAdvance(this); }
+
+        @Override
+        public void accept(int v) {
+            ensureRoom();
+            ((int[]) buffer)[end++] = v;
+        }
+
+        @Override
+        int[] window(Object array) { return (int[]) array; }
+    }
+
+    static final class LongWindows extends WindowSpliterator<long[], Spliterator.OfLong> implements LongConsumer {
+
+        LongWindows(Spliterator.OfLong s, int size, int slide, long nanos) { super(s, size, slide, nanos); }
+
+        @Override
+        Object newArray(int length) { return new long[length]; }
+
+        @Override
+        int length(Object array) { return ((long[]) array).length; }
+
+        @Override
+        boolean take() { return s.tryAdvance(this); }
+
+        @Override
+        public void accept(long v) {
+            ensureRoom();
+            ((long[]) buffer)[end++] = v;
+        }
+
+        @Override
+        long[] window(Object array) { return (long[]) array; }
+    }
+
+    static final class DoubleWindows extends WindowSpliterator<double[], Spliterator.OfDouble>
+        implements DoubleConsumer {
+
+        DoubleWindows(Spliterator.OfDouble s, int size, int slide, long nanos) { super(s, size, slide, nanos); }
+
+        @Override
+        Object newArray(int length) { return new double[length]; }
+
+        @Override
+        int length(Object array) { return ((double[]) array).length; }
+
+        @Override
+        boolean take() { return s.tryAdvance(this); }
+
+        @Override
+        public void accept(double v) {
+            ensureRoom();
+            ((double[]) buffer)[end++] = v;
+        }
+
+        @Override
+        double[] window(Object array) { return (double[]) array; }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package test;
+
+import si.pele.streamx.Codec;
+import si.pele.streamx.DoubleStreamable;
+import si.pele.streamx.IntStreamable;
+import si.pele.streamx.LongStreamable;
+import si.pele.streamx.Streamable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static test.Checks.*;
+
+/**
+ * Checks round trips of objects and primitives through block files, read sequentially and in parallel, and
+ * detection of empty, wrong-kind and corrupted files as well as permissions of written files.
+ */
+public class BlockFileTest {
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("blocks");
+        Path file = dir.resolve("data.sxb");
+        try {
+            objects(file);
+            primitives(file);
+            empty(file);
+            wrongKind(file);
+            corrupted(file);
+            permissions(file);
+            try (Stream<Path> files = Files.list(dir)) {
+                checkEquals(List.of(file), files.collect(Collectors.toList()), "no temporary files left");
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+        System.out.println("OK");
+    }
+
+    static <T> List<T> read(Streamable<T> source, boolean parallel) {
+        try (Stream<T> s = source.stream()) {
+            return (parallel ? s.parallel() : s).collect(Collectors.toList());
+        }
+    }
+
+    static void objects(Path file) {
+        // several blocks of strings of various lengths
+        Random random = new Random(13);
+        List<String> strings = IntStream.range(0, 200_000)
+                                        .mapToObj(i -> "\u00e9".repeat(random.nextInt(5)) + i)
+                                        .collect(Collectors.toList());
+        checkEquals((long) strings.size(), ((Streamable<String>) strings::stream).writeTo(file, Codec.string()),
+                    "objects written");
+        Streamable<String> source = Streamable.IO.readFrom(file, Codec.string());
+        for (boolean parallel : new boolean[]{false, true}) {
+            checkEquals(strings, read(source, parallel), "objects, parallel: " + parallel);
+        }
+        try (Stream<String> s = source.stream()) {
+            checkEquals((long) strings.size(), s.spliterator().getExactSizeIfKnown(), "size of objects");
+        }
+    }
+
+    static void primitives(Path file) {
+        Random random = new Random(17);
+        int[] ints = random.ints(1_000_000).toArray();
+        long[] longs = random.longs(300_000).toArray();
+        double[] doubles = random.doubles(300_001).toArray();
+        doubles[7] = Double.NaN;
+        doubles[8] = -0.0;
+        for (boolean parallel : new boolean[]{false, true}) {
+            String what = ", parallel: " + parallel;
+
+            checkEquals((long) ints.length, ((IntStreamable) () -> Arrays.stream(ints)).writeTo(file), "ints written");
+            IntStreamable intSource = IntStreamable.readFrom(file);
+            checkEquals(ints, (parallel ? intSource.stream().parallel() : intSource.stream()).toArray(), "ints" + what);
+            checkEquals((long) ints.length, intSource.stream().spliterator().getExactSizeIfKnown(), "size of ints");
+
+            checkEquals((long) longs.length, ((LongStreamable) () -> Arrays.stream(longs)).writeTo(file),
+                        "longs written");
+            LongStreamable longSource = LongStreamable.readFrom(file);
+            checkEquals(longs, (parallel ? longSource.stream().parallel() : longSource.stream()).toArray(),
+                        "longs" + what);
+
+            checkEquals((long) doubles.length, ((DoubleStreamable) () -> Arrays.stream(doubles)).writeTo(file),
+                        "doubles written");
+            DoubleStreamable doubleSource = DoubleStreamable.readFrom(file);
+            checkEquals(doubles, (parallel ? doubleSource.stream().parallel() : doubleSource.stream()).toArray(),
+                        "doubles" + what);
+        }
+    }
+
+    static void empty(Path file) {
+        checkEquals(0L, ((IntStreamable) IntStream::empty).writeTo(file), "empty ints written");
+        for (boolean parallel : new boolean[]{false, true}) {
+            IntStreamable source = IntStreamable.readFrom(file);
+            checkEquals(new int[0], (parallel ? source.stream().parallel() : source.stream()).toArray(),
+                        "empty ints, parallel: " + parallel);
+        }
+        checkEquals(0L, ((Streamable<String>) Stream::empty).writeTo(file, Codec.string()), "empty objects written");
+        checkEquals(List.of(), read(Streamable.IO.readFrom(file, Codec.string()), false), "empty objects");
+    }
+
+    static void wrongKind(Path file) {
+        ((LongStreamable) () -> IntStream.range(0, 10).asLongStream()).writeTo(file);
+        UncheckedIOException e = checkThrows(UncheckedIOException.class, () -> IntStreamable.readFrom(file).stream(),
+                                             "ints of a long file");
+        check(e.getCause().getMessage().contains("long elements"), "kind identified: " + e.getCause().getMessage());
+        checkThrows(UncheckedIOException.class, () -> DoubleStreamable.readFrom(file).stream(),
+                    "doubles of a long file");
+        checkThrows(UncheckedIOException.class, () -> Streamable.IO.readFrom(file, Codec.string()).stream(),
+                    "objects of a long file");
+    }
+
+    /**
+     * A block header claiming more elements than its payload holds.
+     */
+    static void corrupted(Path file) throws IOException {
+        ((IntStreamable) () -> IntStream.range(0, 10)).writeTo(file);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer elements = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 11);
+            ch.write(elements, 8); // the first block header follows the 8-byte file header
+        }
+        UncheckedIOException e = checkThrows(UncheckedIOException.class, () -> IntStreamable.readFrom(file).stream(),
+                                             "corrupted block");
+        check(e.getCause().getMessage().startsWith("Corrupted block"), "corrupted: " + e.getCause().getMessage());
+    }
+
+    /**
+     * Written files get the default permissions of new files, or keep the permissions of the files they replace.
+     */
+    static void permissions(Path file) throws IOException {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return;
+        }
+        Path probe = file.resolveSibling("probe");
+        Set<PosixFilePermission> defaults;
+        try {
+            defaults = Files.getPosixFilePermissions(Files.createFile(probe));
+        } finally {
+            Files.deleteIfExists(probe);
+        }
+        Files.deleteIfExists(file);
+        ((IntStreamable) () -> IntStream.range(0, 10)).writeTo(file);
+        checkEquals(defaults, Files.getPosixFilePermissions(file), "permissions of a new file");
+
+        Set<PosixFilePermission> custom = PosixFilePermissions.fromString("rw-r-----");
+        Files.setPosixFilePermissions(file, custom);
+        ((IntStreamable) () -> IntStream.range(0, 10)).writeTo(file);
+        checkEquals(custom, Files.getPosixFilePermissions(file), "permissions of a replaced file");
+    }
+}
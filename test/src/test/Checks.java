@@ -0,0 +1,43 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package test;
+
+import java.util.Objects;
+
+/**
+ * Minimal assertions for the runnable checks in this package (they don't depend on a test framework).
+ */
+final class Checks {
+
+    private Checks() {} // no instances
+
+    static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError("Failed: " + what);
+        }
+    }
+
+    static void checkEquals(Object expected, Object actual, String what) {
+        if (!Objects.deepEquals(expected, actual)) {
+            throw new AssertionError("Failed: " + what + " - expected: " + expected + ", actual: " + actual);
+        }
+    }
+
+    /**
+     * @return the exception of given type thrown by given code
+     */
+    static <X extends Throwable> X checkThrows(Class<X> type, Runnable code, String what) {
+        try {
+            code.run();
+        } catch (Throwable t) {
+            if (type.isInstance(t)) {
+                return type.cast(t);
+            }
+            throw new AssertionError("Failed: " + what + " - expected " + type.getName() + ", got: " + t, t);
+        }
+        throw new AssertionError("Failed: " + what + " - expected " + type.getName());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package test;
+
+import si.pele.streamx.Streamable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static test.Checks.*;
+
+/**
+ * Checks {@link Streamable#flatMapParallel} and {@link Streamable#flatMapParallelUnordered}: elements against
+ * {@link Stream#flatMap} in parallel, closing of inner streams when exhausted and when the stream is closed early,
+ * and mappers returning {@code null}.
+ */
+public class FlatMapParallelTest {
+
+    public static void main(String[] args) {
+        results();
+        closedWhenExhausted();
+        closedEarly();
+        nullInnerStreams();
+        System.out.println("OK");
+    }
+
+    /**
+     * Counts inner streams opened and closed by a mapper.
+     */
+    static final class Inners implements Function<Integer, Stream<String>> {
+        final AtomicInteger opened = new AtomicInteger(), closed = new AtomicInteger();
+        private final List<Integer> sizes;
+
+        Inners(List<Integer> sizes) {
+            this.sizes = sizes;
+        }
+
+        /**
+         * @return the inner stream of given element or {@code null} if its size is negative
+         */
+        @Override
+        public Stream<String> apply(Integer i) {
+            int size = sizes.get(i);
+            if (size < 0) {
+                return null;
+            }
+            opened.incrementAndGet();
+            return IntStream.range(0, size).mapToObj(j -> i + ":" + j).onClose(closed::incrementAndGet);
+        }
+    }
+
+    /**
+     * A few large inner streams (that split) among many small, empty and {@code null} ones.
+     */
+    static List<Integer> randomSizes(Random random, int n) {
+        List<Integer> sizes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int kind = random.nextInt(20);
+            sizes.add(kind == 0 ? 10_000 + random.nextInt(50_000) : kind < 3 ? -1 : kind < 5 ? 0 : random.nextInt(20));
+        }
+        return sizes;
+    }
+
+    static void results() {
+        Random random = new Random(19);
+        for (int n : new int[]{0, 1, 10, 1000}) {
+            List<Integer> sizes = randomSizes(random, n);
+            List<Integer> elements = IntStream.range(0, n).boxed().collect(Collectors.toList());
+            Inners inners = new Inners(sizes);
+            List<String> expected = elements.parallelStream().flatMap(inners).collect(Collectors.toList());
+            Streamable<Integer> source = elements::parallelStream;
+            checkEquals(expected, source.flatMapParallel(inners).autoClosingStream().collect(Collectors.toList()),
+                        "ordered elements, n=" + n);
+            List<String> unordered = source.flatMapParallelUnordered(inners).autoClosingStream()
+                                           .collect(Collectors.toList());
+            checkEquals(expected.stream().sorted().collect(Collectors.toList()),
+                        unordered.stream().sorted().collect(Collectors.toList()), "unordered elements, n=" + n);
+            checkEquals(inners.opened.get(), inners.closed.get(), "inner streams closed, n=" + n);
+        }
+    }
+
+    /**
+     * Each inner stream is closed by its last exhausted part, before the stream is closed.
+     */
+    static void closedWhenExhausted() {
+        List<Integer> sizes = randomSizes(new Random(23), 500);
+        for (boolean parallel : new boolean[]{false, true}) {
+            Inners inners = new Inners(sizes);
+            Streamable<Integer> source = () -> IntStream.range(0, sizes.size()).boxed();
+            Stream<String> s = source.flatMapParallel(inners).stream();
+            long count = (parallel ? s.parallel() : s).count();
+            checkEquals(sizes.stream().mapToLong(size -> Math.max(size, 0)).sum(), count, "count");
+            check(inners.opened.get() > 0, "inner streams opened");
+            checkEquals(inners.opened.get(), inners.closed.get(), "closed when exhausted, parallel: " + parallel);
+            s.close();
+            checkEquals(inners.opened.get(), inners.closed.get(), "closed once, parallel: " + parallel);
+        }
+    }
+
+    /**
+     * Closing a stream that is not exhausted closes the inner streams still open and the outer stream.
+     */
+    static void closedEarly() {
+        List<Integer> sizes = List.of(100_000, 100_000, 100_000, 100_000);
+        Inners inners = new Inners(sizes);
+        AtomicInteger outerClosed = new AtomicInteger();
+        Streamable<Integer> source = () -> Stream.of(0, 1, 2, 3).onClose(outerClosed::incrementAndGet);
+        try (Stream<String> s = source.flatMapParallel(inners).stream()) {
+            Iterator<String> it = s.iterator();
+            checkEquals("0:0", it.next(), "first element");
+            check(inners.opened.get() > inners.closed.get(), "inner stream open");
+        }
+        checkEquals(inners.opened.get(), inners.closed.get(), "closed with the stream");
+        checkEquals(1, outerClosed.get(), "outer stream closed");
+
+        inners = new Inners(sizes);
+        try (Stream<String> s = source.flatMapParallel(inners).stream().parallel()) {
+            check(s.anyMatch(x -> x.equals("1:50000")), "anyMatch in parallel");
+        }
+        checkEquals(inners.opened.get(), inners.closed.get(), "closed with the parallel stream");
+    }
+
+    static void nullInnerStreams() {
+        Streamable<Integer> source = () -> IntStream.range(0, 10_000).boxed().parallel();
+        Function<Integer, Stream<Integer>> none = i -> null;
+        checkEquals(List.of(), source.flatMapParallel(none).autoClosingStream().collect(Collectors.toList()),
+                    "only null inner streams");
+        Function<Integer, Stream<Integer>> odd = i -> i % 2 == 0 ? null : Stream.of(i);
+        checkEquals(source.stream().flatMap(odd).collect(Collectors.toList()),
+                    source.flatMapParallel(odd).autoClosingStream().collect(Collectors.toList()),
+                    "some null inner streams");
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package test;
+
+import si.pele.streamx.IntStreamable;
+import si.pele.streamx.Streamable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static test.Checks.*;
+
+/**
+ * Checks fused {@code filter}/{@code map}/{@code peek} chains of streamables: results against the same JDK
+ * pipelines and laziness of short-circuiting operations over sources with operations (such as {@code flatMap}).
+ */
+public class FusedTest {
+
+    static final int INNER = 1_000_000;
+
+    public static void main(String[] args) {
+        results();
+        laziness();
+        System.out.println("OK");
+    }
+
+    static void results() {
+        List<Integer> list = IntStream.range(0, 10_000).boxed().collect(Collectors.toList());
+        for (boolean parallel : new boolean[]{false, true}) {
+            Streamable<Integer> raw = parallel ? list::parallelStream : list::stream;
+            Streamable<Integer> staged = parallel ? () -> list.parallelStream().skip(1) : () -> list.stream().skip(1);
+            for (Streamable<Integer> source : List.of(raw, staged)) {
+                String what = (source == raw ? "raw" : "staged") + " source, parallel: " + parallel;
+                checkEquals(source.stream().filter(x -> x % 3 == 0).map(x -> "#" + x).filter(s -> s.endsWith("7"))
+                                  .collect(Collectors.toList()),
+                            source.filter(x -> x % 3 == 0).map(x -> "#" + x).filter(s -> s.endsWith("7")).stream()
+                                  .collect(Collectors.toList()), "ref chain, " + what);
+                AtomicInteger peeked = new AtomicInteger();
+                checkEquals(source.stream().count(), source.peek(x -> peeked.incrementAndGet()).stream()
+                                                           .collect(Collectors.counting()), "peek count, " + what);
+                checkEquals(source.stream().count(), (long) peeked.get(), "peeked, " + what);
+            }
+            int[] ints = IntStream.range(0, 10_000).toArray();
+            IntStreamable intRaw = parallel ? () -> Arrays.stream(ints).parallel() : () -> Arrays.stream(ints);
+            checkEquals(Arrays.stream(ints).map(x -> x * 7).filter(x -> x % 2 == 0).toArray(),
+                        intRaw.map(x -> x * 7).filter(x -> x % 2 == 0).stream().toArray(),
+                        "int chain, parallel: " + parallel);
+        }
+    }
+
+    /**
+     * Short-circuiting operations on a chain over a {@code flatMap} don't produce whole inner streams, and
+     * iterators are not more eager than iterators of the same JDK pipeline.
+     */
+    static void laziness() {
+        AtomicInteger produced = new AtomicInteger();
+        Streamable<Integer> outer = () -> Stream.of(1, 2, 3);
+        Streamable<Integer> source = outer.flatMap(i -> IntStream.range(0, INNER).boxed()
+                                                                 .peek(x -> produced.incrementAndGet()));
+
+        checkEquals(5, source.filter(x -> x == 5).map(x -> x).stream().findFirst().orElse(-1), "findFirst");
+        check(produced.getAndSet(0) < 10, "findFirst is lazy");
+
+        check(source.map(x -> x + 1).peek(x -> {}).autoClosingStream().anyMatch(x -> x == 3), "anyMatch");
+        check(produced.getAndSet(0) < 10, "anyMatch is lazy");
+
+        source.stream().filter(x -> x == 5).iterator().next();
+        int jdk = produced.getAndSet(0);
+        checkEquals(5, source.filter(x -> x == 5).autoClosingStream().iterator().next(), "iterator");
+        check(produced.getAndSet(0) <= jdk, "iterator not more eager than the JDK pipeline");
+
+        IntStreamable ints = ((IntStreamable) () -> IntStream.of(1, 2, 3))
+            .flatMap(i -> IntStream.range(0, INNER).peek(x -> produced.incrementAndGet()));
+        checkEquals(5, ints.filter(x -> x == 5).stream().findFirst().orElse(-1), "int findFirst");
+        check(produced.getAndSet(0) < 10, "int findFirst is lazy");
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package test;
+
+import si.pele.streamx.Predicates;
+import si.pele.streamx.Streamable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static test.Checks.*;
+
+/**
+ * Checks lines of text files against {@link BufferedReader#readLine()}, which ends lines at {@code "\n"},
+ * {@code "\r"} or {@code "\r\n"}, for memory-mapped and decoded charsets.
+ */
+public class LinesTest {
+
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("lines", ".txt");
+        try {
+            terminators(file);
+            randomText(file);
+            largeText(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        System.out.println("OK");
+    }
+
+    static String[] expected(String text) throws IOException {
+        try (BufferedReader r = new BufferedReader(new StringReader(text))) {
+            return r.lines().toArray(String[]::new);
+        }
+    }
+
+    static String[] lines(Path file, Charset cs, boolean parallel) {
+        try (Stream<String> s = Streamable.IO.lines(file, cs).stream()) {
+            return (parallel ? s.parallel() : s).toArray(String[]::new);
+        }
+    }
+
+    static void checkText(Path file, String text, Charset cs) throws IOException {
+        Files.writeString(file, text, cs);
+        String[] expected = expected(text);
+        String what = " lines of \"" + text.replace("\r", "\\r").replace("\n", "\\n") + "\" in " + cs;
+        checkEquals(expected, lines(file, cs, false), "sequential" + what);
+        checkEquals(expected, lines(file, cs, true), "parallel" + what);
+    }
+
+    static void terminators(Path file) throws IOException {
+        for (Charset cs : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.UTF_16}) {
+            checkText(file, "a\rb\nc\r\nd", cs);
+            checkText(file, "a\r\rb\n\nc\r\n\r\nd\n\r", cs);
+            checkText(file, "\r", cs);
+            checkText(file, "a\r", cs);
+            checkText(file, "", cs);
+        }
+        // pushed-down predicates see lines without terminators
+        Files.writeString(file, "xa\ry\rza\r\nwa\n", StandardCharsets.UTF_8);
+        try (Stream<String> s = Streamable.IO.lines(file).filter(Predicates.find("a$")).stream()) {
+            checkEquals(new String[]{"xa", "za", "wa"}, s.toArray(String[]::new), "find pushed down");
+        }
+    }
+
+    static void randomText(Path file) throws IOException {
+        Random random = new Random(7);
+        String alphabet = "ab\u00e9\r\n";
+        for (int trial = 0; trial < 200; trial++) {
+            int length = random.nextInt(trial < 100 ? 30 : 20_000);
+            StringBuilder sb = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            checkText(file, sb.toString(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * A text larger than a mapping window (64 MiB) with a {@code "\r\n"} split by the end of the first window
+     * and lone {@code "\r"} terminators further on.
+     */
+    static void largeText(Path file) throws IOException {
+        int window = 1 << 26;
+        String line = "x".repeat(99);
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.ISO_8859_1)) {
+            int written = 0;
+            for (; written + 100 < window - 1; written += 100) w.write(line + "\n");
+            w.write("y".repeat(window - 1 - written) + "\r\n");
+            written = window + 1;
+            for (; written + 100 < 2 * window - 1; written += 100) w.write(line + "\n");
+            w.write("z".repeat(2 * window - 1 - written) + "\r");
+            w.write(line + "\r\n" + line);
+        }
+        for (boolean parallel : new boolean[]{false, true}) {
+            String[] lines = lines(file, StandardCharsets.ISO_8859_1, parallel);
+            int y = -1, z = -1;
+            for (int i = 0; i < lines.length; i++) {
+                if (lines[i].startsWith("y")) y = i;
+                else if (lines[i].startsWith("z")) z = i;
+                else checkEquals(line, lines[i], "line " + i + " of large text, parallel: " + parallel);
+            }
+            check(y > 0 && z > y, "window boundary lines of large text, parallel: " + parallel);
+            checkEquals(z + 3, lines.length, "lines of large text, parallel: " + parallel);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package test;
+
+import si.pele.streamx.Streamable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static test.Checks.*;
+
+/**
+ * Checks {@link Streamable#mergeSorted} and {@link Streamable#join}: stability, detection of unsorted sources,
+ * duplicate keys and closing of the sources.
+ */
+public class MergeJoinTest {
+
+    public static void main(String[] args) {
+        mergeStability();
+        mergeUnsorted();
+        joinDuplicates();
+        joinUnsorted();
+        System.out.println("OK");
+    }
+
+    /**
+     * Elements are "key:source:position"; they are compared by key only.
+     */
+    static final Comparator<String> BY_KEY = Comparator.comparing(MergeJoinTest::key);
+
+    static String key(String element) {
+        return element.substring(0, element.indexOf(':'));
+    }
+
+    static List<String> source(int source, String... keys) {
+        List<String> elements = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            elements.add(keys[i] + ":" + source + ":" + i);
+        }
+        return elements;
+    }
+
+    static void mergeStability() {
+        List<String> a = source(0, "a", "b", "b", "d"), b = source(1, "b", "c", "d", "d"), c = source(2, "a", "d");
+        List<String> merged = Streamable.mergeSorted(BY_KEY, a::stream, b::stream, c::stream).stream()
+                                        .collect(Collectors.toList());
+        checkEquals(List.of("a:0:0", "a:2:0", "b:0:1", "b:0:2", "b:1:0", "c:1:1",
+                            "d:0:3", "d:1:2", "d:1:3", "d:2:1"), merged, "equal elements in order of sources");
+
+        // the same as a stable sort of the concatenation, for random sources
+        Random random = new Random(5);
+        for (int trial = 0; trial < 100; trial++) {
+            List<List<String>> sources = new ArrayList<>();
+            for (int s = random.nextInt(6); s >= 0; s--) {
+                String[] keys = random.ints(random.nextInt(50), 0, 10).sorted()
+                                      .mapToObj(Integer::toString).toArray(String[]::new);
+                sources.add(source(sources.size(), keys));
+            }
+            List<Streamable<String>> streamables = new ArrayList<>();
+            for (List<String> source : sources) streamables.add(source::stream);
+            List<String> expected = sources.stream().flatMap(List::stream).sorted(BY_KEY).collect(Collectors.toList());
+            checkEquals(expected, Streamable.mergeSorted(BY_KEY, streamables).stream().collect(Collectors.toList()),
+                        "merge of " + sources);
+        }
+    }
+
+    static void mergeUnsorted() {
+        AtomicInteger closed = new AtomicInteger();
+        Streamable<Integer> sorted = () -> Stream.of(1, 3, 5).onClose(closed::incrementAndGet);
+        Streamable<Integer> unsorted = () -> Stream.of(2, 4, 3, 6).onClose(closed::incrementAndGet);
+        IllegalStateException e = checkThrows(IllegalStateException.class, () -> {
+            try (Stream<Integer> s = Streamable.mergeSorted(Comparator.<Integer>naturalOrder(), sorted, unsorted)
+                                               .stream()) {
+                s.forEach(x -> {});
+            }
+        }, "unsorted source");
+        check(e.getMessage().contains("#1"), "unsorted source identified: " + e.getMessage());
+        checkEquals(2, closed.get(), "sources closed");
+    }
+
+    static void joinDuplicates() {
+        List<String> left = source(0, "a", "b", "b", "c", "e", "e");
+        List<String> right = source(1, "b", "b", "b", "d", "e", "e", "f");
+        List<String> joined = Streamable.join(left::stream, right::stream, MergeJoinTest::key, MergeJoinTest::key,
+                                              (l, r) -> l + "+" + r).stream()
+                                        .collect(Collectors.toList());
+        checkEquals(List.of("b:0:1+b:1:0", "b:0:1+b:1:1", "b:0:1+b:1:2",
+                            "b:0:2+b:1:0", "b:0:2+b:1:1", "b:0:2+b:1:2",
+                            "e:0:4+e:1:4", "e:0:4+e:1:5",
+                            "e:0:5+e:1:4", "e:0:5+e:1:5"), joined, "cross product of equal keys");
+
+        // the same as a nested loop join, for random sources
+        Random random = new Random(9);
+        Function<String, Integer> key = x -> Integer.valueOf(key(x));
+        for (int trial = 0; trial < 100; trial++) {
+            List<String> l = source(0, randomKeys(random)), r = source(1, randomKeys(random));
+            List<String> expected = new ArrayList<>();
+            for (String x : l) {
+                for (String y : r) {
+                    if (key.apply(x).equals(key.apply(y))) expected.add(x + "+" + y);
+                }
+            }
+            checkEquals(expected, Streamable.join(l::stream, r::stream, key, key, (x, y) -> x + "+" + y).stream()
+                                            .collect(Collectors.toList()), "join of " + l + " and " + r);
+        }
+    }
+
+    static String[] randomKeys(Random random) {
+        return random.ints(random.nextInt(30), 0, 8).sorted().mapToObj(Integer::toString).toArray(String[]::new);
+    }
+
+    static void joinUnsorted() {
+        Streamable<Integer> sorted = () -> IntStream.range(0, 10).boxed();
+        Streamable<Integer> unsorted = () -> Stream.of(1, 5, 2, 7);
+        Function<Integer, Integer> id = x -> x;
+        checkThrows(IllegalStateException.class, () -> Streamable.join(unsorted, sorted, id, id, (l, r) -> l)
+                                                                 .stream().count(), "unsorted left source");
+        checkThrows(IllegalStateException.class, () -> Streamable.join(sorted, unsorted, id, id, (l, r) -> l)
+                                                                 .stream().count(), "unsorted right source");
+    }
+}
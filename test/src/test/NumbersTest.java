@@ -0,0 +1,164 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package test;
+
+import si.pele.streamx.IntStreamable;
+import si.pele.streamx.LongStreamable;
+import si.pele.streamx.Streamable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static test.Checks.*;
+
+/**
+ * Checks primitive number sources: decimal numbers in text files (against a regular expression), binary numbers
+ * and delimited fields of text elements.
+ */
+public class NumbersTest {
+
+    /**
+     * What the decimal tokenizer is specified to find.
+     */
+    static final Pattern NUMBER = Pattern.compile("[+-]?[0-9]+");
+
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("numbers", ".txt");
+        try {
+            tokenizer(file);
+            randomText(file);
+            errors(file);
+            largeText(file);
+            binary(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        fields();
+        System.out.println("OK");
+    }
+
+    static long[] expected(String text) {
+        Matcher m = NUMBER.matcher(text);
+        LongStream.Builder b = LongStream.builder();
+        while (m.find()) b.add(Long.parseLong(m.group()));
+        return b.build().toArray();
+    }
+
+    static long[] parse(Path file, boolean parallel) {
+        try (LongStream s = LongStreamable.IO.parseLongs(file).stream()) {
+            return (parallel ? s.parallel() : s).toArray();
+        }
+    }
+
+    static void checkText(Path file, String text, long[] expected) throws IOException {
+        Files.writeString(file, text, StandardCharsets.US_ASCII);
+        checkEquals(expected, parse(file, false), "sequential parse of \"" + text + "\"");
+        checkEquals(expected, parse(file, true), "parallel parse of \"" + text + "\"");
+    }
+
+    static void tokenizer(Path file) throws IOException {
+        checkText(file, "10-20", new long[]{10, -20});
+        checkText(file, "a - b 5", new long[]{5});
+        checkText(file, "2024-01-05 42", new long[]{2024, -1, -5, 42});
+        checkText(file, "1--2 +-3 -+4 ++", new long[]{1, -2, -3, 4});
+        checkText(file, "+7,-8;9-", new long[]{7, -8, 9});
+        checkText(file, "-", new long[0]);
+        checkText(file, "", new long[0]);
+        checkText(file, "0 -0 +0 007", new long[]{0, 0, 0, 7});
+        checkText(file, "9223372036854775807 -9223372036854775808", new long[]{Long.MAX_VALUE, Long.MIN_VALUE});
+    }
+
+    static void randomText(Path file) throws IOException {
+        Random random = new Random(42);
+        String alphabet = "0123456789--++ \n,a";
+        for (int trial = 0; trial < 200; trial++) {
+            int length = random.nextInt(trial < 100 ? 50 : 20_000);
+            StringBuilder sb = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                // keep digit runs short enough for long
+                char c = alphabet.charAt(random.nextInt(alphabet.length()));
+                sb.append(i % 12 == 11 && Character.isDigit(c) ? ' ' : c);
+            }
+            String text = sb.toString();
+            checkText(file, text, expected(text));
+        }
+    }
+
+    static void errors(Path file) throws IOException {
+        Files.writeString(file, "1 2 3000000000 4");
+        checkThrows(NumberFormatException.class, () -> IntStreamable.IO.parseInts(file).stream().sum(),
+                    "int overflow");
+        checkEquals(3_000_000_007L, LongStreamable.IO.parseLongs(file).stream().sum(), "longs");
+        Files.writeString(file, "9223372036854775808");
+        checkThrows(NumberFormatException.class, () -> LongStreamable.IO.parseLongs(file).stream().sum(),
+                    "long overflow");
+    }
+
+    /**
+     * A text larger than a mapping window (64 MiB) with a sign at the last byte of the first window, so numbers
+     * and signs cross window boundaries.
+     */
+    static void largeText(Path file) throws IOException {
+        String pattern = "12-3 +-45 a-b 6+7 -8\n";
+        int window = 1 << 26, signAt = pattern.indexOf('-');
+        int padding = Math.floorMod(window - 1 - signAt, pattern.length());
+        int repeats = window / pattern.length() + 1000;
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            w.write(" ".repeat(padding));
+            for (int i = 0; i < repeats; i++) w.write(pattern);
+        }
+        long[] perPattern = expected(pattern);
+        long count = (long) repeats * perPattern.length, sum = repeats * LongStream.of(perPattern).sum();
+        for (boolean parallel : new boolean[]{false, true}) {
+            long[] parsed = parse(file, parallel);
+            checkEquals(count, (long) parsed.length, "count of large text, parallel: " + parallel);
+            checkEquals(sum, LongStream.of(parsed).sum(), "sum of large text, parallel: " + parallel);
+            for (int i = 0; i < parsed.length; i++) {
+                if (parsed[i] != perPattern[i % perPattern.length]) {
+                    throw new AssertionError("Failed: number " + i + " of large text: " + parsed[i]);
+                }
+            }
+        }
+    }
+
+    static void binary(Path file) throws IOException {
+        int[] ints = new Random(1).ints(10_000).toArray();
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer bytes = ByteBuffer.allocate(ints.length * Integer.BYTES).order(order);
+            for (int v : ints) bytes.putInt(v);
+            Files.write(file, bytes.array());
+            checkEquals(ints, IntStreamable.IO.ints(file, order).stream().toArray(), "ints " + order);
+            checkEquals(ints, IntStreamable.IO.ints(file, order).stream().parallel().toArray(),
+                        "parallel ints " + order);
+        }
+        Files.write(file, new byte[6]);
+        checkThrows(RuntimeException.class, () -> LongStreamable.IO.longs(file, ByteOrder.BIG_ENDIAN).stream(),
+                    "size not a multiple of 8");
+    }
+
+    static void fields() {
+        List<String> lines = List.of(" 1 ,\t-2,+3", "", "   ", "4", "5,6");
+        Streamable<String> source = lines::stream;
+        checkEquals(new int[]{1, -2, 3, 4, 5, 6}, IntStreamable.parseInts(source, ',').stream().toArray(),
+                    "int fields");
+        checkEquals(new long[]{1, -2, 3, 4, 5, 6},
+                    LongStreamable.parseLongs(source, ',').stream().parallel().toArray(), "parallel long fields");
+        Streamable<String> empty = () -> Stream.of("1,,2");
+        checkThrows(NumberFormatException.class, () -> IntStreamable.parseInts(empty, ',').stream().sum(),
+                    "empty field");
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package test;
+
+import si.pele.streamx.Streamable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static test.Checks.*;
+
+/**
+ * Checks {@link Streamable.IO#partitioned}: parallel {@code toArray} with declared sizes (which relies on the
+ * {@link Spliterator#SIZED SIZED}/{@link Spliterator#SUBSIZED SUBSIZED} contract), that partitions are opened only
+ * when traversed and that open partitions are closed when exhausted or when the stream is closed.
+ */
+public class PartitionsTest {
+
+    public static void main(String[] args) {
+        sizedToArray();
+        lazyOpening();
+        closing();
+        System.out.println("OK");
+    }
+
+    /**
+     * Partitions of consecutive integers with given sizes. Even partitions are {@code SUBSIZED} streams and odd
+     * ones are streams of unknown size, which are not split.
+     */
+    static final class Opener implements IntFunction<Stream<Integer>> {
+        final int[] sizes;
+        final int[] offsets;
+        final AtomicInteger opened = new AtomicInteger(), closed = new AtomicInteger();
+
+        Opener(int[] sizes) {
+            this.sizes = sizes;
+            this.offsets = new int[sizes.length + 1];
+            for (int i = 0; i < sizes.length; i++) offsets[i + 1] = offsets[i] + sizes[i];
+        }
+
+        int total() {
+            return offsets[sizes.length];
+        }
+
+        @Override
+        public Stream<Integer> apply(int i) {
+            opened.incrementAndGet();
+            int from = offsets[i], to = offsets[i + 1];
+            Stream<Integer> s = i % 2 == 0
+                                ? IntStream.range(from, to).boxed()
+                                : Stream.iterate(from, x -> x < to, x -> x + 1);
+            return s.onClose(closed::incrementAndGet);
+        }
+    }
+
+    static int[] randomSizes(Random random, int n) {
+        return random.ints(n, 0, 10).map(kind -> kind == 0 ? 0 : kind == 1 ? 20_000 + random.nextInt(80_000)
+                                                                            : random.nextInt(1000)).toArray();
+    }
+
+    static void sizedToArray() {
+        Random random = new Random(29);
+        for (int n : new int[]{0, 1, 2, 7, 100}) {
+            Opener opener = new Opener(randomSizes(random, n));
+            Integer[] expected = IntStream.range(0, opener.total()).boxed().toArray(Integer[]::new);
+            Streamable.IO<Integer> sized = Streamable.IO.partitioned(n, i -> opener.sizes[i], opener);
+            try (Stream<Integer> s = sized.stream()) {
+                Spliterator<Integer> spliterator = s.spliterator();
+                check(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED), "sized, n=" + n);
+                checkEquals((long) opener.total(), spliterator.getExactSizeIfKnown(), "exact size, n=" + n);
+            }
+            checkEquals(expected, sized.autoClosingStream().parallel().toArray(Integer[]::new),
+                        "parallel toArray with declared sizes, n=" + n);
+            checkEquals(expected, Streamable.IO.partitioned(n, opener).autoClosingStream().parallel()
+                                              .toArray(Integer[]::new), "parallel toArray, n=" + n);
+            checkEquals(opener.opened.get(), opener.closed.get(), "partitions closed, n=" + n);
+        }
+    }
+
+    /**
+     * Constructing and splitting streams doesn't open partitions and short-circuiting traversal opens only
+     * the partitions it traverses.
+     */
+    static void lazyOpening() {
+        Opener opener = new Opener(new int[]{0, 0, 5, 3, 1000, 7, 2});
+        int n = opener.sizes.length;
+        for (boolean sized : new boolean[]{false, true}) {
+            Streamable.IO<Integer> source = sized ? Streamable.IO.partitioned(n, i -> opener.sizes[i], opener)
+                                                  : Streamable.IO.partitioned(n, opener);
+            String what = ", sized: " + sized;
+            opener.opened.set(0);
+            try (Stream<Integer> s = source.stream()) {
+                Spliterator<Integer> spliterator = s.spliterator();
+                spliterator.trySplit();
+                spliterator.estimateSize();
+                checkEquals(0, opener.opened.get(), "opened by splitting" + what);
+            }
+            try (Stream<Integer> s = source.stream()) {
+                checkEquals(0, s.findFirst().orElse(-1), "findFirst" + what);
+            }
+            checkEquals(3, opener.opened.get(), "opened by findFirst" + what); // two empty partitions and the first
+            opener.opened.set(0);
+            try (Stream<Integer> s = source.stream()) {
+                checkEquals(5, s.filter(x -> x >= 5).findFirst().orElse(-1), "findFirst of second" + what);
+            }
+            checkEquals(4, opener.opened.get(), "opened by findFirst of second" + what);
+        }
+    }
+
+    static void closing() {
+        int[] sizes = new int[16];
+        Arrays.fill(sizes, 10_000);
+        for (boolean sized : new boolean[]{false, true}) {
+            String what = ", sized: " + sized;
+            Opener opener = new Opener(sizes);
+            Streamable.IO<Integer> source = sized ? Streamable.IO.partitioned(sizes.length, i -> sizes[i], opener)
+                                                  : Streamable.IO.partitioned(sizes.length, opener);
+
+            // closed when exhausted (a sized count() would not traverse)
+            Stream<Integer> all = source.stream();
+            checkEquals((long) opener.total(), all.parallel().mapToLong(x -> 1L).sum(), "count" + what);
+            checkEquals(sizes.length, opener.opened.get(), "all opened" + what);
+            checkEquals(sizes.length, opener.closed.get(), "closed when exhausted" + what);
+            all.close();
+            checkEquals(sizes.length, opener.closed.get(), "closed once" + what);
+
+            // closed with the stream
+            opener.opened.set(0);
+            opener.closed.set(0);
+            try (Stream<Integer> s = source.stream()) {
+                Iterator<Integer> it = s.iterator();
+                List<Integer> first = new ArrayList<>();
+                while (first.size() < 10_005) first.add(it.next());
+                checkEquals(IntStream.range(0, 10_005).boxed().collect(Collectors.toList()), first,
+                            "iterated" + what);
+                check(opener.opened.get() > opener.closed.get(), "partition open" + what);
+            }
+            checkEquals(opener.opened.get(), opener.closed.get(), "closed with the stream" + what);
+
+            opener.opened.set(0);
+            opener.closed.set(0);
+            try (Stream<Integer> s = source.stream().parallel()) {
+                check(s.anyMatch(x -> x == 75_000), "anyMatch in parallel" + what);
+            }
+            checkEquals(opener.opened.get(), opener.closed.get(), "closed with the parallel stream" + what);
+        }
+    }
+}
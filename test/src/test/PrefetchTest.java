@@ -0,0 +1,151 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package test;
+
+import si.pele.streamx.Streamable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static test.Checks.*;
+
+/**
+ * Checks the handshake of {@link Streamable#prefetch} between the producer and closing of the stream: closing
+ * while the producer is blocked on a full buffer, closing before the producer starts and a source that throws.
+ * The source must never be closed while the producer is traversing it.
+ */
+public class PrefetchTest {
+
+    public static void main(String[] args) throws Exception {
+        results();
+        closeWhileBlocked();
+        closeBeforeStart();
+        throwingSource();
+        System.out.println("OK");
+    }
+
+    /**
+     * An infinite source of consecutive integers (or a source that throws after given number of them) which
+     * records how many elements it produced, whether it is being traversed when closed and how often it is closed.
+     */
+    static final class Source extends Spliterators.AbstractSpliterator<Integer> {
+        final int failAfter;
+        final AtomicInteger produced = new AtomicInteger(), closed = new AtomicInteger();
+        volatile boolean traversing, closedWhileTraversing;
+
+        Source(int failAfter) {
+            super(Long.MAX_VALUE, ORDERED);
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Integer> action) {
+            traversing = true;
+            try {
+                int i = produced.get();
+                if (i == failAfter) {
+                    throw new IllegalStateException("failed after " + i);
+                }
+                produced.incrementAndGet();
+                action.accept(i);
+                return true;
+            } finally {
+                traversing = false;
+            }
+        }
+
+        Streamable<Integer> streamable() {
+            return () -> StreamSupport.stream(this, false).onClose(() -> {
+                if (traversing) closedWhileTraversing = true;
+                closed.incrementAndGet();
+            });
+        }
+    }
+
+    static void results() {
+        List<Integer> elements = IntStream.range(0, 10_000).boxed().collect(Collectors.toList());
+        elements.set(7, null);
+        Streamable<Integer> source = elements::stream;
+        for (int capacity : new int[]{1, 3, 1000}) {
+            checkEquals(elements, source.prefetch(capacity).autoClosingStream().collect(Collectors.toList()),
+                        "elements, capacity: " + capacity);
+            checkEquals(elements, source.prefetch(capacity).autoClosingStream().parallel()
+                                        .collect(Collectors.toList()), "parallel elements, capacity: " + capacity);
+        }
+    }
+
+    /**
+     * Closing stops a producer blocked on a full buffer and closes the source after the producer returned from it.
+     */
+    static void closeWhileBlocked() throws InterruptedException {
+        int capacity = 4;
+        Source source = new Source(-1);
+        Stream<Integer> s = source.streamable().prefetch(capacity).stream();
+        Iterator<Integer> it = s.iterator();
+        checkEquals(0, it.next(), "first element");
+        // the producer fills the buffer and blocks putting the next element
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (source.produced.get() < capacity + 2 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        checkEquals(capacity + 2, source.produced.get(), "produced until the buffer is full");
+        check(source.traversing, "producer blocked in the source");
+
+        Thread closer = new Thread(s::close);
+        closer.start();
+        closer.join(TimeUnit.SECONDS.toMillis(10));
+        check(!closer.isAlive(), "close returned");
+        checkEquals(1, source.closed.get(), "source closed");
+        check(!source.closedWhileTraversing, "source not closed while traversed");
+        int produced = source.produced.get();
+        Thread.sleep(50);
+        checkEquals(produced, source.produced.get(), "producer stopped");
+        checkThrows(IllegalStateException.class, it::next, "next after close");
+    }
+
+    /**
+     * A stream closed before it is traversed doesn't start the producer.
+     */
+    static void closeBeforeStart() throws InterruptedException {
+        Source source = new Source(-1);
+        Stream<Integer> s = source.streamable().prefetch(4).stream();
+        s.close();
+        checkEquals(1, source.closed.get(), "source closed");
+        Thread.sleep(50);
+        checkEquals(0, source.produced.get(), "producer not started");
+        checkThrows(IllegalStateException.class, () -> s.iterator(), "traversal after close");
+        checkEquals(0, source.produced.get(), "producer not started by traversal after close");
+    }
+
+    /**
+     * An exception thrown by the source is re-thrown after the elements produced before it.
+     */
+    static void throwingSource() {
+        for (int capacity : new int[]{1, 100}) {
+            Source source = new Source(10);
+            List<Integer> consumed = new ArrayList<>();
+            IllegalStateException e = checkThrows(IllegalStateException.class, () -> {
+                try (Stream<Integer> s = source.streamable().prefetch(capacity).stream()) {
+                    s.forEach(consumed::add);
+                }
+            }, "exception of the source, capacity: " + capacity);
+            checkEquals("failed after 10", e.getMessage(), "re-thrown exception, capacity: " + capacity);
+            checkEquals(IntStream.range(0, 10).boxed().collect(Collectors.toList()), consumed,
+                        "elements before the exception, capacity: " + capacity);
+            checkEquals(1, source.closed.get(), "source closed, capacity: " + capacity);
+            check(!source.closedWhileTraversing, "source not closed while traversed, capacity: " + capacity);
+        }
+    }
+}
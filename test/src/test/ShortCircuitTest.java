@@ -0,0 +1,199 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package test;
+
+import si.pele.streamx.AC;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterators;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static test.Checks.*;
+
+/**
+ * Checks closing of {@link AC} streams by terminal operations that stop early and cancellation of parallel
+ * ones by short-circuiting terminal operations.
+ */
+public class ShortCircuitTest {
+
+    public static void main(String[] args) throws Exception {
+        earlyClose();
+        results();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            cancellation(pool);
+            interruptKept(pool);
+        } finally {
+            pool.shutdownNow();
+        }
+        System.out.println("OK");
+    }
+
+    static void earlyClose() {
+        AtomicInteger closed = new AtomicInteger();
+        Supplier<Stream<Integer>> source = () -> IntStream.range(0, 1000).boxed().onClose(closed::incrementAndGet);
+
+        checkEquals(0, AC.stream(source.get()).findFirst().orElseThrow(), "findFirst");
+        checkEquals(1, closed.get(), "closed by findFirst");
+
+        checkEquals(5L, AC.stream(source.get()).limit(5).count(), "limit");
+        checkEquals(2, closed.get(), "closed by limit");
+
+        checkEquals(true, AC.stream(source.get().parallel()).anyMatch(i -> i == 500), "parallel anyMatch");
+        checkEquals(3, closed.get(), "closed by parallel anyMatch");
+
+        Iterator<Integer> it = AC.stream(source.get()).iterator();
+        while (it.hasNext()) it.next();
+        checkEquals(4, closed.get(), "closed by exhausted iterator");
+
+        checkThrows(IllegalStateException.class, () -> AC.stream(source.get()).forEach(i -> {
+            if (i == 10) throw new IllegalStateException();
+        }), "exception thrown by action");
+        checkEquals(5, closed.get(), "closed by exception");
+
+        // inner streams opened by flatMap are closed too
+        AtomicInteger opened = new AtomicInteger(), innerClosed = new AtomicInteger();
+        Function<Integer, Stream<Integer>> inner = i -> {
+            opened.incrementAndGet();
+            return Stream.of(i, i).onClose(innerClosed::incrementAndGet);
+        };
+        check(AC.stream(source.get()).flatMap(inner).anyMatch(i -> i == 3), "sequential flatMap anyMatch");
+        checkEquals(opened.get(), innerClosed.get(), "inner streams closed by sequential anyMatch");
+        check(AC.stream(source.get().parallel()).flatMap(inner).anyMatch(i -> i == 300), "parallel flatMap anyMatch");
+        checkEquals(opened.get(), innerClosed.get(), "inner streams closed by parallel anyMatch");
+        checkEquals(7, closed.get(), "closed by flatMap anyMatch");
+    }
+
+    static void results() {
+        Supplier<Stream<Integer>> source = () -> IntStream.range(0, 100_000).boxed().parallel();
+        checkEquals(false, AC.stream(source.get()).allMatch(x -> x < 50_000), "allMatch false");
+        checkEquals(true, AC.stream(source.get()).allMatch(x -> x >= 0), "allMatch true");
+        checkEquals(false, AC.stream(source.get()).noneMatch(x -> x == 99_999), "noneMatch false");
+        checkEquals(false, AC.stream(source.get()).anyMatch(x -> x == -1), "anyMatch false");
+        checkEquals(true, AC.intStream(IntStream.range(0, 100).parallel())
+                            .flatMap(x -> IntStream.range(0, x)).anyMatch(x -> x == 98), "IntStream flatMap anyMatch");
+        check(AC.stream(source.get()).flatMap(x -> Stream.of(x, x)).findAny().isPresent(), "flatMap findAny");
+        checkEquals(200_000L, AC.stream(source.get()).flatMap(x -> Stream.of(x, x)).count(), "flatMap count");
+        checkEquals(9_999_900_000L, AC.stream(source.get()).flatMap(x -> Stream.of(x, x)).mapToLong(x -> x).sum(),
+                    "flatMap sum");
+        // failures of inner streams propagate unless the result is already known
+        IllegalStateException e = checkThrows(IllegalStateException.class, () ->
+            AC.stream(IntStream.range(0, 100).boxed().parallel()).flatMap(x -> {
+                if (x == 50) throw new IllegalStateException("boom");
+                return Stream.of(x);
+            }).anyMatch(x -> x < 0), "failure of an inner stream");
+        checkEquals("boom", e.getMessage(), "failure message");
+    }
+
+    /**
+     * Inner streams blocked reading from pipes that never get data are aborted once a match is found.
+     */
+    static void cancellation(ForkJoinPool pool) throws Exception {
+        AtomicInteger opened = new AtomicInteger(), closed = new AtomicInteger(), aborted = new AtomicInteger();
+        AtomicInteger interruptedOnClose = new AtomicInteger();
+        List<Pipe> pipes = new CopyOnWriteArrayList<>();
+        Function<Integer, Stream<String>> inner = i -> {
+            opened.incrementAndGet();
+            Pipe pipe;
+            try {
+                pipe = Pipe.open();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            pipes.add(pipe);
+            Iterator<String> it = new Iterator<>() {
+                int n;
+                public boolean hasNext() { return true; }
+                public String next() {
+                    if (n++ == 0) {
+                        if (i != 7) return "line" + i;
+                        sleep(200);
+                        return "MATCH";
+                    }
+                    try {
+                        pipe.source().read(ByteBuffer.allocate(1));
+                    } catch (IOException ioe) {
+                        aborted.incrementAndGet();
+                        throw new UncheckedIOException(ioe);
+                    }
+                    return "never";
+                }
+            };
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, 0), false).onClose(() -> {
+                if (Thread.currentThread().isInterrupted()) interruptedOnClose.incrementAndGet();
+                closed.incrementAndGet();
+            });
+        };
+        long start = System.nanoTime();
+        boolean found = pool.submit(() -> AC.stream(IntStream.range(0, 8).boxed().parallel())
+                                            .flatMap(inner)
+                                            .anyMatch("MATCH"::equals))
+                            .get(10, TimeUnit.SECONDS);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        check(found, "match found");
+        check(millis < 5_000, "blocked inner streams aborted (took " + millis + " ms)");
+        checkEquals(opened.get(), closed.get(), "all opened inner streams closed");
+        check(aborted.get() > 0, "blocked reads aborted");
+        checkEquals(0, interruptedOnClose.get(), "interrupts set by cancellation cleared");
+        for (Pipe pipe : pipes) {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+    }
+
+    /**
+     * An interrupt that a thread already had when the stream was cancelled is not cleared.
+     */
+    static void interruptKept(ForkJoinPool pool) throws Exception {
+        CountDownLatch selfInterrupted = new CountDownLatch(1);
+        AtomicReference<Boolean> keptOnClose = new AtomicReference<>();
+        Function<Integer, Stream<String>> inner = i -> {
+            if (i == 0) {
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+                Thread.currentThread().interrupt();
+                selfInterrupted.countDown();
+                return Stream.generate(() -> "spin")
+                             .takeWhile(s -> System.nanoTime() < deadline)
+                             .onClose(() -> keptOnClose.set(Thread.interrupted()));
+            }
+            try {
+                selfInterrupted.await(2, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                throw new IllegalStateException(ie);
+            }
+            return Stream.of("MATCH");
+        };
+        boolean found = pool.submit(() -> AC.stream(IntStream.range(0, 2).boxed().parallel())
+                                            .flatMap(inner)
+                                            .anyMatch("MATCH"::equals))
+                            .get(10, TimeUnit.SECONDS);
+        check(found, "match found");
+        checkEquals(Boolean.TRUE, keptOnClose.get(), "interrupt from elsewhere kept");
+    }
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ie) {
+            throw new IllegalStateException(ie);
+        }
+    }
+}
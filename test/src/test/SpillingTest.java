@@ -0,0 +1,136 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package test;
+
+import si.pele.streamx.DoubleStreamable;
+import si.pele.streamx.IntStreamable;
+import si.pele.streamx.LongStreamable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static test.Checks.*;
+
+/**
+ * Checks {@code sorted(memoryBudget)} and {@code distinct(memoryBudget)} of primitive streamables against the JDK,
+ * both with budgets the elements fit in (sorted in heap) and with budgets they exceed (spilled to files), and
+ * {@code distinct()} against the JDK and for laziness.
+ */
+public class SpillingTest {
+
+    static final long IN_HEAP = 64L << 20, SPILLED = 1L << 16;
+
+    public static void main(String[] args) throws IOException {
+        long runFiles = runFiles();
+        Random random = new Random(3);
+        for (int n : new int[]{0, 1, 1000, 100_000}) {
+            int[] ints = random.ints(n).toArray();
+            int[] fewInts = random.ints(n, -500, 500).toArray();
+            long[] longs = random.longs(n).toArray();
+            double[] doubles = random.doubles(n)
+                                     .map(d -> d < 0.01 ? Double.NaN : d < 0.02 ? -0.0 : d - 0.5)
+                                     .toArray();
+            for (long budget : new long[]{IN_HEAP, SPILLED}) {
+                for (boolean parallel : new boolean[]{false, true}) {
+                    String what = "n=" + n + ", budget=" + budget + ", parallel=" + parallel;
+                    checkInts(ints, budget, parallel, what);
+                    checkInts(fewInts, budget, parallel, "few distinct, " + what);
+                    checkLongs(longs, budget, parallel, what);
+                    checkDoubles(doubles, budget, parallel, what);
+                }
+            }
+        }
+        checkEquals(runFiles, runFiles(), "spill files deleted");
+
+        // an unordered source may be de-duplicated in any order
+        IntStreamable unordered = () -> IntStream.range(0, 200_000).map(i -> i % 70_000).unordered();
+        int[] distinct = unordered.distinct(SPILLED).autoClosingStream().toArray();
+        Arrays.sort(distinct);
+        checkEquals(IntStream.range(0, 70_000).toArray(), distinct, "unordered distinct");
+
+        lazyDistinct();
+        sizedSource();
+        checkEquals(runFiles, runFiles(), "spill files deleted");
+        System.out.println("OK");
+    }
+
+    /**
+     * A sequential {@code distinct()} consumes the source only as far as it is traversed.
+     */
+    static void lazyDistinct() {
+        AtomicInteger consumed = new AtomicInteger();
+        IntStreamable source = () -> IntStream.iterate(0, i -> i + 1).map(i -> i % 3)
+                                              .peek(i -> consumed.incrementAndGet());
+        checkEquals(new int[]{0, 1, 2}, source.distinct().autoClosingStream().limit(3).toArray(), "lazy distinct");
+        checkEquals(3, consumed.get(), "consumed by lazy distinct");
+    }
+
+    /**
+     * Sources of known size, larger than the budget or fitting in it only as ints (4 bytes per element).
+     */
+    static void sizedSource() {
+        int[] ints = new Random(11).ints(10_000).toArray();
+        long fitsAsInts = 6L * ints.length;
+        for (long budget : new long[]{fitsAsInts, ints.length}) {
+            for (boolean parallel : new boolean[]{false, true}) {
+                IntStreamable source = parallel ? () -> Arrays.stream(ints).parallel() : () -> Arrays.stream(ints);
+                String what = "budget=" + budget + ", parallel=" + parallel;
+                checkEquals(Arrays.stream(ints).sorted().toArray(),
+                            source.sorted(budget).autoClosingStream().toArray(), "sized sorted ints, " + what);
+                checkEquals(Arrays.stream(ints).distinct().toArray(),
+                            source.distinct(budget).autoClosingStream().toArray(), "sized distinct ints, " + what);
+            }
+        }
+    }
+
+    static void checkInts(int[] values, long budget, boolean parallel, String what) {
+        IntStreamable source = parallel ? () -> Arrays.stream(values).parallel() : () -> Arrays.stream(values);
+        checkEquals(Arrays.stream(values).sorted().toArray(),
+                    source.sorted(budget).autoClosingStream().toArray(), "sorted ints, " + what);
+        checkEquals(Arrays.stream(values).distinct().toArray(),
+                    source.distinct(budget).autoClosingStream().toArray(), "distinct ints, " + what);
+        checkEquals(Arrays.stream(values).distinct().toArray(),
+                    source.distinct().autoClosingStream().toArray(), "default distinct ints, " + what);
+        checkEquals(Arrays.stream(values).sorted().limit(10).toArray(),
+                    source.sorted(budget).autoClosingStream().limit(10).toArray(), "first sorted ints, " + what);
+    }
+
+    static void checkLongs(long[] values, long budget, boolean parallel, String what) {
+        LongStreamable source = parallel ? () -> Arrays.stream(values).parallel() : () -> Arrays.stream(values);
+        checkEquals(Arrays.stream(values).sorted().toArray(), source.sorted(budget).autoClosingStream().toArray(),
+                    "sorted longs, " + what);
+        checkEquals(LongStream.concat(Arrays.stream(values), Arrays.stream(values)).distinct().toArray(),
+                    ((LongStreamable) () -> LongStream.concat(source.stream(), source.stream()))
+                        .distinct(budget).autoClosingStream().toArray(),
+                    "distinct longs, " + what);
+        checkEquals(Arrays.stream(values).distinct().toArray(),
+                    source.distinct().autoClosingStream().toArray(), "default distinct longs, " + what);
+    }
+
+    static void checkDoubles(double[] values, long budget, boolean parallel, String what) {
+        DoubleStreamable source = parallel ? () -> Arrays.stream(values).parallel() : () -> Arrays.stream(values);
+        checkEquals(Arrays.stream(values).sorted().toArray(),
+                    source.sorted(budget).autoClosingStream().toArray(), "sorted doubles, " + what);
+        checkEquals(Arrays.stream(values).distinct().toArray(),
+                    source.distinct(budget).autoClosingStream().toArray(), "distinct doubles, " + what);
+        checkEquals(Arrays.stream(values).distinct().toArray(),
+                    source.distinct().autoClosingStream().toArray(), "default distinct doubles, " + what);
+    }
+
+    static long runFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(p -> p.getFileName().toString().startsWith("streamx-sort-")).count();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Written by Peter Levart <peter.levart@gmail.com>
+ * and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+package test;
+
+import si.pele.streamx.AC;
+import si.pele.streamx.StreamMetrics;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static test.Checks.*;
+
+/**
+ * Checks the number of elements reported by instrumented {@link AC} streams.
+ */
+public class StreamMetricsTest {
+
+    public static void main(String[] args) {
+        AtomicReference<StreamMetrics.Info> closed = new AtomicReference<>();
+        StreamMetrics metrics = new StreamMetrics() {
+            @Override
+            public void closed(StreamMetrics.Info info) { closed.set(info); }
+        };
+
+        checkEquals(3L, AC.stream(List.of(1, 2, 3).stream(), metrics).count(), "sized count");
+        checkEquals(3L, closed.get().elements(), "elements of sized count");
+
+        checkEquals(2L, AC.stream(Stream.of(1, 2, 3), metrics).filter(i -> i > 1).count(), "filtered count");
+        checkEquals(3L, closed.get().elements(), "elements of filtered count");
+
+        checkEquals(0L, AC.stream(Stream.empty(), metrics).count(), "empty count");
+        checkEquals(0L, closed.get().elements(), "elements of empty count");
+
+        checkEquals(1000L, AC.intStream(IntStream.range(0, 1000).parallel(), metrics).map(i -> i * 2).count(),
+                    "parallel sized count");
+        checkEquals(1000L, closed.get().elements(), "elements of parallel sized count");
+
+        AC.stream(List.of(1, 2, 3).stream(), metrics).forEach(i -> {});
+        checkEquals(3L, closed.get().elements(), "elements of forEach");
+        System.out.println("OK");
+    }
+}